@@ -0,0 +1,124 @@
+package com.kebabpos.terminal;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Full-graphics receipt renderer
+ *
+ * Lays text out with Android's text engine (so Arabic, CJK and emoji
+ * print regardless of printer fonts) into a single fixed-height band.
+ * Each band is thresholded to 1bpp and handed to the sink as soon as it
+ * fills. The renderer itself holds one band whatever the length of the
+ * receipt; a job streamed to an idle printer keeps its bands only up to
+ * the plugin's retention limit, while one queued behind a busy printer
+ * is held whole until it can be sent.
+ */
+final class BandedRasterRenderer {
+
+    interface BandSink {
+        void band(MonoImage band) throws IOException;
+    }
+
+    static final int MIN_BAND_HEIGHT = 24;
+    static final int MAX_BAND_HEIGHT = 64;
+
+    private final int width;
+    private final int bandHeight;
+    private final BandSink sink;
+
+    private final Bitmap bandBitmap;
+    private final Canvas canvas;
+    private final int[] pixels;
+    private final MonoImage band;
+    private final TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+    // Rows of the current band already drawn into
+    private int filled = 0;
+
+    BandedRasterRenderer(int width, int bandHeight, BandSink sink) {
+        this.width = width;
+        this.bandHeight = Math.max(MIN_BAND_HEIGHT, Math.min(MAX_BAND_HEIGHT, bandHeight));
+        this.sink = sink;
+        bandBitmap = Bitmap.createBitmap(width, this.bandHeight, Bitmap.Config.ARGB_8888);
+        bandBitmap.eraseColor(Color.WHITE);
+        canvas = new Canvas(bandBitmap);
+        pixels = new int[width * this.bandHeight];
+        band = new MonoImage((width + 7) / 8, this.bandHeight);
+        paint.setColor(Color.BLACK);
+    }
+
+    /**
+     * Render one line (or paragraph) of text. A single trailing newline
+     * ends the line and does not add an extra blank one.
+     */
+    @SuppressWarnings("deprecation")
+    void text(String text, int fontSize, int alignment, boolean bold, boolean monospace) throws IOException {
+        if (text.endsWith("\n")) text = text.substring(0, text.length() - 1);
+
+        Typeface base = monospace ? Typeface.MONOSPACE : Typeface.DEFAULT;
+        paint.setTypeface(Typeface.create(base, bold ? Typeface.BOLD : Typeface.NORMAL));
+        paint.setTextSize(fontSize);
+
+        Layout.Alignment align = alignment == 1 ? Layout.Alignment.ALIGN_CENTER
+            : alignment == 2 ? Layout.Alignment.ALIGN_OPPOSITE
+            : Layout.Alignment.ALIGN_NORMAL;
+        StaticLayout layout = new StaticLayout(text, paint, width, align, 1.0f, 0.0f, false);
+        drawLayout(layout);
+    }
+
+    /**
+     * Send the partially filled band, e.g. before a cut or a non-text command.
+     */
+    void flush() throws IOException {
+        if (filled > 0) emitBand(filled);
+    }
+
+    private void drawLayout(Layout layout) throws IOException {
+        int height = layout.getHeight();
+        int drawn = 0;
+        while (drawn < height) {
+            int step = Math.min(height - drawn, bandHeight - filled);
+            // Draw the slice of the layout that falls into this band
+            canvas.save();
+            canvas.clipRect(0, filled, width, filled + step);
+            canvas.translate(0, filled - drawn);
+            layout.draw(canvas);
+            canvas.restore();
+
+            filled += step;
+            drawn += step;
+            if (filled == bandHeight) emitBand(bandHeight);
+        }
+    }
+
+    private void emitBand(int rows) throws IOException {
+        bandBitmap.getPixels(pixels, 0, width, 0, 0, width, rows);
+        byte[] data = band.data;
+        Arrays.fill(data, (byte) 0);
+        int widthBytes = band.widthBytes;
+        for (int y = 0; y < rows; y++) {
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int c = pixels[rowOffset + x];
+                // Luminance threshold, transparent counts as white
+                int lum = (Color.red(c) * 299 + Color.green(c) * 587 + Color.blue(c) * 114) / 1000;
+                if (Color.alpha(c) > 127 && lum < 128) {
+                    data[y * widthBytes + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+        }
+
+        sink.band(rows == bandHeight ? band : new MonoImage(widthBytes, rows, data));
+        bandBitmap.eraseColor(Color.WHITE);
+        filled = 0;
+    }
+}
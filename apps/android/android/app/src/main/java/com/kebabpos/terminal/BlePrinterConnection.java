@@ -0,0 +1,187 @@
+package com.kebabpos.terminal;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One connected BLE printer: its GATT client and write characteristic
+ *
+ * Connecting discovers services, asks for the largest MTU and picks the
+ * printer's data characteristic, preferring write without response.
+ * Printers that only take acknowledged writes still work, one packet
+ * per round trip.
+ */
+final class BlePrinterConnection implements PrinterTransport {
+
+    // Data characteristics of common BLE printer modules, by service
+    private static final UUID[][] KNOWN_CHARACTERISTICS = {
+        // Generic thermal printers (0x18F0 / 0x2AF1)
+        { UUID.fromString("000018f0-0000-1000-8000-00805f9b34fb"), UUID.fromString("00002af1-0000-1000-8000-00805f9b34fb") },
+        // Microchip/ISSC transparent UART
+        { UUID.fromString("49535343-fe7d-4ae5-8fa9-9fafd205e455"), UUID.fromString("49535343-8841-43f4-a8d4-ecbe34729bb3") },
+        // Vendor serial bridges (0xFF00 / 0xFF02)
+        { UUID.fromString("0000ff00-0000-1000-8000-00805f9b34fb"), UUID.fromString("0000ff02-0000-1000-8000-00805f9b34fb") },
+    };
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int WRITE_TIMEOUT_MS = 5000;
+
+    final String address;
+    final String name;
+    private final BluetoothGatt gatt;
+    private final BleWriter writer;
+    private volatile boolean closed = false;
+
+    private BlePrinterConnection(BluetoothDevice device, BluetoothGatt gatt, BleWriter writer) {
+        this.address = device.getAddress();
+        this.name = device.getName();
+        this.gatt = gatt;
+        this.writer = writer;
+    }
+
+    /**
+     * Connect and get the printer ready to write. Blocks, so call it
+     * off the main thread.
+     */
+    @SuppressWarnings("MissingPermission")
+    static BlePrinterConnection open(Context context, BluetoothDevice device) throws IOException {
+        Handshake handshake = new Handshake();
+        BluetoothGatt gatt = device.connectGatt(context, false, handshake, BluetoothDevice.TRANSPORT_LE);
+        if (gatt == null) throw new IOException("Could not start a GATT connection");
+        try {
+            handshake.await(handshake.connected, "connect");
+            gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+            if (!gatt.discoverServices()) throw new IOException("Service discovery did not start");
+            handshake.await(handshake.discovered, "discover services");
+
+            BluetoothGattCharacteristic characteristic = findCharacteristic(gatt);
+            if (characteristic == null) throw new IOException("No writable printer characteristic");
+            boolean noResponse = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+            characteristic.setWriteType(noResponse
+                ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+
+            // Some printers never answer the MTU request, they stay on the default
+            if (gatt.requestMtu(BleWriter.MAX_MTU)) handshake.mtuChanged.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+            BleWriter writer = new BleWriter(packet -> {
+                characteristic.setValue(packet);
+                return gatt.writeCharacteristic(characteristic);
+            }, WRITE_TIMEOUT_MS);
+            writer.setMtu(handshake.mtu);
+            handshake.writer = writer;
+            return new BlePrinterConnection(device, gatt, writer);
+        } catch (IOException e) {
+            gatt.close();
+            throw e;
+        } catch (InterruptedException e) {
+            gatt.close();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting", e);
+        }
+    }
+
+    private static BluetoothGattCharacteristic findCharacteristic(BluetoothGatt gatt) {
+        for (UUID[] known : KNOWN_CHARACTERISTICS) {
+            for (BluetoothGattService service : gatt.getServices()) {
+                if (!known[0].equals(service.getUuid())) continue;
+                for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                    if (known[1].equals(characteristic.getUuid())) return characteristic;
+                }
+            }
+        }
+        // Unknown module: any characteristic that can be written without response, then any writable one
+        BluetoothGattCharacteristic acknowledged = null;
+        for (BluetoothGattService service : gatt.getServices()) {
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                int properties = characteristic.getProperties();
+                if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0) return characteristic;
+                if (acknowledged == null && (properties & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0) {
+                    acknowledged = characteristic;
+                }
+            }
+        }
+        return acknowledged;
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        if (closed) throw new IOException("BLE printer is closed");
+        writer.write(data);
+    }
+
+    int payloadSize() {
+        return writer.payloadSize();
+    }
+
+    @SuppressWarnings("MissingPermission")
+    void close() {
+        if (closed) return;
+        closed = true;
+        writer.fail("BLE printer is closed");
+        gatt.disconnect();
+        gatt.close();
+    }
+
+    /**
+     * GATT callbacks, first for the connection steps, then for writes
+     */
+    private static final class Handshake extends BluetoothGattCallback {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch discovered = new CountDownLatch(1);
+        final CountDownLatch mtuChanged = new CountDownLatch(1);
+        volatile int mtu = BleWriter.DEFAULT_MTU;
+        volatile String failure = null;
+        volatile BleWriter writer = null;
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            if (status == BluetoothGatt.GATT_SUCCESS && newState == BluetoothProfile.STATE_CONNECTED) {
+                connected.countDown();
+                return;
+            }
+            if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                failure = "BLE printer disconnected (status " + status + ")";
+                BleWriter current = writer;
+                if (current != null) current.fail(failure);
+                connected.countDown();
+                discovered.countDown();
+                mtuChanged.countDown();
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            if (status != BluetoothGatt.GATT_SUCCESS) failure = "Service discovery failed (status " + status + ")";
+            discovered.countDown();
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) this.mtu = mtu;
+            mtuChanged.countDown();
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            BleWriter current = writer;
+            if (current != null) current.onWriteComplete(status == BluetoothGatt.GATT_SUCCESS);
+        }
+
+        void await(CountDownLatch latch, String step) throws IOException, InterruptedException {
+            if (!latch.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("BLE printer did not " + step + " in time");
+            }
+            if (failure != null) throw new IOException(failure);
+        }
+    }
+}
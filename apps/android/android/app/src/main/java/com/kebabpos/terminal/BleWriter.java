@@ -0,0 +1,143 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Flow control for printing over a BLE GATT characteristic
+ *
+ * Job buffers are cut into packets of the negotiated ATT payload (MTU
+ * minus 3). Android's GATT client runs one operation at a time and
+ * refuses a write until the last one's callback, so packets go one at
+ * a time, the next as soon as the previous one calls back. Written
+ * without response, that callback comes once the controller has queued
+ * the packet rather than after a round trip to the printer, and the
+ * packet size is what sets throughput. A write the stack refuses
+ * (another GATT operation in flight) is retried shortly. Kept free of
+ * Android types so it runs against a fake GATT in tests.
+ */
+final class BleWriter {
+
+    interface Gatt {
+        /**
+         * Start writing one packet. False if the stack is busy with
+         * another operation.
+         */
+        boolean writePacket(byte[] packet);
+    }
+
+    static final int DEFAULT_MTU = 23;
+    static final int MAX_MTU = 517;
+    private static final int ATT_HEADER = 3;
+    // Without a pending callback nothing will wake us, poll the busy stack
+    private static final long BUSY_POLL_MS = 5;
+
+    private final Gatt gatt;
+    private final long timeoutMs;
+
+    private int payload = DEFAULT_MTU - ATT_HEADER;
+    // The last packet is still waiting for its write callback
+    private boolean inFlight = false;
+    private String failure = null;
+    private long packets = 0;
+    private long busyRetries = 0;
+
+    BleWriter(Gatt gatt, long timeoutMs) {
+        this.gatt = gatt;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * The MTU the peripheral agreed to
+     */
+    synchronized void setMtu(int mtu) {
+        payload = Math.max(DEFAULT_MTU, Math.min(MAX_MTU, mtu)) - ATT_HEADER;
+    }
+
+    synchronized int payloadSize() {
+        return payload;
+    }
+
+    /**
+     * Send data in packets, returning once every packet has been
+     * accepted by the stack
+     */
+    void write(byte[] data) throws IOException {
+        int packetSize = payloadSize();
+        for (int offset = 0; offset < data.length; offset += packetSize) {
+            int length = Math.min(packetSize, data.length - offset);
+            byte[] packet = offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+            send(packet);
+        }
+        awaitIdle();
+    }
+
+    /**
+     * Write callback for one packet, from the GATT callback thread
+     */
+    synchronized void onWriteComplete(boolean success) {
+        inFlight = false;
+        if (!success && failure == null) failure = "BLE write failed";
+        notifyAll();
+    }
+
+    /**
+     * The link dropped, writers waiting on it give up
+     */
+    synchronized void fail(String reason) {
+        if (failure == null) failure = reason;
+        notifyAll();
+    }
+
+    synchronized long packets() {
+        return packets;
+    }
+
+    synchronized long busyRetries() {
+        return busyRetries;
+    }
+
+    private synchronized void send(byte[] packet) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            check();
+            if (!inFlight) {
+                // Set first, a fast stack may call back before this returns
+                inFlight = true;
+                if (gatt.writePacket(packet)) {
+                    packets++;
+                    return;
+                }
+                inFlight = false;
+                busyRetries++;
+            }
+            await(deadline, inFlight ? Long.MAX_VALUE : BUSY_POLL_MS);
+        }
+    }
+
+    private synchronized void awaitIdle() throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (inFlight) {
+            check();
+            await(deadline, Long.MAX_VALUE);
+        }
+        check();
+    }
+
+    // Caller holds the lock
+    private void await(long deadline, long maxWaitMs) throws IOException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) throw new IOException("BLE printer stopped accepting data");
+        try {
+            wait(Math.min(remaining, maxWaitMs));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing to BLE printer", e);
+        }
+    }
+
+    // Caller holds the lock
+    private void check() throws IOException {
+        if (failure != null) throw new IOException(failure);
+    }
+}
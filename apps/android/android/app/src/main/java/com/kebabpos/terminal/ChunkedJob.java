@@ -0,0 +1,192 @@
+package com.kebabpos.terminal;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A job JS sends in chunks: beginJob, appendJob as often as needed, then
+ * commitJob (or abortJob)
+ *
+ * Chunks are encoded on a render thread with an encoder of their own and
+ * written into a RenderPipeline the scheduler drains to the printer, so
+ * the first lines print while JS is still producing the rest. Buffering
+ * is bounded by the pipeline's two buffers: when both are in flight the
+ * render thread waits, and an append only completes once its chunk is in
+ * the pipeline, which holds a producer that awaits each append to the
+ * printer's pace. Producers that don't wait are refused past
+ * MAX_QUEUED_CHUNKS.
+ */
+final class ChunkedJob {
+
+    interface Chunk {
+        void encode(EscPosEncoder encoder) throws Exception;
+    }
+
+    interface Done {
+        /**
+         * error is null on success
+         */
+        void done(String error);
+    }
+
+    static final int MAX_QUEUED_CHUNKS = 8;
+
+    final int id;
+    final String orderId;
+    final String kind;
+    private final Executor renderer;
+    private final EscPosEncoder encoder = new EscPosEncoder();
+    private final RenderPipeline pipeline;
+
+    private int queued = 0;
+    private boolean committed = false;
+    private String failure = null;
+    // Set once the scheduler has finished with the job
+    private boolean transmitted = false;
+    private Done onTransmitted = null;
+
+    ChunkedJob(int id, String orderId, String kind, Executor renderer, int bufferBytes) {
+        this.id = id;
+        this.orderId = orderId;
+        this.kind = kind;
+        this.renderer = renderer;
+        this.pipeline = new RenderPipeline(bufferBytes);
+        pipeline.open();
+    }
+
+    /**
+     * What the scheduler drains to the printer
+     */
+    RenderPipeline pipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Still taking chunks
+     */
+    synchronized boolean isOpen() {
+        return !committed && failure == null;
+    }
+
+    /**
+     * Queue a chunk. done runs once it is in the pipeline, or with the
+     * reason it never will be. False if too many chunks are waiting.
+     */
+    boolean append(Chunk chunk, Done done) {
+        synchronized (this) {
+            if (!isOpen()) {
+                done.done(committed ? "Job already committed" : failure);
+                return true;
+            }
+            if (queued >= MAX_QUEUED_CHUNKS) return false;
+            queued++;
+        }
+        renderer.execute(() -> {
+            String error = render(chunk);
+            synchronized (this) {
+                queued--;
+            }
+            done.done(error);
+        });
+        return true;
+    }
+
+    /**
+     * Queue the last chunk and close the job. done runs when the printer
+     * has been sent everything, or when the job fails.
+     */
+    void commit(Chunk trailer, Done done) {
+        synchronized (this) {
+            if (!isOpen()) {
+                done.done(committed ? "Job already committed" : failure);
+                return;
+            }
+            committed = true;
+        }
+        renderer.execute(() -> {
+            String error = render(trailer);
+            if (error == null) pipeline.close();
+            boolean finished;
+            synchronized (this) {
+                onTransmitted = done;
+                finished = transmitted;
+                if (failure == null) failure = error;
+                error = failure;
+            }
+            if (finished || error != null) settle();
+        });
+    }
+
+    /**
+     * Stop the job; what was already sent has printed
+     */
+    void abort(String reason) {
+        synchronized (this) {
+            if (failure == null) failure = reason;
+        }
+        pipeline.abort(reason);
+        settle();
+    }
+
+    /**
+     * The scheduler is done draining the pipeline
+     */
+    void transmitted(String error) {
+        synchronized (this) {
+            transmitted = true;
+            if (error != null && failure == null) failure = error;
+        }
+        settle();
+    }
+
+    /**
+     * Ask the render thread to suspend the stream between chunks (see
+     * RenderPipeline.suspend). Other jobs then print before the rest, so
+     * the encoder forgets the printer state.
+     */
+    void suspend() {
+        renderer.execute(() -> {
+            if (pipeline.suspend()) encoder.forgetPrinterState();
+        });
+    }
+
+    synchronized int queued() {
+        return queued;
+    }
+
+    // Render thread only, the encoder is not shared
+    private String render(Chunk chunk) {
+        synchronized (this) {
+            if (failure != null) return failure;
+        }
+        try {
+            chunk.encode(encoder);
+        } catch (Exception e) {
+            String reason = "Could not encode chunk: " + e.getMessage();
+            abort(reason);
+            return reason;
+        }
+        byte[] data = encoder.drain();
+        // Waits here while both buffers are still in flight
+        pipeline.write(data, 0, data.length);
+        String error = pipeline.failure();
+        if (error != null) {
+            synchronized (this) {
+                if (failure == null) failure = error;
+            }
+        }
+        return error;
+    }
+
+    // Call the commit's done once, when the outcome is known
+    private void settle() {
+        Done done;
+        String error;
+        synchronized (this) {
+            if (onTransmitted == null || (!transmitted && failure == null)) return;
+            done = onTransmitted;
+            onTransmitted = null;
+            error = failure;
+        }
+        done.done(error);
+    }
+}
@@ -0,0 +1,118 @@
+package com.kebabpos.terminal;
+
+/**
+ * Code 128 barcode encoder (code sets B and C)
+ *
+ * Produces the bar/space pattern as a module array so it can be
+ * rasterised for printers without GS k support.
+ */
+final class Code128 {
+
+    private static final int START_B = 104;
+    private static final int START_C = 105;
+    private static final int CODE_B = 100;
+    private static final int CODE_C = 99;
+    private static final int STOP = 106;
+
+    // Bar/space widths for each symbol value, starting with a bar
+    private static final String[] PATTERNS = {
+        "212222", "222122", "222221", "121223", "121322", "131222", "122213", "122312", "132212", "221213",
+        "221312", "231212", "112232", "122132", "122231", "113222", "123122", "123221", "223211", "221132",
+        "221231", "213212", "223112", "312131", "311222", "321122", "321221", "312212", "322112", "322211",
+        "212123", "212321", "232121", "111323", "131123", "131321", "112313", "132113", "132311", "211313",
+        "231113", "231311", "112133", "112331", "132131", "113123", "113321", "133121", "313121", "211331",
+        "231131", "213113", "213311", "213131", "311123", "311321", "331121", "312113", "312311", "332111",
+        "314111", "221411", "431111", "111224", "111422", "121124", "121421", "141122", "141221", "112214",
+        "112412", "122114", "122411", "142112", "142211", "241211", "221114", "413111", "241112", "134111",
+        "111242", "121142", "121241", "114212", "124112", "124211", "411212", "421112", "421211", "212141",
+        "214121", "412121", "111143", "111341", "131141", "114113", "114311", "411113", "411311", "113141",
+        "114131", "311141", "411131", "211412", "211214", "211232", "2331112",
+    };
+
+    private Code128() {}
+
+    /**
+     * Throws unless every character can be encoded in code set B
+     */
+    static void checkCharacters(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch < 32 || ch > 127) {
+                throw new IllegalArgumentException("Unsupported Code 128 character: 0x" + Integer.toHexString(ch));
+            }
+        }
+    }
+
+    /**
+     * Encode printable ASCII text. Returns one entry per module, true = bar,
+     * without quiet zones.
+     */
+    static boolean[] encode(String text) {
+        checkCharacters(text);
+        int[] values = new int[text.length() + 4];
+        int count = 0;
+
+        int leadingDigits = digitRun(text, 0);
+        boolean codeC = leadingDigits >= 4 && (leadingDigits % 2 == 0 || leadingDigits >= 6);
+        values[count++] = codeC ? START_C : START_B;
+
+        int i = 0;
+        while (i < text.length()) {
+            int run = digitRun(text, i);
+            if (codeC) {
+                if (run >= 2) {
+                    values = ensure(values, count + 1);
+                    values[count++] = (text.charAt(i) - '0') * 10 + (text.charAt(i + 1) - '0');
+                    i += 2;
+                    continue;
+                }
+                values = ensure(values, count + 1);
+                values[count++] = CODE_B;
+                codeC = false;
+            }
+            // Worth switching to C for long digit runs, or an even run that ends the data
+            if (run >= 6 || (run >= 4 && i + run == text.length() && run % 2 == 0)) {
+                values = ensure(values, count + 1);
+                values[count++] = CODE_C;
+                codeC = true;
+                continue;
+            }
+            values = ensure(values, count + 1);
+            values[count++] = text.charAt(i) - 32;
+            i++;
+        }
+
+        int checksum = values[0];
+        for (int k = 1; k < count; k++) checksum += values[k] * k;
+        values = ensure(values, count + 2);
+        values[count++] = checksum % 103;
+        values[count++] = STOP;
+
+        int width = 0;
+        for (int k = 0; k < count; k++) width += values[k] == STOP ? 13 : 11;
+        boolean[] modules = new boolean[width];
+        int pos = 0;
+        for (int k = 0; k < count; k++) {
+            String pattern = PATTERNS[values[k]];
+            for (int p = 0; p < pattern.length(); p++) {
+                int w = pattern.charAt(p) - '0';
+                boolean bar = p % 2 == 0;
+                for (int n = 0; n < w; n++) modules[pos++] = bar;
+            }
+        }
+        return modules;
+    }
+
+    private static int digitRun(String text, int start) {
+        int i = start;
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9') i++;
+        return i - start;
+    }
+
+    private static int[] ensure(int[] values, int size) {
+        if (size <= values.length) return values;
+        int[] grown = new int[Math.max(size, values.length * 2)];
+        System.arraycopy(values, 0, grown, 0, values.length);
+        return grown;
+    }
+}
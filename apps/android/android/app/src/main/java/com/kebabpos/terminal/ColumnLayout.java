@@ -0,0 +1,81 @@
+package com.kebabpos.terminal;
+
+/**
+ * Fixed-width column text for receipt lines
+ *
+ * The number of characters per line depends on the paper width and the
+ * active font: 32 / 42 on 58mm paper (font A / font B), 42 / 56 on a 512
+ * dot head, 48 / 64 on 576 dots, half that for double-width text. Column
+ * widths from JS are scaled to whatever the current budget is, so one
+ * layout fills the line in either font without wrapping.
+ */
+final class ColumnLayout {
+
+    private static final int FONT_A_WIDTH = 12;
+    private static final int FONT_B_WIDTH = 9;
+
+    private ColumnLayout() {}
+
+    /**
+     * Characters per line for the given font and ESC ! size bits
+     */
+    static int columns(int dotsPerLine, int font, int size) {
+        int charWidth = font == EscPosEncoder.FONT_B ? FONT_B_WIDTH : FONT_A_WIDTH;
+        if ((size & EscPosEncoder.SIZE_DOUBLE_WIDTH) != 0) charWidth *= 2;
+        return Math.max(1, dotsPerLine / charWidth);
+    }
+
+    /**
+     * Characters per line for rendered text (Sunmi SDK, graphics mode),
+     * where a Latin glyph is about half the font size wide
+     */
+    static int columnsForFontSize(int dotsPerLine, int fontSize) {
+        return Math.max(1, dotsPerLine / Math.max(1, fontSize / 2));
+    }
+
+    /**
+     * Scale widths so they add up to exactly columns. Rounding goes to
+     * the widest column, no column drops below one character.
+     */
+    static int[] fit(int[] widths, int columns) {
+        int total = 0;
+        for (int width : widths) total += Math.max(0, width);
+        int[] fitted = new int[widths.length];
+        if (widths.length == 0) return fitted;
+        if (total == 0) {
+            for (int i = 0; i < widths.length; i++) fitted[i] = Math.max(1, columns / widths.length);
+            return fitted;
+        }
+
+        int used = 0;
+        int widest = 0;
+        for (int i = 0; i < widths.length; i++) {
+            fitted[i] = Math.max(1, (int) ((long) Math.max(0, widths[i]) * columns / total));
+            used += fitted[i];
+            if (widths[i] > widths[widest]) widest = i;
+        }
+        fitted[widest] = Math.max(1, fitted[widest] + columns - used);
+        return fitted;
+    }
+
+    /**
+     * One line of padded or truncated columns, aligned 0 left, 1 center,
+     * 2 right, ending in a newline
+     */
+    static String format(String[] texts, int[] widths, int[] aligns, int columns) {
+        int[] fitted = fit(widths, columns);
+        StringBuilder line = new StringBuilder(columns + 1);
+        for (int i = 0; i < texts.length && i < fitted.length; i++) {
+            String text = texts[i] != null ? texts[i] : "";
+            int width = fitted[i];
+            if (text.length() > width) text = text.substring(0, width);
+            int pad = width - text.length();
+            int align = i < aligns.length ? aligns[i] : 0;
+            int left = align == 2 ? pad : align == 1 ? pad / 2 : 0;
+            for (int p = 0; p < left; p++) line.append(' ');
+            line.append(text);
+            for (int p = left; p < pad; p++) line.append(' ');
+        }
+        return line.append('\n').toString();
+    }
+}
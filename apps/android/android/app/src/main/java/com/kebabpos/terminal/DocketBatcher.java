@@ -0,0 +1,111 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rush-mode batching of kitchen dockets per printer
+ *
+ * Dockets for one printer are held while its batch is open and printed
+ * together under a single cut. A batch goes out when it reaches
+ * maxOrders or when windowMs has passed since its first docket, so no
+ * order waits longer than the window. Off by default.
+ */
+final class DocketBatcher<T> {
+
+    private static final class Batch<T> {
+        final long openedAt;
+        final List<T> dockets = new ArrayList<>();
+
+        Batch(long openedAt) {
+            this.openedAt = openedAt;
+        }
+    }
+
+    private final Map<String, Batch<T>> open = new LinkedHashMap<>();
+    private boolean enabled = false;
+    private long windowMs = 4000;
+    private int maxOrders = 4;
+
+    synchronized void configure(boolean enabled, long windowMs, int maxOrders) {
+        this.enabled = enabled;
+        this.windowMs = Math.max(0, windowMs);
+        this.maxOrders = Math.max(1, maxOrders);
+    }
+
+    synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized long windowMs() {
+        return windowMs;
+    }
+
+    synchronized int maxOrders() {
+        return maxOrders;
+    }
+
+    /**
+     * Hold a docket. Returns the printer's batch if this docket filled
+     * it, otherwise null and the batch waits for more or for its window.
+     */
+    synchronized List<T> add(String printer, T docket, long now) {
+        String key = printer != null ? printer : "";
+        Batch<T> batch = open.get(key);
+        if (batch == null) {
+            batch = new Batch<>(now);
+            open.put(key, batch);
+        }
+        batch.dockets.add(docket);
+        if (batch.dockets.size() < maxOrders) return null;
+        open.remove(key);
+        return batch.dockets;
+    }
+
+    /**
+     * Batches whose window has closed
+     */
+    synchronized List<List<T>> due(long now) {
+        List<List<T>> due = new ArrayList<>();
+        Iterator<Batch<T>> it = open.values().iterator();
+        while (it.hasNext()) {
+            Batch<T> batch = it.next();
+            if (now - batch.openedAt >= windowMs) {
+                due.add(batch.dockets);
+                it.remove();
+            }
+        }
+        return due;
+    }
+
+    /**
+     * When the next open batch is due, or -1 if none is open
+     */
+    synchronized long nextDeadline() {
+        long next = -1;
+        for (Batch<T> batch : open.values()) {
+            long deadline = batch.openedAt + windowMs;
+            if (next < 0 || deadline < next) next = deadline;
+        }
+        return next;
+    }
+
+    /**
+     * Every open batch, e.g. when batching is switched off
+     */
+    synchronized List<List<T>> drainAll() {
+        List<List<T>> all = new ArrayList<>();
+        for (Batch<T> batch : open.values()) all.add(batch.dockets);
+        open.clear();
+        return all;
+    }
+
+    synchronized int pending() {
+        int n = 0;
+        for (Batch<T> batch : open.values()) n += batch.dockets.size();
+        return n;
+    }
+}
@@ -0,0 +1,151 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What was last printed on the kitchen docket for each order and printer
+ *
+ * An amended order is diffed against this record so only the lines that
+ * were added, removed or changed go to the kitchen. Lines are matched by
+ * item and modifiers first, then by item name alone, so a quantity,
+ * modifier or note change reads as one changed line rather than a
+ * removal plus an addition. Least recently used orders are dropped.
+ */
+final class DocketLedger {
+
+    static final class Line {
+        final String name;
+        final int quantity;
+        final String[] modifiers;
+        final String notes;
+
+        Line(String name, int quantity, String[] modifiers, String notes) {
+            this.name = name;
+            this.quantity = quantity;
+            this.modifiers = modifiers;
+            this.notes = notes != null && !notes.isEmpty() ? notes : null;
+        }
+
+        boolean sameItem(Line other) {
+            return name.equals(other.name) && Arrays.equals(modifiers, other.modifiers);
+        }
+
+        boolean sameAs(Line other) {
+            return sameItem(other) && quantity == other.quantity
+                && (notes == null ? other.notes == null : notes.equals(other.notes));
+        }
+    }
+
+    static final class Change {
+        static final int ADDED = 1;
+        static final int REMOVED = 2;
+        static final int CHANGED = 3;
+
+        final int kind;
+        final Line line;
+        // The line as printed before, for CHANGED
+        final Line previous;
+
+        Change(int kind, Line line, Line previous) {
+            this.kind = kind;
+            this.line = line;
+            this.previous = previous;
+        }
+    }
+
+    private final Map<String, Line[]> printed;
+
+    DocketLedger(final int capacity) {
+        printed = new LinkedHashMap<String, Line[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Line[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Changes since the last docket for this order and printer, or null
+     * if none has been printed there
+     */
+    synchronized List<Change> diff(String orderId, String printer, List<Line> lines) {
+        Line[] before = printed.get(key(orderId, printer));
+        if (before == null) return null;
+        return diff(Arrays.asList(before), lines);
+    }
+
+    /**
+     * Remember a docket once it has printed
+     */
+    synchronized void record(String orderId, String printer, List<Line> lines) {
+        printed.put(key(orderId, printer), lines.toArray(new Line[0]));
+    }
+
+    /**
+     * Drop an order's dockets on every printer, once it is completed or
+     * cancelled
+     */
+    synchronized void forget(String orderId) {
+        String prefix = orderId + '\u0000';
+        List<String> keys = new ArrayList<>(printed.keySet());
+        for (String key : keys) {
+            if (key.startsWith(prefix)) printed.remove(key);
+        }
+    }
+
+    synchronized int size() {
+        return printed.size();
+    }
+
+    /**
+     * Changes in the order of the new docket, removals last
+     */
+    static List<Change> diff(List<Line> before, List<Line> after) {
+        Line[] matched = new Line[after.size()];
+        boolean[] used = new boolean[before.size()];
+
+        // Same item and modifiers
+        for (int i = 0; i < after.size(); i++) {
+            for (int j = 0; j < before.size(); j++) {
+                if (!used[j] && after.get(i).sameItem(before.get(j))) {
+                    matched[i] = before.get(j);
+                    used[j] = true;
+                    break;
+                }
+            }
+        }
+        // Same item with different modifiers
+        for (int i = 0; i < after.size(); i++) {
+            if (matched[i] != null) continue;
+            for (int j = 0; j < before.size(); j++) {
+                if (!used[j] && after.get(i).name.equals(before.get(j).name)) {
+                    matched[i] = before.get(j);
+                    used[j] = true;
+                    break;
+                }
+            }
+        }
+
+        List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < after.size(); i++) {
+            Line line = after.get(i);
+            if (matched[i] == null) {
+                changes.add(new Change(Change.ADDED, line, null));
+            } else if (!line.sameAs(matched[i])) {
+                changes.add(new Change(Change.CHANGED, line, matched[i]));
+            }
+        }
+        for (int j = 0; j < before.size(); j++) {
+            if (!used[j]) changes.add(new Change(Change.REMOVED, before.get(j), null));
+        }
+        return changes;
+    }
+
+    private static String key(String orderId, String printer) {
+        return orderId + '\u0000' + (printer != null ? printer : "");
+    }
+}
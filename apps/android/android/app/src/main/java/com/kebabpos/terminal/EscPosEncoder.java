@@ -0,0 +1,254 @@
+package com.kebabpos.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * State-tracking ESC/POS command compiler
+ *
+ * Remembers what the printer is currently set to (alignment, print mode,
+ * code page, line spacing) and only emits a command when the next piece
+ * of output actually needs a different setting. Consecutive text with the
+ * same style is merged into one run.
+ */
+final class EscPosEncoder {
+
+    static final int ALIGN_LEFT = 0;
+    static final int ALIGN_CENTER = 1;
+    static final int ALIGN_RIGHT = 2;
+
+    // ESC ! print mode bits
+    static final int SIZE_NORMAL = 0x00;
+    static final int SIZE_DOUBLE_HEIGHT = 0x10;
+    static final int SIZE_DOUBLE_WIDTH = 0x20;
+    static final int SIZE_DOUBLE = 0x30;
+    private static final int MODE_EMPHASIZED = 0x08;
+
+    // Fonts, also bit 0 of the ESC ! mode so a mode change keeps the font
+    static final int FONT_A = 0;   // 12 x 24 dots
+    static final int FONT_B = 1;   // 9 x 17 dots
+
+    static final int LINE_SPACING_DEFAULT = -2;
+    private static final int UNKNOWN = -1;
+
+    private static final Charset TEXT_CHARSET = Charset.forName("GBK");
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+    // Printer state as last emitted, UNKNOWN forces the next command out
+    private int align = UNKNOWN;
+    private int mode = UNKNOWN;
+    private int codePage = UNKNOWN;
+    private int lineSpacing = UNKNOWN;
+
+    // Style used for plain text (setAlignment/setFontSize from JS)
+    private int baseAlign = ALIGN_LEFT;
+    private int baseSize = SIZE_NORMAL;
+    private boolean baseBold = false;
+    private int baseFont = FONT_A;
+
+    // Pending text run, flushed when the style changes
+    private final StringBuilder run = new StringBuilder();
+    private int runAlign;
+    private int runMode;
+
+    /**
+     * Forget the printer state, e.g. after connecting to a different printer.
+     */
+    void reset() {
+        flushRun();
+        align = UNKNOWN;
+        mode = UNKNOWN;
+        codePage = UNKNOWN;
+        lineSpacing = UNKNOWN;
+        baseAlign = ALIGN_LEFT;
+        baseSize = SIZE_NORMAL;
+        baseBold = false;
+        baseFont = FONT_A;
+    }
+
+    /**
+     * Forget what the printer is set to but keep the base style, e.g.
+     * after other jobs have printed part way through this one. The next
+     * output sends every setting it needs.
+     */
+    void forgetPrinterState() {
+        flushRun();
+        align = UNKNOWN;
+        mode = UNKNOWN;
+        codePage = UNKNOWN;
+        lineSpacing = UNKNOWN;
+    }
+
+    /**
+     * ESC @ - the printer returns to its power-on defaults.
+     */
+    void init() {
+        flushRun();
+        write(0x1B, 0x40);
+        align = ALIGN_LEFT;
+        mode = SIZE_NORMAL;
+        codePage = 0;
+        lineSpacing = LINE_SPACING_DEFAULT;
+        baseAlign = ALIGN_LEFT;
+        baseSize = SIZE_NORMAL;
+        baseBold = false;
+        baseFont = FONT_A;
+    }
+
+    void setAlignment(int alignment) {
+        baseAlign = clampAlign(alignment);
+    }
+
+    void setSize(int size) {
+        baseSize = size;
+    }
+
+    int size() {
+        return baseSize;
+    }
+
+    void setBold(boolean bold) {
+        baseBold = bold;
+    }
+
+    /**
+     * Font for all following text, FONT_A or FONT_B
+     */
+    void setFont(int font) {
+        baseFont = font == FONT_B ? FONT_B : FONT_A;
+    }
+
+    int font() {
+        return baseFont;
+    }
+
+    void setCodePage(int page) {
+        if (page == codePage) return;
+        flushRun();
+        write(0x1B, 0x74, page);
+        codePage = page;
+    }
+
+    /**
+     * ESC 3 n, or ESC 2 for LINE_SPACING_DEFAULT.
+     */
+    void setLineSpacing(int dots) {
+        if (dots == lineSpacing) return;
+        flushRun();
+        if (dots == LINE_SPACING_DEFAULT) {
+            write(0x1B, 0x32);
+        } else {
+            write(0x1B, 0x33, dots);
+        }
+        lineSpacing = dots;
+    }
+
+    /**
+     * Text in the current base style.
+     */
+    void text(String text) {
+        text(text, baseAlign, baseBold, baseSize);
+    }
+
+    /**
+     * Text in the base alignment and weight with a one-off size.
+     */
+    void text(String text, int size) {
+        text(text, baseAlign, baseBold, size);
+    }
+
+    void text(String text, int alignment, boolean bold, int size) {
+        if (text.isEmpty()) return;
+        int runModeWanted = size | (bold ? MODE_EMPHASIZED : 0) | baseFont;
+        int runAlignWanted = clampAlign(alignment);
+        if (run.length() > 0 && (runAlignWanted != runAlign || runModeWanted != runMode)) {
+            flushRun();
+        }
+        runAlign = runAlignWanted;
+        runMode = runModeWanted;
+        run.append(text);
+    }
+
+    /**
+     * Pre-built bytes (symbols, raster) that need a given alignment but
+     * do not change any tracked state.
+     */
+    void aligned(byte[] data, int alignment) {
+        flushRun();
+        applyAlign(clampAlign(alignment));
+        out.write(data, 0, data.length);
+    }
+
+    /**
+     * Bytes that do not depend on or change any tracked state.
+     */
+    void raw(byte[] data) {
+        flushRun();
+        out.write(data, 0, data.length);
+    }
+
+    void feed(int lines) {
+        flushRun();
+        write(0x1B, 0x64, lines);
+    }
+
+    void cut() {
+        flushRun();
+        write(0x1D, 0x56, 0x00);
+    }
+
+    /**
+     * Take everything compiled so far.
+     */
+    byte[] drain() {
+        flushRun();
+        byte[] bytes = out.toByteArray();
+        out.reset();
+        return bytes;
+    }
+
+    static int sizeForFontSize(int fontSize) {
+        if (fontSize >= 48) return SIZE_DOUBLE;
+        if (fontSize >= 36) return SIZE_DOUBLE_HEIGHT;
+        return SIZE_NORMAL;
+    }
+
+    private void flushRun() {
+        if (run.length() == 0) return;
+        // Alignment has no visible effect on blank lines
+        if (!isBlank(run)) applyAlign(runAlign);
+        if (runMode != mode) {
+            if (mode != UNKNOWN && (runMode ^ mode) == FONT_B) {
+                write(0x1B, 0x4D, runMode & FONT_B);   // ESC M, only the font changed
+            } else {
+                write(0x1B, 0x21, runMode);
+            }
+            mode = runMode;
+        }
+        byte[] bytes = run.toString().getBytes(TEXT_CHARSET);
+        out.write(bytes, 0, bytes.length);
+        run.setLength(0);
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != '\n' && text.charAt(i) != ' ') return false;
+        }
+        return true;
+    }
+
+    private void applyAlign(int alignment) {
+        if (alignment == align) return;
+        write(0x1B, 0x61, alignment);
+        align = alignment;
+    }
+
+    private static int clampAlign(int alignment) {
+        return alignment == ALIGN_CENTER || alignment == ALIGN_RIGHT ? alignment : ALIGN_LEFT;
+    }
+
+    private void write(int... bytes) {
+        for (int b : bytes) out.write(b);
+    }
+}
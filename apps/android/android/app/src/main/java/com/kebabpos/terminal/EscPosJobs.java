@@ -0,0 +1,457 @@
+package com.kebabpos.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ESC/POS jobs, from printerInit to the printer
+ *
+ * Collects the bytes a job renders, keeps them for reprints and queues
+ * the job on the scheduler under its idempotency key, copies and all.
+ * A job begun while the printer is idle is streamed instead, sent as it
+ * renders; with docket batching on, kitchen dockets wait for their
+ * printer's batch. The plugin runs its Bluetooth, BLE, USB and Sunmi raw
+ * printers through this, and PrintLoadHarness runs the same path against
+ * a simulated printer.
+ */
+final class EscPosJobs {
+
+    /**
+     * What the jobs need from whoever runs them
+     */
+    interface Host {
+        long now();
+
+        /**
+         * Write to the printer, called on the scheduler worker
+         */
+        void write(PrinterTransport target, byte[] data) throws IOException;
+
+        /**
+         * Run on the thread jobs are rendered on
+         */
+        void onRenderThread(Runnable task);
+
+        void schedule(Runnable task, long delayMs);
+
+        /**
+         * The order whose job the worker is sending, null once it's done
+         */
+        void sending(String orderId);
+
+        /**
+         * A stream was suspended, the jobs sent in between reset the printer
+         */
+        void streamSuspended();
+
+        /**
+         * How every job starts: ESC @, the layout and the head settings
+         */
+        byte[] jobHeader();
+
+        int dotsPerLine();
+    }
+
+    /**
+     * How the call that finished a job settles
+     */
+    interface Outcome {
+        /**
+         * error is null once the job has been sent
+         */
+        void settled(Exception error);
+
+        /**
+         * A duplicate of a recent job: the original's error, null if it was sent
+         */
+        void duplicate(String error);
+    }
+
+    // A streamed job is already on its way, its bytes are only kept for reprints and copies up to
+    // this. Past that (a long graphics receipt) they are dropped and a reprint has to render the
+    // job again.
+    static final int MAX_RETAINED_JOB_BYTES = 256 * 1024;
+    static final long STREAM_IDLE_TIMEOUT_MS = 30 * 1000;
+    // A stream waiting this long for data gives the worker up to a more urgent job
+    static final long STREAM_YIELD_MS = 500;
+
+    private final Host host;
+    private final PrintScheduler scheduler;
+    private final IdempotencyKeys keys;
+    private final JobHistory history;
+    private final PrintTrace trace;
+    private final RenderPipeline pipeline;
+    private final DocketBatcher<BatchedDocket> batcher = new DocketBatcher<>();
+
+    // The open job
+    private ByteArrayOutputStream bytes = null;
+    private boolean retained = true;
+    private String orderId = null;
+    private String kind = null;
+    private String key = null;
+    private int deadlineMs = 0;
+    private PrinterTransport target = null;
+    // Job bytes before the closing feed and cut, for docket batching
+    private int bodyLength = -1;
+    private StreamedJob stream = null;
+
+    EscPosJobs(Host host, PrintScheduler scheduler, IdempotencyKeys keys, JobHistory history, PrintTrace trace,
+               int bufferBytes) {
+        this.host = host;
+        this.scheduler = scheduler;
+        this.keys = keys;
+        this.history = history;
+        this.trace = trace;
+        this.pipeline = new RenderPipeline(bufferBytes);
+    }
+
+    /**
+     * Open a job for target. A job left open before is abandoned.
+     */
+    void open(String orderId, String kind, int deadlineMs, String key, PrinterTransport target) {
+        if (stream != null) {
+            // The previous job never finished, its stream must not hold the printer
+            pipeline.abort("Job abandoned before it finished");
+            stream = null;
+        }
+        this.orderId = orderId;
+        this.kind = kind;
+        this.deadlineMs = deadlineMs;
+        this.key = key;
+        this.target = target;
+        bytes = new ByteArrayOutputStream(4096);
+        retained = true;
+        bodyLength = -1;
+        startStream();
+    }
+
+    boolean isOpen() {
+        return bytes != null;
+    }
+
+    /**
+     * Whether the open job is being sent as it renders
+     */
+    boolean isStreaming() {
+        return stream != null;
+    }
+
+    /**
+     * Add rendered bytes to the open job
+     */
+    void write(byte[] data) {
+        if (stream != null) {
+            pipeline.write(data, 0, data.length);
+            if (retained && bytes.size() + data.length > MAX_RETAINED_JOB_BYTES) {
+                retained = false;
+                bytes.reset();
+            }
+            if (retained) bytes.write(data, 0, data.length);
+        } else {
+            bytes.write(data, 0, data.length);
+        }
+    }
+
+    /**
+     * Send bytes with the stream that aren't part of the job, so copies
+     * and reprints leave them out. Only while streaming.
+     */
+    void writeBesideJob(byte[] data) {
+        pipeline.write(data, 0, data.length);
+    }
+
+    /**
+     * The job's closing feed and cut start here, a batched docket drops them
+     */
+    void markEndOfBody() {
+        bodyLength = bytes != null ? bytes.size() : -1;
+    }
+
+    /**
+     * With the printer idle, queue the open job straight away so the
+     * scheduler writes each buffer while the next one renders. Otherwise
+     * the job is rendered whole and queued when it finishes, behind the
+     * one printing. So is a duplicate of a job keyed at printerInit.
+     */
+    private void startStream() {
+        if (target == null || !scheduler.isIdle()) return;
+        // Held for a batch, not sent straight away
+        if ("kitchen".equals(kind) && batcher.isEnabled()) return;
+        StreamedJob opened = StreamedJob.open(keys, key, host.now());
+        if (opened == null) return;
+
+        PrintScheduler.JobClass jobClass = PrintScheduler.JobClass.forKind(kind);
+        PrinterTransport to = target;
+        pipeline.open();
+        stream = opened;
+        trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_QUEUED, orderId, jobClass.ordinal(), 1);
+        // Suspended on the render thread, between calls, so no render is half done
+        Runnable suspend = () -> host.onRenderThread(() -> {
+            if (stream == opened && pipeline.suspend()) host.streamSuspended();
+        });
+        send(pipeline, jobClass, orderId, to, host.jobHeader(), suspend, deadlineMs, () -> {
+            // The renderer attached the job before closing the stream
+            for (int i = 1; i < opened.copies(); i++) {
+                replay(opened.job(), to);
+            }
+        }, opened::transmitted);
+    }
+
+    /**
+     * Close the open job and send it: the rest of a stream, a docket for
+     * its batch or the whole job with its copies. A job whose key was
+     * seen recently is dropped and settles with the original's outcome.
+     * cutKey is the key given with the cut, if any; printer is where a
+     * batched docket goes.
+     */
+    void finish(int copies, String cutKey, String printer, Outcome outcome) {
+        if (bytes == null) {
+            outcome.settled(null);
+            return;
+        }
+        JobHistory.Job job = new JobHistory.Job(orderId, kind, "escpos", retained ? bytes.toByteArray() : null, null);
+        if (retained) history.add(job);
+        String jobKey = cutKey != null ? cutKey : key;
+        StreamedJob streamed = stream;
+        int deadline = deadlineMs;
+        int body = bodyLength;
+        PrinterTransport to = target;
+        stream = null;
+        bytes = null;
+        orderId = null;
+        kind = null;
+        key = null;
+        target = null;
+
+        PrintScheduler.JobClass jobClass = PrintScheduler.JobClass.forKind(job.kind);
+        if (streamed != null) {
+            // Settles when the last buffer (and any further copies) has been sent
+            if (!streamed.close(job, copies, jobKey, host.now(), outcome::duplicate,
+                    error -> settle(outcome, job.orderId, jobClass, error))) {
+                pipeline.abort("Duplicate of an earlier job");
+                trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_DUPLICATE, job.orderId, 0, 0);
+                return;
+            }
+            pipeline.close();
+            return;
+        }
+        if (jobKey != null && !keys.claim(jobKey, host.now(), outcome::duplicate)) {
+            trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_DUPLICATE, job.orderId, 0, 0);
+            return;
+        }
+        if ("kitchen".equals(job.kind) && job.bytes != null && body >= 0 && batcher.isEnabled() && copies == 1) {
+            batch(new BatchedDocket(job, body, to, jobKey, outcome), printer);
+            return;
+        }
+        submit(job, jobClass, deadline, copies, jobKey, to, outcome);
+    }
+
+    /**
+     * Queue a retained job (all copies together) and settle once it has
+     * been sent
+     */
+    void submit(JobHistory.Job job, PrintScheduler.JobClass jobClass, long deadlineMs, int copies, String jobKey,
+                PrinterTransport to, Outcome outcome) {
+        trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_QUEUED, job.orderId, jobClass.ordinal(), copies);
+        scheduler.submit(jobClass, deadlineMs, () -> {
+            host.sending(job.orderId);
+            for (int i = 0; i < copies; i++) {
+                replay(job, to);
+            }
+        }, error -> {
+            host.sending(null);
+            if (jobKey != null) keys.settle(jobKey, error == null ? null : String.valueOf(error.getMessage()));
+            settle(outcome, job.orderId, jobClass, error);
+        });
+    }
+
+    /**
+     * Queue a stream from the scheduler worker; after runs on the worker
+     * once it has all been sent, completion when it is done or has failed
+     */
+    void send(RenderPipeline source, PrintScheduler.JobClass jobClass, String orderId, PrinterTransport to,
+              byte[] header, Runnable suspend, long deadlineMs, PrinterCommand after,
+              PrintScheduler.Completion completion) {
+        new StreamSender(source, jobClass, orderId, to, header, suspend).queue(jobClass, deadlineMs, false, after,
+            completion);
+    }
+
+    /**
+     * Sends a stream from the scheduler worker. If the renderer stalls
+     * while a more urgent job waits, the stream is suspended between
+     * writes and the worker moves on; the rest is queued straight behind
+     * the jobs waiting then, starting with the job's header again since
+     * they reset the printer.
+     */
+    private final class StreamSender {
+        private final RenderPipeline source;
+        private final PrintScheduler.JobClass jobClass;
+        private final String orderId;
+        private final PrinterTransport target;
+        private final byte[] header;
+        // Has the render thread call RenderPipeline.suspend
+        private final Runnable suspend;
+
+        StreamSender(RenderPipeline source, PrintScheduler.JobClass jobClass, String orderId, PrinterTransport target,
+                     byte[] header, Runnable suspend) {
+            this.source = source;
+            this.jobClass = jobClass;
+            this.orderId = orderId;
+            this.target = target;
+            this.header = header;
+            this.suspend = suspend;
+        }
+
+        void queue(PrintScheduler.JobClass queueClass, long deadlineMs, boolean resumed, PrinterCommand after,
+                   PrintScheduler.Completion completion) {
+            boolean[] suspended = { false };
+            scheduler.submit(queueClass, deadlineMs, () -> {
+                host.sending(orderId);
+                if (resumed) host.write(target, header);
+                if (!source.drain(data -> host.write(target, data), STREAM_IDLE_TIMEOUT_MS, STREAM_YIELD_MS, () -> {
+                    if (scheduler.hasWaitingAhead(jobClass)) suspend.run();
+                })) {
+                    suspended[0] = true;
+                    return;
+                }
+                if (after != null) after.run();
+            }, error -> {
+                host.sending(null);
+                if (error == null && suspended[0]) {
+                    trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_SUSPENDED, orderId, jobClass.ordinal(), 0);
+                    // CONTROL ranks it after the jobs waiting now and ahead of later ones
+                    queue(PrintScheduler.JobClass.CONTROL, 0, true, after, completion);
+                    return;
+                }
+                completion.done(error);
+            });
+        }
+    }
+
+    /**
+     * A kitchen docket waiting for its printer's batch
+     */
+    private static final class BatchedDocket {
+        final JobHistory.Job job;
+        final int bodyLength;
+        final PrinterTransport target;
+        final String key;
+        final Outcome outcome;
+
+        BatchedDocket(JobHistory.Job job, int bodyLength, PrinterTransport target, String key, Outcome outcome) {
+            this.job = job;
+            this.bodyLength = bodyLength;
+            this.target = target;
+            this.key = key;
+            this.outcome = outcome;
+        }
+    }
+
+    /**
+     * Rush mode: dockets for one kitchen printer that arrive within the
+     * window (or up to maxOrders of them) print as one job with a single
+     * cut. Switching it off prints what is waiting.
+     */
+    void configureBatching(boolean enabled, long windowMs, int maxOrders) {
+        batcher.configure(enabled, windowMs, maxOrders);
+        if (!enabled) {
+            for (List<BatchedDocket> batch : batcher.drainAll()) flushBatch(batch);
+        }
+    }
+
+    DocketBatcher<?> batching() {
+        return batcher;
+    }
+
+    private void batch(BatchedDocket docket, String printer) {
+        trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_BATCHED, docket.job.orderId, 0, 0);
+        List<BatchedDocket> full = batcher.add(printer, docket, host.now());
+        if (full != null) {
+            flushBatch(full);
+            return;
+        }
+        // Checked once the window of a batch opened now has passed; earlier batches have their own checks
+        host.schedule(this::flushDueBatches, batcher.windowMs());
+    }
+
+    private void flushDueBatches() {
+        long now = host.now();
+        for (List<BatchedDocket> batch : batcher.due(now)) {
+            flushBatch(batch);
+        }
+        // The timer can fire a moment early, look again rather than wait for the next docket
+        long next = batcher.nextDeadline();
+        if (next >= 0) host.schedule(this::flushDueBatches, Math.max(1, next - now));
+    }
+
+    /**
+     * Print a batch as one kitchen job: each docket without its feed and
+     * cut, a rule between them, then the last docket's feed and cut
+     */
+    private void flushBatch(List<BatchedDocket> batch) {
+        if (batch.isEmpty()) return;
+        BatchedDocket last = batch.get(batch.size() - 1);
+        ByteArrayOutputStream merged = new ByteArrayOutputStream(4096 * batch.size());
+        byte[] rule = batchSeparator();
+        for (int i = 0; i < batch.size(); i++) {
+            BatchedDocket docket = batch.get(i);
+            if (i > 0) merged.write(rule, 0, rule.length);
+            merged.write(docket.job.bytes, 0, docket.bodyLength);
+        }
+        merged.write(last.job.bytes, last.bodyLength, last.job.bytes.length - last.bodyLength);
+        byte[] data = merged.toByteArray();
+
+        PrinterTransport to = batch.get(0).target;
+        String batchOrderId = batch.get(0).job.orderId;
+        trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_QUEUED, batchOrderId,
+            PrintScheduler.JobClass.KITCHEN.ordinal(), batch.size());
+        scheduler.submit(PrintScheduler.JobClass.KITCHEN, 0, () -> {
+            host.sending(batchOrderId);
+            host.write(to, data);
+        }, error -> {
+            host.sending(null);
+            for (BatchedDocket docket : batch) {
+                if (docket.key != null) {
+                    keys.settle(docket.key, error == null ? null : String.valueOf(error.getMessage()));
+                }
+                settle(docket.outcome, docket.job.orderId, PrintScheduler.JobClass.KITCHEN, error);
+            }
+        });
+    }
+
+    // ESC @ first so the rule prints plain whatever the docket above left set
+    private byte[] batchSeparator() {
+        int columns = ColumnLayout.columns(host.dotsPerLine(), EscPosEncoder.FONT_A, EscPosEncoder.SIZE_NORMAL);
+        byte[] rule = new byte[2 + columns + 1];
+        rule[0] = 0x1B;
+        rule[1] = 0x40;
+        java.util.Arrays.fill(rule, 2, 2 + columns, (byte) '-');
+        rule[rule.length - 1] = '\n';
+        return rule;
+    }
+
+    private void replay(JobHistory.Job job, PrinterTransport to) throws Exception {
+        if (job.bytes == null) throw new Exception("Job was too large to keep for more copies, print it again");
+        host.write(to, job.bytes);
+    }
+
+    private void settle(Outcome outcome, String jobOrderId, PrintScheduler.JobClass jobClass, Exception error) {
+        trace.record(error == null ? PrintTrace.LEVEL_INFO : PrintTrace.LEVEL_ERROR,
+            error == null ? PrintTrace.JOB_SENT : PrintTrace.JOB_FAILED, jobOrderId, jobClass.ordinal(), 0);
+        outcome.settled(error);
+    }
+
+    RenderPipeline.Stats streamStats() {
+        return pipeline.stats();
+    }
+
+    /**
+     * Stop streaming; waiting dockets are sent to fail with the scheduler
+     * rather than hang
+     */
+    void shutdown(String reason) {
+        pipeline.abort(reason);
+        for (List<BatchedDocket> batch : batcher.drainAll()) flushBatch(batch);
+    }
+}
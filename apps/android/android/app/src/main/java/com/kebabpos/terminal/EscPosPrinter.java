@@ -0,0 +1,200 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+
+/**
+ * What the plugin's text calls do on an ESC/POS printer
+ *
+ * printerInit, setAlignment, setFontSize, printText, printTextWithFont,
+ * printTextStyled, printColumnsText, lineWrap and the closing feed and
+ * cut, encoded into the open job (or sent on their own outside one).
+ * Holds the layout: the dense font and line spacing, column widths
+ * fitted to the line, and large order numbers composed from the glyph
+ * atlas. PrintLoadHarness lays out its dockets and receipts with the
+ * same calls.
+ */
+final class EscPosPrinter {
+
+    interface Output {
+        void write(byte[] data) throws IOException;
+    }
+
+    interface Tracer {
+        void trace(int level, int code, long a, long b);
+    }
+
+    // Order numbers above this size are composed from glyphs rendered on first use. 48 dots is the
+    // printer's own double size, so up to there its font prints them (as in rush-mode dockets).
+    static final int LARGE_TEXT_ABOVE_FONT_SIZE = 48;
+    // Line spacing of the dense layout, in dots (default is 30)
+    static final int DENSE_LINE_SPACING = 20;
+
+    private final EscPosEncoder escPos;
+    private final EscPosJobs jobs;
+    // Where data goes with no job open
+    private final Output outside;
+    private final GlyphAtlas.Source glyphs;
+    private final Tracer tracer;
+
+    private PrinterProfile profile = PrinterProfile.DEFAULT;
+    private boolean dense = false;
+    private int alignment = EscPosEncoder.ALIGN_LEFT;
+    // Built on the first large number
+    private GlyphAtlas glyphAtlas = null;
+
+    EscPosPrinter(EscPosEncoder escPos, EscPosJobs jobs, Output outside, GlyphAtlas.Source glyphs, Tracer tracer) {
+        this.escPos = escPos;
+        this.jobs = jobs;
+        this.outside = outside;
+        this.glyphs = glyphs;
+        this.tracer = tracer;
+    }
+
+    void setProfile(PrinterProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Dense layout prints in the printer's small font (ESC M 1) with
+     * tighter line spacing (ESC 3). Applies from the next init.
+     */
+    void setDense(boolean dense) {
+        this.dense = dense;
+    }
+
+    boolean isDense() {
+        return dense;
+    }
+
+    /**
+     * Characters per line for text of the given size in the current layout
+     */
+    int lineColumns(int size) {
+        return ColumnLayout.columns(profile.dotsPerLine, dense ? EscPosEncoder.FONT_B : EscPosEncoder.FONT_A, size);
+    }
+
+    /**
+     * ESC @, the layout and the head settings, as one job header
+     */
+    byte[] header(byte[] thermal) {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.init();
+        applyLayout(encoder);
+        encoder.raw(thermal);
+        return encoder.drain();
+    }
+
+    void applyLayout(EscPosEncoder encoder) {
+        encoder.setFont(dense ? EscPosEncoder.FONT_B : EscPosEncoder.FONT_A);
+        if (dense) encoder.setLineSpacing(DENSE_LINE_SPACING);
+    }
+
+    void init(byte[] thermal) throws IOException {
+        escPos.init();
+        applyLayout(escPos);
+        // ESC @ puts the head back on its defaults
+        escPos.raw(thermal);
+        alignment = EscPosEncoder.ALIGN_LEFT;
+        flush();
+    }
+
+    void setAlignment(int alignment) {
+        // Emitted lazily with the next text that needs it
+        escPos.setAlignment(alignment);
+        this.alignment = alignment;
+    }
+
+    void setFontSize(int fontSize) {
+        escPos.setSize(EscPosEncoder.sizeForFontSize(fontSize));
+    }
+
+    void text(String text) throws IOException {
+        escPos.text(text);
+        flush();
+    }
+
+    void text(String text, int fontSize) throws IOException {
+        if (printLargeText(text, fontSize, alignment)) return;
+        escPos.text(text, EscPosEncoder.sizeForFontSize(fontSize));
+        flush();
+    }
+
+    void text(String text, int fontSize, int alignment, boolean bold) throws IOException {
+        if (printLargeText(text, fontSize, alignment)) return;
+        // Style applies to this text only, no resets needed
+        escPos.text(text, alignment, bold, EscPosEncoder.sizeForFontSize(fontSize));
+        flush();
+    }
+
+    /**
+     * Widths are fitted to the line when they would wrap, and stretched
+     * to the wider budget of the dense layout
+     */
+    void columns(String[] texts, int[] widths, int[] aligns) throws IOException {
+        int total = 0;
+        for (int width : widths) total += width;
+        int budget = lineColumns(escPos.size());
+        escPos.text(ColumnLayout.format(texts, widths, aligns, total > budget || dense ? budget : total));
+        flush();
+    }
+
+    void image(MonoImage image, int alignment) throws IOException {
+        escPos.aligned(EscPosRaster.encode(image, alignment, profile), alignment);
+        flush();
+    }
+
+    void feed(int lines) throws IOException {
+        escPos.feed(lines);
+        flush();
+    }
+
+    /**
+     * End of job: feed past the cutter and cut. Where the feed starts is
+     * marked so a batched docket can drop it.
+     */
+    void feedAndCut() throws IOException {
+        flush();
+        jobs.markEndOfBody();
+        escPos.feed(5);
+        escPos.cut();
+        flush();
+    }
+
+    /**
+     * Text above double size that is all digits and symbols, printed as a
+     * raster line composed from the glyph atlas. False if the text doesn't
+     * qualify, it then prints as ordinary text.
+     */
+    private boolean printLargeText(String text, int fontSize, int alignment) throws IOException {
+        if (fontSize <= LARGE_TEXT_ABOVE_FONT_SIZE) return false;
+        String line = text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
+        if (line.isEmpty() || line.indexOf('\n') >= 0) return false;
+        if (glyphAtlas == null) {
+            long start = System.nanoTime();
+            glyphAtlas = new GlyphAtlas(glyphs, GlyphAtlas.HEIGHTS, GlyphAtlas.CHARS);
+            tracer.trace(PrintTrace.LEVEL_INFO, PrintTrace.GLYPH_ATLAS, glyphAtlas.memoryBytes(),
+                (System.nanoTime() - start) / 1000000L);
+        }
+        if (!glyphAtlas.covers(line)) return false;
+        // Font sizes are dot heights, as on Sunmi printers, so the number matches their dockets
+        MonoImage image = glyphAtlas.compose(line, fontSize, profile.dotsPerLine, alignment);
+        if (image == null) return false;
+        tracer.trace(PrintTrace.LEVEL_DEBUG, PrintTrace.BITMAP, image.widthBytes * 8, image.height);
+        image(image, alignment);
+        return true;
+    }
+
+    /**
+     * Send whatever the encoder has compiled: into the open job, or on
+     * its own with none open
+     */
+    void flush() throws IOException {
+        byte[] data = escPos.drain();
+        if (data.length == 0) return;
+        if (jobs.isOpen()) {
+            jobs.write(data);
+        } else {
+            outside.write(data);
+        }
+    }
+}
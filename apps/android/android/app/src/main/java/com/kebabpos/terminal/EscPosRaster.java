@@ -0,0 +1,159 @@
+package com.kebabpos.terminal;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Packs monochrome images into ESC/POS raster commands (GS v 0)
+ */
+final class EscPosRaster {
+
+    // Most printers cap a single GS v 0 block, so tall images are split
+    static final int MAX_ROWS_PER_BLOCK = 256;
+
+    // Shorter blank runs cost less to send than a block header
+    private static final int MIN_BLANK_RUN = 4;
+
+    private EscPosRaster() {}
+
+    /**
+     * Scale a module matrix ([y][x], true = dark) so each module is
+     * scale x scale dots, surrounded by a light quiet zone.
+     */
+    static MonoImage fromModules(boolean[][] modules, int scale, int quiet) {
+        int widthDots = (modules[0].length + quiet * 2) * scale;
+        int heightDots = (modules.length + quiet * 2) * scale;
+        MonoImage image = new MonoImage((widthDots + 7) / 8, heightDots);
+
+        for (int my = 0; my < modules.length; my++) {
+            int y0 = (my + quiet) * scale;
+            for (int mx = 0; mx < modules[my].length; mx++) {
+                if (!modules[my][mx]) continue;
+                int x0 = (mx + quiet) * scale;
+                for (int dx = 0; dx < scale; dx++) image.setDot(x0 + dx, y0);
+            }
+            // Repeat the first dot row for the rest of the module height
+            for (int dy = 1; dy < scale; dy++) {
+                System.arraycopy(image.data, y0 * image.widthBytes, image.data, (y0 + dy) * image.widthBytes, image.widthBytes);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Encode an image the way the printer profile asks for.
+     */
+    static byte[] encode(MonoImage image, int alignment, PrinterProfile profile) {
+        if (profile.rasterEncoding == PrinterProfile.RasterEncoding.TRIMMED) {
+            return encodeTrimmed(image, alignment);
+        }
+        return encode(image);
+    }
+
+    /**
+     * Wrap an image in GS v 0 commands.
+     */
+    static byte[] encode(MonoImage image) {
+        int widthBytes = image.widthBytes;
+        int height = image.height;
+        int blocks = (height + MAX_ROWS_PER_BLOCK - 1) / MAX_ROWS_PER_BLOCK;
+        byte[] out = new byte[blocks * 8 + widthBytes * height];
+        int pos = 0;
+        for (int y = 0; y < height; y += MAX_ROWS_PER_BLOCK) {
+            int rows = Math.min(MAX_ROWS_PER_BLOCK, height - y);
+            out[pos++] = 0x1D;
+            out[pos++] = 0x76;
+            out[pos++] = 0x30;
+            out[pos++] = 0x00;
+            out[pos++] = (byte) (widthBytes & 0xFF);
+            out[pos++] = (byte) ((widthBytes >> 8) & 0xFF);
+            out[pos++] = (byte) (rows & 0xFF);
+            out[pos++] = (byte) ((rows >> 8) & 0xFF);
+            System.arraycopy(image.data, y * widthBytes, out, pos, rows * widthBytes);
+            pos += rows * widthBytes;
+        }
+        return out;
+    }
+
+    /**
+     * GS v 0 output with white space removed. Runs of blank rows become a
+     * one byte wide block, and the empty side margins of each block are
+     * trimmed so that the printer's alignment still puts the ink in the
+     * same place (both sides for centred images, the far side otherwise).
+     */
+    static byte[] encodeTrimmed(MonoImage image, int alignment) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(image.data.length / 2 + 64);
+        int y = 0;
+        while (y < image.height) {
+            int blank = 0;
+            while (y + blank < image.height && isBlankRow(image, y + blank)) blank++;
+            if (blank >= MIN_BLANK_RUN || y + blank == image.height) {
+                for (int rows = blank; rows > 0; ) {
+                    int n = Math.min(rows, MAX_ROWS_PER_BLOCK);
+                    writeHeader(out, 1, n);
+                    for (int i = 0; i < n; i++) out.write(0);
+                    rows -= n;
+                }
+                y += blank;
+                continue;
+            }
+
+            // Ink block runs until a blank run worth collapsing, or the block limit
+            int end = y;
+            while (end < image.height && end - y < MAX_ROWS_PER_BLOCK) {
+                if (isBlankRow(image, end)) {
+                    int run = 0;
+                    while (end + run < image.height && isBlankRow(image, end + run)) run++;
+                    if (run >= MIN_BLANK_RUN) break;
+                }
+                end++;
+            }
+
+            int first = image.widthBytes, last = -1;
+            for (int row = y; row < end; row++) {
+                int offset = row * image.widthBytes;
+                for (int b = 0; b < image.widthBytes; b++) {
+                    if (image.data[offset + b] != 0) {
+                        if (b < first) first = b;
+                        if (b > last) last = b;
+                    }
+                }
+            }
+            int leftTrim = first;
+            int rightTrim = image.widthBytes - 1 - last;
+            if (alignment == 1) {
+                leftTrim = rightTrim = Math.min(leftTrim, rightTrim);
+            } else if (alignment == 2) {
+                rightTrim = 0;
+            } else {
+                leftTrim = 0;
+            }
+
+            int width = image.widthBytes - leftTrim - rightTrim;
+            writeHeader(out, width, end - y);
+            for (int row = y; row < end; row++) {
+                out.write(image.data, row * image.widthBytes + leftTrim, width);
+            }
+            y = end;
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isBlankRow(MonoImage image, int row) {
+        int offset = row * image.widthBytes;
+        for (int b = 0; b < image.widthBytes; b++) {
+            if (image.data[offset + b] != 0) return false;
+        }
+        return true;
+    }
+
+    private static void writeHeader(ByteArrayOutputStream out, int widthBytes, int rows) {
+        out.write(0x1D);
+        out.write(0x76);
+        out.write(0x30);
+        out.write(0x00);
+        out.write(widthBytes & 0xFF);
+        out.write((widthBytes >> 8) & 0xFF);
+        out.write(rows & 0xFF);
+        out.write((rows >> 8) & 0xFF);
+    }
+}
@@ -0,0 +1,110 @@
+package com.kebabpos.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Builds ESC/POS bytes for QR codes and Code 128 barcodes
+ *
+ * Uses the printer's own symbol commands when the profile declares
+ * them, otherwise encodes the symbol natively and sends it as raster.
+ */
+final class EscPosSymbols {
+
+    private static final int QR_QUIET_ZONE = 4;
+    private static final int BARCODE_QUIET_ZONE = 10;
+    // GS k 73 takes its length in one byte
+    private static final int MAX_NATIVE_BARCODE_BYTES = 255;
+
+    private EscPosSymbols() {}
+
+    static byte[] qrCode(String data, int moduleSize, int ecc, PrinterProfile profile) {
+        moduleSize = Math.max(1, Math.min(16, moduleSize));
+        if (ecc < QrCode.ECC_LOW || ecc > QrCode.ECC_HIGH) ecc = QrCode.ECC_LOW;
+
+        if (profile.nativeQr) {
+            byte[] qrData = data.getBytes(Charset.forName("UTF-8"));
+            int len = qrData.length + 3;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(qrData.length + 32);
+            byte[] cmd = new byte[] {
+                0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x43, (byte) moduleSize,
+                0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x45, (byte) (0x30 + ecc),
+                0x1D, 0x28, 0x6B, (byte) (len % 256), (byte) (len / 256), 0x31, 0x50, 0x30
+            };
+            out.write(cmd, 0, cmd.length);
+            out.write(qrData, 0, qrData.length);
+            byte[] print = new byte[] { 0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x51, 0x30 };
+            out.write(print, 0, print.length);
+            return out.toByteArray();
+        }
+
+        boolean[][] modules = QrCode.encode(data, ecc);
+        int scale = moduleSize;
+        // Shrink modules until the symbol fits the paper
+        while (scale > 1 && (modules.length + QR_QUIET_ZONE * 2) * scale > profile.dotsPerLine) {
+            scale--;
+        }
+        return EscPosRaster.encode(EscPosRaster.fromModules(modules, scale, QR_QUIET_ZONE));
+    }
+
+    static byte[] code128(String data, int moduleWidth, int height, boolean showText, PrinterProfile profile) {
+        moduleWidth = Math.max(1, Math.min(6, moduleWidth));
+        height = Math.max(1, Math.min(255, height));
+
+        Code128.checkCharacters(data);
+        byte[] content = profile.nativeBarcode ? nativeCode128Data(data) : null;
+        if (content != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 16);
+            byte[] setup = new byte[] {
+                0x1D, 0x68, (byte) height,                // GS h - height
+                0x1D, 0x77, (byte) Math.max(2, moduleWidth), // GS w - module width (2-6)
+                0x1D, 0x48, (byte) (showText ? 2 : 0),    // GS H - text below
+                0x1D, 0x6B, 0x49, (byte) content.length   // GS k 73 - CODE128
+            };
+            out.write(setup, 0, setup.length);
+            out.write(content, 0, content.length);
+            return out.toByteArray();
+        }
+
+        // No firmware barcodes, or too long for GS k: rasterise
+        boolean[] bars = Code128.encode(data);
+        int scale = moduleWidth;
+        while (scale > 1 && (bars.length + BARCODE_QUIET_ZONE * 2) * scale > profile.dotsPerLine) {
+            scale--;
+        }
+        int widthDots = (bars.length + BARCODE_QUIET_ZONE * 2) * scale;
+        MonoImage image = new MonoImage((widthDots + 7) / 8, height);
+        for (int i = 0; i < bars.length; i++) {
+            if (!bars[i]) continue;
+            int x0 = (i + BARCODE_QUIET_ZONE) * scale;
+            for (int dx = 0; dx < scale; dx++) image.setDot(x0 + dx, 0);
+        }
+        for (int y = 1; y < height; y++) {
+            System.arraycopy(image.data, 0, image.data, y * image.widthBytes, image.widthBytes);
+        }
+
+        byte[] raster = EscPosRaster.encode(image);
+        if (!showText) return raster;
+        byte[] text = (data + "\n").getBytes(Charset.forName("US-ASCII"));
+        byte[] out = new byte[raster.length + text.length];
+        System.arraycopy(raster, 0, out, 0, raster.length);
+        System.arraycopy(text, 0, out, raster.length, text.length);
+        return out;
+    }
+
+    /**
+     * GS k 73 data: code set B, with { doubled since it starts a code set
+     * switch. Null if it is over the command's 255 bytes.
+     */
+    static byte[] nativeCode128Data(String data) {
+        StringBuilder content = new StringBuilder(data.length() + 4).append("{B");
+        for (int i = 0; i < data.length(); i++) {
+            char ch = data.charAt(i);
+            if (ch == '{') content.append('{');
+            content.append(ch);
+        }
+        return content.length() <= MAX_NATIVE_BARCODE_BYTES
+            ? content.toString().getBytes(Charset.forName("US-ASCII"))
+            : null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prerendered large glyphs for order numbers on ESC/POS printers
+ *
+ * Printer fonts stop at double size, too small to read across a busy
+ * kitchen. Digits and a few symbols are rendered once into packed 1bpp
+ * glyphs a whole number of bytes wide, so composing a number
+ * is one arraycopy per glyph row: no drawing, thresholding or bit
+ * shifting per docket.
+ */
+final class GlyphAtlas {
+
+    interface Source {
+        /**
+         * One glyph, height rows tall, including its spacing
+         */
+        MonoImage render(char c, int height);
+    }
+
+    static final String CHARS = "0123456789#-/:. ";
+    // Font sizes in dots. 64 (8 mm at 8 dots per mm) is the kitchen docket's order number, the only
+    // size asked for above the printer's own double size; larger requests also print at 64.
+    static final int[] HEIGHTS = { 64 };
+
+    private final int[] heights;
+    // One map per height, in the order of heights
+    private final List<Map<Character, MonoImage>> glyphs;
+
+    GlyphAtlas(Source source, int[] heights, String chars) {
+        this.heights = heights.clone();
+        Arrays.sort(this.heights);
+        glyphs = new ArrayList<>(this.heights.length);
+        for (int height : this.heights) {
+            Map<Character, MonoImage> set = new HashMap<>();
+            for (int i = 0; i < chars.length(); i++) {
+                MonoImage glyph = source.render(chars.charAt(i), height);
+                if (glyph != null && glyph.height == height) set.put(chars.charAt(i), glyph);
+            }
+            glyphs.add(set);
+        }
+    }
+
+    /**
+     * Text as one full-width line at the tallest height up to maxHeight
+     * that fits the width, or null if it has a character the atlas lacks
+     * or doesn't fit even at the smallest height
+     */
+    MonoImage compose(String text, int maxHeight, int widthDots, int alignment) {
+        int lineBytes = widthDots / 8;
+        for (int h = heights.length - 1; h >= 0; h--) {
+            if (heights[h] > maxHeight && h > 0) continue;
+            Map<Character, MonoImage> set = glyphs.get(h);
+            int textBytes = 0;
+            for (int i = 0; i < text.length(); i++) {
+                MonoImage glyph = set.get(text.charAt(i));
+                if (glyph == null) return null;
+                textBytes += glyph.widthBytes;
+            }
+            if (textBytes > lineBytes) continue;
+            return place(text, set, heights[h], lineBytes, textBytes, alignment);
+        }
+        return null;
+    }
+
+    /**
+     * Whether every character of text has a glyph
+     */
+    boolean covers(String text) {
+        if (glyphs.isEmpty()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (!glyphs.get(0).containsKey(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    int memoryBytes() {
+        int bytes = 0;
+        for (Map<Character, MonoImage> set : glyphs) {
+            for (MonoImage glyph : set.values()) bytes += glyph.data.length;
+        }
+        return bytes;
+    }
+
+    private static MonoImage place(String text, Map<Character, MonoImage> set, int height, int lineBytes,
+                                   int textBytes, int alignment) {
+        MonoImage line = new MonoImage(lineBytes, height);
+        int x = alignment == 1 ? (lineBytes - textBytes) / 2 : alignment == 2 ? lineBytes - textBytes : 0;
+        for (int i = 0; i < text.length(); i++) {
+            MonoImage glyph = set.get(text.charAt(i));
+            int glyphBytes = glyph.widthBytes;
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(glyph.data, y * glyphBytes, line.data, y * lineBytes + x, glyphBytes);
+            }
+            x += glyphBytes;
+        }
+        return line;
+    }
+}
@@ -0,0 +1,124 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recent print submission keys and how their jobs went
+ *
+ * A double tap on Pay, or a JS retry after a slow promise, submits the
+ * same key again. The first submission prints; later ones don't, they
+ * get the first job's outcome, straight away if it has already been
+ * sent or when it is. A failed job releases its key, since a retry after
+ * a failure should print. Sent keys are kept for the window, and at
+ * most capacity of them.
+ */
+final class IdempotencyKeys {
+
+    interface Waiter {
+        // error is null when the original job was sent
+        void settled(String error);
+    }
+
+    private static final class Entry {
+        final long createdAt;
+        boolean settled = false;
+        List<Waiter> waiters = null;
+
+        Entry(long createdAt) {
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final int capacity;
+    private final long windowMs;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long suppressed = 0;
+
+    IdempotencyKeys(int capacity, long windowMs) {
+        this.capacity = capacity;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * True if the key is new and the caller should print. For a
+     * duplicate the waiter gets the original outcome instead.
+     */
+    boolean claim(String key, long now, Waiter waiter) {
+        boolean sent;
+        synchronized (this) {
+            prune(now);
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entries.put(key, new Entry(now));
+                return true;
+            }
+            suppressed++;
+            sent = entry.settled;
+            if (!sent) {
+                if (entry.waiters == null) entry.waiters = new ArrayList<>();
+                entry.waiters.add(waiter);
+            }
+        }
+        if (sent) waiter.settled(null);
+        return false;
+    }
+
+    /**
+     * Claim the key for a job that starts printing before it is finished.
+     * False for a duplicate, which has nothing to wait for yet.
+     */
+    synchronized boolean claimForStream(String key, long now) {
+        prune(now);
+        if (entries.containsKey(key)) return false;
+        entries.put(key, new Entry(now));
+        return true;
+    }
+
+    /**
+     * The job for key has been sent (error null) or has failed
+     */
+    void settle(String key, String error) {
+        List<Waiter> waiters;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) return;
+            waiters = entry.waiters;
+            entry.waiters = null;
+            if (error == null) {
+                entry.settled = true;
+            } else {
+                entries.remove(key);
+            }
+        }
+        if (waiters == null) return;
+        for (Waiter waiter : waiters) waiter.settled(error);
+    }
+
+    synchronized long suppressed() {
+        return suppressed;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    // Oldest first; jobs still printing are never dropped, their waiters live there
+    private void prune(long now) {
+        int excess = entries.size() - capacity + 1;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (!entry.settled) continue;
+            if (excess > 0 || now - entry.createdAt >= windowMs) {
+                it.remove();
+                excess--;
+            } else {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.kebabpos.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Converts ARGB pixels to 1bpp for raster printing
+ */
+final class ImageDither {
+
+    private ImageDither() {}
+
+    /**
+     * Floyd-Steinberg error diffusion. Transparent pixels count as white.
+     */
+    static MonoImage floydSteinberg(int[] argb, int width, int height) {
+        MonoImage image = new MonoImage((width + 7) / 8, height);
+        // Error carried into the current and next row, with one pixel of padding each side
+        int[] current = new int[width + 2];
+        int[] next = new int[width + 2];
+
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int value = luminance(argb[rowOffset + x]) + current[x + 1] / 16;
+                int error;
+                if (value < 128) {
+                    image.setDot(x, y);
+                    error = value;
+                } else {
+                    error = value - 255;
+                }
+                current[x + 2] += error * 7;
+                next[x] += error * 3;
+                next[x + 1] += error * 5;
+                next[x + 2] += error;
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+        return image;
+    }
+
+    static int luminance(int argb) {
+        int alpha = argb >>> 24;
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        int lum = (r * 299 + g * 587 + b * 114) / 1000;
+        // Blend towards white (paper) by transparency
+        return (lum * alpha + 255 * (255 - alpha)) / 255;
+    }
+}
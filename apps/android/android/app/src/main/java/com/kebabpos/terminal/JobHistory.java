@@ -0,0 +1,88 @@
+package com.kebabpos.terminal;
+
+import java.util.List;
+
+/**
+ * Ring buffer of the last N rendered print jobs
+ *
+ * ESC/POS jobs keep their final transport bytes, Sunmi jobs keep the
+ * recorded SDK calls. Either can be replayed without re-rendering.
+ * Retained bytes are also capped in total, so a run of raster-heavy
+ * jobs pushes out the oldest ones instead of holding N of them; the
+ * newest job is always kept.
+ */
+final class JobHistory {
+
+    static final class Job {
+        final String orderId;
+        final String kind;
+        final String printerType;
+        final byte[] bytes;
+        final List<PrinterCommand> commands;
+        final long createdAt;
+
+        Job(String orderId, String kind, String printerType, byte[] bytes, List<PrinterCommand> commands) {
+            this.orderId = orderId;
+            this.kind = kind;
+            this.printerType = printerType;
+            this.bytes = bytes;
+            this.commands = commands;
+            this.createdAt = System.currentTimeMillis();
+        }
+    }
+
+    private final Job[] jobs;
+    private final long maxBytes;
+    private int next = 0;
+    private int count = 0;
+    private long bytes = 0;
+
+    JobHistory(int capacity, long maxBytes) {
+        jobs = new Job[capacity];
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void add(Job job) {
+        if (count == jobs.length) evictOldest();
+        jobs[next] = job;
+        next = (next + 1) % jobs.length;
+        count++;
+        bytes += size(job);
+        while (bytes > maxBytes && count > 1) evictOldest();
+    }
+
+    /**
+     * Most recent job for the order (and kind, if given). A null orderId
+     * returns the most recent job overall.
+     */
+    synchronized Job find(String orderId, String kind) {
+        for (int i = 1; i <= count; i++) {
+            Job job = jobs[(next - i + jobs.length) % jobs.length];
+            if (orderId != null && !orderId.equals(job.orderId)) continue;
+            if (kind != null && !kind.equals(job.kind)) continue;
+            return job;
+        }
+        return null;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    // Caller holds the lock
+    private void evictOldest() {
+        int oldest = (next - count + jobs.length) % jobs.length;
+        bytes -= size(jobs[oldest]);
+        jobs[oldest] = null;
+        count--;
+    }
+
+    // Sunmi jobs hold SDK calls, not bytes, and are bounded by the count alone
+    private static long size(Job job) {
+        return job.bytes != null ? job.bytes.length : 0;
+    }
+}
@@ -8,6 +8,7 @@ public class MainActivity extends BridgeActivity {
     public void onCreate(Bundle savedInstanceState) {
         // Register custom plugins BEFORE super.onCreate()
         registerPlugin(SunmiPrinterPlugin.class);
+        registerPlugin(OrderOutboxPlugin.class);
         
         super.onCreate(savedInstanceState);
     }
@@ -0,0 +1,29 @@
+package com.kebabpos.terminal;
+
+/**
+ * Packed 1bpp image, MSB first, rows padded to whole bytes (1 = dark)
+ */
+final class MonoImage {
+
+    final int widthBytes;
+    final int height;
+    final byte[] data;
+
+    MonoImage(int widthBytes, int height, byte[] data) {
+        this.widthBytes = widthBytes;
+        this.height = height;
+        this.data = data;
+    }
+
+    MonoImage(int widthBytes, int height) {
+        this(widthBytes, height, new byte[widthBytes * height]);
+    }
+
+    void setDot(int x, int y) {
+        data[y * widthBytes + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+    }
+
+    boolean getDot(int x, int y) {
+        return (data[y * widthBytes + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+}
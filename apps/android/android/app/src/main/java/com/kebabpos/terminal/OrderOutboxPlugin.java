@@ -0,0 +1,315 @@
+package com.kebabpos.terminal;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline Order Outbox Plugin
+ *
+ * Orders are written to a local SQLite outbox before they are sent, so
+ * the till keeps taking orders while the network is down. A single
+ * background thread sends them when the network comes back, when a
+ * retry is due, or when JS asks for a sync.
+ */
+@CapacitorPlugin(name = "OrderOutbox")
+public class OrderOutboxPlugin extends Plugin {
+
+    private static final String TAG = "OrderOutbox";
+    private static final int DEFAULT_BATCH_SIZE = 25;
+
+    private SqliteOutboxStore store = null;
+    private OutboxSyncer syncer = null;
+    private ScheduledExecutorService executor = null;
+    private ScheduledFuture<?> retry = null;
+    private ConnectivityManager.NetworkCallback networkCallback = null;
+
+    @Override
+    public void load() {
+        super.load();
+        store = new SqliteOutboxStore(getContext());
+        syncer = new OutboxSyncer(store, DEFAULT_BATCH_SIZE);
+        executor = Executors.newSingleThreadScheduledExecutor();
+        watchNetwork();
+    }
+
+    @PluginMethod
+    public void configure(PluginCall call) {
+        String url = call.getString("url");
+        if (url == null || url.isEmpty()) {
+            call.reject("url is required");
+            return;
+        }
+        Map<String, String> headers = new HashMap<>();
+        JSObject headersJson = call.getObject("headers");
+        if (headersJson != null) {
+            Iterator<String> keys = headersJson.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                headers.put(key, headersJson.getString(key));
+            }
+        }
+        syncer.setEndpoint(url, headers);
+        // New credentials or URL may be what the outbox was waiting for
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                syncer.resume(System.currentTimeMillis());
+                runSync();
+            }
+        });
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void enqueue(final PluginCall call) {
+        JSArray orders = call.getArray("orders");
+        if (orders == null || orders.length() == 0) {
+            call.reject("orders are required");
+            return;
+        }
+        final List<OutboxEntry> entries = new ArrayList<>(orders.length());
+        final JSArray keys = new JSArray();
+        long now = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < orders.length(); i++) {
+                JSONObject order = orders.getJSONObject(i);
+                String key = order.optString("idempotencyKey", "");
+                if (key.isEmpty()) key = UUID.randomUUID().toString();
+                String orderId = order.has("orderId") ? order.getString("orderId") : null;
+                Object payload = order.get("payload");
+                entries.add(new OutboxEntry(key, orderId, payload.toString(), now, 0));
+                keys.put(key);
+            }
+        } catch (Exception e) {
+            call.reject("Failed to read orders: " + e.getMessage(), e);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int added = store.insert(entries);
+                    JSObject ret = new JSObject();
+                    ret.put("added", added);
+                    ret.put("idempotencyKeys", keys);
+                    call.resolve(ret);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to store orders", e);
+                    call.reject("Failed to store orders: " + e.getMessage(), e);
+                    return;
+                }
+                runSync();
+            }
+        });
+    }
+
+    @PluginMethod
+    public void sync(final PluginCall call) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutboxSyncer.Report report = runSync();
+                    JSObject ret = new JSObject();
+                    ret.put("synced", report.synced);
+                    ret.put("failed", report.failed);
+                    ret.put("retrying", report.retrying);
+                    if (report.lastError != null) ret.put("lastError", report.lastError);
+                    call.resolve(ret);
+                } catch (Exception e) {
+                    call.reject("Failed to sync orders: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getStatus(final PluginCall call) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    call.resolve(status());
+                } catch (Exception e) {
+                    call.reject("Failed to read outbox: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getFailed(final PluginCall call) {
+        final int limit = call.getInt("limit", 100);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JSArray orders = new JSArray();
+                    for (OutboxEntry entry : store.failed(limit)) {
+                        JSObject order = new JSObject();
+                        order.put("idempotencyKey", entry.idempotencyKey);
+                        if (entry.orderRef != null) order.put("orderId", entry.orderRef);
+                        order.put("createdAt", entry.createdAt);
+                        order.put("attempts", entry.attempts);
+                        if (entry.lastError != null) order.put("lastError", entry.lastError);
+                        orders.put(order);
+                    }
+                    JSObject ret = new JSObject();
+                    ret.put("orders", orders);
+                    call.resolve(ret);
+                } catch (Exception e) {
+                    call.reject("Failed to read outbox: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue failed orders again, those given by idempotencyKeys or all
+     */
+    @PluginMethod
+    public void retryFailed(final PluginCall call) {
+        final List<String> keys;
+        try {
+            JSArray keysJson = call.getArray("idempotencyKeys");
+            keys = keysJson != null ? keysJson.<String>toList() : null;
+        } catch (Exception e) {
+            call.reject("Failed to read idempotencyKeys: " + e.getMessage(), e);
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int queued = syncer.retryFailed(keys, System.currentTimeMillis());
+                    JSObject ret = new JSObject();
+                    ret.put("queued", queued);
+                    call.resolve(ret);
+                } catch (Exception e) {
+                    call.reject("Failed to retry orders: " + e.getMessage(), e);
+                    return;
+                }
+                runSync();
+            }
+        });
+    }
+
+    /**
+     * Send what is due and schedule the next retry. Outbox thread only.
+     */
+    private OutboxSyncer.Report runSync() {
+        OutboxSyncer.Report report = new OutboxSyncer.Report();
+        if (!syncer.isConfigured()) return report;
+        long minDelay = 0;
+        try {
+            report = syncer.sync(System.currentTimeMillis());
+        } catch (Exception e) {
+            // Storage trouble, don't spin on it
+            Log.e(TAG, "Outbox sync failed", e);
+            report.lastError = e.getMessage();
+            minDelay = OutboxSyncer.MIN_BACKOFF_MS;
+        }
+
+        if (retry != null) retry.cancel(false);
+        retry = null;
+        long next = syncer.nextRunAt();
+        if (next >= 0) {
+            long delay = Math.max(minDelay, next - System.currentTimeMillis());
+            retry = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runSync();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        if (report.synced > 0 || report.failed > 0 || report.retrying > 0) {
+            JSObject data = new JSObject();
+            data.put("pending", store.counts()[0]);
+            data.put("nextAttemptAt", next);
+            data.put("synced", report.synced);
+            data.put("failed", report.failed);
+            data.put("retrying", report.retrying);
+            if (report.lastError != null) data.put("lastError", report.lastError);
+            notifyListeners("outboxSynced", data);
+        }
+        return report;
+    }
+
+    private JSObject status() {
+        int[] counts = store.counts();
+        JSObject ret = new JSObject();
+        ret.put("pending", counts[0]);
+        ret.put("synced", counts[1]);
+        ret.put("failed", counts[2]);
+        ret.put("nextAttemptAt", syncer.nextRunAt());
+        return ret;
+    }
+
+    // A retry waiting out its backoff is pointless once the network is back
+    private void watchNetwork() {
+        ConnectivityManager connectivity =
+            (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity == null) return;
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        syncer.resume(System.currentTimeMillis());
+                        runSync();
+                    }
+                });
+            }
+        };
+        try {
+            connectivity.registerNetworkCallback(
+                new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build(),
+                networkCallback);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to watch network: " + e.getMessage());
+            networkCallback = null;
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        super.handleOnDestroy();
+        if (networkCallback != null) {
+            ConnectivityManager connectivity =
+                (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            try {
+                if (connectivity != null) connectivity.unregisterNetworkCallback(networkCallback);
+            } catch (Exception ignored) {}
+            networkCallback = null;
+        }
+        if (executor != null) executor.shutdownNow();
+        if (store != null) store.close();
+    }
+}
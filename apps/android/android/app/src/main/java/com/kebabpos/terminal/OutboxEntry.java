@@ -0,0 +1,29 @@
+package com.kebabpos.terminal;
+
+/**
+ * One order waiting in the offline outbox
+ */
+final class OutboxEntry {
+
+    final String idempotencyKey;
+    final String orderRef;
+    final String payload;
+    final long createdAt;
+    final int attempts;
+    // Why the last send failed, if it did
+    final String lastError;
+
+    OutboxEntry(String idempotencyKey, String orderRef, String payload, long createdAt, int attempts) {
+        this(idempotencyKey, orderRef, payload, createdAt, attempts, null);
+    }
+
+    OutboxEntry(String idempotencyKey, String orderRef, String payload, long createdAt, int attempts,
+                String lastError) {
+        this.idempotencyKey = idempotencyKey;
+        this.orderRef = orderRef;
+        this.payload = payload;
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+        this.lastError = lastError;
+    }
+}
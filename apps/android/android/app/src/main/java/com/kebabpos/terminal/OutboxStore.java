@@ -0,0 +1,75 @@
+package com.kebabpos.terminal;
+
+import java.util.List;
+
+/**
+ * Durable storage behind the order outbox
+ */
+interface OutboxStore {
+
+    /**
+     * Outcome of one send, applied together with the rest of its batch
+     */
+    final class Result {
+        static final int SYNCED = 1;
+        static final int FAILED = 2;
+        static final int RETRY = 3;
+
+        final String idempotencyKey;
+        final int outcome;
+        final int attempts;
+        final long nextAttemptAt;
+        final String error;
+
+        Result(String idempotencyKey, int outcome, int attempts, long nextAttemptAt, String error) {
+            this.idempotencyKey = idempotencyKey;
+            this.outcome = outcome;
+            this.attempts = attempts;
+            this.nextAttemptAt = nextAttemptAt;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Add orders in one transaction. Keys already stored are ignored.
+     * Returns how many were new.
+     */
+    int insert(List<OutboxEntry> entries);
+
+    /**
+     * Pending orders whose next attempt is due, oldest first
+     */
+    List<OutboxEntry> due(long now, int limit);
+
+    /**
+     * Apply a batch of send outcomes in one transaction
+     */
+    void complete(List<Result> results, long now);
+
+    /**
+     * Make every pending order due now, e.g. when the network comes back
+     */
+    void resetBackoff(long now);
+
+    /**
+     * Earliest next attempt of a pending order, or -1 if none are pending
+     */
+    long nextAttemptAt();
+
+    /**
+     * Failed orders with their last error, oldest first
+     */
+    List<OutboxEntry> failed(int limit);
+
+    /**
+     * Make failed orders pending and due now, all of them when keys is
+     * null. Their attempts start again from zero. Returns how many were
+     * queued.
+     */
+    int requeueFailed(List<String> keys, long now);
+
+    /**
+     * Counts of pending, synced and failed orders
+     */
+    int[] counts();
+}
@@ -0,0 +1,198 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Sends outbox orders to the backend
+ *
+ * Due orders are taken in batches. Each order is POSTed with its
+ * Idempotency-Key, so a retry after a lost response cannot create the
+ * order twice, and the outcomes of a batch are written back in one
+ * transaction. The first transient failure (no network, 5xx, 429) ends
+ * the run and pauses the whole outbox for that order's backoff, so an
+ * outage costs one request per backoff step rather than one per queued
+ * order. So do 401, 403, 404 and the other 4xx: an expired token or a
+ * wrong endpoint would fail every order alike. Only 400, 409 and 422
+ * reject the order itself, which is marked failed so it cannot block the
+ * queue; retryFailed queues failed orders again.
+ */
+final class OutboxSyncer {
+
+    static final class Endpoint {
+        final String url;
+        final Map<String, String> headers;
+
+        Endpoint(String url, Map<String, String> headers) {
+            this.url = url;
+            this.headers = headers;
+        }
+    }
+
+    static final class Report {
+        int synced;
+        int failed;
+        int retrying;
+        String lastError;
+    }
+
+    static final long MIN_BACKOFF_MS = 2000;
+    static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final OutboxStore store;
+    private final int batchSize;
+    private final Random random = new Random();
+    private volatile Endpoint endpoint;
+    private volatile long pausedUntil = 0;
+
+    OutboxSyncer(OutboxStore store, int batchSize) {
+        this.store = store;
+        this.batchSize = batchSize;
+    }
+
+    void setEndpoint(String url, Map<String, String> headers) {
+        endpoint = new Endpoint(url, Collections.unmodifiableMap(headers));
+    }
+
+    boolean isConfigured() {
+        return endpoint != null;
+    }
+
+    /**
+     * When sync should next run, or -1 if nothing is pending
+     */
+    long nextRunAt() {
+        long next = store.nextAttemptAt();
+        return next < 0 ? -1 : Math.max(next, pausedUntil);
+    }
+
+    /**
+     * Lift the pause after a failure, e.g. when the network comes back
+     */
+    void resume(long now) {
+        pausedUntil = 0;
+        store.resetBackoff(now);
+    }
+
+    /**
+     * Send everything that is due. Runs on the caller's thread.
+     */
+    Report sync(long now) {
+        Report report = new Report();
+        Endpoint target = endpoint;
+        if (target == null || now < pausedUntil) return report;
+
+        while (true) {
+            List<OutboxEntry> batch = store.due(now, batchSize);
+            if (batch.isEmpty()) break;
+
+            List<OutboxStore.Result> results = new ArrayList<>(batch.size());
+            boolean stop = false;
+            for (OutboxEntry entry : batch) {
+                int status;
+                String error = null;
+                try {
+                    status = post(target, entry);
+                } catch (IOException e) {
+                    status = -1;
+                    error = e.getClass().getSimpleName() + ": " + e.getMessage();
+                }
+
+                if (status >= 200 && status < 300) {
+                    results.add(new OutboxStore.Result(entry.idempotencyKey, OutboxStore.Result.SYNCED, entry.attempts + 1, 0, null));
+                    report.synced++;
+                } else if (isRejected(status)) {
+                    error = "HTTP " + status;
+                    results.add(new OutboxStore.Result(entry.idempotencyKey, OutboxStore.Result.FAILED, entry.attempts + 1, 0, error));
+                    report.failed++;
+                    report.lastError = error;
+                } else {
+                    if (error == null) error = "HTTP " + status;
+                    int attempts = entry.attempts + 1;
+                    pausedUntil = now + backoffMs(attempts);
+                    results.add(new OutboxStore.Result(entry.idempotencyKey, OutboxStore.Result.RETRY, attempts,
+                        pausedUntil, error));
+                    report.retrying++;
+                    report.lastError = error;
+                    stop = true;
+                    break;
+                }
+            }
+            store.complete(results, now);
+            if (stop || batch.size() < batchSize) break;
+        }
+        return report;
+    }
+
+    /**
+     * Queue failed orders again, all of them when keys is null. Returns
+     * how many were queued.
+     */
+    int retryFailed(List<String> keys, long now) {
+        return store.requeueFailed(keys, now);
+    }
+
+    // The backend read the order and won't take it; anything else may pass on a later run
+    private static boolean isRejected(int status) {
+        return status == 400 || status == 409 || status == 422;
+    }
+
+    /**
+     * Exponential backoff with jitter, capped
+     */
+    long backoffMs(int attempts) {
+        long base = MIN_BACKOFF_MS << Math.min(attempts - 1, 16);
+        long capped = Math.min(MAX_BACKOFF_MS, base);
+        return capped / 2 + (long) (random.nextDouble() * (capped / 2));
+    }
+
+    private int post(Endpoint target, OutboxEntry entry) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(target.url).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Idempotency-Key", entry.idempotencyKey);
+            for (Map.Entry<String, String> header : target.headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            byte[] body = entry.payload.getBytes(UTF_8);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            drain(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Reading the body to the end lets the connection be reused for the next order
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.kebabpos.terminal;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * Glyphs for the atlas drawn with Android's bold system font
+ *
+ * The height is the font size, so digits come out as tall as the same
+ * font size prints on a Sunmi printer, centred in the line. Each glyph
+ * keeps its advance width, rounded up to whole bytes.
+ */
+final class PaintGlyphs implements GlyphAtlas.Source {
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Rect bounds = new Rect();
+
+    PaintGlyphs() {
+        paint.setTypeface(Typeface.DEFAULT_BOLD);
+        paint.setColor(Color.BLACK);
+    }
+
+    @Override
+    public MonoImage render(char c, int height) {
+        paint.setTextSize(height);
+        paint.getTextBounds("0123456789", 0, 10, bounds);
+        if (bounds.height() <= 0) return null;
+        float baseline = (height - bounds.height()) / 2f - bounds.top;
+
+        String glyph = String.valueOf(c);
+        int widthBytes = Math.max(1, ((int) Math.ceil(paint.measureText(glyph)) + 7) / 8);
+        int width = widthBytes * 8;
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        new Canvas(bitmap).drawText(glyph, 0, baseline, paint);
+
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+        MonoImage image = new MonoImage(widthBytes, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (ImageDither.luminance(pixels[y * width + x]) < 128) image.setDot(x, y);
+            }
+        }
+        return image;
+    }
+}
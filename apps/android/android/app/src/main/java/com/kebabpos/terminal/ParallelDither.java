@@ -0,0 +1,161 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Floyd-Steinberg dithering across a fixed pool of worker threads
+ *
+ * Pixel (x, y) needs the error from (x-1, y) and from x-1..x+1 of the row
+ * above, so rows can run together as a wavefront: each row trails the one
+ * above by a few pixels. Workers claim rows in order and publish their
+ * progress every block of pixels, the row below waits on it. Error rows
+ * live in a small ring, since only the rows being worked on need one.
+ * Integer error sums don't depend on the order they are added in, so the
+ * result is bit for bit ImageDither.floydSteinberg.
+ */
+final class ParallelDither {
+
+    // Pixels between progress updates, small enough that rows below keep moving
+    private static final int BLOCK = 32;
+    // Below this many pixels threads cost more than they save
+    private static final int MIN_PARALLEL_PIXELS = 64 * 1024;
+
+    private final int threads;
+    private final ExecutorService pool;
+
+    ParallelDither(int threads) {
+        this.threads = Math.max(1, threads);
+        this.pool = this.threads > 1 ? Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dither-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * One worker per core, leaving one for the UI and the print link
+     */
+    static ParallelDither forDevice() {
+        return new ParallelDither(Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    int threads() {
+        return threads;
+    }
+
+    /**
+     * Same output as ImageDither.floydSteinberg
+     */
+    MonoImage floydSteinberg(int[] argb, int width, int height) {
+        if (pool == null || height < 2 || (long) width * height < MIN_PARALLEL_PIXELS) {
+            return ImageDither.floydSteinberg(argb, width, height);
+        }
+        Wavefront wavefront = new Wavefront(argb, width, height, threads);
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) workers.add(pool.submit(wavefront));
+        try {
+            for (Future<?> worker : workers) worker.get();
+        } catch (InterruptedException e) {
+            wavefront.cancelled = true;
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Dithering interrupted", e);
+        } catch (ExecutionException e) {
+            wavefront.cancelled = true;
+            throw new IllegalStateException("Dithering failed", e.getCause());
+        }
+        return wavefront.image;
+    }
+
+    void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private static final class Wavefront implements Runnable {
+        final int[] argb;
+        final int width;
+        final int height;
+        final MonoImage image;
+        // Error carried into row y is in errors[y % ring], with one pixel of padding each side
+        final int[][] errors;
+        // Pixels finished per row
+        final AtomicIntegerArray progress;
+        final AtomicInteger nextRow = new AtomicInteger();
+        volatile boolean cancelled = false;
+
+        Wavefront(int[] argb, int width, int height, int workers) {
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+            image = new MonoImage((width + 7) / 8, height);
+            // Rows finish in order and at most `workers` are in progress, so a
+            // row's buffer is free again by the time it comes round
+            errors = new int[workers + 2][width + 2];
+            progress = new AtomicIntegerArray(height);
+        }
+
+        @Override
+        public void run() {
+            int y;
+            while (!cancelled && (y = nextRow.getAndIncrement()) < height) {
+                row(y);
+            }
+        }
+
+        private void row(int y) {
+            int[] current = errors[y % errors.length];
+            int[] next = errors[(y + 1) % errors.length];
+            // The last row to use the next buffer has finished (see the ring size),
+            // waiting on it only makes its writes visible here
+            int previousUser = y + 1 - errors.length;
+            if (previousUser >= 0) awaitRow(previousUser, width);
+            // This row is the first to add error into the next one
+            Arrays.fill(next, 0);
+            int rowOffset = y * width;
+
+            for (int start = 0; start < width; start += BLOCK) {
+                int end = Math.min(width, start + BLOCK);
+                // Reading pixel x needs the row above done through x + 1, and adding
+                // into x + 1 here must not race its writes there, so through x + 2
+                if (y > 0) awaitRow(y - 1, Math.min(width, end + 2));
+                for (int x = start; x < end; x++) {
+                    int value = ImageDither.luminance(argb[rowOffset + x]) + current[x + 1] / 16;
+                    int error;
+                    if (value < 128) {
+                        image.setDot(x, y);
+                        error = value;
+                    } else {
+                        error = value - 255;
+                    }
+                    current[x + 2] += error * 7;
+                    next[x] += error * 3;
+                    next[x + 1] += error * 5;
+                    next[x + 2] += error;
+                }
+                progress.set(y, end);
+            }
+        }
+
+        private void awaitRow(int y, int pixels) {
+            int spins = 0;
+            while (progress.get(y) < pixels) {
+                if (cancelled) throw new IllegalStateException("Dithering cancelled");
+                // The row above is always claimed by a running worker, it will move
+                if (++spins > 64) Thread.yield();
+            }
+        }
+    }
+}
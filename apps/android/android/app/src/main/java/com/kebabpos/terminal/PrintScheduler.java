@@ -0,0 +1,295 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Priority scheduler in front of the printer transport
+ *
+ * Whole jobs are queued and sent one at a time by a single worker, so the
+ * printer only switches between jobs at a cut (a streamed job whose
+ * renderer stalls is the exception, see hasWaitingAhead). Each job is ordered by a
+ * virtual start time: its enqueue time plus a per-tier delay, capped by
+ * its deadline. A kitchen docket therefore goes ahead of receipts queued
+ * less than one aging step earlier, and a report that has waited long
+ * enough overtakes new dockets instead of starving.
+ */
+final class PrintScheduler {
+
+    enum JobClass {
+        CONTROL(0),   // Loose commands outside a job (drawer kick, test lines)
+        KITCHEN(0),
+        RECEIPT(1),
+        REPRINT(2),
+        REPORT(2);
+
+        final int tier;
+
+        JobClass(int tier) {
+            this.tier = tier;
+        }
+
+        static JobClass forKind(String kind) {
+            if ("kitchen".equals(kind)) return KITCHEN;
+            if ("reprint".equals(kind)) return REPRINT;
+            if ("report".equals(kind)) return REPORT;
+            return RECEIPT;
+        }
+    }
+
+    interface Completion {
+        void done(Exception error);
+    }
+
+    interface Clock {
+        long nowMs();
+    }
+
+    // Each lower tier waits this much longer before it ranks with kitchen jobs
+    static final long DEFAULT_AGING_MS = 15 * 1000;
+
+    private static final class Job {
+        final JobClass jobClass;
+        final long enqueuedAt;
+        final long rank;
+        final long seq;
+        final PrinterCommand work;
+        final Completion completion;
+
+        Job(JobClass jobClass, long enqueuedAt, long rank, long seq, PrinterCommand work, Completion completion) {
+            this.jobClass = jobClass;
+            this.enqueuedAt = enqueuedAt;
+            this.rank = rank;
+            this.seq = seq;
+            this.work = work;
+            this.completion = completion;
+        }
+    }
+
+    /**
+     * Queue wait times for one class, with a window of recent samples
+     */
+    static final class WaitStats {
+        private static final int WINDOW = 128;
+
+        private final long[] recent = new long[WINDOW];
+        private long count = 0;
+        private long totalMs = 0;
+        private long maxMs = 0;
+
+        synchronized void record(long waitMs) {
+            recent[(int) (count % WINDOW)] = waitMs;
+            count++;
+            totalMs += waitMs;
+            if (waitMs > maxMs) maxMs = waitMs;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized long averageMs() {
+            return count == 0 ? 0 : totalMs / count;
+        }
+
+        synchronized long maxMs() {
+            return maxMs;
+        }
+
+        /**
+         * Percentile (0-100) over the recent window
+         */
+        synchronized long percentileMs(int percentile) {
+            int n = (int) Math.min(count, WINDOW);
+            if (n == 0) return 0;
+            long[] sorted = Arrays.copyOf(recent, n);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, index))];
+        }
+    }
+
+    private final long agingMs;
+    private final Clock clock;
+    // Queues stay short and ranks are fixed at submit, a list scan is enough
+    private final List<Job> queue = new ArrayList<>();
+    private final Map<JobClass, WaitStats> stats = new EnumMap<>(JobClass.class);
+    private long nextSeq = 0;
+    private int running = 0;
+    private volatile Thread worker = null;
+
+    PrintScheduler(long agingMs) {
+        this(agingMs, new Clock() {
+            @Override
+            public long nowMs() {
+                return System.nanoTime() / 1000000L;
+            }
+        });
+    }
+
+    PrintScheduler(long agingMs, Clock clock) {
+        this.agingMs = agingMs;
+        this.clock = clock;
+        for (JobClass jobClass : JobClass.values()) stats.put(jobClass, new WaitStats());
+    }
+
+    synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                workerLoop();
+            }
+        }, "print-scheduler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stop the worker. Jobs still queued fail so nobody waits forever.
+     */
+    void stop() {
+        Thread thread;
+        List<Job> dropped;
+        synchronized (this) {
+            thread = worker;
+            worker = null;
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+            notifyAll();
+        }
+        if (thread != null) thread.interrupt();
+        for (Job job : dropped) {
+            if (job.completion != null) job.completion.done(new IllegalStateException("Print scheduler stopped"));
+        }
+    }
+
+    /**
+     * Queue a job. deadlineMs is how soon it should start (0 for none).
+     */
+    void submit(JobClass jobClass, long deadlineMs, PrinterCommand work, Completion completion) {
+        long now = clock.nowMs();
+        long rank = now + jobClass.tier * agingMs;
+        if (deadlineMs > 0) rank = Math.min(rank, now + deadlineMs);
+        synchronized (this) {
+            queue.add(new Job(jobClass, now, rank, nextSeq++, work, completion));
+            notifyAll();
+        }
+    }
+
+    /**
+     * Queue a job and block until it has been sent. Must not be called
+     * from inside a job.
+     */
+    void submitAndWait(JobClass jobClass, PrinterCommand work) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Exception[] failure = new Exception[1];
+        submit(jobClass, 0, work, new Completion() {
+            @Override
+            public void done(Exception error) {
+                failure[0] = error;
+                latch.countDown();
+            }
+        });
+        latch.await();
+        if (failure[0] != null) throw failure[0];
+    }
+
+    /**
+     * Run the best queued job on the calling thread.
+     * Returns false if the queue was empty.
+     */
+    boolean runNext() {
+        Job job;
+        synchronized (this) {
+            if (queue.isEmpty()) return false;
+            job = takeBest();
+            running++;
+        }
+        execute(job);
+        return true;
+    }
+
+    synchronized int queued(JobClass jobClass) {
+        int n = 0;
+        for (Job job : queue) {
+            if (job.jobClass == jobClass) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Whether a queued job should go before the rest of a running job of
+     * this class: a loose command, or a job in a faster tier
+     */
+    synchronized boolean hasWaitingAhead(JobClass running) {
+        for (Job job : queue) {
+            if (job.jobClass == JobClass.CONTROL || job.jobClass.tier < running.tier) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Nothing queued and nothing being sent
+     */
+    synchronized boolean isIdle() {
+        return queue.isEmpty() && running == 0;
+    }
+
+    boolean isWorkerThread() {
+        return worker == Thread.currentThread();
+    }
+
+    WaitStats stats(JobClass jobClass) {
+        return stats.get(jobClass);
+    }
+
+    private void workerLoop() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (worker == Thread.currentThread() && queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // stop() clears worker, checked by the loop
+                    }
+                }
+                if (worker != Thread.currentThread()) return;
+                job = takeBest();
+                running++;
+            }
+            execute(job);
+        }
+    }
+
+    private Job takeBest() {
+        int best = 0;
+        for (int i = 1; i < queue.size(); i++) {
+            Job candidate = queue.get(i);
+            Job current = queue.get(best);
+            if (candidate.rank < current.rank || (candidate.rank == current.rank && candidate.seq < current.seq)) {
+                best = i;
+            }
+        }
+        return queue.remove(best);
+    }
+
+    private void execute(Job job) {
+        stats.get(job.jobClass).record(clock.nowMs() - job.enqueuedAt);
+        Exception error = null;
+        try {
+            job.work.run();
+        } catch (Exception e) {
+            error = e;
+        }
+        synchronized (this) {
+            running--;
+        }
+        if (job.completion != null) job.completion.done(error);
+    }
+}
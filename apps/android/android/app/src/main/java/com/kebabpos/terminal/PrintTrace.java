@@ -0,0 +1,147 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed-size in-memory trace of print events
+ *
+ * Every slot is preallocated, and events carry a code plus two primitive
+ * arguments, so recording costs a level check and a few array stores.
+ * Nothing is formatted until someone asks for a dump. The order id is
+ * kept as a reference to the job's existing string, which is enough to
+ * pull the events for one failing order.
+ */
+final class PrintTrace {
+
+    static final int LEVEL_OFF = 0;
+    static final int LEVEL_ERROR = 1;
+    static final int LEVEL_INFO = 2;
+    static final int LEVEL_DEBUG = 3;
+
+    // Event codes, a and b as noted
+    static final int JOB_BEGIN = 1;          // -
+    static final int JOB_QUEUED = 2;         // a = scheduler class, b = copies
+    static final int JOB_SENT = 3;           // a = scheduler class
+    static final int JOB_FAILED = 4;         // a = scheduler class
+    static final int TRANSPORT_WRITE = 5;    // a = bytes, b = microseconds
+    static final int TEXT = 6;               // a = characters, b = font size
+    static final int BITMAP = 7;             // a = width, b = height
+    static final int RASTER_BAND = 8;        // a = rows, b = encoded bytes
+    static final int SDK_METHOD = 9;         // a = op, b = parameter count of the overload used
+    static final int STYLE_UNAVAILABLE = 10; // a = feature
+    static final int STYLE_FALLBACK = 11;    // a = op
+    static final int ERROR = 12;             // a = op
+    static final int JOB_DUPLICATE = 13;     // - (submission key seen before, nothing printed)
+    static final int JOB_BATCHED = 14;       // - (kitchen docket held for a rush-mode batch)
+    static final int JOB_PRINTED = 15;       // a = ms from first command to result, b = 1 printed / 0 failed (Sunmi)
+    static final int JOB_SUSPENDED = 16;     // a = scheduler class (stream stalled, more urgent jobs print first)
+    static final int GLYPH_ATLAS = 17;       // a = glyph bytes, b = ms to build (large order numbers)
+
+    private static final String[] CODE_NAMES = {
+        "", "JOB_BEGIN", "JOB_QUEUED", "JOB_SENT", "JOB_FAILED", "TRANSPORT_WRITE", "TEXT",
+        "BITMAP", "RASTER_BAND", "SDK_METHOD", "STYLE_UNAVAILABLE", "STYLE_FALLBACK", "ERROR",
+        "JOB_DUPLICATE", "JOB_BATCHED", "JOB_PRINTED", "JOB_SUSPENDED", "GLYPH_ATLAS"
+    };
+
+    // Ops and features for the a argument
+    static final int OP_TEXT = 1;
+    static final int OP_QR = 2;
+    static final int OP_BITMAP = 3;
+    static final int FEATURE_TEXT_SIZE = 1;
+    static final int FEATURE_ALIGN = 2;
+    static final int FEATURE_BOLD = 3;
+    static final int FEATURE_DOT_SIZE = 4;
+    static final int FEATURE_BARCODE_STYLE = 5;
+    static final int FEATURE_BITMAP_ALGORITHM = 6;
+
+    static final class Event {
+        final long timeMs;
+        final int level;
+        final String code;
+        final String orderId;
+        final long a;
+        final long b;
+
+        Event(long timeMs, int level, String code, String orderId, long a, long b) {
+            this.timeMs = timeMs;
+            this.level = level;
+            this.code = code;
+            this.orderId = orderId;
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    private final long[] times;
+    private final int[] levels;
+    private final int[] codes;
+    private final String[] orderIds;
+    private final long[] as;
+    private final long[] bs;
+    private final long wallBaseMs = System.currentTimeMillis();
+    private final long nanoBase = System.nanoTime();
+
+    private volatile int level;
+    private int next = 0;
+    private int count = 0;
+
+    PrintTrace(int capacity, int level) {
+        times = new long[capacity];
+        levels = new int[capacity];
+        codes = new int[capacity];
+        orderIds = new String[capacity];
+        as = new long[capacity];
+        bs = new long[capacity];
+        this.level = level;
+    }
+
+    void setLevel(int level) {
+        this.level = level;
+    }
+
+    int level() {
+        return level;
+    }
+
+    void record(int eventLevel, int code, String orderId, long a, long b) {
+        if (eventLevel > level) return;
+        long now = System.nanoTime();
+        synchronized (this) {
+            int slot = next;
+            times[slot] = now;
+            levels[slot] = eventLevel;
+            codes[slot] = code;
+            orderIds[slot] = orderId;
+            as[slot] = a;
+            bs[slot] = b;
+            next = (slot + 1) % times.length;
+            if (count < times.length) count++;
+        }
+    }
+
+    /**
+     * The last max events, oldest first, only for orderId if given.
+     */
+    synchronized List<Event> dump(String orderId, int max) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 1; i <= count && events.size() < max; i++) {
+            int slot = (next - i + times.length) % times.length;
+            if (orderId != null && !orderId.equals(orderIds[slot])) continue;
+            long timeMs = wallBaseMs + (times[slot] - nanoBase) / 1000000L;
+            int code = codes[slot];
+            String name = code > 0 && code < CODE_NAMES.length ? CODE_NAMES[code] : String.valueOf(code);
+            events.add(new Event(timeMs, levels[slot], name, orderIds[slot], as[slot], bs[slot]));
+        }
+        Collections.reverse(events);
+        return events;
+    }
+
+    synchronized void clear() {
+        next = 0;
+        count = 0;
+        Arrays.fill(orderIds, null);
+    }
+}
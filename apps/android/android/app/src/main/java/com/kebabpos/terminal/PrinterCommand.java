@@ -0,0 +1,8 @@
+package com.kebabpos.terminal;
+
+/**
+ * A single call into a printer SDK, kept so it can be replayed
+ */
+interface PrinterCommand {
+    void run() throws Exception;
+}
@@ -0,0 +1,224 @@
+package com.kebabpos.terminal;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+/**
+ * Event-driven printer discovery
+ *
+ * Seeds the registry with paired Bluetooth devices and attached USB
+ * printers once, then keeps it current from system broadcasts (USB
+ * attach/detach, Bluetooth scan results, pairing and adapter state)
+ * instead of re-listing devices on every request. Paired devices can
+ * only be listed once BLUETOOTH_CONNECT is granted, often after start,
+ * so they are listed again on request until some are found.
+ */
+final class PrinterDiscovery {
+
+    private static final String TAG = "PrinterDiscovery";
+
+    // Unpaired devices found by a scan are dropped if not seen again
+    static final long BLUETOOTH_TTL_MS = 5 * 60 * 1000;
+    private static final long SWEEP_INTERVAL_MS = 30 * 1000;
+
+    private final Context context;
+    private final PrinterRegistry registry;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean started = false;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            try {
+                handle(intent);
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling " + intent.getAction(), e);
+            }
+        }
+    };
+
+    private final Runnable sweep = new Runnable() {
+        @Override
+        public void run() {
+            registry.expire(SystemClock.elapsedRealtime());
+            handler.postDelayed(this, SWEEP_INTERVAL_MS);
+        }
+    };
+
+    PrinterDiscovery(Context context, PrinterRegistry registry) {
+        this.context = context;
+        this.registry = registry;
+    }
+
+    void start() {
+        if (started) return;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        filter.addAction(BluetoothDevice.ACTION_FOUND);
+        filter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
+        filter.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
+        context.registerReceiver(receiver, filter);
+        started = true;
+
+        seedBonded();
+        seedUsb();
+        handler.postDelayed(sweep, SWEEP_INTERVAL_MS);
+    }
+
+    void stop() {
+        if (!started) return;
+        started = false;
+        handler.removeCallbacks(sweep);
+        try {
+            context.unregisterReceiver(receiver);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Receiver was not registered", e);
+        }
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter != null && hasPermission(Manifest.permission.BLUETOOTH_SCAN) && adapter.isDiscovering()) {
+            adapter.cancelDiscovery();
+        }
+    }
+
+    /**
+     * List paired printers if none are known yet, e.g. because the
+     * Bluetooth permission was granted after start
+     */
+    void refreshPaired() {
+        if (started && !registry.hasPaired()) seedBonded();
+    }
+
+    /**
+     * Start a Bluetooth inquiry for unpaired printers. Results arrive
+     * through the registry listener as they are found.
+     */
+    boolean scan() {
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null || !adapter.isEnabled()) return false;
+        if (!hasPermission(Manifest.permission.BLUETOOTH_SCAN)) {
+            Log.w(TAG, "Bluetooth scan permission not granted");
+            return false;
+        }
+        return adapter.isDiscovering() || adapter.startDiscovery();
+    }
+
+    private void handle(Intent intent) {
+        String action = intent.getAction();
+        if (action == null) return;
+
+        switch (action) {
+            case UsbManager.ACTION_USB_DEVICE_ATTACHED: {
+                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (device != null && isUsbPrinter(device)) putUsb(device);
+                break;
+            }
+            case UsbManager.ACTION_USB_DEVICE_DETACHED: {
+                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (device != null) registry.remove(device.getDeviceName());
+                break;
+            }
+            case BluetoothDevice.ACTION_FOUND: {
+                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                if (device != null && isBluetoothPrinter(device)) {
+                    putBluetooth(device, SystemClock.elapsedRealtime() + BLUETOOTH_TTL_MS);
+                }
+                break;
+            }
+            case BluetoothDevice.ACTION_BOND_STATE_CHANGED: {
+                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                if (device == null) break;
+                int state = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.BOND_NONE);
+                if (state == BluetoothDevice.BOND_BONDED) {
+                    putBluetooth(device, PrinterRegistry.NO_EXPIRY);
+                } else if (state == BluetoothDevice.BOND_NONE) {
+                    registry.remove(device.getAddress());
+                }
+                break;
+            }
+            case BluetoothAdapter.ACTION_STATE_CHANGED: {
+                int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.STATE_OFF);
+                if (state == BluetoothAdapter.STATE_ON) {
+                    seedBonded();
+                } else if (state == BluetoothAdapter.STATE_OFF) {
+                    registry.removeType("bluetooth");
+                    registry.removeType("ble");
+                }
+                break;
+            }
+        }
+    }
+
+    private void seedBonded() {
+        try {
+            BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+            if (adapter == null || !adapter.isEnabled()) return;
+            if (!hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) return;
+            for (BluetoothDevice device : adapter.getBondedDevices()) {
+                putBluetooth(device, PrinterRegistry.NO_EXPIRY);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error listing Bluetooth devices", e);
+        }
+    }
+
+    private void seedUsb() {
+        try {
+            UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+            for (UsbDevice device : usbManager.getDeviceList().values()) {
+                if (isUsbPrinter(device)) putUsb(device);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error listing USB devices", e);
+        }
+    }
+
+    private void putBluetooth(BluetoothDevice device, long expiresAt) {
+        String name = hasPermission(Manifest.permission.BLUETOOTH_CONNECT) ? device.getName() : null;
+        // LE-only printers have no RFCOMM channel, they connect over GATT
+        String type = device.getType() == BluetoothDevice.DEVICE_TYPE_LE ? "ble" : "bluetooth";
+        registry.put(device.getAddress(), name != null ? name : "Unknown", type, expiresAt);
+    }
+
+    private void putUsb(UsbDevice device) {
+        String name = device.getProductName() != null ? device.getProductName() : "USB Printer";
+        registry.put(device.getDeviceName(), name, "usb", PrinterRegistry.NO_EXPIRY);
+    }
+
+    static boolean isUsbPrinter(UsbDevice device) {
+        return UsbInterfaceSelector.looksLikePrinter(device.getDeviceClass(), UsbPrinterConnection.describe(device));
+    }
+
+    /**
+     * Scans see every nearby phone and headset, so only keep imaging
+     * devices and the uncategorised ones most cheap printers report.
+     */
+    private static boolean isBluetoothPrinter(BluetoothDevice device) {
+        BluetoothClass btClass = device.getBluetoothClass();
+        if (btClass == null) return true;
+        int major = btClass.getMajorDeviceClass();
+        return major == BluetoothClass.Device.Major.IMAGING || major == BluetoothClass.Device.Major.UNCATEGORIZED;
+    }
+
+    // Runtime Bluetooth permissions only exist from Android 12
+    private boolean hasPermission(String permission) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return true;
+        return ActivityCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,33 @@
+package com.kebabpos.terminal;
+
+/**
+ * Capabilities of an ESC/POS printer
+ *
+ * Budget printers often lack firmware features (QR, barcodes), so
+ * the encoder checks the profile and falls back to raster images.
+ */
+final class PrinterProfile {
+
+    /**
+     * How raster images are sent. TRIMMED only uses plain GS v 0 blocks,
+     * but some printers leave faint gaps between blocks, so it is opt-in.
+     */
+    enum RasterEncoding {
+        PLAIN,    // One GS v 0 block per 256 rows, full width
+        TRIMMED   // Blank rows collapsed, empty side margins trimmed
+    }
+
+    static final PrinterProfile DEFAULT = new PrinterProfile(true, true, 384, RasterEncoding.PLAIN);
+
+    final boolean nativeQr;
+    final boolean nativeBarcode;
+    final int dotsPerLine;
+    final RasterEncoding rasterEncoding;
+
+    PrinterProfile(boolean nativeQr, boolean nativeBarcode, int dotsPerLine, RasterEncoding rasterEncoding) {
+        this.nativeQr = nativeQr;
+        this.nativeBarcode = nativeBarcode;
+        this.dotsPerLine = dotsPerLine;
+        this.rasterEncoding = rasterEncoding;
+    }
+}
@@ -0,0 +1,125 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Printers seen by discovery, keyed by address
+ *
+ * Entries found by a Bluetooth scan expire after a TTL unless seen again;
+ * paired and plugged-in printers stay until they are unpaired or unplugged.
+ * The listener hears about each change once, outside the registry lock.
+ */
+final class PrinterRegistry {
+
+    static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    interface Listener {
+        void printerAdded(Printer printer);
+        void printerRemoved(Printer printer);
+    }
+
+    static final class Printer {
+        final String address;
+        final String name;
+        final String type;
+        final long expiresAt;
+
+        Printer(String address, String name, String type, long expiresAt) {
+            this.address = address;
+            this.name = name;
+            this.type = type;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final LinkedHashMap<String, Printer> printers = new LinkedHashMap<>();
+    private final Listener listener;
+
+    PrinterRegistry(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Add or refresh a printer. Seeing a known printer again only extends
+     * its expiry; listeners are told when it is new or its name changed.
+     */
+    void put(String address, String name, String type, long expiresAt) {
+        Printer printer;
+        boolean changed;
+        synchronized (this) {
+            Printer old = printers.get(address);
+            if (old != null) expiresAt = Math.max(old.expiresAt, expiresAt);
+            printer = new Printer(address, name, type, expiresAt);
+            printers.put(address, printer);
+            changed = old == null || !old.type.equals(type) || !equal(old.name, name);
+        }
+        if (changed) listener.printerAdded(printer);
+    }
+
+    void remove(String address) {
+        Printer removed;
+        synchronized (this) {
+            removed = printers.remove(address);
+        }
+        if (removed != null) listener.printerRemoved(removed);
+    }
+
+    /**
+     * Drop every printer of a type, e.g. when Bluetooth is switched off.
+     */
+    void removeType(String type) {
+        notifyRemoved(removeMatching(type, NO_EXPIRY));
+    }
+
+    /**
+     * Drop printers whose TTL ran out.
+     */
+    void expire(long now) {
+        notifyRemoved(removeMatching(null, now));
+    }
+
+    synchronized List<Printer> list() {
+        return new ArrayList<>(printers.values());
+    }
+
+    synchronized int size() {
+        return printers.size();
+    }
+
+    /**
+     * Whether any paired Bluetooth printer is listed, scan results aside
+     */
+    synchronized boolean hasPaired() {
+        for (Printer printer : printers.values()) {
+            if (printer.expiresAt == NO_EXPIRY && (printer.type.equals("bluetooth") || printer.type.equals("ble"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized List<Printer> removeMatching(String type, long now) {
+        List<Printer> removed = new ArrayList<>();
+        Iterator<Printer> it = printers.values().iterator();
+        while (it.hasNext()) {
+            Printer printer = it.next();
+            boolean match = type != null ? printer.type.equals(type) : printer.expiresAt <= now;
+            if (match) {
+                it.remove();
+                removed.add(printer);
+            }
+        }
+        return removed;
+    }
+
+    private void notifyRemoved(List<Printer> removed) {
+        for (Printer printer : removed) listener.printerRemoved(printer);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
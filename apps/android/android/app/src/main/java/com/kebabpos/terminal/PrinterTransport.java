@@ -0,0 +1,10 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+
+/**
+ * Byte pipe to a connected ESC/POS printer (Bluetooth, USB or simulated)
+ */
+interface PrinterTransport {
+    void write(byte[] data) throws IOException;
+}
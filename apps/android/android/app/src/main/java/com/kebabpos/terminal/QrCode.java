@@ -0,0 +1,424 @@
+/*
+ * Adapted from the QR Code generator library (Java)
+ *
+ * Copyright (c) Project Nayuki. (MIT License)
+ * https://www.nayuki.io/page/qr-code-generator-library
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * - The above copyright notice and this permission notice shall be included in
+ *   all copies or substantial portions of the Software.
+ * - The Software is provided "as is", without warranty of any kind, express or
+ *   implied, including but not limited to the warranties of merchantability,
+ *   fitness for a particular purpose and noninfringement. In no event shall the
+ *   authors or copyright holders be liable for any claim, damages or other
+ *   liability, whether in an action of contract, tort or otherwise, arising from,
+ *   out of or in connection with the Software or the use or other dealings in the
+ *   Software.
+ */
+
+package com.kebabpos.terminal;
+
+import java.nio.charset.Charset;
+
+/**
+ * Minimal QR Code encoder (byte mode, versions 1-40, all EC levels)
+ *
+ * Used when a printer has no QR firmware, so the symbol can be sent
+ * as a raster image instead of GS ( k. Tables, masking and penalty
+ * scoring follow Project Nayuki's generator (MIT, notice above), cut
+ * down to byte mode.
+ */
+final class QrCode {
+
+    // Error correction levels, same numbering as the Sunmi AIDL API (0=L, 1=M, 2=Q, 3=H)
+    static final int ECC_LOW = 0;
+    static final int ECC_MEDIUM = 1;
+    static final int ECC_QUARTILE = 2;
+    static final int ECC_HIGH = 3;
+
+    // Format bits for each level (L=01, M=00, Q=11, H=10)
+    private static final int[] ECC_FORMAT_BITS = { 1, 0, 3, 2 };
+
+    private static final byte[][] ECC_CODEWORDS_PER_BLOCK = {
+        { -1,  7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28, 28, 28, 30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 },
+        { -1, 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26, 26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28 },
+        { -1, 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30, 28, 30, 30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 },
+        { -1, 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28, 30, 24, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 },
+    };
+
+    private static final byte[][] NUM_ERROR_CORRECTION_BLOCKS = {
+        { -1, 1, 1, 1, 1, 1, 2, 2, 2, 2,  4,  4,  4,  4,  4,  6,  6,  6,  6,  7,  8,  8,  9,  9, 10, 12, 12, 12, 13, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25 },
+        { -1, 1, 1, 1, 2, 2, 4, 4, 4, 5,  5,  5,  8,  9,  9, 10, 10, 11, 13, 14, 16, 17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49 },
+        { -1, 1, 1, 2, 2, 4, 4, 6, 6, 8,  8,  8, 10, 12, 16, 12, 17, 16, 18, 21, 20, 23, 23, 25, 27, 29, 34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68 },
+        { -1, 1, 1, 2, 4, 4, 4, 5, 6, 8,  8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25, 25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81 },
+    };
+
+    private final int size;
+    private final boolean[][] modules;
+    private final boolean[][] isFunction;
+
+    private QrCode(int version) {
+        size = version * 4 + 17;
+        modules = new boolean[size][size];
+        isFunction = new boolean[size][size];
+    }
+
+    /**
+     * Encode text as UTF-8 bytes into the smallest symbol that fits.
+     * Returns the module matrix indexed [y][x], true = dark, without quiet zone.
+     */
+    static boolean[][] encode(String text, int ecc) {
+        if (ecc < ECC_LOW || ecc > ECC_HIGH) ecc = ECC_LOW;
+        byte[] data = text.getBytes(Charset.forName("UTF-8"));
+
+        int version = 1;
+        int dataCapacityBits;
+        while (true) {
+            dataCapacityBits = getNumDataCodewords(version, ecc) * 8;
+            int usedBits = 4 + (version < 10 ? 8 : 16) + data.length * 8;
+            if (usedBits <= dataCapacityBits) break;
+            if (++version > 40) throw new IllegalArgumentException("Data too long for QR code: " + data.length + " bytes");
+        }
+
+        // Byte mode segment, terminator and padding
+        BitBuffer bb = new BitBuffer(dataCapacityBits);
+        bb.append(0x4, 4);
+        bb.append(data.length, version < 10 ? 8 : 16);
+        for (byte b : data) bb.append(b & 0xFF, 8);
+        bb.append(0, Math.min(4, dataCapacityBits - bb.length));
+        bb.append(0, (8 - bb.length % 8) % 8);
+        for (int pad = 0xEC; bb.length < dataCapacityBits; pad ^= 0xEC ^ 0x11) {
+            bb.append(pad, 8);
+        }
+
+        QrCode qr = new QrCode(version);
+        qr.drawFunctionPatterns(version, ecc);
+        qr.drawCodewords(addEccAndInterleave(bb.toBytes(), version, ecc));
+
+        // Pick the mask with the lowest penalty
+        int bestMask = 0;
+        int minPenalty = Integer.MAX_VALUE;
+        for (int mask = 0; mask < 8; mask++) {
+            qr.applyMask(mask);
+            qr.drawFormatBits(ecc, mask);
+            int penalty = qr.getPenaltyScore();
+            if (penalty < minPenalty) {
+                bestMask = mask;
+                minPenalty = penalty;
+            }
+            qr.applyMask(mask); // XOR again to undo
+        }
+        qr.applyMask(bestMask);
+        qr.drawFormatBits(ecc, bestMask);
+        return qr.modules;
+    }
+
+    private void drawFunctionPatterns(int version, int ecc) {
+        for (int i = 0; i < size; i++) {
+            setFunctionModule(6, i, i % 2 == 0);
+            setFunctionModule(i, 6, i % 2 == 0);
+        }
+
+        drawFinderPattern(3, 3);
+        drawFinderPattern(size - 4, 3);
+        drawFinderPattern(3, size - 4);
+
+        int[] alignPos = getAlignmentPatternPositions(version);
+        int numAlign = alignPos.length;
+        for (int i = 0; i < numAlign; i++) {
+            for (int j = 0; j < numAlign; j++) {
+                // Skip the three finder corners
+                if (i == 0 && j == 0 || i == 0 && j == numAlign - 1 || i == numAlign - 1 && j == 0) continue;
+                drawAlignmentPattern(alignPos[i], alignPos[j]);
+            }
+        }
+
+        drawFormatBits(ecc, 0); // Dummy, overwritten once the mask is chosen
+        drawVersion(version);
+    }
+
+    private void drawFormatBits(int ecc, int mask) {
+        int data = ECC_FORMAT_BITS[ecc] << 3 | mask;
+        int rem = data;
+        for (int i = 0; i < 10; i++) rem = (rem << 1) ^ ((rem >>> 9) * 0x537);
+        int bits = (data << 10 | rem) ^ 0x5412;
+
+        // First copy
+        for (int i = 0; i <= 5; i++) setFunctionModule(8, i, getBit(bits, i));
+        setFunctionModule(8, 7, getBit(bits, 6));
+        setFunctionModule(8, 8, getBit(bits, 7));
+        setFunctionModule(7, 8, getBit(bits, 8));
+        for (int i = 9; i < 15; i++) setFunctionModule(14 - i, 8, getBit(bits, i));
+
+        // Second copy
+        for (int i = 0; i < 8; i++) setFunctionModule(size - 1 - i, 8, getBit(bits, i));
+        for (int i = 8; i < 15; i++) setFunctionModule(8, size - 15 + i, getBit(bits, i));
+        setFunctionModule(8, size - 8, true); // Always dark
+    }
+
+    private void drawVersion(int version) {
+        if (version < 7) return;
+        int rem = version;
+        for (int i = 0; i < 12; i++) rem = (rem << 1) ^ ((rem >>> 11) * 0x1F25);
+        int bits = version << 12 | rem;
+        for (int i = 0; i < 18; i++) {
+            boolean bit = getBit(bits, i);
+            int a = size - 11 + i % 3;
+            int b = i / 3;
+            setFunctionModule(a, b, bit);
+            setFunctionModule(b, a, bit);
+        }
+    }
+
+    private void drawFinderPattern(int x, int y) {
+        for (int dy = -4; dy <= 4; dy++) {
+            for (int dx = -4; dx <= 4; dx++) {
+                int dist = Math.max(Math.abs(dx), Math.abs(dy));
+                int xx = x + dx, yy = y + dy;
+                if (0 <= xx && xx < size && 0 <= yy && yy < size) {
+                    setFunctionModule(xx, yy, dist != 2 && dist != 4);
+                }
+            }
+        }
+    }
+
+    private void drawAlignmentPattern(int x, int y) {
+        for (int dy = -2; dy <= 2; dy++) {
+            for (int dx = -2; dx <= 2; dx++) {
+                setFunctionModule(x + dx, y + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+            }
+        }
+    }
+
+    private void setFunctionModule(int x, int y, boolean dark) {
+        modules[y][x] = dark;
+        isFunction[y][x] = true;
+    }
+
+    private void drawCodewords(byte[] data) {
+        int i = 0;
+        for (int right = size - 1; right >= 1; right -= 2) {
+            if (right == 6) right = 5; // Skip the vertical timing column
+            for (int vert = 0; vert < size; vert++) {
+                for (int j = 0; j < 2; j++) {
+                    int x = right - j;
+                    boolean upward = ((right + 1) & 2) == 0;
+                    int y = upward ? size - 1 - vert : vert;
+                    if (!isFunction[y][x] && i < data.length * 8) {
+                        modules[y][x] = getBit(data[i >>> 3], 7 - (i & 7));
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void applyMask(int mask) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean invert;
+                switch (mask) {
+                    case 0: invert = (x + y) % 2 == 0; break;
+                    case 1: invert = y % 2 == 0; break;
+                    case 2: invert = x % 3 == 0; break;
+                    case 3: invert = (x + y) % 3 == 0; break;
+                    case 4: invert = (x / 3 + y / 2) % 2 == 0; break;
+                    case 5: invert = x * y % 2 + x * y % 3 == 0; break;
+                    case 6: invert = (x * y % 2 + x * y % 3) % 2 == 0; break;
+                    default: invert = ((x + y) % 2 + x * y % 3) % 2 == 0; break;
+                }
+                if (invert && !isFunction[y][x]) modules[y][x] = !modules[y][x];
+            }
+        }
+    }
+
+    private int getPenaltyScore() {
+        int penalty = 0;
+
+        // Runs of five or more same-coloured modules, rows and columns
+        for (int a = 0; a < size; a++) {
+            int rowRun = 1, colRun = 1;
+            for (int b = 1; b < size; b++) {
+                if (modules[a][b] == modules[a][b - 1]) {
+                    rowRun++;
+                } else {
+                    if (rowRun >= 5) penalty += rowRun - 2;
+                    rowRun = 1;
+                }
+                if (modules[b][a] == modules[b - 1][a]) {
+                    colRun++;
+                } else {
+                    if (colRun >= 5) penalty += colRun - 2;
+                    colRun = 1;
+                }
+            }
+            if (rowRun >= 5) penalty += rowRun - 2;
+            if (colRun >= 5) penalty += colRun - 2;
+        }
+
+        // 2x2 blocks of the same colour
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                boolean c = modules[y][x];
+                if (c == modules[y][x + 1] && c == modules[y + 1][x] && c == modules[y + 1][x + 1]) {
+                    penalty += 3;
+                }
+            }
+        }
+
+        // Finder-like 1:1:3:1:1 patterns with four light modules on one side
+        for (int a = 0; a < size; a++) {
+            for (int b = 0; b + 11 <= size; b++) {
+                if (isFinderLike(a, b, true)) penalty += 40;
+                if (isFinderLike(a, b, false)) penalty += 40;
+            }
+        }
+
+        // Balance of dark and light modules
+        int dark = 0;
+        for (boolean[] row : modules) {
+            for (boolean m : row) if (m) dark++;
+        }
+        int total = size * size;
+        int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+        penalty += k * 10;
+        return penalty;
+    }
+
+    private static final boolean[] FINDER_RUN = { true, false, true, true, true, false, true };
+
+    private boolean isFinderLike(int line, int start, boolean horizontal) {
+        boolean lightBefore = true, lightAfter = true;
+        for (int i = 0; i < 11; i++) {
+            boolean m = horizontal ? modules[line][start + i] : modules[start + i][line];
+            lightBefore &= i < 4 ? !m : m == FINDER_RUN[i - 4];
+            lightAfter &= i < 7 ? m == FINDER_RUN[i] : !m;
+        }
+        return lightBefore || lightAfter;
+    }
+
+    private static int[] getAlignmentPatternPositions(int version) {
+        if (version == 1) return new int[0];
+        int numAlign = version / 7 + 2;
+        int step = version == 32 ? 26 : (version * 4 + numAlign * 2 + 1) / (numAlign * 2 - 2) * 2;
+        int[] result = new int[numAlign];
+        result[0] = 6;
+        for (int i = numAlign - 1, pos = version * 4 + 17 - 7; i >= 1; i--, pos -= step) {
+            result[i] = pos;
+        }
+        return result;
+    }
+
+    private static int getNumRawDataModules(int version) {
+        int result = (16 * version + 128) * version + 64;
+        if (version >= 2) {
+            int numAlign = version / 7 + 2;
+            result -= (25 * numAlign - 10) * numAlign - 55;
+            if (version >= 7) result -= 36;
+        }
+        return result;
+    }
+
+    private static int getNumDataCodewords(int version, int ecc) {
+        return getNumRawDataModules(version) / 8
+            - ECC_CODEWORDS_PER_BLOCK[ecc][version] * NUM_ERROR_CORRECTION_BLOCKS[ecc][version];
+    }
+
+    private static byte[] addEccAndInterleave(byte[] data, int version, int ecc) {
+        int numBlocks = NUM_ERROR_CORRECTION_BLOCKS[ecc][version];
+        int blockEccLen = ECC_CODEWORDS_PER_BLOCK[ecc][version];
+        int rawCodewords = getNumRawDataModules(version) / 8;
+        int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+        int shortBlockLen = rawCodewords / numBlocks;
+
+        byte[][] blocks = new byte[numBlocks][];
+        byte[] divisor = reedSolomonDivisor(blockEccLen);
+        for (int i = 0, k = 0; i < numBlocks; i++) {
+            int datLen = shortBlockLen - blockEccLen + (i < numShortBlocks ? 0 : 1);
+            byte[] dat = new byte[datLen];
+            System.arraycopy(data, k, dat, 0, datLen);
+            k += datLen;
+            byte[] block = new byte[shortBlockLen + 1];
+            System.arraycopy(dat, 0, block, 0, datLen);
+            byte[] eccBytes = reedSolomonRemainder(dat, divisor);
+            System.arraycopy(eccBytes, 0, block, block.length - blockEccLen, blockEccLen);
+            blocks[i] = block;
+        }
+
+        byte[] result = new byte[rawCodewords];
+        int pos = 0;
+        for (int i = 0; i < blocks[0].length; i++) {
+            for (int j = 0; j < numBlocks; j++) {
+                // Short blocks have a padding byte where long blocks have their last data byte
+                if (i != shortBlockLen - blockEccLen || j >= numShortBlocks) {
+                    result[pos++] = blocks[j][i];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte[] reedSolomonDivisor(int degree) {
+        byte[] result = new byte[degree];
+        result[degree - 1] = 1;
+        int root = 1;
+        for (int i = 0; i < degree; i++) {
+            for (int j = 0; j < degree; j++) {
+                result[j] = (byte) gfMultiply(result[j] & 0xFF, root);
+                if (j + 1 < degree) result[j] ^= result[j + 1];
+            }
+            root = gfMultiply(root, 0x02);
+        }
+        return result;
+    }
+
+    private static byte[] reedSolomonRemainder(byte[] data, byte[] divisor) {
+        byte[] result = new byte[divisor.length];
+        for (byte b : data) {
+            int factor = (b ^ result[0]) & 0xFF;
+            System.arraycopy(result, 1, result, 0, result.length - 1);
+            result[result.length - 1] = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] ^= gfMultiply(divisor[i] & 0xFF, factor);
+            }
+        }
+        return result;
+    }
+
+    private static int gfMultiply(int x, int y) {
+        int z = 0;
+        for (int i = 7; i >= 0; i--) {
+            z = (z << 1) ^ ((z >>> 7) * 0x11D);
+            z ^= ((y >>> i) & 1) * x;
+        }
+        return z;
+    }
+
+    private static boolean getBit(int x, int i) {
+        return ((x >>> i) & 1) != 0;
+    }
+
+    private static final class BitBuffer {
+        private final byte[] bytes;
+        int length = 0;
+
+        BitBuffer(int capacityBits) {
+            bytes = new byte[(capacityBits + 7) / 8];
+        }
+
+        void append(int value, int numBits) {
+            for (int i = numBits - 1; i >= 0; i--, length++) {
+                if (((value >>> i) & 1) != 0) bytes[length >>> 3] |= 0x80 >>> (length & 7);
+            }
+        }
+
+        byte[] toBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Two-stage render/transmit hand-off for a job streamed while it renders
+ *
+ * The render stage (plugin thread) encodes into one of two buffers while
+ * the transmit stage (scheduler worker) writes the other to the printer.
+ * A buffer is handed over when it fills, or straight away if the
+ * transmitter is waiting for data, and rendering carries on in the other
+ * one, waiting only if both are still in flight. Time each stage spends
+ * waiting for the other is counted, so a transmit side that is rarely
+ * idle shows the link was kept busy. A stream whose renderer stalls can
+ * be suspended once everything rendered has been sent, letting the
+ * transmitter go, and drained again later.
+ */
+final class RenderPipeline {
+
+    static final int DEFAULT_BUFFER_BYTES = 8 * 1024;
+
+    /**
+     * Totals since the plugin loaded
+     */
+    static final class Stats {
+        long streams;
+        long buffers;
+        long bytes;
+        long transmitNs;
+        // Transmit stage waiting for the renderer while a stream was open
+        long transmitIdleNs;
+        // Render stage waiting for a free buffer
+        long renderStallNs;
+
+        Stats copy() {
+            Stats stats = new Stats();
+            stats.streams = streams;
+            stats.buffers = buffers;
+            stats.bytes = bytes;
+            stats.transmitNs = transmitNs;
+            stats.transmitIdleNs = transmitIdleNs;
+            stats.renderStallNs = renderStallNs;
+            return stats;
+        }
+
+        /**
+         * Share of streaming time the transmit stage was writing, 0-1
+         */
+        double saturation() {
+            long total = transmitNs + transmitIdleNs;
+            return total == 0 ? 0 : (double) transmitNs / total;
+        }
+    }
+
+    private final byte[][] buffers;
+    private final int[] lengths = new int[2];
+    private final boolean[] ready = new boolean[2];
+    private final Stats stats = new Stats();
+
+    private boolean open = false;
+    private boolean closed = false;
+    private String failure = null;
+    private boolean transmitWaiting = false;
+    private boolean suspended = false;
+    // Buffer the renderer is filling, and the next one the transmitter takes
+    private int fill = 0;
+    private int take = 0;
+
+    RenderPipeline(int bufferBytes) {
+        buffers = new byte[][] { new byte[bufferBytes], new byte[bufferBytes] };
+    }
+
+    /**
+     * Start a stream. The previous one must have been drained.
+     */
+    synchronized void open() {
+        open = true;
+        closed = false;
+        failure = null;
+        fill = 0;
+        take = 0;
+        lengths[0] = lengths[1] = 0;
+        ready[0] = ready[1] = false;
+        stats.streams++;
+    }
+
+    /**
+     * Render side: add bytes, handing buffers over as they fill. After
+     * the transmit side has failed the bytes are dropped, the failure is
+     * reported when the job completes.
+     */
+    void write(byte[] data, int offset, int length) {
+        synchronized (this) {
+            while (length > 0) {
+                if (!open || closed || failure != null) return;
+                if (ready[fill] && !awaitFree()) return;
+                byte[] buffer = buffers[fill];
+                int n = Math.min(length, buffer.length - lengths[fill]);
+                System.arraycopy(data, offset, buffer, lengths[fill], n);
+                lengths[fill] += n;
+                offset += n;
+                length -= n;
+                if (lengths[fill] == buffer.length) handOver();
+            }
+            // Don't keep an idle printer waiting for a buffer to fill
+            if (transmitWaiting && lengths[fill] > 0 && !ready[fill]) handOver();
+        }
+    }
+
+    /**
+     * Render side: the job is complete, hand over what is left
+     */
+    synchronized void close() {
+        if (!open || closed) return;
+        // A buffer still in flight holds nothing new
+        if (!ready[fill] && lengths[fill] > 0 && failure == null) handOver();
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Either side: give up on the stream
+     */
+    synchronized void abort(String reason) {
+        if (!open) return;
+        if (failure == null) failure = reason;
+        notifyAll();
+    }
+
+    /**
+     * Transmit side: write buffers as they arrive until the renderer
+     * closes the stream. Throws if it is aborted, or if no data arrives
+     * within idleTimeoutMs.
+     */
+    void drain(PrinterTransport target, long idleTimeoutMs) throws IOException {
+        drain(target, idleTimeoutMs, 0, null);
+    }
+
+    /**
+     * As drain, but while no data arrives idle runs every idleCheckMs, so
+     * the owner can ask the renderer to suspend the stream. Returns false
+     * if it was suspended; the stream stays open for another drain.
+     */
+    boolean drain(PrinterTransport target, long idleTimeoutMs, long idleCheckMs, Runnable idle) throws IOException {
+        boolean suspendedHere = false;
+        try {
+            synchronized (this) {
+                suspended = false;
+            }
+            long waitStart = System.nanoTime();
+            long nextCheck = waitStart + idleCheckMs * 1000000L;
+            while (true) {
+                byte[] data;
+                boolean checkIdle = false;
+                synchronized (this) {
+                    long deadline = waitStart + idleTimeoutMs * 1000000L;
+                    // Bytes written while the transmitter was busy go now, not when the buffer fills
+                    if (!ready[take] && !ready[fill] && lengths[fill] > 0) handOver();
+                    long idleStart = System.nanoTime();
+                    while (!ready[take] && !closed && failure == null && !suspended) {
+                        long now = System.nanoTime();
+                        long remaining = deadline - now;
+                        if (remaining <= 0) {
+                            failure = "Job stopped rendering";
+                            break;
+                        }
+                        if (idle != null && now >= nextCheck) {
+                            checkIdle = true;
+                            break;
+                        }
+                        transmitWaiting = true;
+                        long until = idle != null ? Math.min(remaining, nextCheck - now) : remaining;
+                        try {
+                            wait(Math.max(1, until / 1000000L));
+                        } catch (InterruptedException e) {
+                            failure = "Interrupted";
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    transmitWaiting = false;
+                    stats.transmitIdleNs += System.nanoTime() - idleStart;
+                    if (failure != null) {
+                        notifyAll();
+                        throw new IOException(failure);
+                    }
+                    if (suspended && !ready[take]) {
+                        suspendedHere = true;
+                        return false;
+                    }
+                    if (checkIdle) {
+                        data = null;
+                    } else if (!ready[take]) {
+                        return true;
+                    } else {
+                        data = lengths[take] == buffers[take].length
+                            ? buffers[take]
+                            : Arrays.copyOf(buffers[take], lengths[take]);
+                    }
+                }
+                if (data == null) {
+                    // Outside the lock, the owner may call back into the pipeline
+                    nextCheck = System.nanoTime() + idleCheckMs * 1000000L;
+                    idle.run();
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    target.write(data);
+                } catch (IOException e) {
+                    abort(e.getMessage() != null ? e.getMessage() : "Transport failed");
+                    throw e;
+                }
+
+                synchronized (this) {
+                    stats.transmitNs += System.nanoTime() - start;
+                    stats.buffers++;
+                    stats.bytes += data.length;
+                    lengths[take] = 0;
+                    ready[take] = false;
+                    take ^= 1;
+                    notifyAll();
+                }
+                waitStart = System.nanoTime();
+                nextCheck = waitStart + idleCheckMs * 1000000L;
+            }
+        } finally {
+            synchronized (this) {
+                if (!suspendedHere) open = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Render side: pause the stream so the transmitter can let other jobs
+     * print, if everything rendered so far has been sent. The renderer
+     * must call this between writes, and false means carry on as before.
+     */
+    synchronized boolean suspend() {
+        if (!open || closed || failure != null || ready[0] || ready[1] || lengths[fill] > 0) return false;
+        suspended = true;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Why the stream failed, or null
+     */
+    synchronized String failure() {
+        return failure;
+    }
+
+    synchronized Stats stats() {
+        return stats.copy();
+    }
+
+    // Caller holds the lock
+    private void handOver() {
+        ready[fill] = true;
+        transmitWaiting = false;
+        fill ^= 1;
+        notifyAll();
+    }
+
+    // Caller holds the lock; false if the stream failed while waiting
+    private boolean awaitFree() {
+        long start = System.nanoTime();
+        while (ready[fill] && open && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = "Interrupted";
+            }
+        }
+        stats.renderStallNs += System.nanoTime() - start;
+        return !ready[fill];
+    }
+}
@@ -0,0 +1,229 @@
+package com.kebabpos.terminal;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outbox kept in a SQLite database in write-ahead logging mode
+ *
+ * WAL lets the sync thread read due orders while the UI thread is
+ * appending new ones, and a commit is one append to the log instead of
+ * rewriting the page and a rollback journal. Inserts and send outcomes
+ * are each applied as one transaction per batch, so a rush of orders
+ * costs one fsync per batch rather than one per order.
+ */
+final class SqliteOutboxStore extends SQLiteOpenHelper implements OutboxStore {
+
+    private static final String DATABASE = "order_outbox.db";
+    private static final int VERSION = 1;
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SYNCED = 1;
+    private static final int STATE_FAILED = 2;
+
+    // Synced rows are only kept for status and duplicate checks
+    private static final long KEEP_SYNCED_MS = 24 * 60 * 60 * 1000L;
+
+    SqliteOutboxStore(Context context) {
+        super(context, DATABASE, null, VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE outbox ("
+            + "idempotency_key TEXT PRIMARY KEY, "
+            + "order_ref TEXT, "
+            + "payload TEXT NOT NULL, "
+            + "created_at INTEGER NOT NULL, "
+            + "state INTEGER NOT NULL DEFAULT 0, "
+            + "attempts INTEGER NOT NULL DEFAULT 0, "
+            + "next_attempt_at INTEGER NOT NULL DEFAULT 0, "
+            + "last_error TEXT, "
+            + "synced_at INTEGER)");
+        db.execSQL("CREATE INDEX outbox_due ON outbox (state, next_attempt_at, created_at)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one version so far
+    }
+
+    @Override
+    public int insert(List<OutboxEntry> entries) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(
+            "INSERT OR IGNORE INTO outbox (idempotency_key, order_ref, payload, created_at, next_attempt_at) "
+                + "VALUES (?, ?, ?, ?, ?)");
+        int added = 0;
+        db.beginTransaction();
+        try {
+            for (OutboxEntry entry : entries) {
+                insert.clearBindings();
+                insert.bindString(1, entry.idempotencyKey);
+                if (entry.orderRef != null) insert.bindString(2, entry.orderRef);
+                else insert.bindNull(2);
+                insert.bindString(3, entry.payload);
+                insert.bindLong(4, entry.createdAt);
+                insert.bindLong(5, entry.createdAt);
+                if (insert.executeInsert() != -1) added++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        return added;
+    }
+
+    @Override
+    public List<OutboxEntry> due(long now, int limit) {
+        List<OutboxEntry> entries = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery(
+            "SELECT idempotency_key, order_ref, payload, created_at, attempts FROM outbox "
+                + "WHERE state = " + STATE_PENDING + " AND next_attempt_at <= ? "
+                + "ORDER BY created_at LIMIT " + limit,
+            new String[] { String.valueOf(now) });
+        try {
+            while (cursor.moveToNext()) {
+                entries.add(new OutboxEntry(
+                    cursor.getString(0),
+                    cursor.isNull(1) ? null : cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.getLong(3),
+                    cursor.getInt(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    @Override
+    public void complete(List<Result> results, long now) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement update = db.compileStatement(
+            "UPDATE outbox SET state = ?, attempts = ?, next_attempt_at = ?, last_error = ?, synced_at = ? "
+                + "WHERE idempotency_key = ?");
+        db.beginTransaction();
+        try {
+            for (Result result : results) {
+                update.clearBindings();
+                int state = result.outcome == Result.SYNCED ? STATE_SYNCED
+                    : result.outcome == Result.FAILED ? STATE_FAILED : STATE_PENDING;
+                update.bindLong(1, state);
+                update.bindLong(2, result.attempts);
+                update.bindLong(3, result.nextAttemptAt);
+                if (result.error != null) update.bindString(4, result.error);
+                else update.bindNull(4);
+                if (state == STATE_SYNCED) update.bindLong(5, now);
+                else update.bindNull(5);
+                update.bindString(6, result.idempotencyKey);
+                update.executeUpdateDelete();
+            }
+            db.delete("outbox", "state = " + STATE_SYNCED + " AND synced_at < ?",
+                new String[] { String.valueOf(now - KEEP_SYNCED_MS) });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            update.close();
+        }
+    }
+
+    @Override
+    public void resetBackoff(long now) {
+        getWritableDatabase().execSQL(
+            "UPDATE outbox SET next_attempt_at = ? WHERE state = " + STATE_PENDING + " AND next_attempt_at > ?",
+            new Object[] { now, now });
+    }
+
+    @Override
+    public long nextAttemptAt() {
+        Cursor cursor = getReadableDatabase().rawQuery(
+            "SELECT MIN(next_attempt_at) FROM outbox WHERE state = " + STATE_PENDING, null);
+        try {
+            return cursor.moveToNext() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public List<OutboxEntry> failed(int limit) {
+        List<OutboxEntry> entries = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery(
+            "SELECT idempotency_key, order_ref, payload, created_at, attempts, last_error FROM outbox "
+                + "WHERE state = " + STATE_FAILED + " ORDER BY created_at LIMIT " + limit, null);
+        try {
+            while (cursor.moveToNext()) {
+                entries.add(new OutboxEntry(
+                    cursor.getString(0),
+                    cursor.isNull(1) ? null : cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.getLong(3),
+                    cursor.getInt(4),
+                    cursor.isNull(5) ? null : cursor.getString(5)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    @Override
+    public int requeueFailed(List<String> keys, long now) {
+        SQLiteDatabase db = getWritableDatabase();
+        String set = "UPDATE outbox SET state = " + STATE_PENDING + ", attempts = 0, next_attempt_at = ? "
+            + "WHERE state = " + STATE_FAILED;
+        if (keys == null) {
+            SQLiteStatement update = db.compileStatement(set);
+            try {
+                update.bindLong(1, now);
+                return update.executeUpdateDelete();
+            } finally {
+                update.close();
+            }
+        }
+        SQLiteStatement update = db.compileStatement(set + " AND idempotency_key = ?");
+        int queued = 0;
+        db.beginTransaction();
+        try {
+            for (String key : keys) {
+                update.clearBindings();
+                update.bindLong(1, now);
+                update.bindString(2, key);
+                queued += update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            update.close();
+        }
+        return queued;
+    }
+
+    @Override
+    public int[] counts() {
+        int[] counts = new int[3];
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT state, COUNT(*) FROM outbox GROUP BY state", null);
+        try {
+            while (cursor.moveToNext()) {
+                int state = cursor.getInt(0);
+                if (state >= 0 && state < counts.length) counts[state] = cursor.getInt(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,100 @@
+package com.kebabpos.terminal;
+
+/**
+ * A job being sent while it renders, and the key it prints under
+ *
+ * The transmit side may be done (or have failed) before the job closes,
+ * so whichever of transmitted and close comes second settles it. A job
+ * keyed at printerInit claims its key before anything is sent. An
+ * unkeyed one streams all the same; a key that first comes with the cut
+ * is claimed then, and if it turns out to be a duplicate the caller
+ * drops what hasn't been sent yet and the call gets the original job's
+ * outcome.
+ */
+final class StreamedJob {
+
+    interface Finish {
+        /**
+         * error is null when the job was sent
+         */
+        void finished(Exception error);
+    }
+
+    private final IdempotencyKeys keys;
+    private String key;
+    private JobHistory.Job job;
+    private int copies = 1;
+    private Finish finish;
+    private boolean done = false;
+    private Exception error;
+
+    private StreamedJob(IdempotencyKeys keys, String key) {
+        this.keys = keys;
+        this.key = key;
+    }
+
+    /**
+     * A stream for the open job, or null if its key is a duplicate: the
+     * job is then rendered whole and caught when it is submitted
+     */
+    static StreamedJob open(IdempotencyKeys keys, String key, long now) {
+        if (key != null && !keys.claimForStream(key, now)) return null;
+        return new StreamedJob(keys, key);
+    }
+
+    /**
+     * The job has closed. False if cutKey is a duplicate: the waiter gets
+     * the original job's outcome and finish is never called.
+     */
+    boolean close(JobHistory.Job job, int copies, String cutKey, long now, IdempotencyKeys.Waiter duplicate,
+                  Finish finish) {
+        boolean lateKey;
+        synchronized (this) {
+            this.job = job;
+            this.copies = copies;
+            lateKey = key == null && cutKey != null;
+        }
+        if (lateKey && !keys.claim(cutKey, now, duplicate)) return false;
+
+        boolean finished;
+        Exception failure;
+        synchronized (this) {
+            if (lateKey) key = cutKey;
+            this.finish = finish;
+            finished = done;
+            failure = error;
+        }
+        if (finished) {
+            if (lateKey) keys.settle(cutKey, failure == null ? null : String.valueOf(failure.getMessage()));
+            finish.finished(failure);
+        }
+        return true;
+    }
+
+    /**
+     * Everything has been sent, or the stream failed
+     */
+    void transmitted(Exception error) {
+        String settleKey;
+        Finish then;
+        synchronized (this) {
+            done = true;
+            this.error = error;
+            settleKey = key;
+            then = finish;
+        }
+        if (settleKey != null) keys.settle(settleKey, error == null ? null : String.valueOf(error.getMessage()));
+        if (then != null) then.finished(error);
+    }
+
+    /**
+     * Attached by close, before the stream's last buffer
+     */
+    synchronized JobHistory.Job job() {
+        return job;
+    }
+
+    synchronized int copies() {
+        return copies;
+    }
+}
@@ -0,0 +1,92 @@
+package com.kebabpos.terminal;
+
+import android.os.Binder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * The woyou service's ICallback on a plain Binder
+ *
+ * The service calls back onRunResult, onReturnString, onRaiseException
+ * and onPrintResult, transactions 1 to 4 of the AIDL interface; they are
+ * decoded here. Each print job's buffer transaction gets an instance of
+ * its own that reports to the completions for that job only. One more
+ * per service connection goes with loose calls (alignment, status
+ * queries) and only logs their failures, so they are never blamed on a
+ * queued job.
+ */
+final class SunmiAidlCallback extends Binder {
+
+    static final String DESCRIPTOR = "woyou.aidlservice.jiuiv5.ICallback";
+    private static final int ON_RUN_RESULT = FIRST_CALL_TRANSACTION;
+    private static final int ON_RETURN_STRING = FIRST_CALL_TRANSACTION + 1;
+    private static final int ON_RAISE_EXCEPTION = FIRST_CALL_TRANSACTION + 2;
+    private static final int ON_PRINT_RESULT = FIRST_CALL_TRANSACTION + 3;
+
+    private static final String TAG = "SunmiAidlCallback";
+
+    // Both null for loose calls
+    private final SunmiCompletions completions;
+    private final SunmiCompletions.Pending job;
+
+    SunmiAidlCallback(SunmiCompletions completions, SunmiCompletions.Pending job) {
+        this.completions = completions;
+        this.job = job;
+    }
+
+    /**
+     * This binder as the service's ICallback type, for passing through
+     * reflective calls, or null if the app has no ICallback stub
+     */
+    Object asCallback() {
+        try {
+            Class<?> stub = Class.forName("woyou.aidlservice.jiuiv5.ICallback$Stub");
+            return stub.getMethod("asInterface", android.os.IBinder.class).invoke(null, this);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        if (code == INTERFACE_TRANSACTION) {
+            reply.writeString(DESCRIPTOR);
+            return true;
+        }
+        if (code < ON_RUN_RESULT || code > ON_PRINT_RESULT) return super.onTransact(code, data, reply, flags);
+        data.enforceInterface(DESCRIPTOR);
+        switch (code) {
+            case ON_RUN_RESULT:
+                if (data.readInt() == 0) raised("Printer rejected a command");
+                break;
+            case ON_RAISE_EXCEPTION: {
+                int error = data.readInt();
+                raised(data.readString() + " (" + error + ")");
+                break;
+            }
+            case ON_PRINT_RESULT: {
+                // 0 printed, anything else failed
+                int result = data.readInt();
+                String message = data.readString();
+                if (completions != null) completions.result(job, result == 0, message, SystemClock.elapsedRealtime());
+                break;
+            }
+            case ON_RETURN_STRING:
+            default:
+                // Answers to queries, nothing waits on them here
+                break;
+        }
+        if (reply != null) reply.writeNoException();
+        return true;
+    }
+
+    private void raised(String message) {
+        if (completions != null) {
+            completions.raised(job, message);
+        } else {
+            Log.w(TAG, "Sunmi command failed: " + message);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sunmi jobs sent to the printer service and waiting for its print result
+ *
+ * Each job's transaction carries a callback of its own, so errors and
+ * the result arrive tagged with the job they belong to, even while the
+ * next job is being sent behind one still printing. A job with no result
+ * within the timeout was dropped by the service and fails; a result that
+ * turns up for it later is ignored rather than settling another job.
+ * Timestamps give the real time from first command to paper.
+ */
+final class SunmiCompletions {
+
+    interface Listener {
+        /**
+         * The printer's outcome, error is null if the job printed.
+         * printMs runs from the job's first command to its result.
+         * confirmed is false for a job sent without a result, which may
+         * still have printed.
+         */
+        void completed(String error, long printMs, boolean confirmed);
+    }
+
+    static final class Pending {
+        final String orderId;
+        final long startedAt;
+        final Listener listener;
+        long sentAt = -1;
+        long completedAt = -1;
+        String error = null;
+
+        Pending(String orderId, long startedAt, Listener listener) {
+            this.orderId = orderId;
+            this.startedAt = startedAt;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Totals since the plugin loaded
+     */
+    static final class Stats {
+        long confirmed;
+        long failed;
+        long dropped;
+        int pending;
+        long lastPrintMs;
+        long maxPrintMs;
+        long totalPrintMs;
+
+        long averagePrintMs() {
+            long finished = confirmed + failed;
+            return finished == 0 ? 0 : totalPrintMs / finished;
+        }
+    }
+
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final Stats stats = new Stats();
+
+    /**
+     * A job is about to be sent; the listener gets the printer's outcome
+     */
+    synchronized Pending expect(String orderId, long now, Listener listener) {
+        Pending job = new Pending(orderId, now, listener);
+        pending.addLast(job);
+        return job;
+    }
+
+    /**
+     * Every command of the job has been handed to the service
+     */
+    synchronized void sent(Pending job, long now) {
+        job.sentAt = now;
+    }
+
+    /**
+     * The job never reached the printer; its listener is not called
+     */
+    synchronized void cancel(Pending job) {
+        pending.remove(job);
+    }
+
+    /**
+     * The service rejected one of the job's commands or raised an error
+     * while printing it. Ignored once the job is settled.
+     */
+    synchronized void raised(Pending job, String message) {
+        if (pending.contains(job) && job.error == null) job.error = message != null ? message : "Printer error";
+    }
+
+    /**
+     * The job's print result from the service. Ignored if the job is no
+     * longer waiting, e.g. the late result of one that already timed out.
+     */
+    void result(Pending job, boolean success, String message, long now) {
+        synchronized (this) {
+            if (!pending.remove(job)) return;
+            if (!success && job.error == null) job.error = message != null ? message : "Print failed";
+            finish(job, now);
+        }
+        job.listener.completed(job.error, job.completedAt - job.startedAt, true);
+    }
+
+    /**
+     * Fail jobs sent more than timeoutMs ago without a result
+     */
+    void expire(long now, long timeoutMs) {
+        List<Pending> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Pending> it = pending.iterator();
+            while (it.hasNext()) {
+                Pending job = it.next();
+                if (job.sentAt < 0 || now - job.sentAt < timeoutMs) continue;
+                it.remove();
+                job.error = "Printer did not confirm the job";
+                job.completedAt = now;
+                stats.dropped++;
+                expired.add(job);
+            }
+        }
+        for (Pending job : expired) job.listener.completed(job.error, job.completedAt - job.startedAt, false);
+    }
+
+    /**
+     * The service went away, nothing waiting will get a result
+     */
+    void failAll(String reason, long now) {
+        List<Pending> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(pending);
+            pending.clear();
+            stats.dropped += failed.size();
+        }
+        for (Pending job : failed) job.listener.completed(reason, now - job.startedAt, job.sentAt < 0);
+    }
+
+    /**
+     * When the first sent job times out, or -1 if none is waiting
+     */
+    synchronized long nextExpiry(long timeoutMs) {
+        long next = -1;
+        for (Pending job : pending) {
+            if (job.sentAt >= 0 && (next < 0 || job.sentAt + timeoutMs < next)) next = job.sentAt + timeoutMs;
+        }
+        return next;
+    }
+
+    synchronized Stats stats() {
+        Stats copy = new Stats();
+        copy.confirmed = stats.confirmed;
+        copy.failed = stats.failed;
+        copy.dropped = stats.dropped;
+        copy.pending = pending.size();
+        copy.lastPrintMs = stats.lastPrintMs;
+        copy.maxPrintMs = stats.maxPrintMs;
+        copy.totalPrintMs = stats.totalPrintMs;
+        return copy;
+    }
+
+    // Caller holds the lock
+    private void finish(Pending job, long now) {
+        job.completedAt = now;
+        long printMs = now - job.startedAt;
+        if (job.error == null) stats.confirmed++;
+        else stats.failed++;
+        stats.lastPrintMs = printMs;
+        stats.totalPrintMs += printMs;
+        if (printMs > stats.maxPrintMs) stats.maxPrintMs = printMs;
+    }
+}
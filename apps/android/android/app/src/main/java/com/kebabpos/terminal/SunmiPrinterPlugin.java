@@ -6,9 +6,6 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
 import android.content.pm.PackageManager;
 import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbDeviceConnection;
-import android.hardware.usb.UsbEndpoint;
-import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 import android.util.Log;
 
@@ -23,13 +20,21 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Universal Printer Plugin for Android
@@ -54,37 +59,166 @@ public class SunmiPrinterPlugin extends Plugin {
     private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
     // Printer types
-    private enum PrinterType { NONE, SUNMI, SUNMI_AIDL, BLUETOOTH, USB }
+    // SUNMI_RAW is the built-in printer fed ESC/POS bytes, it takes the encoder path
+    private enum PrinterType { NONE, SUNMI, SUNMI_AIDL, SUNMI_RAW, BLUETOOTH, BLE, USB }
     
     private PrinterType activePrinterType = PrinterType.NONE;
     private Object sunmiPrinter = null;
     private Object sunmiAidlService = null;
     private BluetoothSocket bluetoothSocket = null;
     private OutputStream bluetoothOutputStream = null;
-    private UsbDeviceConnection usbConnection = null;
-    private UsbEndpoint usbEndpoint = null;
+    private BlePrinterConnection blePrinter = null;
+    // Open USB printers by device name; several can stay open, jobs go to activeUsb
+    private final Map<String, UsbPrinterConnection> usbPrinters = new LinkedHashMap<>();
+    private String activeUsb = null;
+    private PrinterTransport transport = null;
+    private boolean sunmiRawMode = false;
     
     private boolean isConnected = false;
+    private PrinterProfile printerProfile = PrinterProfile.DEFAULT;
+    // Full-width logos dither across the spare cores
+    private final ParallelDither dither = ParallelDither.forDevice();
+    private final SymbolCache symbolCache = new SymbolCache(32, 256 * 1024);
+    private final EscPosEncoder escPos = new EscPosEncoder();
+
+    // Full-graphics mode: ESC/POS text is rendered to raster bands instead
+    private BandedRasterRenderer graphicsRenderer = null;
+    private int graphicsAlignment = 0;
+    // Size from the last setFontSize, for text printed without one
+    private int textFontSize = 24;
+
+    // Most copies of one job; more is a caller bug, not a docket anyone wants
+    private static final int MAX_COPIES = 10;
+    // Error code of a reprint with no retained job to replay
+    private static final String NOT_RETAINED = "NOT_RETAINED";
+
+
+    // Head settings per printer address, stored on the device; those of the connected printer
+    private static final String THERMAL_PREFS = "printer_thermal";
+    private volatile ThermalSettings activeThermal = ThermalSettings.FACTORY;
+
+    // Rendered jobs kept for reprints (ESC/POS bytes or recorded Sunmi calls), at most 1MB of bytes:
+    // text receipts of a few KB fit all 20, jobs at the 256KB retention limit only 4
+    private final JobHistory jobHistory = new JobHistory(20, 1024 * 1024);
+
+    // Submission keys of recent jobs, so a double tap or JS retry doesn't print twice
+    private final IdempotencyKeys idempotencyKeys = new IdempotencyKeys(64, 2 * 60 * 1000);
+
+    // Last docket printed per order and printer, for amendment dockets
+    private final DocketLedger docketLedger = new DocketLedger(200);
+    // The open Sunmi job, recorded for reprints; ESC/POS jobs are in escPosJobs
+    private List<PrinterCommand> jobCommands = null;
+    private String jobOrderId = null;
+    private String jobKind = null;
+    private String jobKey = null;
+    private int jobDeadlineMs = 0;
+    // Order of the job the scheduler is sending, for trace events
+    private volatile String sendingOrderId = null;
+
+    // Recent print events, exported with dumpTrace when an order fails
+    private final PrintTrace printTrace = new PrintTrace(2048, PrintTrace.LEVEL_INFO);
+
+    // Sunmi jobs sent and waiting for the printer to report the outcome
+    private final SunmiCompletions sunmiCompletions = new SunmiCompletions();
+    private static final long SUNMI_CONFIRM_TIMEOUT_MS = 30 * 1000;
+    // For AIDL calls outside a job, made once per service connection
+    private Object sunmiCallback = null;
+    // Set on the scheduler worker while it sends a job's buffer transaction: that job's own callback
+    private Object sunmiJobCallback = null;
+    private final Map<String, java.lang.reflect.Method> aidlMethods = new ConcurrentHashMap<>();
+    // PrinterX transaction result listener type, found on first use (null if the SDK has none we can implement)
+    private Class<?> printerXResultType = null;
+    private java.lang.reflect.Method printerXPrintTrans = null;
+    private boolean printerXChecked = false;
+
+    // Batch windows and confirmation timeouts; the thread starts with the first one
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    // Job JS sends in chunks (beginJob/appendJob/commitJob), encoded on a thread of its own
+    private final java.util.concurrent.ExecutorService chunkRenderer = Executors.newSingleThreadExecutor();
+    private volatile ChunkedJob chunkedJob = null;
+    private int nextChunkedJobId = 1;
+
+    // Finished jobs wait here and go to the transport one at a time, kitchen first
+    private final PrintScheduler scheduler = new PrintScheduler(PrintScheduler.DEFAULT_AGING_MS);
+
+    // ESC/POS jobs: streamed while they render when the printer is idle, batched in rush mode
+    private final EscPosJobs escPosJobs = new EscPosJobs(new EscPosJobs.Host() {
+        @Override
+        public long now() {
+            return android.os.SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void write(PrinterTransport target, byte[] data) throws IOException {
+            writeTransport(target, data);
+        }
+
+        @Override
+        public void onRenderThread(Runnable task) {
+            getBridge().execute(task);
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void sending(String orderId) {
+            sendingOrderId = orderId;
+        }
+
+        @Override
+        public void streamSuspended() {
+            escPos.forgetPrinterState();
+        }
+
+        @Override
+        public byte[] jobHeader() {
+            return escPosPrinter.header(activeThermal.encode());
+        }
+
+        @Override
+        public int dotsPerLine() {
+            return printerProfile.dotsPerLine;
+        }
+    }, scheduler, idempotencyKeys, jobHistory, printTrace, RenderPipeline.DEFAULT_BUFFER_BYTES);
+    private final EscPosPrinter escPosPrinter = new EscPosPrinter(escPos, escPosJobs, data -> {
+        PrinterTransport target = transport;
+        sendNow(() -> writeTransport(target, data));
+    }, new PaintGlyphs(), this::trace);
+
+    // Printers found so far, changes are pushed to JS as they happen
+    private final PrinterRegistry printerRegistry = new PrinterRegistry(new PrinterRegistry.Listener() {
+        @Override
+        public void printerAdded(PrinterRegistry.Printer printer) {
+            notifyListeners("printerAdded", printerToJson(printer));
+        }
+
+        @Override
+        public void printerRemoved(PrinterRegistry.Printer printer) {
+            JSObject data = new JSObject();
+            data.put("address", printer.address);
+            data.put("type", printer.type);
+            notifyListeners("printerRemoved", data);
+            if ("usb".equals(printer.type)) closeUsb(printer.address);
+        }
+    });
+    private PrinterDiscovery printerDiscovery = null;
 
     // ESC/POS Commands
-    private static final byte[] ESC_INIT = { 0x1B, 0x40 };
-    private static final byte[] ESC_ALIGN_LEFT = { 0x1B, 0x61, 0x00 };
-    private static final byte[] ESC_ALIGN_CENTER = { 0x1B, 0x61, 0x01 };
-    private static final byte[] ESC_ALIGN_RIGHT = { 0x1B, 0x61, 0x02 };
-    private static final byte[] ESC_BOLD_ON = { 0x1B, 0x45, 0x01 };
-    private static final byte[] ESC_BOLD_OFF = { 0x1B, 0x45, 0x00 };
-    private static final byte[] ESC_DOUBLE_HEIGHT = { 0x1B, 0x21, 0x10 };
-    private static final byte[] ESC_DOUBLE_WIDTH = { 0x1B, 0x21, 0x20 };
-    private static final byte[] ESC_DOUBLE_SIZE = { 0x1B, 0x21, 0x30 };
-    private static final byte[] ESC_NORMAL_SIZE = { 0x1B, 0x21, 0x00 };
-    private static final byte[] ESC_CUT_PAPER = { 0x1D, 0x56, 0x00 };
-    private static final byte[] ESC_FEED_LINES = { 0x1B, 0x64 };
     private static final byte[] ESC_OPEN_DRAWER = { 0x1B, 0x70, 0x00, 0x19, (byte)0xFA };
+    // Feed and cut after an aborted streamed job
+    private static final byte[] ESC_ABORTED_JOB = { 0x1B, 0x64, 0x05, 0x1D, 0x56, 0x00 };
 
     @Override
     public void load() {
         super.load();
+        scheduler.start();
         autoConnect();
+        printerDiscovery = new PrinterDiscovery(getContext(), printerRegistry);
+        printerDiscovery.start();
     }
 
     /**
@@ -114,8 +248,11 @@ public class SunmiPrinterPlugin extends Plugin {
                     try {
                         Class<?> stubClass = Class.forName("woyou.aidlservice.jiuiv5.IWoyouService$Stub");
                         sunmiAidlService = stubClass.getMethod("asInterface", android.os.IBinder.class).invoke(null, service);
+                        aidlMethods.clear();
+                        sunmiCallback = new SunmiAidlCallback(null, null).asCallback();
                         activePrinterType = PrinterType.SUNMI_AIDL;
                         isConnected = true;
+                        applySunmiMode();
                         Log.i(TAG, "Sunmi AIDL service connected");
                         
                         JSObject ret = new JSObject();
@@ -130,8 +267,12 @@ public class SunmiPrinterPlugin extends Plugin {
                 @Override
                 public void onServiceDisconnected(android.content.ComponentName name) {
                     sunmiAidlService = null;
-                    if (activePrinterType == PrinterType.SUNMI_AIDL) {
+                    sunmiCallback = null;
+                    sunmiCompletions.failAll("Sunmi printer service disconnected", android.os.SystemClock.elapsedRealtime());
+                    if (activePrinterType == PrinterType.SUNMI_AIDL
+                            || (activePrinterType == PrinterType.SUNMI_RAW && sunmiPrinter == null)) {
                         activePrinterType = PrinterType.NONE;
+                        transport = null;
                         isConnected = false;
                     }
                     Log.i(TAG, "Sunmi AIDL service disconnected");
@@ -163,6 +304,7 @@ public class SunmiPrinterPlugin extends Plugin {
                         sunmiPrinter = args[0];
                         activePrinterType = PrinterType.SUNMI;
                         isConnected = true;
+                        applySunmiMode();
                         Log.i(TAG, "Sunmi printer ready: " + sunmiPrinter);
                         
                         JSObject ret = new JSObject();
@@ -192,7 +334,7 @@ public class SunmiPrinterPlugin extends Plugin {
         JSArray printers = new JSArray();
 
         // Check Sunmi (PrinterX SDK)
-        if (activePrinterType == PrinterType.SUNMI && sunmiPrinter != null) {
+        if (isSunmi() && sunmiPrinter != null) {
             JSObject sunmi = new JSObject();
             sunmi.put("name", "Sunmi Built-in Printer");
             sunmi.put("address", "sunmi");
@@ -201,54 +343,41 @@ public class SunmiPrinterPlugin extends Plugin {
             printers.put(sunmi);
         }
 
-        // List Bluetooth devices
-        try {
-            BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-            if (adapter != null && adapter.isEnabled()) {
-                if (ActivityCompat.checkSelfPermission(getContext(), Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-                    Set<BluetoothDevice> pairedDevices = adapter.getBondedDevices();
-                    for (BluetoothDevice device : pairedDevices) {
-                        JSObject bt = new JSObject();
-                        bt.put("name", device.getName() != null ? device.getName() : "Unknown");
-                        bt.put("address", device.getAddress());
-                        bt.put("type", "bluetooth");
-                        bt.put("connected", bluetoothSocket != null && bluetoothSocket.isConnected() 
-                            && device.getAddress().equals(bluetoothSocket.getRemoteDevice().getAddress()));
-                        printers.put(bt);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error listing Bluetooth devices", e);
+        // Bluetooth and USB printers come from the registry kept by discovery
+        printerDiscovery.refreshPaired();
+        printerRegistry.expire(android.os.SystemClock.elapsedRealtime());
+        for (PrinterRegistry.Printer printer : printerRegistry.list()) {
+            printers.put(printerToJson(printer));
         }
 
-        // List USB devices
-        try {
-            UsbManager usbManager = (UsbManager) getContext().getSystemService(android.content.Context.USB_SERVICE);
-            HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
-            for (UsbDevice device : deviceList.values()) {
-                // Filter for printer class (0x07)
-                if (device.getDeviceClass() == 7 || hasInterface(device, 7)) {
-                    JSObject usb = new JSObject();
-                    usb.put("name", device.getProductName() != null ? device.getProductName() : "USB Printer");
-                    usb.put("address", device.getDeviceName());
-                    usb.put("type", "usb");
-                    usb.put("connected", usbConnection != null);
-                    printers.put(usb);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error listing USB devices", e);
-        }
+        // Optionally look for unpaired printers, results arrive as printerAdded events
+        boolean scanning = call.getBoolean("scan", false) && printerDiscovery.scan();
 
         result.put("printers", printers);
+        result.put("scanning", scanning);
         call.resolve(result);
     }
 
-    private boolean hasInterface(UsbDevice device, int interfaceClass) {
-        for (int i = 0; i < device.getInterfaceCount(); i++) {
-            if (device.getInterface(i).getInterfaceClass() == interfaceClass) {
-                return true;
+    private JSObject printerToJson(PrinterRegistry.Printer printer) {
+        JSObject json = new JSObject();
+        json.put("name", printer.name);
+        json.put("address", printer.address);
+        json.put("type", printer.type);
+        json.put("connected", isConnectedTo(printer));
+        return json;
+    }
+
+    private boolean isConnectedTo(PrinterRegistry.Printer printer) {
+        if ("bluetooth".equals(printer.type)) {
+            return bluetoothSocket != null && bluetoothSocket.isConnected()
+                && printer.address.equals(bluetoothSocket.getRemoteDevice().getAddress());
+        }
+        if ("ble".equals(printer.type)) {
+            return blePrinter != null && printer.address.equals(blePrinter.address);
+        }
+        if ("usb".equals(printer.type)) {
+            synchronized (usbPrinters) {
+                return usbPrinters.containsKey(printer.address);
             }
         }
         return false;
@@ -261,7 +390,7 @@ public class SunmiPrinterPlugin extends Plugin {
 
         if ("sunmi".equals(address) || "sunmi".equals(type)) {
             // If already connected via PrinterX, resolve immediately
-            if (activePrinterType == PrinterType.SUNMI && sunmiPrinter != null) {
+            if (isSunmi() && sunmiPrinter != null) {
                 call.resolve();
                 return;
             }
@@ -279,6 +408,11 @@ public class SunmiPrinterPlugin extends Plugin {
             return;
         }
 
+        if ("ble".equals(type)) {
+            connectBle(address, call);
+            return;
+        }
+
         if ("usb".equals(type)) {
             connectUsb(address, call);
             return;
@@ -301,15 +435,28 @@ public class SunmiPrinterPlugin extends Plugin {
                 return;
             }
 
+            if (device.getType() == BluetoothDevice.DEVICE_TYPE_LE) {
+                connectBle(address, call);
+                return;
+            }
+
             // Close existing connection
             disconnectBluetooth();
+            disconnectBle();
 
             bluetoothSocket = device.createRfcommSocketToServiceRecord(SPP_UUID);
             bluetoothSocket.connect();
             bluetoothOutputStream = bluetoothSocket.getOutputStream();
+            final OutputStream out = bluetoothOutputStream;
+            transport = data -> {
+                out.write(data);
+                out.flush();
+            };
             
             activePrinterType = PrinterType.BLUETOOTH;
             isConnected = true;
+            escPos.reset();
+            applyThermalSettings();
             
             Log.i(TAG, "Connected to Bluetooth printer: " + device.getName());
             
@@ -326,6 +473,47 @@ public class SunmiPrinterPlugin extends Plugin {
         }
     }
 
+    private void connectBle(String address, PluginCall call) {
+        try {
+            BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+            if (adapter == null) {
+                call.reject("Bluetooth not available");
+                return;
+            }
+            if (ActivityCompat.checkSelfPermission(getContext(), Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+                call.reject("Bluetooth permission not granted");
+                return;
+            }
+            BluetoothDevice device = adapter.getRemoteDevice(address);
+
+            disconnectBluetooth();
+            disconnectBle();
+
+            blePrinter = BlePrinterConnection.open(getContext(), device);
+            transport = blePrinter;
+
+            activePrinterType = PrinterType.BLE;
+            isConnected = true;
+            escPos.reset();
+            applyThermalSettings();
+
+            Log.i(TAG, "Connected to BLE printer: " + device.getName() + ", " + blePrinter.payloadSize() + " byte packets");
+
+            JSObject ret = new JSObject();
+            ret.put("connected", true);
+            ret.put("type", "ble");
+            ret.put("name", device.getName());
+            ret.put("address", address);
+            ret.put("packetSize", blePrinter.payloadSize());
+            notifyListeners("printerConnected", ret);
+
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e(TAG, "BLE connection failed", e);
+            call.reject("Failed to connect: " + e.getMessage(), e);
+        }
+    }
+
     private void connectUsb(String deviceName, PluginCall call) {
         try {
             UsbManager usbManager = (UsbManager) getContext().getSystemService(android.content.Context.USB_SERVICE);
@@ -341,27 +529,24 @@ public class SunmiPrinterPlugin extends Plugin {
                 return;
             }
 
-            disconnectUsb();
-
-            usbConnection = usbManager.openDevice(device);
-            UsbInterface intf = device.getInterface(0);
-            usbConnection.claimInterface(intf, true);
-
-            for (int i = 0; i < intf.getEndpointCount(); i++) {
-                UsbEndpoint ep = intf.getEndpoint(i);
-                if (ep.getDirection() == android.hardware.usb.UsbConstants.USB_DIR_OUT) {
-                    usbEndpoint = ep;
-                    break;
-                }
+            // Other USB printers stay open, reconnecting to an open one reuses it
+            UsbPrinterConnection printer;
+            synchronized (usbPrinters) {
+                printer = usbPrinters.get(deviceName);
             }
-
-            if (usbEndpoint == null) {
-                call.reject("No output endpoint found");
-                return;
+            if (printer == null) {
+                printer = UsbPrinterConnection.open(usbManager, device);
+                synchronized (usbPrinters) {
+                    usbPrinters.put(deviceName, printer);
+                }
             }
+            activeUsb = deviceName;
+            transport = printer;
 
             activePrinterType = PrinterType.USB;
             isConnected = true;
+            escPos.reset();
+            applyThermalSettings();
             
             Log.i(TAG, "Connected to USB printer: " + device.getProductName());
             
@@ -369,6 +554,8 @@ public class SunmiPrinterPlugin extends Plugin {
             ret.put("connected", true);
             ret.put("type", "usb");
             ret.put("name", device.getProductName());
+            ret.put("address", deviceName);
+            ret.put("bidirectional", printer.canRead());
             notifyListeners("printerConnected", ret);
             
             call.resolve(ret);
@@ -380,13 +567,31 @@ public class SunmiPrinterPlugin extends Plugin {
 
     @PluginMethod
     public void disconnect(PluginCall call) {
+        // With an address only that printer is closed
+        String address = call.getString("address");
+        if (address != null) {
+            if (closeUsb(address)) {
+                call.resolve();
+            } else if (bluetoothSocket != null && address.equals(bluetoothSocket.getRemoteDevice().getAddress())) {
+                boolean active = activePrinterType == PrinterType.BLUETOOTH;
+                disconnectBluetooth();
+                if (active) markDisconnected();
+                call.resolve();
+            } else if (blePrinter != null && address.equals(blePrinter.address)) {
+                boolean active = activePrinterType == PrinterType.BLE;
+                disconnectBle();
+                if (active) markDisconnected();
+                call.resolve();
+            } else {
+                call.reject("No printer connected at " + address);
+            }
+            return;
+        }
         disconnectBluetooth();
+        disconnectBle();
         disconnectUsb();
         // Keep Sunmi connected if available
-        if (activePrinterType != PrinterType.SUNMI) {
-            activePrinterType = PrinterType.NONE;
-            isConnected = false;
-        }
+        if (!isSunmi()) markDisconnected();
         call.resolve();
     }
 
@@ -399,14 +604,61 @@ public class SunmiPrinterPlugin extends Plugin {
         }
         bluetoothOutputStream = null;
         bluetoothSocket = null;
+        if (activePrinterType == PrinterType.BLUETOOTH) transport = null;
+    }
+
+    private void disconnectBle() {
+        if (blePrinter != null) blePrinter.close();
+        blePrinter = null;
+        if (activePrinterType == PrinterType.BLE) transport = null;
     }
 
     private void disconnectUsb() {
-        if (usbConnection != null) {
-            usbConnection.close();
+        List<UsbPrinterConnection> open;
+        synchronized (usbPrinters) {
+            open = new ArrayList<>(usbPrinters.values());
+            usbPrinters.clear();
+        }
+        for (UsbPrinterConnection printer : open) printer.close();
+        activeUsb = null;
+        if (activePrinterType == PrinterType.USB) transport = null;
+    }
+
+    /**
+     * Close one USB printer, e.g. when it is unplugged. False if it wasn't
+     * open.
+     */
+    private boolean closeUsb(String deviceName) {
+        UsbPrinterConnection printer;
+        synchronized (usbPrinters) {
+            printer = usbPrinters.remove(deviceName);
+        }
+        if (printer == null) return false;
+        printer.close();
+        if (deviceName.equals(activeUsb)) {
+            activeUsb = null;
+            if (activePrinterType == PrinterType.USB) {
+                transport = null;
+                markDisconnected();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The active printer went away. On a Sunmi terminal the built-in
+     * printer takes over again, elsewhere jobs have nowhere to go until
+     * the next connect.
+     */
+    private void markDisconnected() {
+        if (sunmiPrinter != null || sunmiAidlService != null) {
+            activePrinterType = sunmiPrinter != null ? PrinterType.SUNMI : PrinterType.SUNMI_AIDL;
+            isConnected = true;
+            applySunmiMode();
+            return;
         }
-        usbConnection = null;
-        usbEndpoint = null;
+        activePrinterType = PrinterType.NONE;
+        isConnected = false;
     }
 
     @PluginMethod
@@ -422,6 +674,18 @@ public class SunmiPrinterPlugin extends Plugin {
             ret.put("status", -1);
             ret.put("message", "Not connected");
         }
+
+        JSArray usb = new JSArray();
+        synchronized (usbPrinters) {
+            for (UsbPrinterConnection printer : usbPrinters.values()) {
+                JSObject json = new JSObject();
+                json.put("address", printer.deviceName);
+                json.put("name", printer.productName);
+                json.put("active", printer.deviceName.equals(activeUsb));
+                usb.put(json);
+            }
+        }
+        ret.put("usbPrinters", usb);
         
         call.resolve(ret);
     }
@@ -430,15 +694,21 @@ public class SunmiPrinterPlugin extends Plugin {
     public void printerInit(PluginCall call) {
         if (!checkPrinter(call)) return;
         
+        openJob(call.getString("orderId"), call.getString("kind", "receipt"), call.getInt("deadlineMs", 0),
+            call.getString("idempotencyKey"));
         try {
             if (activePrinterType == PrinterType.SUNMI) {
                 // Sunmi PrinterX handles init
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("printerInit", Object.class)
-                    .invoke(sunmiAidlService, (Object) null);
+                sunmiCall(() -> {
+                    sunmiAidl("printerInit");
+                });
             } else {
-                writeEscPos(ESC_INIT);
+                flushGraphics();
+                escPosPrinter.init(activeThermal.encode());
+                graphicsAlignment = 0;
             }
+            textFontSize = 24;
             call.resolve();
         } catch (Exception e) {
             call.reject("Failed to init printer", e);
@@ -452,14 +722,12 @@ public class SunmiPrinterPlugin extends Plugin {
         int alignment = call.getInt("alignment", 0);
         try {
             if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("setAlignment", int.class, Object.class)
-                    .invoke(sunmiAidlService, alignment, null);
+                sunmiCall(() -> {
+                    sunmiAidl("setAlignment", alignment);
+                });
             } else if (activePrinterType != PrinterType.SUNMI) {
-                switch (alignment) {
-                    case 1: writeEscPos(ESC_ALIGN_CENTER); break;
-                    case 2: writeEscPos(ESC_ALIGN_RIGHT); break;
-                    default: writeEscPos(ESC_ALIGN_LEFT); break;
-                }
+                escPosPrinter.setAlignment(alignment);
+                graphicsAlignment = alignment;
             }
             call.resolve();
         } catch (Exception e) {
@@ -472,18 +740,14 @@ public class SunmiPrinterPlugin extends Plugin {
         if (!checkPrinter(call)) return;
         
         int size = call.getInt("size", 24);
+        textFontSize = size;
         try {
             if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("setFontSize", float.class, Object.class)
-                    .invoke(sunmiAidlService, (float) size, null);
+                sunmiCall(() -> {
+                    sunmiAidl("setFontSize", (float) size);
+                });
             } else if (activePrinterType != PrinterType.SUNMI) {
-                if (size >= 48) {
-                    writeEscPos(ESC_DOUBLE_SIZE);
-                } else if (size >= 36) {
-                    writeEscPos(ESC_DOUBLE_HEIGHT);
-                } else {
-                    writeEscPos(ESC_NORMAL_SIZE);
-                }
+                escPosPrinter.setFontSize(size);
             }
             call.resolve();
         } catch (Exception e) {
@@ -496,47 +760,47 @@ public class SunmiPrinterPlugin extends Plugin {
         if (!checkPrinter(call)) return;
 
         String text = call.getString("text", "");
+        trace(PrintTrace.LEVEL_DEBUG, PrintTrace.TEXT, text.length(), textFontSize);
         try {
             if (activePrinterType == PrinterType.SUNMI) {
-                Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
-                // Log available methods for debugging
-                for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                    if (m.getName().contains("print") || m.getName().contains("add") || m.getName().contains("text")) {
-                        Log.d(TAG, "LineApi method: " + m.getName() + " params: " + java.util.Arrays.toString(m.getParameterTypes()));
-                    }
-                }
-                // Try different method signatures
-                boolean printed = false;
-                // Try 1: printText(String, BaseStyle)
-                for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                    if (m.getName().equals("printText") && m.getParameterCount() == 2) {
-                        Class<?>[] params = m.getParameterTypes();
-                        if (params[0] == String.class) {
-                            m.invoke(lineApi, text, null);
-                            printed = true;
-                            Log.d(TAG, "Used printText with params: " + java.util.Arrays.toString(params));
-                            break;
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                    // Try different method signatures
+                    boolean printed = false;
+                    // Try 1: printText(String, BaseStyle)
+                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                        if (m.getName().equals("printText") && m.getParameterCount() == 2) {
+                            Class<?>[] params = m.getParameterTypes();
+                            if (params[0] == String.class) {
+                                m.invoke(lineApi, text, null);
+                                printed = true;
+                                trace(PrintTrace.LEVEL_DEBUG, PrintTrace.SDK_METHOD, PrintTrace.OP_TEXT, params.length);
+                                break;
+                            }
                         }
                     }
-                }
-                // Try 2: printText(String)
-                if (!printed) {
-                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                        if (m.getName().equals("printText") && m.getParameterCount() == 1) {
-                            m.invoke(lineApi, text);
-                            printed = true;
-                            break;
+                    // Try 2: printText(String)
+                    if (!printed) {
+                        for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                            if (m.getName().equals("printText") && m.getParameterCount() == 1) {
+                                m.invoke(lineApi, text);
+                                printed = true;
+                                break;
+                            }
                         }
                     }
-                }
-                if (!printed) {
-                    throw new Exception("No suitable printText method found");
-                }
+                    if (!printed) {
+                        throw new Exception("No suitable printText method found");
+                    }
+                });
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("printText", String.class, Object.class)
-                    .invoke(sunmiAidlService, text, null);
+                sunmiCall(() -> {
+                    sunmiAidl("printText", text);
+                });
+            } else if (graphicsRenderer != null) {
+                graphicsRenderer.text(text, textFontSize, graphicsAlignment, false, false);
             } else {
-                writeEscPos(text.getBytes("GBK"));
+                escPosPrinter.text(text);
             }
             call.resolve();
         } catch (Exception e) {
@@ -551,16 +815,16 @@ public class SunmiPrinterPlugin extends Plugin {
 
         String text = call.getString("text", "");
         int fontSize = call.getInt("fontSize", 24);
+        trace(PrintTrace.LEVEL_DEBUG, PrintTrace.TEXT, text.length(), fontSize);
         try {
             if (activePrinterType == PrinterType.SUNMI) {
-                printTextSunmiWithFont(text, fontSize);
+                sunmiCall(() -> printTextSunmiWithFont(text, fontSize));
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                printTextSunmiAidl(text, fontSize);
+                sunmiCall(() -> printTextSunmiAidl(text, fontSize));
+            } else if (graphicsRenderer != null) {
+                graphicsRenderer.text(text, fontSize, graphicsAlignment, false, false);
             } else {
-                if (fontSize >= 48) writeEscPos(ESC_DOUBLE_SIZE);
-                else if (fontSize >= 36) writeEscPos(ESC_DOUBLE_HEIGHT);
-                writeEscPos(text.getBytes("GBK"));
-                writeEscPos(ESC_NORMAL_SIZE);
+                escPosPrinter.text(text, fontSize);
             }
             call.resolve();
         } catch (Exception e) {
@@ -577,29 +841,21 @@ public class SunmiPrinterPlugin extends Plugin {
         int fontSize = call.getInt("fontSize", 24);
         int alignment = call.getInt("alignment", 0); // 0=LEFT, 1=CENTER, 2=RIGHT
         boolean bold = call.getBoolean("bold", false);
-        
+        trace(PrintTrace.LEVEL_DEBUG, PrintTrace.TEXT, text.length(), fontSize);
+
         try {
             if (activePrinterType == PrinterType.SUNMI) {
-                printTextSunmiStyled(text, fontSize, alignment, bold);
+                sunmiCall(() -> printTextSunmiStyled(text, fontSize, alignment, bold));
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                // Set alignment first
-                sunmiAidlService.getClass().getMethod("setAlignment", int.class, Object.class)
-                    .invoke(sunmiAidlService, alignment, null);
-                printTextSunmiAidl(text, fontSize);
+                sunmiCall(() -> {
+                    // Set alignment first
+                    sunmiAidl("setAlignment", alignment);
+                    printTextSunmiAidl(text, fontSize);
+                });
+            } else if (graphicsRenderer != null) {
+                graphicsRenderer.text(text, fontSize, alignment, bold, false);
             } else {
-                // ESC/POS
-                switch (alignment) {
-                    case 1: writeEscPos(ESC_ALIGN_CENTER); break;
-                    case 2: writeEscPos(ESC_ALIGN_RIGHT); break;
-                    default: writeEscPos(ESC_ALIGN_LEFT); break;
-                }
-                if (bold) writeEscPos(ESC_BOLD_ON);
-                if (fontSize >= 48) writeEscPos(ESC_DOUBLE_SIZE);
-                else if (fontSize >= 36) writeEscPos(ESC_DOUBLE_HEIGHT);
-                writeEscPos(text.getBytes("GBK"));
-                writeEscPos(ESC_NORMAL_SIZE);
-                if (bold) writeEscPos(ESC_BOLD_OFF);
-                writeEscPos(ESC_ALIGN_LEFT); // Reset alignment
+                escPosPrinter.text(text, fontSize, alignment, bold);
             }
             call.resolve();
         } catch (Exception e) {
@@ -620,7 +876,7 @@ public class SunmiPrinterPlugin extends Plugin {
             try {
                 textStyleClass.getMethod("setTextSize", int.class).invoke(textStyle, fontSize);
             } catch (Exception e) {
-                Log.d(TAG, "setTextSize not available: " + e.getMessage());
+                trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_TEXT_SIZE, 0);
             }
             
             // Set alignment
@@ -636,10 +892,9 @@ public class SunmiPrinterPlugin extends Plugin {
                 }
                 if (alignValue != null) {
                     textStyleClass.getMethod("setAlign", alignClass).invoke(textStyle, alignValue);
-                    Log.d(TAG, "Set text alignment to " + alignName);
                 }
             } catch (Exception e) {
-                Log.d(TAG, "setAlign not available: " + e.getMessage());
+                trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_ALIGN, 0);
             }
             
             // Set bold
@@ -647,14 +902,14 @@ public class SunmiPrinterPlugin extends Plugin {
                 try {
                     textStyleClass.getMethod("enableBold", boolean.class).invoke(textStyle, true);
                 } catch (Exception e) {
-                    Log.d(TAG, "enableBold not available: " + e.getMessage());
+                    trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_BOLD, 0);
                 }
             }
             
             lineApi.getClass().getMethod("printText", String.class, textStyleClass).invoke(lineApi, text, textStyle);
         } catch (Exception e) {
             // Fallback: print without style
-            Log.d(TAG, "printText styled failed, using basic: " + e.getMessage());
+            trace(PrintTrace.LEVEL_INFO, PrintTrace.STYLE_FALLBACK, PrintTrace.OP_TEXT, 0);
             Class<?> textStyleClass = Class.forName("com.sunmi.printerx.style.TextStyle");
             lineApi.getClass().getMethod("printText", String.class, textStyleClass).invoke(lineApi, text, null);
         }
@@ -667,7 +922,7 @@ public class SunmiPrinterPlugin extends Plugin {
             Class<?> textStyleClass = Class.forName("com.sunmi.printerx.style.TextStyle");
             lineApi.getClass().getMethod("printText", String.class, textStyleClass).invoke(lineApi, text, null);
         } catch (Exception e) {
-            Log.d(TAG, "printText with style failed: " + e.getMessage());
+            trace(PrintTrace.LEVEL_ERROR, PrintTrace.ERROR, PrintTrace.OP_TEXT, 0);
             throw e;
         }
     }
@@ -684,13 +939,13 @@ public class SunmiPrinterPlugin extends Plugin {
             try {
                 textStyleClass.getMethod("setTextSize", int.class).invoke(textStyle, fontSize);
             } catch (Exception e) {
-                Log.d(TAG, "setTextSize not available: " + e.getMessage());
+                trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_TEXT_SIZE, 0);
             }
             
             lineApi.getClass().getMethod("printText", String.class, textStyleClass).invoke(lineApi, text, textStyle);
         } catch (Exception e) {
             // Fallback: print without style
-            Log.d(TAG, "printText with font failed, using basic: " + e.getMessage());
+            trace(PrintTrace.LEVEL_INFO, PrintTrace.STYLE_FALLBACK, PrintTrace.OP_TEXT, 0);
             Class<?> textStyleClass = Class.forName("com.sunmi.printerx.style.TextStyle");
             lineApi.getClass().getMethod("printText", String.class, textStyleClass).invoke(lineApi, text, null);
         }
@@ -700,12 +955,10 @@ public class SunmiPrinterPlugin extends Plugin {
         if (sunmiAidlService == null) throw new Exception("AIDL service not connected");
         
         // Set font size first
-        sunmiAidlService.getClass().getMethod("setFontSize", float.class, Object.class)
-            .invoke(sunmiAidlService, (float) fontSize, null);
+        sunmiAidl("setFontSize", (float) fontSize);
         
         // Print text
-        sunmiAidlService.getClass().getMethod("printText", String.class, Object.class)
-            .invoke(sunmiAidlService, text, null);
+        sunmiAidl("printText", text);
     }
 
     @PluginMethod
@@ -722,59 +975,64 @@ public class SunmiPrinterPlugin extends Plugin {
                 return;
             }
             
-            // Build formatted line
-            StringBuilder line = new StringBuilder();
-            
+            String[] textValues = new String[texts.length()];
+            int[] widthValues = new int[texts.length()];
+            int[] alignValues = new int[texts.length()];
+            int total = 0;
             for (int i = 0; i < texts.length(); i++) {
-                String text = texts.getString(i);
-                int width = i < widths.length() ? widths.getInt(i) : 10;
-                int align = i < aligns.length() ? aligns.getInt(i) : 0;
-                
-                // Pad/truncate text to width
-                if (text.length() > width) {
-                    text = text.substring(0, width);
-                }
-                
-                if (align == 0) { // Left
-                    line.append(String.format("%-" + width + "s", text));
-                } else if (align == 1) { // Center
-                    int pad = (width - text.length()) / 2;
-                    line.append(String.format("%" + (pad + text.length()) + "s", text));
-                    line.append(String.format("%-" + (width - pad - text.length()) + "s", ""));
-                } else { // Right
-                    line.append(String.format("%" + width + "s", text));
-                }
+                textValues[i] = texts.getString(i);
+                widthValues[i] = widths != null && i < widths.length() ? widths.getInt(i) : 10;
+                alignValues[i] = aligns != null && i < aligns.length() ? aligns.getInt(i) : 0;
+                total += widthValues[i];
+            }
+
+            if (activePrinterType != PrinterType.SUNMI && activePrinterType != PrinterType.SUNMI_AIDL
+                    && graphicsRenderer == null) {
+                escPosPrinter.columns(textValues, widthValues, alignValues);
+                call.resolve();
+                return;
+            }
+
+            // Graphics mode fits widths to its line like ESC/POS text does
+            int columns = total;
+            if (graphicsRenderer != null) {
+                int budget = lineColumns(escPos.size());
+                if (total > budget || escPosPrinter.isDense()) columns = budget;
             }
-            line.append("\n");
+            final String line = ColumnLayout.format(textValues, widthValues, alignValues, columns);
             
             // Print using dynamic method lookup
             if (activePrinterType == PrinterType.SUNMI) {
-                Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
-                boolean printed = false;
-                for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                    if (m.getName().equals("printText") && m.getParameterCount() == 2) {
-                        Class<?>[] params = m.getParameterTypes();
-                        if (params[0] == String.class) {
-                            m.invoke(lineApi, line.toString(), null);
-                            printed = true;
-                            break;
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                    boolean printed = false;
+                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                        if (m.getName().equals("printText") && m.getParameterCount() == 2) {
+                            Class<?>[] params = m.getParameterTypes();
+                            if (params[0] == String.class) {
+                                m.invoke(lineApi, line, null);
+                                printed = true;
+                                break;
+                            }
                         }
                     }
-                }
-                if (!printed) {
-                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                        if (m.getName().equals("printText") && m.getParameterCount() == 1) {
-                            m.invoke(lineApi, line.toString());
-                            printed = true;
-                            break;
+                    if (!printed) {
+                        for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                            if (m.getName().equals("printText") && m.getParameterCount() == 1) {
+                                m.invoke(lineApi, line);
+                                printed = true;
+                                break;
+                            }
                         }
                     }
-                }
+                });
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("printText", String.class, Object.class)
-                    .invoke(sunmiAidlService, line.toString(), null);
+                sunmiCall(() -> {
+                    sunmiAidl("printText", line);
+                });
             } else {
-                writeEscPos(line.toString().getBytes("GBK"));
+                // Column padding assumes fixed-width glyphs
+                graphicsRenderer.text(line, textFontSize, 0, false, true);
             }
             
             call.resolve();
@@ -793,90 +1051,91 @@ public class SunmiPrinterPlugin extends Plugin {
         int alignment = call.getInt("alignment", 1); // Default to CENTER (1)
         try {
             if (activePrinterType == PrinterType.SUNMI) {
-                Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
                 
-                // Try to create QrStyle with alignment
-                boolean printed = false;
-                try {
-                    Class<?> qrStyleClass = Class.forName("com.sunmi.printerx.style.QrStyle");
-                    Object qrStyle = qrStyleClass.getMethod("getStyle").invoke(null);
-                    
-                    // Set alignment
+                    // Try to create QrStyle with alignment
+                    boolean printed = false;
                     try {
-                        Class<?> alignClass = Class.forName("com.sunmi.printerx.enums.Align");
-                        Object alignValue = null;
-                        String alignName = alignment == 1 ? "CENTER" : alignment == 2 ? "RIGHT" : "LEFT";
-                        for (Object enumConstant : alignClass.getEnumConstants()) {
-                            if (enumConstant.toString().equals(alignName)) {
-                                alignValue = enumConstant;
-                                break;
+                        Class<?> qrStyleClass = Class.forName("com.sunmi.printerx.style.QrStyle");
+                        Object qrStyle = qrStyleClass.getMethod("getStyle").invoke(null);
+                    
+                        // Set alignment
+                        try {
+                            Class<?> alignClass = Class.forName("com.sunmi.printerx.enums.Align");
+                            Object alignValue = null;
+                            String alignName = alignment == 1 ? "CENTER" : alignment == 2 ? "RIGHT" : "LEFT";
+                            for (Object enumConstant : alignClass.getEnumConstants()) {
+                                if (enumConstant.toString().equals(alignName)) {
+                                    alignValue = enumConstant;
+                                    break;
+                                }
+                            }
+                            if (alignValue != null) {
+                                qrStyleClass.getMethod("setAlign", alignClass).invoke(qrStyle, alignValue);
                             }
+                        } catch (Exception e) {
+                            trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_ALIGN, 0);
                         }
-                        if (alignValue != null) {
-                            qrStyleClass.getMethod("setAlign", alignClass).invoke(qrStyle, alignValue);
-                            Log.d(TAG, "Set QR alignment to " + alignName);
+                    
+                        // Set dot size if method exists
+                        try {
+                            qrStyleClass.getMethod("setDot", int.class).invoke(qrStyle, moduleSize);
+                        } catch (Exception e) {
+                            trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_DOT_SIZE, 0);
                         }
-                    } catch (Exception e) {
-                        Log.d(TAG, "Could not set QR alignment: " + e.getMessage());
-                    }
                     
-                    // Set dot size if method exists
-                    try {
-                        qrStyleClass.getMethod("setDot", int.class).invoke(qrStyle, moduleSize);
+                        // Print with style
+                        lineApi.getClass().getMethod("printQrCode", String.class, qrStyleClass)
+                            .invoke(lineApi, data, qrStyle);
+                        printed = true;
                     } catch (Exception e) {
-                        Log.d(TAG, "Could not set QR dot size: " + e.getMessage());
+                        trace(PrintTrace.LEVEL_INFO, PrintTrace.STYLE_FALLBACK, PrintTrace.OP_QR, 0);
                     }
-                    
-                    // Print with style
-                    lineApi.getClass().getMethod("printQrCode", String.class, qrStyleClass)
-                        .invoke(lineApi, data, qrStyle);
-                    printed = true;
-                    Log.d(TAG, "Printed QR code with QrStyle");
-                } catch (Exception e) {
-                    Log.d(TAG, "printQrCode with style failed: " + e.getMessage());
-                }
                 
-                // Fallback: try dynamic method lookup
-                if (!printed) {
-                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                        if (m.getName().equals("printQrCode") && m.getParameterCount() == 2) {
-                            Class<?>[] params = m.getParameterTypes();
-                            if (params[0] == String.class) {
-                                m.invoke(lineApi, data, null);
+                    // Fallback: try dynamic method lookup
+                    if (!printed) {
+                        for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                            if (m.getName().equals("printQrCode") && m.getParameterCount() == 2) {
+                                Class<?>[] params = m.getParameterTypes();
+                                if (params[0] == String.class) {
+                                    m.invoke(lineApi, data, null);
+                                    printed = true;
+                                    trace(PrintTrace.LEVEL_DEBUG, PrintTrace.SDK_METHOD, PrintTrace.OP_QR, params.length);
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                    if (!printed) {
+                        for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                            if (m.getName().equals("printQrCode") && m.getParameterCount() == 1) {
+                                m.invoke(lineApi, data);
                                 printed = true;
-                                Log.d(TAG, "Used printQrCode with params: " + java.util.Arrays.toString(params));
                                 break;
                             }
                         }
                     }
-                }
-                if (!printed) {
-                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                        if (m.getName().equals("printQrCode") && m.getParameterCount() == 1) {
-                            m.invoke(lineApi, data);
-                            printed = true;
-                            break;
-                        }
+                    if (!printed) {
+                        Log.e(TAG, "No suitable printQrCode method found");
+                        trace(PrintTrace.LEVEL_ERROR, PrintTrace.ERROR, PrintTrace.OP_QR, 0);
                     }
-                }
-                if (!printed) {
-                    Log.e(TAG, "No suitable printQrCode method found");
-                }
+                });
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("printQRCode", String.class, int.class, int.class, Object.class)
-                    .invoke(sunmiAidlService, data, moduleSize, 3, null);
+                sunmiCall(() -> {
+                    sunmiAidl("printQRCode", data, moduleSize, 3);
+                });
             } else {
-                // ESC/POS QR Code commands
-                byte[] qrData = data.getBytes("UTF-8");
-                int len = qrData.length + 3;
-                byte[] cmd = new byte[] {
-                    0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x43, (byte) moduleSize,
-                    0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x45, 0x30,
-                    0x1D, 0x28, 0x6B, (byte) (len % 256), (byte) (len / 256), 0x31, 0x50, 0x30
-                };
-                writeEscPos(cmd);
-                writeEscPos(qrData);
-                writeEscPos(new byte[] { 0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x51, 0x30 });
+                int errorLevel = call.getInt("errorLevel", 0);
+                String key = SymbolCache.key("qr", data, moduleSize, errorLevel, printerProfile);
+                byte[] symbol = symbolCache.get(key);
+                if (symbol == null) {
+                    symbol = EscPosSymbols.qrCode(data, moduleSize, errorLevel, printerProfile);
+                    symbolCache.put(key, symbol);
+                }
+                flushGraphics();
+                escPos.aligned(symbol, alignment);
+                flushEscPos();
             }
             call.resolve();
         } catch (Exception e) {
@@ -886,180 +1145,520 @@ public class SunmiPrinterPlugin extends Plugin {
     }
 
     @PluginMethod
-    public void printBitmap(PluginCall call) {
+    public void printBarcode(PluginCall call) {
         if (!checkPrinter(call)) return;
-        
-        String base64 = call.getString("bitmap", "");
+
+        String data = call.getString("data", "");
+        int height = call.getInt("height", 80);
+        int width = call.getInt("width", 2);
         int alignment = call.getInt("alignment", 1); // Default to CENTER (1)
-        if (base64.isEmpty()) {
-            call.resolve();
-            return;
-        }
-        
+        boolean showText = call.getBoolean("showText", true);
         try {
-            // Decode base64 to bitmap
-            byte[] decodedBytes = android.util.Base64.decode(base64, android.util.Base64.DEFAULT);
-            android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
-            
-            if (bitmap == null) {
-                call.reject("Failed to decode bitmap");
-                return;
-            }
-            
             if (activePrinterType == PrinterType.SUNMI) {
-                Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
-                
-                // Log available bitmap methods
-                for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                    if (m.getName().toLowerCase().contains("bitmap") || m.getName().toLowerCase().contains("image")) {
-                        Log.d(TAG, "Bitmap method: " + m.getName() + " params: " + java.util.Arrays.toString(m.getParameterTypes()));
-                    }
-                }
-                
-                // Try to create BitmapStyle with DITHERING algorithm and alignment
-                boolean printed = false;
-                try {
-                    Class<?> bitmapStyleClass = Class.forName("com.sunmi.printerx.style.BitmapStyle");
-                    Object bitmapStyle = bitmapStyleClass.getMethod("getStyle").invoke(null);
-                    
-                    // Set alignment
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                    Class<?> barcodeStyleClass = Class.forName("com.sunmi.printerx.style.BarcodeStyle");
+                    Object barcodeStyle = barcodeStyleClass.getMethod("getStyle").invoke(null);
+
                     try {
                         Class<?> alignClass = Class.forName("com.sunmi.printerx.enums.Align");
-                        Object alignValue = null;
-                        String alignName = alignment == 1 ? "CENTER" : alignment == 2 ? "RIGHT" : "LEFT";
-                        for (Object enumConstant : alignClass.getEnumConstants()) {
-                            if (enumConstant.toString().equals(alignName)) {
-                                alignValue = enumConstant;
-                                break;
-                            }
-                        }
+                        Object alignValue = findEnumConstant(alignClass, alignment == 1 ? "CENTER" : alignment == 2 ? "RIGHT" : "LEFT");
                         if (alignValue != null) {
-                            bitmapStyleClass.getMethod("setAlign", alignClass).invoke(bitmapStyle, alignValue);
-                            Log.d(TAG, "Set bitmap alignment to " + alignName);
+                            barcodeStyleClass.getMethod("setAlign", alignClass).invoke(barcodeStyle, alignValue);
                         }
-                    } catch (Exception e) {
-                        Log.d(TAG, "Could not set alignment: " + e.getMessage());
-                    }
-                    
-                    // Try to set algorithm to DITHERING (better for logos)
-                    try {
-                        Class<?> algorithmClass = Class.forName("com.sunmi.printerx.enums.ImageAlgorithm");
-                        Object dithering = null;
-                        for (Object enumConstant : algorithmClass.getEnumConstants()) {
-                            if (enumConstant.toString().equals("DITHERING")) {
-                                dithering = enumConstant;
-                                break;
-                            }
+                        Class<?> symbologyClass = Class.forName("com.sunmi.printerx.enums.Symbology");
+                        Object symbology = findEnumConstant(symbologyClass, "CODE128");
+                        if (symbology != null) {
+                            barcodeStyleClass.getMethod("setSymbology", symbologyClass).invoke(barcodeStyle, symbology);
                         }
-                        if (dithering != null) {
-                            bitmapStyleClass.getMethod("setAlgorithm", algorithmClass).invoke(bitmapStyle, dithering);
-                            Log.d(TAG, "Set image algorithm to DITHERING");
+                        Class<?> readableClass = Class.forName("com.sunmi.printerx.enums.HumanReadable");
+                        Object readable = findEnumConstant(readableClass, showText ? "POS_TWO" : "HIDE");
+                        if (readable != null) {
+                            barcodeStyleClass.getMethod("setReadable", readableClass).invoke(barcodeStyle, readable);
                         }
+                        barcodeStyleClass.getMethod("setBarHeight", int.class).invoke(barcodeStyle, height);
+                        barcodeStyleClass.getMethod("setDotWidth", int.class).invoke(barcodeStyle, width);
                     } catch (Exception e) {
-                        Log.d(TAG, "Could not set algorithm: " + e.getMessage());
-                    }
-                    
-                    // Print with style
-                    lineApi.getClass().getMethod("printBitmap", android.graphics.Bitmap.class, bitmapStyleClass)
-                        .invoke(lineApi, bitmap, bitmapStyle);
-                    printed = true;
-                    Log.d(TAG, "Printed bitmap with BitmapStyle");
-                } catch (Exception e) {
-                    Log.d(TAG, "printBitmap with style failed: " + e.getMessage());
-                }
-                
-                // Fallback: try dynamic method lookup
-                if (!printed) {
-                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                        if (m.getName().equals("printBitmap") && m.getParameterCount() == 2) {
-                            Class<?>[] params = m.getParameterTypes();
-                            if (params[0] == android.graphics.Bitmap.class) {
-                                m.invoke(lineApi, bitmap, null);
-                                printed = true;
-                                Log.d(TAG, "Used printBitmap with null style");
-                                break;
-                            }
-                        }
+                        trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_BARCODE_STYLE, 0);
                     }
-                }
-                
-                if (!printed) {
-                    Log.e(TAG, "No suitable printBitmap method found");
-                }
+
+                    lineApi.getClass().getMethod("printBarCode", String.class, barcodeStyleClass)
+                        .invoke(lineApi, data, barcodeStyle);
+                });
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("printBitmap", android.graphics.Bitmap.class, Object.class)
-                    .invoke(sunmiAidlService, bitmap, null);
+                sunmiCall(() -> {
+                    sunmiAidl("setAlignment", alignment);
+                    // Symbology 8 = CODE128, text position 2 = below
+                    sunmiAidl("printBarCode", data, 8, height, width, showText ? 2 : 0);
+                });
+            } else {
+                String key = SymbolCache.key("code128", data, width, height * 2 + (showText ? 1 : 0), printerProfile);
+                byte[] symbol = symbolCache.get(key);
+                if (symbol == null) {
+                    symbol = EscPosSymbols.code128(data, width, height, showText, printerProfile);
+                    symbolCache.put(key, symbol);
+                }
+                flushGraphics();
+                escPos.aligned(symbol, alignment);
+                flushEscPos();
             }
-            
             call.resolve();
         } catch (Exception e) {
-            Log.e(TAG, "printBitmap error", e);
-            call.reject("Failed to print bitmap: " + e.getMessage(), e);
+            Log.e(TAG, "printBarcode error", e);
+            call.reject("Failed to print barcode: " + e.getMessage(), e);
         }
     }
 
     @PluginMethod
-    public void lineWrap(PluginCall call) {
-        if (!checkPrinter(call)) return;
+    public void setPrinterProfile(PluginCall call) {
+        String rasterEncoding = call.getString("rasterEncoding", "plain");
+        printerProfile = new PrinterProfile(
+            call.getBoolean("nativeQr", PrinterProfile.DEFAULT.nativeQr),
+            call.getBoolean("nativeBarcode", PrinterProfile.DEFAULT.nativeBarcode),
+            call.getInt("dotsPerLine", PrinterProfile.DEFAULT.dotsPerLine),
+            "trimmed".equals(rasterEncoding) ? PrinterProfile.RasterEncoding.TRIMMED : PrinterProfile.RasterEncoding.PLAIN
+        );
+        escPosPrinter.setProfile(printerProfile);
+        call.resolve();
+    }
 
-        int lines = call.getInt("lines", 3);
-        try {
-            if (activePrinterType == PrinterType.SUNMI) {
-                Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
-                StringBuilder sb = new StringBuilder();
-                for (int i = 0; i < lines; i++) {
-                    sb.append("\n");
-                }
-                // Use dynamic method lookup
-                boolean printed = false;
-                for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                    if (m.getName().equals("printText") && m.getParameterCount() == 2) {
-                        Class<?>[] params = m.getParameterTypes();
-                        if (params[0] == String.class) {
-                            m.invoke(lineApi, sb.toString(), null);
-                            printed = true;
-                            break;
-                        }
-                    }
-                }
-                if (!printed) {
-                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
-                        if (m.getName().equals("printText") && m.getParameterCount() == 1) {
-                            m.invoke(lineApi, sb.toString());
-                            printed = true;
-                            break;
-                        }
-                    }
-                }
-            } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("lineWrap", int.class, Object.class)
-                    .invoke(sunmiAidlService, lines, null);
-            } else {
-                writeEscPos(new byte[] { ESC_FEED_LINES[0], ESC_FEED_LINES[1], (byte) lines });
-            }
-            call.resolve();
-        } catch (Exception e) {
-            Log.e(TAG, "lineWrap error", e);
-            call.reject("Failed to line wrap: " + e.getMessage(), e);
+    /**
+     * Store head settings (ESC 7 heating, GS ( K density and speed) for a
+     * printer, the connected one unless address is given. They are sent
+     * on connect and with every job's init. No values means factory.
+     */
+    @PluginMethod
+    public void setThermalProfile(PluginCall call) {
+        String address = call.getString("address", activePrinterAddress());
+        if (address == null) {
+            call.reject("No printer address");
+            return;
         }
+        ThermalSettings settings = new ThermalSettings(
+            call.getInt("heatingDots", ThermalSettings.UNSET),
+            call.getInt("heatingTime", ThermalSettings.UNSET),
+            call.getInt("heatingInterval", ThermalSettings.UNSET),
+            call.getInt("density", ThermalSettings.UNSET),
+            call.getInt("speed", ThermalSettings.UNSET));
+        android.content.SharedPreferences.Editor editor = thermalPrefs().edit();
+        if (settings.isFactory()) editor.remove(address);
+        else editor.putString(address, settings.toString());
+        editor.apply();
+        if (address.equals(activePrinterAddress())) applyThermalSettings();
+        call.resolve(thermalToJson(address, settings));
     }
 
     @PluginMethod
-    public void cutPaper(PluginCall call) {
+    public void getThermalProfile(PluginCall call) {
+        String address = call.getString("address", activePrinterAddress());
+        if (address == null) {
+            call.reject("No printer address");
+            return;
+        }
+        call.resolve(thermalToJson(address, storedThermal(address)));
+    }
+
+    /**
+     * Print a numbered test pattern at each candidate setting (or a
+     * default set) and resolve with the measured speed of each. Pick the
+     * fastest sample that is still legible and store it with
+     * setThermalProfile.
+     */
+    @PluginMethod
+    public void calibratePrinter(PluginCall call) {
         if (!checkPrinter(call)) return;
+        if (activePrinterType == PrinterType.SUNMI || activePrinterType == PrinterType.SUNMI_AIDL) {
+            call.reject("Calibration needs an ESC/POS printer or Sunmi raw mode");
+            return;
+        }
+        List<ThermalSettings> candidates;
+        try {
+            JSONArray given = call.getArray("candidates");
+            if (given == null || given.length() == 0) {
+                candidates = ThermalCalibration.defaultCandidates();
+            } else {
+                candidates = new ArrayList<>();
+                for (int i = 0; i < given.length(); i++) {
+                    JSONObject candidate = given.getJSONObject(i);
+                    candidates.add(new ThermalSettings(
+                        candidate.optInt("heatingDots", ThermalSettings.UNSET),
+                        candidate.optInt("heatingTime", ThermalSettings.UNSET),
+                        candidate.optInt("heatingInterval", ThermalSettings.UNSET),
+                        candidate.optInt("density", ThermalSettings.UNSET),
+                        candidate.optInt("speed", ThermalSettings.UNSET)));
+                }
+            }
+        } catch (JSONException e) {
+            call.reject("Invalid candidates: " + e.getMessage(), e);
+            return;
+        }
+        ThermalCalibration calibration = new ThermalCalibration(printerProfile.dotsPerLine,
+            call.getInt("rows", ThermalCalibration.DEFAULT_ROWS));
+        PrinterTransport target = transport;
+        ThermalSettings restore = activeThermal;
+        List<ThermalCalibration.Sample> samples = new ArrayList<>();
+        scheduler.submit(PrintScheduler.JobClass.REPORT, 0, () -> {
+            samples.addAll(calibration.run(candidates, restore, data -> writeTransport(target, data)));
+        }, error -> {
+            if (error != null) {
+                Log.e(TAG, "Calibration failed", error);
+                call.reject("Failed to calibrate printer: " + error.getMessage(), error);
+                return;
+            }
+            JSArray results = new JSArray();
+            for (ThermalCalibration.Sample sample : samples) {
+                JSObject result = thermalToJson(null, sample.settings);
+                result.put("sample", sample.number);
+                result.put("mmPerSecond", Math.round(sample.mmPerSecond() * 10) / 10.0);
+                result.put("dotRowsPerSecond", Math.round(sample.dotRowsPerSecond()));
+                results.put(result);
+            }
+            ThermalCalibration.Sample fastest = ThermalCalibration.fastest(samples);
+            JSObject ret = new JSObject();
+            ret.put("samples", results);
+            if (fastest != null) ret.put("fastest", fastest.number);
+            call.resolve(ret);
+        });
+    }
+
+    private android.content.SharedPreferences thermalPrefs() {
+        return getContext().getSharedPreferences(THERMAL_PREFS, android.content.Context.MODE_PRIVATE);
+    }
+
+    private ThermalSettings storedThermal(String address) {
+        return address != null ? ThermalSettings.parse(thermalPrefs().getString(address, null)) : ThermalSettings.FACTORY;
+    }
+
+    /**
+     * Load the connected printer's head settings and send them
+     */
+    private void applyThermalSettings() {
+        activeThermal = storedThermal(activePrinterAddress());
+        byte[] commands = activeThermal.encode();
+        PrinterTransport target = transport;
+        if (commands.length == 0 || target == null) return;
+        scheduler.submit(PrintScheduler.JobClass.CONTROL, 0, () -> writeTransport(target, commands), error -> {
+            if (error != null) Log.w(TAG, "Could not apply thermal settings: " + error.getMessage());
+        });
+    }
+
+    private static JSObject thermalToJson(String address, ThermalSettings settings) {
+        JSObject json = new JSObject();
+        if (address != null) json.put("address", address);
+        if (settings.heatingDots != ThermalSettings.UNSET) json.put("heatingDots", settings.heatingDots);
+        if (settings.heatingTime != ThermalSettings.UNSET) json.put("heatingTime", settings.heatingTime);
+        if (settings.heatingInterval != ThermalSettings.UNSET) json.put("heatingInterval", settings.heatingInterval);
+        if (settings.density != ThermalSettings.UNSET) json.put("density", settings.density);
+        if (settings.speed != ThermalSettings.UNSET) json.put("speed", settings.speed);
+        return json;
+    }
+
+    /**
+     * Raw mode drives the Sunmi built-in printer with the same ESC/POS
+     * bytes as Bluetooth and USB printers, one native call per job rather
+     * than one SDK call per line. Falls back to the SDK when the device
+     * has no raw command API.
+     */
+    @PluginMethod
+    public void setRawMode(PluginCall call) {
+        sunmiRawMode = call.getBoolean("enabled", false);
+        applySunmiMode();
+        JSObject ret = new JSObject();
+        ret.put("raw", activePrinterType == PrinterType.SUNMI_RAW);
+        call.resolve(ret);
+    }
+
+    private boolean isSunmi() {
+        return activePrinterType == PrinterType.SUNMI || activePrinterType == PrinterType.SUNMI_AIDL
+            || activePrinterType == PrinterType.SUNMI_RAW;
+    }
+
+    /**
+     * Switch a connected Sunmi printer between SDK calls and raw ESC/POS
+     */
+    private void applySunmiMode() {
+        if (!isSunmi()) return;
+        SunmiRawTransport raw = null;
+        if (sunmiRawMode) {
+            raw = sunmiPrinter != null
+                ? SunmiRawTransport.forPrinterX(sunmiPrinter)
+                : SunmiRawTransport.forAidl(sunmiAidlService);
+            if (raw == null) Log.w(TAG, "Sunmi raw command API not available, using SDK calls");
+        }
+        if (raw != null) {
+            activePrinterType = PrinterType.SUNMI_RAW;
+            transport = raw;
+            escPos.reset();
+            applyThermalSettings();
+        } else {
+            activePrinterType = sunmiPrinter != null ? PrinterType.SUNMI : PrinterType.SUNMI_AIDL;
+            transport = null;
+        }
+    }
+
+    /**
+     * Dense layout prints in the printer's small font (ESC M 1) with
+     * tighter line spacing (ESC 3), for shorter receipts. Applies to
+     * ESC/POS printers from the next printerInit.
+     */
+    @PluginMethod
+    public void setLayout(PluginCall call) {
+        escPosPrinter.setDense(call.getBoolean("dense", false));
+        call.resolve(layoutToJson());
+    }
+
+    @PluginMethod
+    public void getLayout(PluginCall call) {
+        call.resolve(layoutToJson());
+    }
+
+    private JSObject layoutToJson() {
+        JSObject ret = new JSObject();
+        ret.put("dense", escPosPrinter.isDense());
+        ret.put("columns", lineColumns(EscPosEncoder.SIZE_NORMAL));
+        return ret;
+    }
+
+    /**
+     * Characters per line for text of the given size in the current layout
+     */
+    private int lineColumns(int size) {
+        if (activePrinterType == PrinterType.SUNMI || activePrinterType == PrinterType.SUNMI_AIDL
+                || graphicsRenderer != null) {
+            return ColumnLayout.columnsForFontSize(printerProfile.dotsPerLine, textFontSize);
+        }
+        return escPosPrinter.lineColumns(size);
+    }
+
+    @PluginMethod
+    public void setGraphicsMode(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", false);
+        int bandHeight = call.getInt("bandHeight", 48);
+        try {
+            flushGraphics();
+            graphicsRenderer = enabled
+                ? new BandedRasterRenderer(printerProfile.dotsPerLine, bandHeight, this::writeRasterBand)
+                : null;
+            call.resolve();
+        } catch (Exception e) {
+            Log.e(TAG, "setGraphicsMode error", e);
+            call.reject("Failed to set graphics mode: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeRasterBand(MonoImage band) throws IOException {
+        byte[] encoded = EscPosRaster.encode(band, EscPosEncoder.ALIGN_LEFT, printerProfile);
+        trace(PrintTrace.LEVEL_DEBUG, PrintTrace.RASTER_BAND, band.height, encoded.length);
+        escPos.aligned(encoded, EscPosEncoder.ALIGN_LEFT);
+        flushEscPos();
+    }
+
+    /**
+     * Scale to the target width (keeping aspect ratio) and dither to 1bpp
+     */
+    private MonoImage toMonoImage(android.graphics.Bitmap bitmap, int width) {
+        if (width != bitmap.getWidth()) {
+            int height = Math.max(1, bitmap.getHeight() * width / bitmap.getWidth());
+            bitmap = android.graphics.Bitmap.createScaledBitmap(bitmap, width, height, true);
+        }
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return dither.floydSteinberg(pixels, bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    private void flushGraphics() throws IOException {
+        if (graphicsRenderer != null) graphicsRenderer.flush();
+    }
+
+    private Object findEnumConstant(Class<?> enumClass, String name) {
+        for (Object enumConstant : enumClass.getEnumConstants()) {
+            if (enumConstant.toString().equals(name)) {
+                return enumConstant;
+            }
+        }
+        return null;
+    }
+
+    @PluginMethod
+    public void printBitmap(PluginCall call) {
+        if (!checkPrinter(call)) return;
+        
+        String base64 = call.getString("bitmap", "");
+        int alignment = call.getInt("alignment", 1); // Default to CENTER (1)
+        if (base64.isEmpty()) {
+            call.resolve();
+            return;
+        }
         
         try {
+            // Decode base64 to bitmap
+            byte[] decodedBytes = android.util.Base64.decode(base64, android.util.Base64.DEFAULT);
+            android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+            
+            if (bitmap == null) {
+                call.reject("Failed to decode bitmap");
+                return;
+            }
+            trace(PrintTrace.LEVEL_DEBUG, PrintTrace.BITMAP, bitmap.getWidth(), bitmap.getHeight());
+            
             if (activePrinterType == PrinterType.SUNMI) {
-                Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
-                lineApi.getClass().getMethod("autoOut").invoke(lineApi);
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                
+                    // Try to create BitmapStyle with DITHERING algorithm and alignment
+                    boolean printed = false;
+                    try {
+                        Class<?> bitmapStyleClass = Class.forName("com.sunmi.printerx.style.BitmapStyle");
+                        Object bitmapStyle = bitmapStyleClass.getMethod("getStyle").invoke(null);
+                    
+                        // Set alignment
+                        try {
+                            Class<?> alignClass = Class.forName("com.sunmi.printerx.enums.Align");
+                            Object alignValue = null;
+                            String alignName = alignment == 1 ? "CENTER" : alignment == 2 ? "RIGHT" : "LEFT";
+                            for (Object enumConstant : alignClass.getEnumConstants()) {
+                                if (enumConstant.toString().equals(alignName)) {
+                                    alignValue = enumConstant;
+                                    break;
+                                }
+                            }
+                            if (alignValue != null) {
+                                bitmapStyleClass.getMethod("setAlign", alignClass).invoke(bitmapStyle, alignValue);
+                            }
+                        } catch (Exception e) {
+                            trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_ALIGN, 0);
+                        }
+                    
+                        // Try to set algorithm to DITHERING (better for logos)
+                        try {
+                            Class<?> algorithmClass = Class.forName("com.sunmi.printerx.enums.ImageAlgorithm");
+                            Object dithering = null;
+                            for (Object enumConstant : algorithmClass.getEnumConstants()) {
+                                if (enumConstant.toString().equals("DITHERING")) {
+                                    dithering = enumConstant;
+                                    break;
+                                }
+                            }
+                            if (dithering != null) {
+                                bitmapStyleClass.getMethod("setAlgorithm", algorithmClass).invoke(bitmapStyle, dithering);
+                            }
+                        } catch (Exception e) {
+                            trace(PrintTrace.LEVEL_DEBUG, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.FEATURE_BITMAP_ALGORITHM, 0);
+                        }
+                    
+                        // Print with style
+                        lineApi.getClass().getMethod("printBitmap", android.graphics.Bitmap.class, bitmapStyleClass)
+                            .invoke(lineApi, bitmap, bitmapStyle);
+                        printed = true;
+                    } catch (Exception e) {
+                        trace(PrintTrace.LEVEL_INFO, PrintTrace.STYLE_FALLBACK, PrintTrace.OP_BITMAP, 0);
+                    }
+                
+                    // Fallback: try dynamic method lookup
+                    if (!printed) {
+                        for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                            if (m.getName().equals("printBitmap") && m.getParameterCount() == 2) {
+                                Class<?>[] params = m.getParameterTypes();
+                                if (params[0] == android.graphics.Bitmap.class) {
+                                    m.invoke(lineApi, bitmap, null);
+                                    printed = true;
+                                    trace(PrintTrace.LEVEL_DEBUG, PrintTrace.SDK_METHOD, PrintTrace.OP_BITMAP, params.length);
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                
+                    if (!printed) {
+                        Log.e(TAG, "No suitable printBitmap method found");
+                        trace(PrintTrace.LEVEL_ERROR, PrintTrace.ERROR, PrintTrace.OP_BITMAP, 0);
+                    }
+                });
+            } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
+                sunmiCall(() -> {
+                    sunmiAidl("printBitmap", bitmap);
+                });
+            } else {
+                int width = Math.min(call.getInt("width", bitmap.getWidth()), printerProfile.dotsPerLine);
+                flushGraphics();
+                escPosPrinter.image(toMonoImage(bitmap, width), alignment);
+            }
+            
+            call.resolve();
+        } catch (Exception e) {
+            Log.e(TAG, "printBitmap error", e);
+            call.reject("Failed to print bitmap: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void lineWrap(PluginCall call) {
+        if (!checkPrinter(call)) return;
+
+        int lines = call.getInt("lines", 3);
+        try {
+            if (activePrinterType == PrinterType.SUNMI) {
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < lines; i++) {
+                        sb.append("\n");
+                    }
+                    // Use dynamic method lookup
+                    boolean printed = false;
+                    for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                        if (m.getName().equals("printText") && m.getParameterCount() == 2) {
+                            Class<?>[] params = m.getParameterTypes();
+                            if (params[0] == String.class) {
+                                m.invoke(lineApi, sb.toString(), null);
+                                printed = true;
+                                break;
+                            }
+                        }
+                    }
+                    if (!printed) {
+                        for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+                            if (m.getName().equals("printText") && m.getParameterCount() == 1) {
+                                m.invoke(lineApi, sb.toString());
+                                printed = true;
+                                break;
+                            }
+                        }
+                    }
+                });
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("cutPaper", Object.class)
-                    .invoke(sunmiAidlService, (Object) null);
+                sunmiCall(() -> {
+                    sunmiAidl("lineWrap", lines);
+                });
             } else {
-                writeEscPos(new byte[] { 0x1B, 0x64, 0x05 }); // Feed 5 lines
-                writeEscPos(ESC_CUT_PAPER);
+                flushGraphics();
+                escPosPrinter.feed(lines);
             }
             call.resolve();
+        } catch (Exception e) {
+            Log.e(TAG, "lineWrap error", e);
+            call.reject("Failed to line wrap: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void cutPaper(PluginCall call) {
+        if (!checkPrinter(call) || !checkCopies(call)) return;
+        
+        try {
+            if (activePrinterType == PrinterType.SUNMI) {
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                    lineApi.getClass().getMethod("autoOut").invoke(lineApi);
+                });
+            } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
+                sunmiCall(() -> {
+                    sunmiAidl("cutPaper");
+                });
+            } else {
+                feedAndCut();
+            }
+            submitFinishedJob(call, "Failed to cut paper");
         } catch (Exception e) {
             call.reject("Failed to cut paper", e);
         }
@@ -1070,14 +1669,22 @@ public class SunmiPrinterPlugin extends Plugin {
         if (!checkPrinter(call)) return;
         
         try {
-            if (activePrinterType == PrinterType.SUNMI) {
+            // The drawer port belongs to the SDK, raw mode still opens it there
+            if (activePrinterType == PrinterType.SUNMI
+                    || (activePrinterType == PrinterType.SUNMI_RAW && sunmiPrinter != null)) {
                 Object api = sunmiPrinter.getClass().getMethod("cashDrawerApi").invoke(sunmiPrinter);
                 api.getClass().getMethod("open").invoke(api);
-            } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                sunmiAidlService.getClass().getMethod("openDrawer", Object.class)
-                    .invoke(sunmiAidlService, (Object) null);
+            } else if (activePrinterType == PrinterType.SUNMI_AIDL || activePrinterType == PrinterType.SUNMI_RAW) {
+                sunmiAidl("openDrawer");
             } else {
-                writeEscPos(ESC_OPEN_DRAWER);
+                // Not part of the job, reprints must not open the drawer
+                if (escPosJobs.isStreaming()) {
+                    // The printer is busy with the job rendering on this thread, waiting for it would stall both
+                    escPosJobs.writeBesideJob(ESC_OPEN_DRAWER);
+                } else {
+                    PrinterTransport target = transport;
+                    sendNow(() -> writeTransport(target, ESC_OPEN_DRAWER));
+                }
             }
             call.resolve();
         } catch (Exception e) {
@@ -1087,40 +1694,751 @@ public class SunmiPrinterPlugin extends Plugin {
 
     @PluginMethod
     public void printReceipt(PluginCall call) {
-        if (!checkPrinter(call)) return;
+        if (!checkPrinter(call) || !checkCopies(call)) return;
         
         try {
             if (activePrinterType == PrinterType.SUNMI) {
-                Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
-                lineApi.getClass().getMethod("autoOut").invoke(lineApi);
+                sunmiCall(() -> {
+                    Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+                    lineApi.getClass().getMethod("autoOut").invoke(lineApi);
+                });
             } else if (activePrinterType == PrinterType.SUNMI_AIDL) {
-                // Line wrap to feed paper out, then cut
-                sunmiAidlService.getClass().getMethod("lineWrap", int.class, Object.class)
-                    .invoke(sunmiAidlService, 4, null);
-                sunmiAidlService.getClass().getMethod("cutPaper", Object.class)
-                    .invoke(sunmiAidlService, (Object) null);
+                sunmiCall(() -> {
+                    // Line wrap to feed paper out, then cut
+                    sunmiAidl("lineWrap", 4);
+                    sunmiAidl("cutPaper");
+                });
             } else {
-                writeEscPos(new byte[] { 0x1B, 0x64, 0x05 }); // Feed
-                writeEscPos(ESC_CUT_PAPER);
+                feedAndCut();
             }
-            call.resolve();
+            submitFinishedJob(call, "Failed to complete print");
         } catch (Exception e) {
             call.reject("Failed to complete print", e);
         }
     }
 
     /**
-     * Write ESC/POS data to connected printer
+     * Open a job that JS sends in chunks with appendJob, for documents
+     * too long to build before printing. Resolves with the jobId the
+     * other calls take. ESC/POS only; streamed jobs aren't kept for
+     * reprints.
+     */
+    @PluginMethod
+    public void beginJob(PluginCall call) {
+        if (!checkPrinter(call)) return;
+        if (activePrinterType == PrinterType.SUNMI || activePrinterType == PrinterType.SUNMI_AIDL) {
+            call.reject("Streamed jobs need an ESC/POS printer or Sunmi raw mode");
+            return;
+        }
+        ChunkedJob open = chunkedJob;
+        if (open != null && open.isOpen()) {
+            call.reject("Job " + open.id + " is still open, commit or abort it first");
+            return;
+        }
+
+        String orderId = call.getString("orderId");
+        String kind = call.getString("kind", "report");
+        ChunkedJob job = new ChunkedJob(nextChunkedJobId++, orderId, kind, chunkRenderer,
+            RenderPipeline.DEFAULT_BUFFER_BYTES);
+        chunkedJob = job;
+        ThermalSettings thermal = activeThermal;
+        job.append(encoder -> {
+            encoder.init();
+            escPosPrinter.applyLayout(encoder);
+            encoder.raw(thermal.encode());
+        }, error -> {});
+
+        PrintScheduler.JobClass jobClass = PrintScheduler.JobClass.forKind(kind);
+        PrinterTransport target = transport;
+        printTrace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_BEGIN, orderId, 0, 0);
+        printTrace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_QUEUED, orderId, jobClass.ordinal(), 1);
+        escPosJobs.send(job.pipeline(), jobClass, orderId, target, escPosPrinter.header(thermal.encode()), job::suspend,
+            call.getInt("deadlineMs", 0), null,
+            error -> job.transmitted(error == null ? null : String.valueOf(error.getMessage())));
+
+        JSObject ret = new JSObject();
+        ret.put("jobId", job.id);
+        call.resolve(ret);
+    }
+
+    /**
+     * Add lines to a streamed job. Resolves once they are on their way
+     * to the printer, so awaiting each call keeps JS at the printer's
+     * pace. lines: [{ text, fontSize?, alignment?, bold? } or { feed }]
+     */
+    @PluginMethod
+    public void appendJob(PluginCall call) {
+        ChunkedJob job = chunkedJobFor(call);
+        if (job == null) return;
+        List<ChunkedJob.Chunk> parts = new ArrayList<>();
+        try {
+            JSONArray lines = call.getArray("lines");
+            for (int i = 0; lines != null && i < lines.length(); i++) {
+                JSONObject line = lines.getJSONObject(i);
+                if (line.has("feed")) {
+                    int feed = line.getInt("feed");
+                    parts.add(encoder -> encoder.feed(feed));
+                    continue;
+                }
+                String text = line.optString("text", "");
+                int size = EscPosEncoder.sizeForFontSize(line.optInt("fontSize", 24));
+                int alignment = line.optInt("alignment", 0);
+                boolean bold = line.optBoolean("bold", false);
+                parts.add(encoder -> encoder.text(text, alignment, bold, size));
+            }
+        } catch (JSONException e) {
+            call.reject("Invalid lines: " + e.getMessage(), e);
+            return;
+        }
+        boolean accepted = job.append(encoder -> {
+            for (ChunkedJob.Chunk part : parts) part.encode(encoder);
+        }, error -> {
+            if (error == null) call.resolve();
+            else call.reject("Failed to append to job: " + error);
+        });
+        if (!accepted) {
+            call.reject("Too many chunks waiting, await appendJob before sending more");
+        }
+    }
+
+    /**
+     * Finish a streamed job with a feed and cut. Resolves when the
+     * printer has been sent all of it.
+     */
+    @PluginMethod
+    public void commitJob(PluginCall call) {
+        ChunkedJob job = chunkedJobFor(call);
+        if (job == null) return;
+        PrintScheduler.JobClass jobClass = PrintScheduler.JobClass.forKind(job.kind);
+        job.commit(encoder -> {
+            encoder.feed(5);
+            encoder.cut();
+        }, error -> settleJob(jobOutcome(call, "Failed to print job"), job.orderId, jobClass,
+            error == null ? null : new Exception(error)));
+    }
+
+    /**
+     * Give up on a streamed job. Whatever already reached the printer
+     * has printed, it is cut off there.
+     */
+    @PluginMethod
+    public void abortJob(PluginCall call) {
+        ChunkedJob job = chunkedJobFor(call);
+        if (job == null) return;
+        boolean started = job.pipeline().stats().bytes > 0;
+        job.abort("Job aborted");
+        if (started) {
+            PrinterTransport target = transport;
+            scheduler.submit(PrintScheduler.JobClass.CONTROL, 0, () -> writeTransport(target, ESC_ABORTED_JOB), null);
+        }
+        call.resolve();
+    }
+
+    private ChunkedJob chunkedJobFor(PluginCall call) {
+        ChunkedJob job = chunkedJob;
+        Integer jobId = call.getInt("jobId");
+        if (job == null || jobId == null || job.id != jobId) {
+            call.reject("No open job " + jobId);
+            return null;
+        }
+        return job;
+    }
+
+    @PluginMethod
+    public void reprint(PluginCall call) {
+        if (!checkPrinter(call) || !checkCopies(call)) return;
+
+        String orderId = call.getString("orderId");
+        String kind = call.getString("kind");
+        int copies = call.getInt("copies", 1);
+        JobHistory.Job job = jobHistory.find(orderId, kind);
+        // With nothing kept for this printer the caller can render the job again
+        boolean sunmi = activePrinterType == PrinterType.SUNMI || activePrinterType == PrinterType.SUNMI_AIDL;
+        if (job == null || sunmi != "sunmi".equals(job.printerType)) {
+            call.reject(orderId != null ? "No retained job for order " + orderId : "No retained job", NOT_RETAINED);
+            return;
+        }
+
+        String key = call.getString("idempotencyKey");
+        EscPosJobs.Outcome outcome = jobOutcome(call, "Failed to reprint");
+        if (key != null && !idempotencyKeys.claim(key, android.os.SystemClock.elapsedRealtime(),
+                outcome::duplicate)) {
+            printTrace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_DUPLICATE, job.orderId, 0, 0);
+            return;
+        }
+        submitJob(job, PrintScheduler.JobClass.REPRINT, 0, copies, key, outcome);
+    }
+
+    /**
+     * Lines that changed since the last docket for this order on this
+     * printer. first is true when there is nothing to diff against.
      */
-    private void writeEscPos(byte[] data) throws IOException {
-        if (activePrinterType == PrinterType.BLUETOOTH && bluetoothOutputStream != null) {
-            bluetoothOutputStream.write(data);
-            bluetoothOutputStream.flush();
-        } else if (activePrinterType == PrinterType.USB && usbConnection != null && usbEndpoint != null) {
-            usbConnection.bulkTransfer(usbEndpoint, data, data.length, 5000);
+    @PluginMethod
+    public void diffDocket(PluginCall call) {
+        String orderId = call.getString("orderId");
+        if (orderId == null) {
+            call.reject("orderId is required");
+            return;
+        }
+        try {
+            List<DocketLedger.Change> changes =
+                docketLedger.diff(orderId, docketPrinter(call), docketLines(call.getArray("items")));
+            JSArray list = new JSArray();
+            if (changes != null) {
+                for (DocketLedger.Change change : changes) {
+                    JSObject json = docketLineToJson(change.line);
+                    json.put("change", change.kind == DocketLedger.Change.ADDED ? "added"
+                        : change.kind == DocketLedger.Change.REMOVED ? "removed" : "changed");
+                    if (change.previous != null) json.put("previous", docketLineToJson(change.previous));
+                    list.put(json);
+                }
+            }
+            JSObject ret = new JSObject();
+            ret.put("first", changes == null);
+            ret.put("changes", list);
+            call.resolve(ret);
+        } catch (JSONException e) {
+            call.reject("Failed to diff docket: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Record the docket that was just printed for this order and printer
+     */
+    @PluginMethod
+    public void commitDocket(PluginCall call) {
+        String orderId = call.getString("orderId");
+        if (orderId == null) {
+            call.reject("orderId is required");
+            return;
+        }
+        try {
+            docketLedger.record(orderId, docketPrinter(call), docketLines(call.getArray("items")));
+            call.resolve();
+        } catch (JSONException e) {
+            call.reject("Failed to record docket: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Drop the dockets recorded for an order, once it is completed or
+     * cancelled
+     */
+    @PluginMethod
+    public void forgetDocket(PluginCall call) {
+        String orderId = call.getString("orderId");
+        if (orderId == null) {
+            call.reject("orderId is required");
+            return;
+        }
+        docketLedger.forget(orderId);
+        call.resolve();
+    }
+
+    private String docketPrinter(PluginCall call) {
+        String printer = call.getString("printer");
+        return printer != null ? printer : activePrinterAddress();
+    }
+
+    /**
+     * Address of the printer jobs go to, "sunmi" for the built-in one
+     */
+    private String activePrinterAddress() {
+        switch (activePrinterType) {
+            case USB: return activeUsb;
+            case BLUETOOTH: return bluetoothSocket != null ? bluetoothSocket.getRemoteDevice().getAddress() : null;
+            case BLE: return blePrinter != null ? blePrinter.address : null;
+            case SUNMI:
+            case SUNMI_AIDL:
+            case SUNMI_RAW: return "sunmi";
+            default: return null;
+        }
+    }
+
+    private static List<DocketLedger.Line> docketLines(JSArray items) throws JSONException {
+        List<DocketLedger.Line> lines = new ArrayList<>();
+        if (items == null) return lines;
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            JSONArray mods = item.optJSONArray("modifiers");
+            String[] modifiers = new String[mods != null ? mods.length() : 0];
+            for (int m = 0; m < modifiers.length; m++) {
+                Object mod = mods.get(m);
+                modifiers[m] = mod instanceof JSONObject
+                    ? ((JSONObject) mod).optString("name", "") : String.valueOf(mod);
+            }
+            lines.add(new DocketLedger.Line(item.getString("name"), item.optInt("quantity", 1), modifiers,
+                item.optString("notes", null)));
+        }
+        return lines;
+    }
+
+    private static JSObject docketLineToJson(DocketLedger.Line line) {
+        JSObject json = new JSObject();
+        json.put("name", line.name);
+        json.put("quantity", line.quantity);
+        JSArray modifiers = new JSArray();
+        for (String modifier : line.modifiers) modifiers.put(modifier);
+        json.put("modifiers", modifiers);
+        if (line.notes != null) json.put("notes", line.notes);
+        return json;
+    }
+
+    @PluginMethod
+    public void dumpTrace(PluginCall call) {
+        String orderId = call.getString("orderId");
+        int limit = call.getInt("limit", 200);
+        JSArray events = new JSArray();
+        for (PrintTrace.Event event : printTrace.dump(orderId, limit)) {
+            JSObject json = new JSObject();
+            json.put("t", event.timeMs);
+            json.put("level", event.level);
+            json.put("code", event.code);
+            json.put("orderId", event.orderId);
+            json.put("a", event.a);
+            json.put("b", event.b);
+            events.put(json);
+        }
+        JSObject result = new JSObject();
+        result.put("level", printTrace.level());
+        result.put("events", events);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void setTraceLevel(PluginCall call) {
+        String level = call.getString("level", "info");
+        switch (level) {
+            case "off": printTrace.setLevel(PrintTrace.LEVEL_OFF); break;
+            case "error": printTrace.setLevel(PrintTrace.LEVEL_ERROR); break;
+            case "debug": printTrace.setLevel(PrintTrace.LEVEL_DEBUG); break;
+            default: printTrace.setLevel(PrintTrace.LEVEL_INFO); break;
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getQueueStats(PluginCall call) {
+        JSObject classes = new JSObject();
+        for (PrintScheduler.JobClass jobClass : PrintScheduler.JobClass.values()) {
+            PrintScheduler.WaitStats stats = scheduler.stats(jobClass);
+            JSObject entry = new JSObject();
+            entry.put("queued", scheduler.queued(jobClass));
+            entry.put("completed", stats.count());
+            entry.put("avgWaitMs", stats.averageMs());
+            entry.put("p50WaitMs", stats.percentileMs(50));
+            entry.put("p95WaitMs", stats.percentileMs(95));
+            entry.put("maxWaitMs", stats.maxMs());
+            classes.put(jobClass.name().toLowerCase(), entry);
+        }
+        JSObject result = new JSObject();
+        result.put("classes", classes);
+        result.put("duplicatesSuppressed", idempotencyKeys.suppressed());
+        RenderPipeline.Stats pipelineStats = escPosJobs.streamStats();
+        JSObject streaming = new JSObject();
+        streaming.put("jobs", pipelineStats.streams);
+        streaming.put("buffers", pipelineStats.buffers);
+        streaming.put("bytes", pipelineStats.bytes);
+        streaming.put("transmitMs", pipelineStats.transmitNs / 1000000L);
+        streaming.put("transmitIdleMs", pipelineStats.transmitIdleNs / 1000000L);
+        streaming.put("renderStallMs", pipelineStats.renderStallNs / 1000000L);
+        streaming.put("saturation", pipelineStats.saturation());
+        result.put("pipeline", streaming);
+        SunmiCompletions.Stats sunmiStats = sunmiCompletions.stats();
+        JSObject sunmi = new JSObject();
+        sunmi.put("confirmed", sunmiStats.confirmed);
+        sunmi.put("failed", sunmiStats.failed);
+        sunmi.put("dropped", sunmiStats.dropped);
+        sunmi.put("waiting", sunmiStats.pending);
+        sunmi.put("lastPrintMs", sunmiStats.lastPrintMs);
+        sunmi.put("avgPrintMs", sunmiStats.averagePrintMs());
+        sunmi.put("maxPrintMs", sunmiStats.maxPrintMs);
+        result.put("sunmi", sunmi);
+        call.resolve(result);
+    }
+
+    private void openJob(String orderId, String kind, int deadlineMs, String key) {
+        jobOrderId = orderId;
+        jobKind = kind;
+        jobDeadlineMs = deadlineMs;
+        jobKey = key;
+        trace(PrintTrace.LEVEL_INFO, PrintTrace.JOB_BEGIN, 0, 0);
+        if (activePrinterType == PrinterType.SUNMI || activePrinterType == PrinterType.SUNMI_AIDL) {
+            jobCommands = new ArrayList<>();
+        } else {
+            jobCommands = null;
+            escPosJobs.open(orderId, kind, deadlineMs, key, transport);
+        }
+    }
+
+    /**
+     * Settles a job's call: resolved once sent, or for a duplicate with
+     * the original job's outcome
+     */
+    private static EscPosJobs.Outcome jobOutcome(PluginCall call, String errorMessage) {
+        return new EscPosJobs.Outcome() {
+            @Override
+            public void settled(Exception error) {
+                if (error == null) {
+                    call.resolve();
+                } else {
+                    Log.e(TAG, errorMessage, error);
+                    call.reject(errorMessage + ": " + error.getMessage(), error);
+                }
+            }
+
+            @Override
+            public void duplicate(String error) {
+                if (error == null) {
+                    JSObject ret = new JSObject();
+                    ret.put("duplicate", true);
+                    call.resolve(ret);
+                } else {
+                    call.reject(errorMessage + ": " + error);
+                }
+            }
+        };
+    }
+
+    /**
+     * Close the open job and queue it. Without an open job everything
+     * was already sent. A job whose idempotency key was seen recently is
+     * dropped and the call settles with the original job's outcome.
+     * Callers check copies with checkCopies before cutting.
+     */
+    private void submitFinishedJob(PluginCall call, String errorMessage) {
+        int copies = call.getInt("copies", 1);
+        String key = call.getString("idempotencyKey", jobKey);
+        List<PrinterCommand> commands = jobCommands;
+        String orderId = jobOrderId;
+        String kind = jobKind;
+        jobCommands = null;
+        jobOrderId = null;
+        jobKind = null;
+        jobKey = null;
+        if (escPosJobs.isOpen()) {
+            escPosJobs.finish(copies, key, docketPrinter(call), jobOutcome(call, errorMessage));
+            return;
+        }
+        if (commands == null) {
+            call.resolve();
+            return;
+        }
+        JobHistory.Job job = new JobHistory.Job(orderId, kind, "sunmi", null, commands);
+        jobHistory.add(job);
+        EscPosJobs.Outcome outcome = jobOutcome(call, errorMessage);
+        if (key != null && !idempotencyKeys.claim(key, android.os.SystemClock.elapsedRealtime(),
+                outcome::duplicate)) {
+            printTrace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_DUPLICATE, job.orderId, 0, 0);
+            return;
+        }
+        submitJob(job, PrintScheduler.JobClass.forKind(job.kind), jobDeadlineMs, copies, key, outcome);
+    }
+
+    /**
+     * ESC/POS end of job: feed past the cutter and cut
+     */
+    private void feedAndCut() throws IOException {
+        flushGraphics();
+        escPosPrinter.feedAndCut();
+    }
+
+    /**
+     * Rush mode: dockets for one kitchen printer that arrive within the
+     * window (or up to maxOrders of them) print as one job with a single
+     * cut. Off by default; switching it off prints what is waiting.
+     */
+    @PluginMethod
+    public void setDocketBatching(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", false);
+        escPosJobs.configureBatching(enabled, call.getInt("windowMs", 4000), call.getInt("maxOrders", 4));
+        DocketBatcher<?> batching = escPosJobs.batching();
+        JSObject ret = new JSObject();
+        ret.put("enabled", batching.isEnabled());
+        ret.put("windowMs", batching.windowMs());
+        ret.put("maxOrders", batching.maxOrders());
+        call.resolve(ret);
+    }
+
+    /**
+     * Queue a job (all copies together) and settle the call once it has
+     * been sent, or for a Sunmi job once the printer reports it printed
+     */
+    private void submitJob(JobHistory.Job job, PrintScheduler.JobClass jobClass, long deadlineMs, int copies,
+                           String key, EscPosJobs.Outcome outcome) {
+        boolean sunmi = activePrinterType == PrinterType.SUNMI || activePrinterType == PrinterType.SUNMI_AIDL;
+        if (sunmi != "sunmi".equals(job.printerType)) {
+            settleJob(outcome, job.orderId, jobClass, new Exception("Job was rendered for a different printer type"));
+            return;
+        }
+        // The job goes to the printer that was active when it was submitted
+        if (job.commands == null) {
+            escPosJobs.submit(job, jobClass, deadlineMs, copies, key, transport, outcome);
+            return;
+        }
+        printTrace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_QUEUED, job.orderId, jobClass.ordinal(), copies);
+        // Set by the worker when the Sunmi service will report the outcome itself
+        boolean[] awaitingPrinter = { false };
+        scheduler.submit(jobClass, deadlineMs, () -> {
+            sendingOrderId = job.orderId;
+            if (printSunmiJob(job, copies, (failure, printMs, confirmed) -> {
+                printTrace.record(failure == null ? PrintTrace.LEVEL_INFO : PrintTrace.LEVEL_ERROR,
+                    PrintTrace.JOB_PRINTED, job.orderId, printMs, failure == null ? 1 : 0);
+                // A job that may have printed keeps its key, a retry of it must not print again
+                if (key != null) idempotencyKeys.settle(key, confirmed ? failure : null);
+                settleJob(outcome, job.orderId, jobClass, failure == null ? null : new Exception(failure));
+            })) {
+                awaitingPrinter[0] = true;
+                return;
+            }
+            for (int i = 0; i < copies; i++) {
+                for (PrinterCommand command : job.commands) {
+                    command.run();
+                }
+            }
+        }, error -> {
+            sendingOrderId = null;
+            // Settled when the printer reports back
+            if (error == null && awaitingPrinter[0]) return;
+            if (key != null) idempotencyKeys.settle(key, error == null ? null : String.valueOf(error.getMessage()));
+            settleJob(outcome, job.orderId, jobClass, error);
+        });
+    }
+
+    /**
+     * Send a recorded Sunmi job as one printer transaction, so the
+     * service reports when it has actually printed it (or failed to).
+     * False if this SDK can't report results; the caller replays the job
+     * as before and it settles once sent.
+     */
+    private boolean printSunmiJob(JobHistory.Job job, int copies, SunmiCompletions.Listener listener) throws Exception {
+        long now = android.os.SystemClock.elapsedRealtime();
+        SunmiCompletions.Pending pending;
+        if (activePrinterType == PrinterType.SUNMI_AIDL) {
+            if (sunmiCallback == null || aidlMethod("exitPrinterBufferWithCallback", 2) == null) return false;
+            pending = sunmiCompletions.expect(job.orderId, now, listener);
+            sunmiJobCallback = new SunmiAidlCallback(sunmiCompletions, pending).asCallback();
+            try {
+                sunmiAidlInvoke("enterPrinterBuffer", false, true);
+                for (int i = 0; i < copies; i++) {
+                    for (PrinterCommand command : job.commands) command.run();
+                }
+                sunmiAidl("exitPrinterBufferWithCallback", true);
+            } catch (Exception e) {
+                sunmiCompletions.cancel(pending);
+                try {
+                    // Drop whatever was buffered rather than print half a job
+                    sunmiAidlInvoke("exitPrinterBuffer", false, false);
+                } catch (Exception ignored) {}
+                throw e;
+            } finally {
+                sunmiJobCallback = null;
+            }
+        } else if (activePrinterType == PrinterType.SUNMI) {
+            Object lineApi = sunmiPrinter.getClass().getMethod("lineApi").invoke(sunmiPrinter);
+            if (!printerXResultReady(lineApi)) return false;
+            java.lang.reflect.Method transMode = lineApi.getClass().getMethod("enableTransMode", boolean.class);
+            pending = sunmiCompletions.expect(job.orderId, now, listener);
+            try {
+                transMode.invoke(lineApi, true);
+                for (int i = 0; i < copies; i++) {
+                    for (PrinterCommand command : job.commands) command.run();
+                }
+                printerXPrintTrans.invoke(lineApi, printerXResult(pending));
+            } catch (Exception e) {
+                sunmiCompletions.cancel(pending);
+                throw e;
+            } finally {
+                try {
+                    // Calls outside a job go straight to the printer again
+                    transMode.invoke(lineApi, false);
+                } catch (Exception ignored) {}
+            }
+        } else {
+            // Rendered for a different printer, replayJob reports it
+            return false;
+        }
+        sunmiCompletions.sent(pending, android.os.SystemClock.elapsedRealtime());
+        timer.schedule(this::expireSunmiJobs, SUNMI_CONFIRM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void expireSunmiJobs() {
+        long now = android.os.SystemClock.elapsedRealtime();
+        sunmiCompletions.expire(now, SUNMI_CONFIRM_TIMEOUT_MS);
+        // Fired a moment early, or later jobs are still waiting
+        long next = sunmiCompletions.nextExpiry(SUNMI_CONFIRM_TIMEOUT_MS);
+        if (next >= 0) timer.schedule(this::expireSunmiJobs, Math.max(1, next - now), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Find PrinterX's printTrans and its result listener type, once. A
+     * listener can only be made when its type is an interface.
+     */
+    private synchronized boolean printerXResultReady(Object lineApi) {
+        if (printerXChecked) return printerXResultType != null;
+        printerXChecked = true;
+        try {
+            lineApi.getClass().getMethod("enableTransMode", boolean.class);
+        } catch (NoSuchMethodException e) {
+            Log.w(TAG, "PrinterX has no transaction mode, Sunmi jobs resolve when sent");
+            return false;
+        }
+        for (java.lang.reflect.Method m : lineApi.getClass().getMethods()) {
+            if (!m.getName().equals("printTrans") || m.getParameterCount() != 1) continue;
+            Class<?> resultType = m.getParameterTypes()[0];
+            if (!resultType.isInterface()) continue;
+            printerXResultType = resultType;
+            printerXPrintTrans = m;
+            return true;
+        }
+        Log.w(TAG, "PrinterX result listener not available, Sunmi jobs resolve when sent");
+        return false;
+    }
+
+    /**
+     * PrinterX result listener for one transaction, reporting for its job
+     */
+    private Object printerXResult(SunmiCompletions.Pending job) {
+        Class<?> resultType = printerXResultType;
+        return java.lang.reflect.Proxy.newProxyInstance(resultType.getClassLoader(),
+            new Class<?>[] { resultType }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "PrintResult";
+                    default:
+                        // onResult(int code, String message), 0 is printed
+                        if (args != null && args.length > 0 && args[0] instanceof Integer) {
+                            sunmiCompletions.result(job, (Integer) args[0] == 0,
+                                args.length > 1 ? String.valueOf(args[1]) : null,
+                                android.os.SystemClock.elapsedRealtime());
+                        }
+                        return null;
+                }
+            });
+    }
+
+    private void settleJob(EscPosJobs.Outcome outcome, String orderId, PrintScheduler.JobClass jobClass,
+                           Exception error) {
+        printTrace.record(error == null ? PrintTrace.LEVEL_INFO : PrintTrace.LEVEL_ERROR,
+            error == null ? PrintTrace.JOB_SENT : PrintTrace.JOB_FAILED, orderId, jobClass.ordinal(), 0);
+        outcome.settled(error);
+    }
+
+    /**
+     * Record a trace event against the job being built, or the job being
+     * sent when called from the scheduler
+     */
+    private void trace(int level, int code, long a, long b) {
+        printTrace.record(level, code, scheduler.isWorkerThread() ? sendingOrderId : jobOrderId, a, b);
+    }
+
+    /**
+     * Call the woyou AIDL service with a result callback as the last
+     * argument: the print job's inside its buffer transaction, otherwise
+     * the one for loose calls
+     */
+    private void sunmiAidl(String name, Object... args) throws Exception {
+        sunmiAidlInvoke(name, true, args);
+    }
+
+    private void sunmiAidlInvoke(String name, boolean withCallback, Object... args) throws Exception {
+        Object service = sunmiAidlService;
+        if (service == null) throw new Exception("AIDL service not connected");
+        int count = withCallback ? args.length + 1 : args.length;
+        java.lang.reflect.Method method = aidlMethod(name, count);
+        if (method == null) throw new NoSuchMethodException("Sunmi AIDL service has no " + name);
+        Object[] full = args;
+        if (withCallback) {
+            full = java.util.Arrays.copyOf(args, count);
+            full[args.length] = sunmiJobCallback != null ? sunmiJobCallback : sunmiCallback;
+        }
+        method.invoke(service, full);
+    }
+
+    /**
+     * AIDL has no overloads, methods are found by name once per connection
+     */
+    private java.lang.reflect.Method aidlMethod(String name, int parameters) {
+        Object service = sunmiAidlService;
+        if (service == null) return null;
+        java.lang.reflect.Method method = aidlMethods.get(name);
+        if (method == null) {
+            for (java.lang.reflect.Method m : service.getClass().getMethods()) {
+                if (m.getName().equals(name) && m.getParameterCount() == parameters) {
+                    method = m;
+                    aidlMethods.put(name, m);
+                    break;
+                }
+            }
+        }
+        return method != null && method.getParameterCount() == parameters ? method : null;
+    }
+
+    /**
+     * Record a Sunmi SDK call into the open job, or run it straight
+     * away (through the scheduler) when there is none
+     */
+    private void sunmiCall(PrinterCommand command) throws Exception {
+        if (jobCommands != null) {
+            jobCommands.add(command);
+        } else {
+            runControl(command);
+        }
+    }
+
+    /**
+     * Run a command outside any job, after the job currently printing.
+     * While a stream is open the worker may be waiting on this thread for
+     * data, so the command is queued without waiting for it.
+     */
+    private void runControl(PrinterCommand command) throws Exception {
+        ChunkedJob chunked = chunkedJob;
+        if (escPosJobs.isStreaming() || (chunked != null && chunked.isOpen())) {
+            scheduler.submit(PrintScheduler.JobClass.CONTROL, 0, command, error -> {
+                if (error != null) Log.e(TAG, "Command queued behind a stream failed: " + error.getMessage(), error);
+            });
+            return;
+        }
+        scheduler.submitAndWait(PrintScheduler.JobClass.CONTROL, command);
+    }
+
+    /**
+     * Send whatever the encoder has compiled to the printer
+     */
+    private void flushEscPos() throws IOException {
+        escPosPrinter.flush();
+    }
+
+    /**
+     * Send a command outside any job, after the job currently printing
+     */
+    private void sendNow(PrinterCommand command) throws IOException {
+        try {
+            runControl(command);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write to the printer, returning how long the write took in ns
+     */
+    private long writeTransport(PrinterTransport target, byte[] data) throws IOException {
+        if (target == null) return 0;
+        long start = System.nanoTime();
+        target.write(data);
+        long elapsed = System.nanoTime() - start;
+        trace(PrintTrace.LEVEL_DEBUG, PrintTrace.TRANSPORT_WRITE, data.length, elapsed / 1000);
+        return elapsed;
+    }
+
     private boolean checkPrinter(PluginCall call) {
         if (!isConnected) {
             call.reject("Printer not connected");
@@ -1129,10 +2447,29 @@ public class SunmiPrinterPlugin extends Plugin {
         return true;
     }
 
+    private boolean checkCopies(PluginCall call) {
+        int copies = call.getInt("copies", 1);
+        if (copies < 1 || copies > MAX_COPIES) {
+            call.reject("copies must be between 1 and " + MAX_COPIES + ", got " + copies);
+            return false;
+        }
+        return true;
+    }
+
     @Override
     protected void handleOnDestroy() {
         super.handleOnDestroy();
+        if (printerDiscovery != null) printerDiscovery.stop();
+        escPosJobs.shutdown("Plugin destroyed");
+        ChunkedJob open = chunkedJob;
+        if (open != null) open.abort("Plugin destroyed");
+        chunkRenderer.shutdownNow();
+        timer.shutdownNow();
+        scheduler.stop();
+        sunmiCompletions.failAll("Plugin destroyed", android.os.SystemClock.elapsedRealtime());
+        dither.shutdown();
         disconnectBluetooth();
+        disconnectBle();
         disconnectUsb();
         try {
             Class<?> sdk = Class.forName("com.sunmi.printerx.PrinterSdk");
@@ -0,0 +1,90 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * ESC/POS bytes straight into the Sunmi built-in printer
+ *
+ * PrinterX takes raw commands through commandApi().sendEscCommand(byte[]),
+ * the older AIDL service through sendRAWData(byte[], ICallback). Both are
+ * looked up once by reflection when the transport is made, so a whole
+ * receipt costs one native call instead of one per line. Buffers larger
+ * than a binder transaction can carry are split.
+ */
+final class SunmiRawTransport implements PrinterTransport {
+
+    // Well under the 1MB binder transaction buffer shared by the process
+    static final int MAX_CALL_BYTES = 64 * 1024;
+
+    private final Object target;
+    private final Method send;
+    private final boolean withCallback;
+
+    private SunmiRawTransport(Object target, Method send, boolean withCallback) {
+        this.target = target;
+        this.send = send;
+        this.withCallback = withCallback;
+    }
+
+    /**
+     * Raw transport over a PrinterX printer, or null if the SDK on this
+     * device has no command API
+     */
+    static SunmiRawTransport forPrinterX(Object printer) {
+        if (printer == null) return null;
+        try {
+            Object commandApi = printer.getClass().getMethod("commandApi").invoke(printer);
+            if (commandApi == null) return null;
+            Method send = commandApi.getClass().getMethod("sendEscCommand", byte[].class);
+            return new SunmiRawTransport(commandApi, send, false);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Raw transport over the woyou AIDL service, or null if the service
+     * doesn't offer sendRAWData
+     */
+    static SunmiRawTransport forAidl(Object service) {
+        if (service == null) return null;
+        for (Method method : service.getClass().getMethods()) {
+            Class<?>[] params = method.getParameterTypes();
+            if ("sendRAWData".equals(method.getName()) && params.length == 2 && params[0] == byte[].class) {
+                return new SunmiRawTransport(service, method, true);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        if (data.length <= MAX_CALL_BYTES) {
+            send(data);
+            return;
+        }
+        for (int offset = 0; offset < data.length; offset += MAX_CALL_BYTES) {
+            int length = Math.min(MAX_CALL_BYTES, data.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(data, offset, chunk, 0, length);
+            send(chunk);
+        }
+    }
+
+    private void send(byte[] data) throws IOException {
+        try {
+            if (withCallback) {
+                send.invoke(target, data, null);
+            } else {
+                send.invoke(target, (Object) data);
+            }
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Sunmi raw write failed: " + cause.getMessage(), cause);
+        } catch (IllegalAccessException e) {
+            throw new IOException("Sunmi raw write failed: " + e.getMessage(), e);
+        }
+    }
+}
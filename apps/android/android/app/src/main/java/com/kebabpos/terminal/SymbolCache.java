@@ -0,0 +1,70 @@
+package com.kebabpos.terminal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of encoded symbol commands
+ *
+ * Keyed by symbol type, data, size and printer capabilities, so
+ * recurring codes (e.g. the review link) are only encoded once.
+ */
+final class SymbolCache {
+
+    private final int maxEntries;
+    private final int maxBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int totalBytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    SymbolCache(int maxEntries, int maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    static String key(String kind, String data, int size, int option, PrinterProfile profile) {
+        return kind + '|' + size + '|' + option + '|' + profile.nativeQr + '|' + profile.nativeBarcode
+            + '|' + profile.dotsPerLine + '|' + data;
+    }
+
+    synchronized byte[] get(String key) {
+        byte[] value = entries.get(key);
+        if (value != null) hits++; else misses++;
+        return value;
+    }
+
+    synchronized void put(String key, byte[] value) {
+        if (value.length > maxBytes) return;
+        byte[] previous = entries.put(key, value);
+        if (previous != null) totalBytes -= previous.length;
+        totalBytes += value.length;
+
+        // Evict least recently used until within bounds
+        Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            totalBytes -= eldest.getValue().length;
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized int hits() {
+        return hits;
+    }
+
+    synchronized int misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,146 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prints a test pattern at several head settings and measures how fast
+ * each one goes
+ *
+ * Each sample is a numbered label and a block of raster rows, about a
+ * quarter of the dots dark with a solid bar, sent in small slices. Once
+ * the printer's input buffer has filled, each write waits for rows to
+ * print, so the write times over the second half of a sample give its
+ * print speed. Which samples are still legible is for a person to judge
+ * from the printout; the numbers match the results.
+ */
+final class ThermalCalibration {
+
+    interface Writer {
+        /**
+         * Send data to the printer, returning how long the write took in ns
+         */
+        long write(byte[] data) throws IOException;
+    }
+
+    static final class Sample {
+        final int number;
+        final ThermalSettings settings;
+        long rows;
+        long nanos;
+
+        Sample(int number, ThermalSettings settings) {
+            this.number = number;
+            this.settings = settings;
+        }
+
+        double dotRowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        /**
+         * At 8 dots per mm (203 dpi)
+         */
+        double mmPerSecond() {
+            return dotRowsPerSecond() / DOTS_PER_MM;
+        }
+    }
+
+    static final int DEFAULT_ROWS = 480;
+    private static final int DOTS_PER_MM = 8;
+    // Rows per write, small so the timing follows the printer closely
+    private static final int SLICE_ROWS = 16;
+
+    private final int dotsPerLine;
+    private final int rows;
+
+    ThermalCalibration(int dotsPerLine, int rows) {
+        this.dotsPerLine = dotsPerLine;
+        this.rows = Math.max(SLICE_ROWS * 4, rows);
+    }
+
+    /**
+     * Factory settings, then more heated dots and shorter heating with
+     * density raised to make up for it
+     */
+    static List<ThermalSettings> defaultCandidates() {
+        int unset = ThermalSettings.UNSET;
+        return Arrays.asList(
+            ThermalSettings.FACTORY,
+            new ThermalSettings(11, 80, 2, unset, unset),
+            new ThermalSettings(15, 70, 2, unset, unset),
+            new ThermalSettings(15, 60, 2, 2, unset),
+            new ThermalSettings(20, 50, 2, 4, unset)
+        );
+    }
+
+    /**
+     * Print one sample per candidate and time it, then put the printer
+     * back on the restore settings and cut
+     */
+    List<Sample> run(List<ThermalSettings> candidates, ThermalSettings restore, Writer writer) throws IOException {
+        byte[][] slices = patternSlices();
+        List<Sample> samples = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Sample sample = new Sample(i + 1, candidates.get(i));
+            writer.write(header(sample));
+            for (int s = 0; s < slices.length; s++) {
+                long nanos = writer.write(slices[s]);
+                // The first half fills the printer's buffer
+                if (s >= slices.length / 2) {
+                    sample.nanos += nanos;
+                    sample.rows += SLICE_ROWS;
+                }
+            }
+            samples.add(sample);
+        }
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.init();
+        encoder.raw(restore.encode());
+        encoder.feed(4);
+        encoder.cut();
+        writer.write(encoder.drain());
+        return samples;
+    }
+
+    /**
+     * The fastest sample, or null if none was timed
+     */
+    static Sample fastest(List<Sample> samples) {
+        Sample best = null;
+        for (Sample sample : samples) {
+            if (sample.nanos > 0 && (best == null || sample.dotRowsPerSecond() > best.dotRowsPerSecond())) {
+                best = sample;
+            }
+        }
+        return best;
+    }
+
+    private byte[] header(Sample sample) {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.init();
+        encoder.raw(sample.settings.encode());
+        encoder.feed(1);
+        encoder.text("Sample " + sample.number + ": " + sample.settings + "\n", EscPosEncoder.ALIGN_LEFT, true,
+            EscPosEncoder.SIZE_NORMAL);
+        return encoder.drain();
+    }
+
+    // Every slice the same, so every timed write prints the same load
+    private byte[][] patternSlices() {
+        int widthBytes = (dotsPerLine + 7) / 8;
+        MonoImage tile = new MonoImage(widthBytes, SLICE_ROWS);
+        int bar = dotsPerLine / 8;
+        for (int y = 0; y < SLICE_ROWS; y++) {
+            for (int x = 0; x < dotsPerLine; x++) {
+                if (x < bar || (x + y) % 8 < 2) tile.setDot(x, y);
+            }
+        }
+        byte[] slice = EscPosRaster.encode(tile);
+        byte[][] slices = new byte[rows / SLICE_ROWS][];
+        Arrays.fill(slices, slice);
+        return slices;
+    }
+}
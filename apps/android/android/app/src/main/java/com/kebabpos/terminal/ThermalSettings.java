@@ -0,0 +1,136 @@
+package com.kebabpos.terminal;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Print head settings for one thermal printer
+ *
+ * ESC 7 n1 n2 n3 sets how many dots are heated at once ((n1 + 1) * 8),
+ * the heating time and the interval between heats (10us units); more
+ * dots and less time print faster, too little heat prints faint. GS ( K
+ * sets print density (function 49, -6 to +6) and speed (function 50) on
+ * printers that have them. Unset values are left at the printer's own
+ * default. Printers reset these on ESC @, so they are sent with every
+ * job's init.
+ */
+final class ThermalSettings {
+
+    static final int UNSET = Integer.MIN_VALUE;
+    static final ThermalSettings FACTORY = new ThermalSettings(UNSET, UNSET, UNSET, UNSET, UNSET);
+
+    // ESC 7 defaults, for the values not given when any one is
+    static final int DEFAULT_HEATING_DOTS = 7;
+    static final int DEFAULT_HEATING_TIME = 80;
+    static final int DEFAULT_HEATING_INTERVAL = 2;
+
+    final int heatingDots;
+    final int heatingTime;
+    final int heatingInterval;
+    final int density;
+    final int speed;
+
+    ThermalSettings(int heatingDots, int heatingTime, int heatingInterval, int density, int speed) {
+        this.heatingDots = clamp(heatingDots, 0, 255);
+        this.heatingTime = clamp(heatingTime, 3, 255);
+        this.heatingInterval = clamp(heatingInterval, 0, 255);
+        this.density = clamp(density, -6, 6);
+        this.speed = clamp(speed, 1, 9);
+    }
+
+    boolean isFactory() {
+        return heatingDots == UNSET && heatingTime == UNSET && heatingInterval == UNSET
+            && density == UNSET && speed == UNSET;
+    }
+
+    /**
+     * The commands for these settings, empty for factory settings
+     */
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        if (heatingDots != UNSET || heatingTime != UNSET || heatingInterval != UNSET) {
+            out.write(0x1B);
+            out.write(0x37);
+            out.write(heatingDots != UNSET ? heatingDots : DEFAULT_HEATING_DOTS);
+            out.write(heatingTime != UNSET ? heatingTime : DEFAULT_HEATING_TIME);
+            out.write(heatingInterval != UNSET ? heatingInterval : DEFAULT_HEATING_INTERVAL);
+        }
+        // GS ( K pL pH fn m; negative densities are 256 + value
+        if (density != UNSET) writeFunction(out, 0x31, density & 0xFF);
+        if (speed != UNSET) writeFunction(out, 0x32, speed);
+        return out.toByteArray();
+    }
+
+    /**
+     * Stored form, e.g. "dots=15,time=60,interval=2,density=2"
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        append(sb, "dots", heatingDots);
+        append(sb, "time", heatingTime);
+        append(sb, "interval", heatingInterval);
+        append(sb, "density", density);
+        append(sb, "speed", speed);
+        return sb.length() == 0 ? "factory" : sb.toString();
+    }
+
+    /**
+     * Read the stored form; unknown or malformed entries are skipped
+     */
+    static ThermalSettings parse(String stored) {
+        if (stored == null) return FACTORY;
+        int dots = UNSET, time = UNSET, interval = UNSET, density = UNSET, speed = UNSET;
+        for (String entry : stored.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq < 0) continue;
+            int value;
+            try {
+                value = Integer.parseInt(entry.substring(eq + 1).trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            switch (entry.substring(0, eq).trim()) {
+                case "dots": dots = value; break;
+                case "time": time = value; break;
+                case "interval": interval = value; break;
+                case "density": density = value; break;
+                case "speed": speed = value; break;
+                default: break;
+            }
+        }
+        return new ThermalSettings(dots, time, interval, density, speed);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ThermalSettings)) return false;
+        ThermalSettings other = (ThermalSettings) o;
+        return heatingDots == other.heatingDots && heatingTime == other.heatingTime
+            && heatingInterval == other.heatingInterval && density == other.density && speed == other.speed;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((((heatingDots * 31) + heatingTime) * 31 + heatingInterval) * 31 + density) * 31 + speed;
+    }
+
+    private static void writeFunction(ByteArrayOutputStream out, int fn, int m) {
+        out.write(0x1D);
+        out.write(0x28);
+        out.write(0x4B);
+        out.write(0x02);
+        out.write(0x00);
+        out.write(fn);
+        out.write(m);
+    }
+
+    private static void append(StringBuilder sb, String key, int value) {
+        if (value == UNSET) return;
+        if (sb.length() > 0) sb.append(',');
+        sb.append(key).append('=').append(value);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value == UNSET ? UNSET : Math.max(min, Math.min(max, value));
+    }
+}
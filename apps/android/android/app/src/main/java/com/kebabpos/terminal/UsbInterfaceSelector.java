@@ -0,0 +1,150 @@
+package com.kebabpos.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the interface and bulk endpoints to print through on a USB device
+ *
+ * Composite printers often list an HID, CDC or storage interface before
+ * the printer one, so the first interface and first OUT endpoint can't be
+ * trusted. Printer-class interfaces are preferred, then vendor-specific
+ * ones, then CDC data (USB-serial printers); only bulk OUT endpoints
+ * count. Works on a plain description of the device so it can be tested
+ * without Android.
+ */
+final class UsbInterfaceSelector {
+
+    // USB class codes and endpoint fields, as in android.hardware.usb.UsbConstants
+    static final int CLASS_PRINTER = 7;
+    static final int CLASS_CDC_DATA = 10;
+    static final int CLASS_VENDOR_SPECIFIC = 0xFF;
+    static final int DIR_OUT = 0;
+    static final int DIR_IN = 0x80;
+    static final int XFER_BULK = 2;
+
+    // Android debugging shows up as a vendor-specific bulk interface
+    private static final int ADB_SUBCLASS = 0x42;
+    private static final int ADB_PROTOCOL = 1;
+
+    static final class Endpoint {
+        final int address;
+        final int direction;
+        final int type;
+        final int maxPacketSize;
+
+        Endpoint(int address, int direction, int type, int maxPacketSize) {
+            this.address = address;
+            this.direction = direction;
+            this.type = type;
+            this.maxPacketSize = maxPacketSize;
+        }
+    }
+
+    static final class Interface {
+        final int id;
+        final int alternateSetting;
+        final int interfaceClass;
+        final int subclass;
+        final int protocol;
+        final List<Endpoint> endpoints;
+
+        Interface(int id, int alternateSetting, int interfaceClass, int subclass, int protocol, List<Endpoint> endpoints) {
+            this.id = id;
+            this.alternateSetting = alternateSetting;
+            this.interfaceClass = interfaceClass;
+            this.subclass = subclass;
+            this.protocol = protocol;
+            this.endpoints = endpoints;
+        }
+    }
+
+    /**
+     * The chosen interface (index into the device's list) and endpoint
+     * indexes within it. inEndpoint is -1 when the printer can't talk back.
+     */
+    static final class Selection {
+        final int interfaceIndex;
+        final int outEndpoint;
+        final int inEndpoint;
+        final boolean printerClass;
+
+        Selection(int interfaceIndex, int outEndpoint, int inEndpoint, boolean printerClass) {
+            this.interfaceIndex = interfaceIndex;
+            this.outEndpoint = outEndpoint;
+            this.inEndpoint = inEndpoint;
+            this.printerClass = printerClass;
+        }
+    }
+
+    private UsbInterfaceSelector() {}
+
+    /**
+     * Best interface to print through, or null if there is none
+     */
+    static Selection select(List<Interface> interfaces) {
+        Selection best = null;
+        int bestScore = 0;
+        for (int i = 0; i < interfaces.size(); i++) {
+            Interface candidate = interfaces.get(i);
+            int score = score(candidate);
+            if (score == 0) continue;
+
+            int out = -1;
+            int in = -1;
+            for (int e = 0; e < candidate.endpoints.size(); e++) {
+                Endpoint endpoint = candidate.endpoints.get(e);
+                if (endpoint.type != XFER_BULK) continue;
+                if (endpoint.direction == DIR_OUT && out < 0) out = e;
+                if (endpoint.direction == DIR_IN && in < 0) in = e;
+            }
+            if (out < 0) continue;
+            // A way back for status beats a write-only setting of the same class
+            if (in >= 0) score++;
+
+            if (score > bestScore) {
+                bestScore = score;
+                best = new Selection(i, out, in, candidate.interfaceClass == CLASS_PRINTER);
+            }
+        }
+        return best;
+    }
+
+    private static int score(Interface candidate) {
+        switch (candidate.interfaceClass) {
+            case CLASS_PRINTER:
+                return 30;
+            case CLASS_VENDOR_SPECIFIC:
+                if (candidate.subclass == ADB_SUBCLASS && candidate.protocol == ADB_PROTOCOL) return 0;
+                return 20;
+            case CLASS_CDC_DATA:
+                return 10;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Whether a device with these interfaces should be offered as a
+     * printer. Vendor-specific and CDC interfaces are used once a printer
+     * is chosen, but alone they are too common (modems, card readers) to
+     * list every such device, so discovery also wants the device class.
+     */
+    static boolean looksLikePrinter(int deviceClass, List<Interface> interfaces) {
+        if (deviceClass == CLASS_PRINTER) return true;
+        Selection selection = select(interfaces);
+        if (selection == null) return false;
+        if (selection.printerClass) return true;
+        // Vendor-specific printers (many ESC/POS models) are the whole device
+        return deviceClass == CLASS_VENDOR_SPECIFIC && onlyVendorInterfaces(interfaces);
+    }
+
+    private static boolean onlyVendorInterfaces(List<Interface> interfaces) {
+        List<Integer> ids = new ArrayList<>();
+        for (Interface candidate : interfaces) {
+            if (candidate.interfaceClass != CLASS_VENDOR_SPECIFIC) return false;
+            if (!ids.contains(candidate.id)) ids.add(candidate.id);
+        }
+        return ids.size() == 1;
+    }
+}
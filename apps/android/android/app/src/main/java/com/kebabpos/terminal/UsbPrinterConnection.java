@@ -0,0 +1,105 @@
+package com.kebabpos.terminal;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One open USB printer: its connection, claimed interface and endpoints
+ */
+final class UsbPrinterConnection implements PrinterTransport {
+
+    // bulkTransfer rejects more than 16KB per call before Android 9
+    private static final int MAX_TRANSFER = 16 * 1024;
+    private static final int TIMEOUT_MS = 5000;
+
+    final String deviceName;
+    final String productName;
+    private final UsbDeviceConnection connection;
+    private final UsbInterface usbInterface;
+    private final UsbEndpoint out;
+    private final UsbEndpoint in;
+    private volatile boolean closed = false;
+
+    private UsbPrinterConnection(UsbDevice device, UsbDeviceConnection connection, UsbInterface usbInterface,
+                                 UsbEndpoint out, UsbEndpoint in) {
+        this.deviceName = device.getDeviceName();
+        this.productName = device.getProductName();
+        this.connection = connection;
+        this.usbInterface = usbInterface;
+        this.out = out;
+        this.in = in;
+    }
+
+    /**
+     * Open the device and claim its printer interface
+     */
+    static UsbPrinterConnection open(UsbManager usbManager, UsbDevice device) throws IOException {
+        UsbInterfaceSelector.Selection selection = UsbInterfaceSelector.select(describe(device));
+        if (selection == null) throw new IOException("No printer interface with a bulk output endpoint");
+
+        UsbInterface usbInterface = device.getInterface(selection.interfaceIndex);
+        UsbDeviceConnection connection = usbManager.openDevice(device);
+        if (connection == null) throw new IOException("Could not open USB device");
+        if (!connection.claimInterface(usbInterface, true)) {
+            connection.close();
+            throw new IOException("Could not claim USB interface " + usbInterface.getId());
+        }
+        if (usbInterface.getAlternateSetting() != 0 && !connection.setInterface(usbInterface)) {
+            connection.releaseInterface(usbInterface);
+            connection.close();
+            throw new IOException("Could not select USB alternate setting " + usbInterface.getAlternateSetting());
+        }
+        UsbEndpoint out = usbInterface.getEndpoint(selection.outEndpoint);
+        UsbEndpoint in = selection.inEndpoint >= 0 ? usbInterface.getEndpoint(selection.inEndpoint) : null;
+        return new UsbPrinterConnection(device, connection, usbInterface, out, in);
+    }
+
+    /**
+     * Describe the device's interfaces for UsbInterfaceSelector
+     */
+    static List<UsbInterfaceSelector.Interface> describe(UsbDevice device) {
+        List<UsbInterfaceSelector.Interface> interfaces = new ArrayList<>();
+        for (int i = 0; i < device.getInterfaceCount(); i++) {
+            UsbInterface usbInterface = device.getInterface(i);
+            List<UsbInterfaceSelector.Endpoint> endpoints = new ArrayList<>();
+            for (int e = 0; e < usbInterface.getEndpointCount(); e++) {
+                UsbEndpoint endpoint = usbInterface.getEndpoint(e);
+                endpoints.add(new UsbInterfaceSelector.Endpoint(endpoint.getAddress(), endpoint.getDirection(),
+                    endpoint.getType(), endpoint.getMaxPacketSize()));
+            }
+            interfaces.add(new UsbInterfaceSelector.Interface(usbInterface.getId(), usbInterface.getAlternateSetting(),
+                usbInterface.getInterfaceClass(), usbInterface.getInterfaceSubclass(),
+                usbInterface.getInterfaceProtocol(), endpoints));
+        }
+        return interfaces;
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            if (closed) throw new IOException("USB printer disconnected");
+            int length = Math.min(MAX_TRANSFER, data.length - offset);
+            int sent = connection.bulkTransfer(out, data, offset, length, TIMEOUT_MS);
+            if (sent <= 0) throw new IOException("USB transfer failed");
+            offset += sent;
+        }
+    }
+
+    boolean canRead() {
+        return in != null;
+    }
+
+    void close() {
+        closed = true;
+        connection.releaseInterface(usbInterface);
+        connection.close();
+    }
+}
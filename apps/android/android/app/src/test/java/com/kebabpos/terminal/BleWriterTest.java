@@ -0,0 +1,183 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class BleWriterTest {
+
+    /**
+     * GATT stand-in modelled on Android's client: one operation at a time,
+     * writes are refused while the last one's callback is outstanding.
+     * Each write calls back latencyMs later.
+     */
+    private static final class FakeGatt implements BleWriter.Gatt {
+        final ScheduledExecutorService radio = Executors.newSingleThreadScheduledExecutor();
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final long latencyMs;
+        BleWriter writer;
+        boolean busy = false;
+        int refused = 0;
+        int maxPacket = 0;
+        boolean failNext = false;
+        boolean silent = false;
+
+        FakeGatt(long latencyMs) {
+            this.latencyMs = latencyMs;
+        }
+
+        /**
+         * Another GATT operation (a read, a descriptor write) holds the
+         * stack for the given time
+         */
+        synchronized void occupy(long ms) {
+            busy = true;
+            radio.schedule(() -> {
+                synchronized (this) {
+                    busy = false;
+                }
+            }, ms, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public synchronized boolean writePacket(byte[] packet) {
+            if (busy) {
+                refused++;
+                return false;
+            }
+            busy = true;
+            maxPacket = Math.max(maxPacket, packet.length);
+            received.write(packet, 0, packet.length);
+            if (silent) return true;
+            boolean success = !failNext;
+            radio.schedule(() -> {
+                // Cleared before the callback, as on Android
+                synchronized (this) {
+                    busy = false;
+                }
+                writer.onWriteComplete(success);
+            }, latencyMs, TimeUnit.MILLISECONDS);
+            return true;
+        }
+    }
+
+    private FakeGatt gatt;
+
+    @After
+    public void tearDown() {
+        if (gatt != null) gatt.radio.shutdownNow();
+    }
+
+    private BleWriter writer(FakeGatt fake, long timeoutMs) {
+        gatt = fake;
+        fake.writer = new BleWriter(fake, timeoutMs);
+        return fake.writer;
+    }
+
+    @Test
+    public void packetsFollowTheNegotiatedMtu() throws IOException {
+        BleWriter writer = writer(new FakeGatt(0), 2000);
+        writer.setMtu(185);
+        byte[] job = ramp(1000);
+
+        writer.write(job);
+
+        assertEquals(182, gatt.maxPacket);
+        assertEquals(6, writer.packets());
+        assertArrayEquals(job, gatt.received.toByteArray());
+    }
+
+    @Test
+    public void mtuIsClampedToTheAttLimits() {
+        BleWriter writer = new BleWriter(packet -> true, 100);
+        assertEquals(20, writer.payloadSize());
+        writer.setMtu(1024);
+        assertEquals(514, writer.payloadSize());
+        writer.setMtu(10);
+        assertEquals(20, writer.payloadSize());
+    }
+
+    @Test
+    public void oneWriteAtATime_nextPacketFollowsTheCallback() throws IOException {
+        BleWriter writer = writer(new FakeGatt(2), 5000);
+        byte[] job = ramp(64 * 20);
+
+        writer.write(job);
+
+        // The writer never ran into its own outstanding write
+        assertEquals(0, gatt.refused);
+        assertEquals(0, writer.busyRetries());
+        assertEquals(64, writer.packets());
+        assertArrayEquals(job, gatt.received.toByteArray());
+    }
+
+    @Test
+    public void busyStack_isRetriedInOrder() throws IOException {
+        FakeGatt fake = new FakeGatt(1);
+        BleWriter writer = writer(fake, 5000);
+        byte[] job = ramp(500);
+        fake.occupy(30);
+
+        writer.write(job);
+
+        assertArrayEquals(job, gatt.received.toByteArray());
+        assertTrue(writer.busyRetries() > 0);
+        assertEquals(fake.refused, writer.busyRetries());
+    }
+
+    @Test
+    public void failedWrite_failsTheJob() {
+        FakeGatt fake = new FakeGatt(1);
+        fake.failNext = true;
+        BleWriter writer = writer(fake, 2000);
+        try {
+            writer.write(ramp(100));
+            fail();
+        } catch (IOException e) {
+            assertEquals("BLE write failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void disconnect_releasesAWaitingWriter() throws Exception {
+        FakeGatt fake = new FakeGatt(1);
+        fake.silent = true;
+        BleWriter writer = writer(fake, 5000);
+        fake.radio.schedule(() -> writer.fail("BLE printer disconnected"), 50, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        try {
+            writer.write(ramp(100));
+            fail();
+        } catch (IOException e) {
+            assertEquals("BLE printer disconnected", e.getMessage());
+        }
+        assertTrue((System.nanoTime() - start) / 1000000L < 2000);
+    }
+
+    @Test
+    public void missingCallbacks_timeOut() {
+        FakeGatt fake = new FakeGatt(1);
+        fake.silent = true;
+        BleWriter writer = writer(fake, 100);
+        try {
+            writer.write(ramp(100));
+            fail();
+        } catch (IOException e) {
+            assertEquals("BLE printer stopped accepting data", e.getMessage());
+        }
+    }
+
+    private static byte[] ramp(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) i;
+        return data;
+    }
+}
@@ -0,0 +1,200 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ChunkedJobTest {
+
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor();
+
+    @After
+    public void stopRenderer() {
+        renderer.shutdownNow();
+    }
+
+    private static ChunkedJob.Chunk text(String text) {
+        return encoder -> encoder.raw(text.getBytes("US-ASCII"));
+    }
+
+    private static Thread transmit(ChunkedJob job, PrinterTransport target, AtomicReference<String> outcome) {
+        Thread thread = new Thread(() -> {
+            String error = null;
+            try {
+                job.pipeline().drain(target, 5000);
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+            outcome.set(error);
+            job.transmitted(error);
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static final class Result implements ChunkedJob.Done {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile String error;
+
+        @Override
+        public void done(String error) {
+            this.error = error;
+            latch.countDown();
+        }
+
+        boolean await(long ms) throws InterruptedException {
+            return latch.await(ms, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void chunks_printInOrderAndCommitSettlesAfterTheLastByte() throws Exception {
+        ChunkedJob job = new ChunkedJob(1, "order-1", "report", renderer, 16);
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        Thread thread = transmit(job, printed::write, new AtomicReference<String>());
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            String line = "line " + i + "\n";
+            expected.append(line);
+            Result appended = new Result();
+            assertTrue(job.append(text(line), appended));
+            assertTrue(appended.await(2000));
+            assertNull(appended.error);
+        }
+        Result committed = new Result();
+        job.commit(text("END"), committed);
+        assertTrue(committed.await(2000));
+        assertNull(committed.error);
+        thread.join(2000);
+
+        assertEquals(expected + "END", printed.toString("US-ASCII"));
+        assertFalse(job.isOpen());
+    }
+
+    @Test
+    public void appends_waitWhileThePrinterIsBehind() throws Exception {
+        ChunkedJob job = new ChunkedJob(1, null, "report", renderer, 4);
+        CountDownLatch printerFree = new CountDownLatch(1);
+        Thread thread = transmit(job, data -> {
+            try {
+                printerFree.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, new AtomicReference<String>());
+
+        // One buffer is being written, one is full, the third chunk has nowhere to go
+        Result first = new Result();
+        Result second = new Result();
+        Result third = new Result();
+        job.append(text("aaaa"), first);
+        assertTrue(first.await(2000));
+        job.append(text("bbbb"), second);
+        assertTrue(second.await(2000));
+        job.append(text("cccc"), third);
+        assertFalse(third.await(200));
+        assertEquals(1, job.queued());
+
+        printerFree.countDown();
+        assertTrue(third.await(2000));
+        assertNull(third.error);
+        job.commit(text(""), new Result());
+        thread.join(2000);
+    }
+
+    @Test
+    public void tooManyWaitingChunks_areRefused() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService blocked = Executors.newSingleThreadExecutor();
+        try {
+            ChunkedJob job = new ChunkedJob(1, null, "report", blocked, 64);
+            blocked.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {}
+            });
+            for (int i = 0; i < ChunkedJob.MAX_QUEUED_CHUNKS; i++) {
+                assertTrue(job.append(text("x"), new Result()));
+            }
+            assertFalse(job.append(text("x"), new Result()));
+            release.countDown();
+        } finally {
+            blocked.shutdownNow();
+        }
+    }
+
+    @Test
+    public void abort_failsTheCommitAndLaterAppends() throws Exception {
+        ChunkedJob job = new ChunkedJob(1, null, "report", renderer, 64);
+        AtomicReference<String> outcome = new AtomicReference<>();
+        Thread thread = transmit(job, data -> {}, outcome);
+        Result appended = new Result();
+        job.append(text("partial"), appended);
+        assertTrue(appended.await(2000));
+
+        job.abort("Job aborted");
+        thread.join(2000);
+        assertEquals("Job aborted", outcome.get());
+
+        Result late = new Result();
+        job.append(text("more"), late);
+        assertEquals("Job aborted", late.error);
+        Result committed = new Result();
+        job.commit(text("end"), committed);
+        assertEquals("Job aborted", committed.error);
+    }
+
+    @Test
+    public void printerFailure_isReportedToTheCommit() throws Exception {
+        ChunkedJob job = new ChunkedJob(1, null, "report", renderer, 4);
+        Thread thread = transmit(job, data -> {
+            throw new IOException("Paper out");
+        }, new AtomicReference<String>());
+
+        job.append(text("aaaa"), new Result());
+        thread.join(2000);
+        Result committed = new Result();
+        job.commit(text("end"), committed);
+        assertTrue(committed.await(2000));
+        assertEquals("Paper out", committed.error);
+    }
+
+    @Test
+    public void suspendedJob_resumesWithTheStyleSentAgain() throws Exception {
+        ChunkedJob job = new ChunkedJob(1, null, "report", renderer, 64);
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        Result first = new Result();
+        job.append(encoder -> encoder.text("a", EscPosEncoder.ALIGN_CENTER, false, EscPosEncoder.SIZE_NORMAL), first);
+        assertTrue(first.await(2000));
+
+        assertFalse(job.pipeline().drain(printed::write, 5000, 20, job::suspend));
+        // Another job printed here and reset the printer
+        printed.write(new byte[] { 0x1B, 0x40 });
+
+        Result committed = new Result();
+        job.commit(encoder -> encoder.text("b", EscPosEncoder.ALIGN_CENTER, false, EscPosEncoder.SIZE_NORMAL),
+            committed);
+        job.pipeline().drain(printed::write, 5000);
+        job.transmitted(null);
+        assertTrue(committed.await(2000));
+
+        byte[] style = { 0x1B, 0x61, 0x01, 0x1B, 0x21, 0x00 };
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(style);
+        expected.write('a');
+        expected.write(new byte[] { 0x1B, 0x40 });
+        expected.write(style);
+        expected.write('b');
+        assertArrayEquals(expected.toByteArray(), printed.toByteArray());
+    }
+}
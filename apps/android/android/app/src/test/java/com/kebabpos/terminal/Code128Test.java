@@ -0,0 +1,53 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class Code128Test {
+
+    // Bar and space widths to modules, starting with a bar
+    private static boolean[] modules(String... patterns) {
+        StringBuilder widths = new StringBuilder();
+        for (String pattern : patterns) widths.append(pattern);
+        int total = 0;
+        for (int i = 0; i < widths.length(); i++) total += widths.charAt(i) - '0';
+        boolean[] out = new boolean[total];
+        int pos = 0;
+        for (int i = 0; i < widths.length(); i++) {
+            for (int n = 0; n < widths.charAt(i) - '0'; n++) out[pos++] = i % 2 == 0;
+        }
+        return out;
+    }
+
+    @Test
+    public void text_isCodeSetBWithChecksum() {
+        // Start B (104), A (33), B (34), checksum (104 + 33 + 2 * 34) % 103 = 102, stop
+        assertArrayEquals(modules("211214", "111323", "131123", "411131", "2331112"), Code128.encode("AB"));
+    }
+
+    @Test
+    public void evenDigits_useCodeSetC() {
+        // Start C (105), 12, 34, checksum (105 + 12 + 2 * 34) % 103 = 82, stop
+        assertArrayEquals(modules("211232", "112232", "131123", "121241", "2331112"), Code128.encode("1234"));
+    }
+
+    @Test
+    public void longDigitRun_switchesToCodeSetC() {
+        // Start B, A (33), Code C (99), 12, 34, 56, checksum, stop
+        int checksum = (104 + 33 + 99 * 2 + 12 * 3 + 34 * 4 + 56 * 5) % 103;
+        assertEquals(66, checksum);
+        assertArrayEquals(modules("211214", "111323", "113141", "112232", "131123", "331121", "121421", "2331112"),
+            Code128.encode("A123456"));
+    }
+
+    @Test
+    public void controlCharacters_areRejected() {
+        try {
+            Code128.encode("A\tB");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unsupported Code 128 character: 0x9", e.getMessage());
+        }
+    }
+}
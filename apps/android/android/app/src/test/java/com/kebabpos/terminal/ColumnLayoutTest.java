@@ -0,0 +1,90 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ColumnLayoutTest {
+
+    @Test
+    public void columns_dependOnPaperAndFont() {
+        assertEquals(32, ColumnLayout.columns(384, EscPosEncoder.FONT_A, EscPosEncoder.SIZE_NORMAL));
+        assertEquals(42, ColumnLayout.columns(384, EscPosEncoder.FONT_B, EscPosEncoder.SIZE_NORMAL));
+        assertEquals(56, ColumnLayout.columns(512, EscPosEncoder.FONT_B, EscPosEncoder.SIZE_NORMAL));
+        assertEquals(48, ColumnLayout.columns(576, EscPosEncoder.FONT_A, EscPosEncoder.SIZE_DOUBLE_HEIGHT));
+        assertEquals(16, ColumnLayout.columns(384, EscPosEncoder.FONT_A, EscPosEncoder.SIZE_DOUBLE));
+        assertEquals(32, ColumnLayout.columnsForFontSize(384, 24));
+    }
+
+    @Test
+    public void fit_scalesToTheBudget() {
+        assertArrayEquals(new int[] { 24, 8 }, ColumnLayout.fit(new int[] { 28, 10 }, 32));
+        assertArrayEquals(new int[] { 31, 11 }, ColumnLayout.fit(new int[] { 28, 10 }, 42));
+        assertArrayEquals(new int[] { 28, 10 }, ColumnLayout.fit(new int[] { 28, 10 }, 38));
+        assertArrayEquals(new int[] { 2, 1 }, ColumnLayout.fit(new int[] { 5, 0 }, 3));
+    }
+
+    @Test
+    public void format_padsTruncatesAndAligns() {
+        String line = ColumnLayout.format(new String[] { "2x Mixed Kebab Large", "$25.00" },
+            new int[] { 28, 10 }, new int[] { 0, 2 }, 32);
+
+        assertEquals("2x Mixed Kebab Large      $25.00\n", line);
+        assertEquals(33, line.length());
+
+        assertEquals("abcd|  x  \n", ColumnLayout.format(new String[] { "abcdefg", "|", "x" },
+            new int[] { 4, 1, 5 }, new int[] { 0, 0, 1 }, 10));
+    }
+
+    @Test
+    public void denseReceipt_usesLessPaperAndTime() {
+        byte[] normal = receipt(false);
+        byte[] dense = receipt(true);
+
+        int normalDots = sum(SimulatedPrinter.paperDots(normal));
+        int denseDots = sum(SimulatedPrinter.paperDots(dense));
+        long normalMs = printMs(normal);
+        long denseMs = printMs(dense);
+        System.out.println("receipt paper normal=" + normalDots / 8 + "mm dense=" + denseDots / 8
+            + "mm, print normal=" + normalMs + "ms dense=" + denseMs + "ms");
+
+        assertTrue(denseDots < normalDots * 3 / 4);
+        assertTrue(denseMs < normalMs);
+    }
+
+    private static byte[] receipt(boolean dense) {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        if (dense) {
+            enc.setFont(EscPosEncoder.FONT_B);
+            enc.setLineSpacing(20);
+        }
+        int columns = ColumnLayout.columns(384, enc.font(), EscPosEncoder.SIZE_NORMAL);
+        enc.text("#42\n", EscPosEncoder.ALIGN_CENTER, true, EscPosEncoder.SIZE_DOUBLE);
+        for (int i = 0; i < 30; i++) {
+            enc.text(ColumnLayout.format(new String[] { "1x Item " + i, "$12.50" },
+                new int[] { 28, 10 }, new int[] { 0, 2 }, columns));
+            enc.text("  + Garlic sauce\n");
+        }
+        enc.feed(4);
+        enc.cut();
+        return enc.drain();
+    }
+
+    private static long printMs(byte[] data) {
+        PrintLoadHarness.SimClock clock = new PrintLoadHarness.SimClock();
+        SimulatedPrinter printer = new SimulatedPrinter(SimulatedPrinter.USB, clock, 1);
+        try {
+            printer.write(data);
+        } catch (java.io.IOException e) {
+            throw new AssertionError(e);
+        }
+        return printer.printedAt();
+    }
+
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int v : values) total += v;
+        return total;
+    }
+}
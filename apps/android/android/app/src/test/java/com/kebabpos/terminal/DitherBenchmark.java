@@ -0,0 +1,85 @@
+package com.kebabpos.terminal;
+
+import java.util.Random;
+
+/**
+ * Serial vs wavefront dithering of a full-width image, for 1 thread up to
+ * every core, or for the thread counts given. Run from ParallelDitherTest,
+ * or directly:
+ * java -cp <test classes> com.kebabpos.terminal.DitherBenchmark [width] [height] [rounds] [threads,...]
+ * Recorded figures are in DitherBenchmark.md.
+ */
+final class DitherBenchmark {
+
+    private DitherBenchmark() {}
+
+    static String run(int width, int height, int rounds) {
+        return run(width, height, rounds, null);
+    }
+
+    /**
+     * threadCounts null for powers of two up to the core count, and the core count
+     */
+    static String run(int width, int height, int rounds, int[] threadCounts) {
+        int[] argb = ParallelDitherTest.noise(new Random(7), width, height);
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("dither %dx%d, %d cores, best of %d%n",
+            width, height, Runtime.getRuntime().availableProcessors(), rounds));
+
+        long serialNs = best(rounds, () -> ImageDither.floydSteinberg(argb, width, height));
+        out.append(String.format("  serial      %7.2fms%n", serialNs / 1e6));
+
+        if (threadCounts != null) {
+            for (int threads : threadCounts) {
+                if (threads > 1) out.append(line(argb, width, height, rounds, threads, serialNs));
+            }
+            return out.toString();
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 2; threads <= Math.max(2, cores); threads *= 2) {
+            out.append(line(argb, width, height, rounds, threads, serialNs));
+        }
+        if (cores > 2 && Integer.bitCount(cores) != 1) out.append(line(argb, width, height, rounds, cores, serialNs));
+        return out.toString();
+    }
+
+    private static String line(int[] argb, int width, int height, int rounds, int threads, long serialNs) {
+        ParallelDither dither = new ParallelDither(threads);
+        try {
+            long ns = best(rounds, () -> dither.floydSteinberg(argb, width, height));
+            return String.format("  %2d threads  %7.2fms  speedup %.2fx%n", threads, ns / 1e6, (double) serialNs / ns);
+        } finally {
+            dither.shutdown();
+        }
+    }
+
+    private static long best(int rounds, Runnable work) {
+        // Warm up the JIT first
+        for (int i = 0; i < 3; i++) work.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            work.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 576;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 2400;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.out.println(run(width, height, rounds, args.length > 3 ? threadCounts(args[3]) : null));
+    }
+
+    /**
+     * "1,2,4,8" as thread counts, null for none
+     */
+    static int[] threadCounts(String list) {
+        if (list == null || list.isEmpty()) return null;
+        String[] parts = list.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) counts[i] = Integer.parseInt(parts[i].trim());
+        return counts;
+    }
+}
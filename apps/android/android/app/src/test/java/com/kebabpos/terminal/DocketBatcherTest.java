@@ -0,0 +1,94 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class DocketBatcherTest {
+
+    private DocketBatcher<String> batcher(long windowMs, int maxOrders) {
+        DocketBatcher<String> batcher = new DocketBatcher<>();
+        batcher.configure(true, windowMs, maxOrders);
+        return batcher;
+    }
+
+    @Test
+    public void offByDefault() {
+        DocketBatcher<String> batcher = new DocketBatcher<>();
+        assertFalse(batcher.isEnabled());
+        assertEquals(4000, batcher.windowMs());
+        assertEquals(4, batcher.maxOrders());
+    }
+
+    @Test
+    public void fullBatch_isReturnedByTheDocketThatFillsIt() {
+        DocketBatcher<String> batcher = batcher(4000, 3);
+        assertNull(batcher.add("grill", "A", 0));
+        assertNull(batcher.add("grill", "B", 100));
+        assertEquals(Arrays.asList("A", "B", "C"), batcher.add("grill", "C", 200));
+        assertEquals(0, batcher.pending());
+        assertEquals(-1, batcher.nextDeadline());
+    }
+
+    @Test
+    public void batch_isDueOnceItsFirstDocketHasWaitedTheWindow() {
+        DocketBatcher<String> batcher = batcher(4000, 4);
+        batcher.add("grill", "A", 1000);
+        batcher.add("grill", "B", 3000);
+
+        assertTrue(batcher.due(4999).isEmpty());
+        assertEquals(5000, batcher.nextDeadline());
+        List<List<String>> due = batcher.due(5000);
+        assertEquals(1, due.size());
+        assertEquals(Arrays.asList("A", "B"), due.get(0));
+        assertEquals(0, batcher.pending());
+    }
+
+    @Test
+    public void printers_batchSeparately() {
+        DocketBatcher<String> batcher = batcher(4000, 2);
+        batcher.add("grill", "A", 0);
+        batcher.add("fryer", "B", 500);
+        assertEquals(2, batcher.pending());
+        assertEquals(Arrays.asList("A", "C"), batcher.add("grill", "C", 600));
+        assertEquals(4500, batcher.nextDeadline());
+
+        List<List<String>> due = batcher.due(4500);
+        assertEquals(1, due.size());
+        assertEquals(Arrays.asList("B"), due.get(0));
+    }
+
+    @Test
+    public void defaultPrinter_hasItsOwnBatch() {
+        DocketBatcher<String> batcher = batcher(4000, 2);
+        batcher.add(null, "A", 0);
+        batcher.add("grill", "B", 0);
+        assertEquals(Arrays.asList("A", "C"), batcher.add(null, "C", 0));
+    }
+
+    @Test
+    public void drainAll_emptiesEveryBatch() {
+        DocketBatcher<String> batcher = batcher(4000, 4);
+        batcher.add("grill", "A", 0);
+        batcher.add("fryer", "B", 0);
+        batcher.add("grill", "C", 0);
+
+        List<List<String>> all = batcher.drainAll();
+        assertEquals(2, all.size());
+        assertEquals(Arrays.asList("A", "C"), all.get(0));
+        assertEquals(Arrays.asList("B"), all.get(1));
+        assertEquals(0, batcher.pending());
+        assertTrue(batcher.drainAll().isEmpty());
+    }
+
+    @Test
+    public void limits_areClamped() {
+        DocketBatcher<String> batcher = batcher(-5, 0);
+        assertEquals(0, batcher.windowMs());
+        assertEquals(1, batcher.maxOrders());
+        assertEquals(Arrays.asList("A"), batcher.add("grill", "A", 0));
+    }
+}
@@ -0,0 +1,114 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class DocketLedgerTest {
+
+    @Test
+    public void firstDocket_hasNothingToDiff() {
+        DocketLedger ledger = new DocketLedger(10);
+        assertNull(ledger.diff("o1", "usb1", Arrays.asList(line(1, "Kebab"))));
+    }
+
+    @Test
+    public void unchangedOrder_printsNothing() {
+        DocketLedger ledger = new DocketLedger(10);
+        List<DocketLedger.Line> order = Arrays.asList(line(2, "Kebab", "Garlic"), line(1, "Chips"));
+        ledger.record("o1", "usb1", order);
+
+        assertTrue(ledger.diff("o1", "usb1",
+            Arrays.asList(line(2, "Kebab", "Garlic"), line(1, "Chips"))).isEmpty());
+    }
+
+    @Test
+    public void addedRemovedAndChangedLines() {
+        List<DocketLedger.Change> changes = DocketLedger.diff(
+            Arrays.asList(line(1, "Kebab"), line(1, "Chips"), line(2, "Coke")),
+            Arrays.asList(line(2, "Kebab"), line(2, "Coke"), line(1, "Baklava")));
+
+        assertEquals(3, changes.size());
+        assertEquals(DocketLedger.Change.CHANGED, changes.get(0).kind);
+        assertEquals(2, changes.get(0).line.quantity);
+        assertEquals(1, changes.get(0).previous.quantity);
+        assertEquals(DocketLedger.Change.ADDED, changes.get(1).kind);
+        assertEquals("Baklava", changes.get(1).line.name);
+        assertEquals(DocketLedger.Change.REMOVED, changes.get(2).kind);
+        assertEquals("Chips", changes.get(2).line.name);
+    }
+
+    @Test
+    public void modifierChange_isOneChangedLine() {
+        List<DocketLedger.Change> changes = DocketLedger.diff(
+            Arrays.asList(line(1, "Kebab", "Garlic")),
+            Arrays.asList(line(1, "Kebab", "Chilli")));
+
+        assertEquals(1, changes.size());
+        assertEquals(DocketLedger.Change.CHANGED, changes.get(0).kind);
+        assertArrayEquals(new String[] { "Garlic" }, changes.get(0).previous.modifiers);
+    }
+
+    @Test
+    public void sameItemTwice_matchesExactModifiersFirst() {
+        // Second kebab had its sauce changed, the first is untouched
+        List<DocketLedger.Change> changes = DocketLedger.diff(
+            Arrays.asList(line(1, "Kebab", "Garlic"), line(1, "Kebab", "BBQ")),
+            Arrays.asList(line(1, "Kebab", "Garlic"), line(1, "Kebab", "Chilli")));
+
+        assertEquals(1, changes.size());
+        assertArrayEquals(new String[] { "Chilli" }, changes.get(0).line.modifiers);
+        assertArrayEquals(new String[] { "BBQ" }, changes.get(0).previous.modifiers);
+    }
+
+    @Test
+    public void noteChange_isAChange() {
+        List<DocketLedger.Change> changes = DocketLedger.diff(
+            Arrays.asList(new DocketLedger.Line("Kebab", 1, new String[0], "")),
+            Arrays.asList(new DocketLedger.Line("Kebab", 1, new String[0], "no onion")));
+
+        assertEquals(1, changes.size());
+        assertEquals(DocketLedger.Change.CHANGED, changes.get(0).kind);
+    }
+
+    @Test
+    public void recordsAreKeptPerPrinter() {
+        DocketLedger ledger = new DocketLedger(10);
+        ledger.record("o1", "grill", Arrays.asList(line(1, "Kebab")));
+
+        assertNull(ledger.diff("o1", "bar", Arrays.asList(line(1, "Coke"))));
+        assertNotNull(ledger.diff("o1", "grill", Arrays.asList(line(1, "Kebab"))));
+    }
+
+    @Test
+    public void leastRecentlyUsedOrdersAreDropped() {
+        DocketLedger ledger = new DocketLedger(2);
+        ledger.record("o1", "p", Arrays.asList(line(1, "A")));
+        ledger.record("o2", "p", Arrays.asList(line(1, "B")));
+        ledger.diff("o1", "p", Arrays.asList(line(1, "A")));
+        ledger.record("o3", "p", Arrays.asList(line(1, "C")));
+
+        assertEquals(2, ledger.size());
+        assertNotNull(ledger.diff("o1", "p", Arrays.asList(line(1, "A"))));
+        assertNull(ledger.diff("o2", "p", Arrays.asList(line(1, "B"))));
+    }
+
+    @Test
+    public void forget_dropsEveryPrinterForTheOrder() {
+        DocketLedger ledger = new DocketLedger(10);
+        ledger.record("o1", "grill", Arrays.asList(line(1, "A")));
+        ledger.record("o1", "bar", Arrays.asList(line(1, "B")));
+        ledger.record("o2", "bar", Arrays.asList(line(1, "C")));
+
+        ledger.forget("o1");
+
+        assertEquals(1, ledger.size());
+    }
+
+    private static DocketLedger.Line line(int quantity, String name, String... modifiers) {
+        return new DocketLedger.Line(name, quantity, modifiers, null);
+    }
+}
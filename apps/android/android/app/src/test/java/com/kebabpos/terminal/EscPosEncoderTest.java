@@ -0,0 +1,182 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Byte-level golden tests for the ESC/POS command compiler.
+ */
+public class EscPosEncoderTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) out[i] = (byte) values[i];
+        return out;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] p : parts) length += p.length;
+        byte[] out = new byte[length];
+        int pos = 0;
+        for (byte[] p : parts) {
+            System.arraycopy(p, 0, out, pos, p.length);
+            pos += p.length;
+        }
+        return out;
+    }
+
+    @Test
+    public void initThenPlainText_emitsNoStyleCommands() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.text("Hello\n");
+
+        assertArrayEquals(concat(bytes(0x1B, 0x40), "Hello\n".getBytes("GBK")), enc.drain());
+    }
+
+    @Test
+    public void repeatedStyledLines_emitStyleOnce() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.text("Line one\n", EscPosEncoder.ALIGN_CENTER, false, EscPosEncoder.SIZE_NORMAL);
+        enc.text("Line two\n", EscPosEncoder.ALIGN_CENTER, false, EscPosEncoder.SIZE_NORMAL);
+
+        assertArrayEquals(concat(
+            bytes(0x1B, 0x40),
+            bytes(0x1B, 0x61, 0x01),
+            "Line one\nLine two\n".getBytes("GBK")
+        ), enc.drain());
+    }
+
+    @Test
+    public void styleChange_emitsOnlyTransitions() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.text("#42\n", EscPosEncoder.ALIGN_CENTER, true, EscPosEncoder.SIZE_DOUBLE);
+        enc.text("Date\n");
+
+        assertArrayEquals(concat(
+            bytes(0x1B, 0x40),
+            bytes(0x1B, 0x61, 0x01, 0x1B, 0x21, 0x38),
+            "#42\n".getBytes("GBK"),
+            bytes(0x1B, 0x61, 0x00, 0x1B, 0x21, 0x00),
+            "Date\n".getBytes("GBK")
+        ), enc.drain());
+    }
+
+    @Test
+    public void repeatedSetAlignmentAndSize_costNothingUntilUsed() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.drain();
+        enc.setSize(EscPosEncoder.SIZE_DOUBLE_HEIGHT);
+        enc.setAlignment(EscPosEncoder.ALIGN_RIGHT);
+        enc.setSize(EscPosEncoder.SIZE_NORMAL);
+        enc.setAlignment(EscPosEncoder.ALIGN_LEFT);
+
+        assertEquals(0, enc.drain().length);
+        enc.text("x");
+        assertArrayEquals("x".getBytes("GBK"), enc.drain());
+    }
+
+    @Test
+    public void blankLines_doNotForceAlignment() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.drain();
+        enc.text("\n", EscPosEncoder.ALIGN_CENTER, false, EscPosEncoder.SIZE_NORMAL);
+
+        assertArrayEquals(bytes('\n'), enc.drain());
+    }
+
+    @Test
+    public void unknownState_forcesFirstCommands() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.text("a");
+
+        assertArrayEquals(concat(bytes(0x1B, 0x61, 0x00, 0x1B, 0x21, 0x00), "a".getBytes("GBK")), enc.drain());
+    }
+
+    @Test
+    public void codePageAndLineSpacing_onlyOnChange() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.setCodePage(0);
+        enc.setLineSpacing(EscPosEncoder.LINE_SPACING_DEFAULT);
+        enc.setCodePage(16);
+        enc.setCodePage(16);
+        enc.setLineSpacing(24);
+        enc.setLineSpacing(24);
+
+        assertArrayEquals(bytes(0x1B, 0x40, 0x1B, 0x74, 16, 0x1B, 0x33, 24), enc.drain());
+    }
+
+    @Test
+    public void alignedSymbol_sharesAlignmentWithText() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.text("Scan me\n", EscPosEncoder.ALIGN_CENTER, false, EscPosEncoder.SIZE_NORMAL);
+        enc.aligned(bytes(0x1D, 0x76, 0x30, 0x00), EscPosEncoder.ALIGN_CENTER);
+
+        assertArrayEquals(concat(
+            bytes(0x1B, 0x40, 0x1B, 0x61, 0x01),
+            "Scan me\n".getBytes("GBK"),
+            bytes(0x1D, 0x76, 0x30, 0x00)
+        ), enc.drain());
+    }
+
+    @Test
+    public void smallFont_isPartOfTheModeAndSwitchedWithEscM() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.setFont(EscPosEncoder.FONT_B);
+        enc.text("small\n");
+        enc.text("BIG\n", EscPosEncoder.ALIGN_LEFT, false, EscPosEncoder.SIZE_DOUBLE);
+        enc.setFont(EscPosEncoder.FONT_A);
+        enc.text("BIG\n", EscPosEncoder.ALIGN_LEFT, false, EscPosEncoder.SIZE_DOUBLE);
+
+        assertArrayEquals(concat(
+            bytes(0x1B, 0x40, 0x1B, 0x4D, 0x01),
+            "small\n".getBytes("GBK"),
+            bytes(0x1B, 0x21, 0x31),
+            "BIG\n".getBytes("GBK"),
+            bytes(0x1B, 0x4D, 0x00),
+            "BIG\n".getBytes("GBK")
+        ), enc.drain());
+    }
+
+    @Test
+    public void init_returnsToTheLargeFont() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.setFont(EscPosEncoder.FONT_B);
+        enc.init();
+        enc.text("a\n");
+
+        assertArrayEquals(concat(bytes(0x1B, 0x40, 0x1B, 0x40), "a\n".getBytes("GBK")), enc.drain());
+    }
+
+    @Test
+    public void feedAndCut() {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.feed(5);
+        enc.cut();
+
+        assertArrayEquals(bytes(0x1B, 0x64, 0x05, 0x1D, 0x56, 0x00), enc.drain());
+    }
+
+    @Test
+    public void forgetPrinterState_resendsStyleButKeepsTheBaseStyle() throws Exception {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.init();
+        enc.setAlignment(EscPosEncoder.ALIGN_CENTER);
+        enc.text("a");
+        enc.drain();
+
+        enc.forgetPrinterState();
+        enc.text("b");
+        assertArrayEquals(concat(bytes(0x1B, 0x61, 0x01, 0x1B, 0x21, 0x00), "b".getBytes("GBK")), enc.drain());
+    }
+}
@@ -0,0 +1,75 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests for the plain and trimmed GS v 0 encoders.
+ */
+public class EscPosRasterTest {
+
+    private static final PrinterProfile TRIMMED =
+        new PrinterProfile(true, true, 384, PrinterProfile.RasterEncoding.TRIMMED);
+
+    @Test
+    public void plainEncoding_splitsTallImages() {
+        MonoImage image = new MonoImage(2, EscPosRaster.MAX_ROWS_PER_BLOCK + 1);
+        byte[] out = EscPosRaster.encode(image);
+
+        assertEquals(2 * 8 + 2 * image.height, out.length);
+        assertEquals(0x1D, out[0]);
+        assertEquals(0x1D, out[8 + 2 * EscPosRaster.MAX_ROWS_PER_BLOCK]);
+    }
+
+    @Test
+    public void trimmedEncoding_collapsesBlankRowsAndMargins() {
+        // 48 bytes wide, ink only in byte 2 of rows 0-1, then 100 blank rows
+        MonoImage image = new MonoImage(48, 102);
+        image.setDot(16, 0);
+        image.setDot(16, 1);
+
+        byte[] out = EscPosRaster.encode(image, EscPosEncoder.ALIGN_LEFT, TRIMMED);
+
+        // Left aligned: 3 bytes wide ink block, then a 1 byte wide blank block
+        assertArrayEquals(new byte[] {
+            0x1D, 0x76, 0x30, 0x00, 3, 0, 2, 0,
+            0, 0, (byte) 0x80,
+            0, 0, (byte) 0x80,
+            0x1D, 0x76, 0x30, 0x00, 1, 0, 100, 0
+        }, Arrays.copyOf(out, 22));
+        assertEquals(22 + 100, out.length);
+        assertTrue(out.length < EscPosRaster.encode(image).length);
+    }
+
+    @Test
+    public void trimmedEncoding_centredKeepsInkCentred() {
+        MonoImage image = new MonoImage(10, 1);
+        image.setDot(3 * 8, 0);
+        image.setDot(6 * 8 + 7, 0);
+
+        byte[] out = EscPosRaster.encode(image, EscPosEncoder.ALIGN_CENTER, TRIMMED);
+
+        // Bytes 3..6 carry ink, equal margins of 3 bytes are trimmed
+        assertArrayEquals(new byte[] {
+            0x1D, 0x76, 0x30, 0x00, 4, 0, 1, 0,
+            (byte) 0x80, 0, 0, 0x01
+        }, out);
+    }
+
+    @Test
+    public void shortBlankGaps_stayInsideInkBlock() {
+        MonoImage image = new MonoImage(1, 4);
+        image.setDot(0, 0);
+        image.setDot(0, 3);
+
+        byte[] out = EscPosRaster.encode(image, EscPosEncoder.ALIGN_LEFT, TRIMMED);
+
+        assertArrayEquals(new byte[] {
+            0x1D, 0x76, 0x30, 0x00, 1, 0, 4, 0,
+            (byte) 0x80, 0, 0, (byte) 0x80
+        }, out);
+    }
+}
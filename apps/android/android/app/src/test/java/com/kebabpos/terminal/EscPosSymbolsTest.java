@@ -0,0 +1,100 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Byte-level tests for the printer symbol commands and their raster fallbacks.
+ */
+public class EscPosSymbolsTest {
+
+    private static final PrinterProfile NATIVE =
+        new PrinterProfile(true, true, 384, PrinterProfile.RasterEncoding.PLAIN);
+    private static final PrinterProfile RASTER =
+        new PrinterProfile(false, false, 384, PrinterProfile.RasterEncoding.PLAIN);
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) out[i] = (byte) values[i];
+        return out;
+    }
+
+    private static byte[] barcodeCommand(int height, int moduleWidth, int textPosition, String content)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bytes(0x1D, 0x68, height, 0x1D, 0x77, moduleWidth, 0x1D, 0x48, textPosition,
+            0x1D, 0x6B, 0x49, content.length()));
+        out.write(content.getBytes("US-ASCII"));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void nativeCode128_isGsK73InCodeSetB() throws Exception {
+        assertArrayEquals(barcodeCommand(80, 2, 2, "{BA-42"),
+            EscPosSymbols.code128("A-42", 2, 80, true, NATIVE));
+    }
+
+    @Test
+    public void nativeCode128_escapesBraces() throws Exception {
+        assertArrayEquals(barcodeCommand(50, 3, 0, "{Ba{{b}"),
+            EscPosSymbols.code128("a{b}", 3, 50, false, NATIVE));
+    }
+
+    @Test
+    public void nativeCode128_tooLongForGsK_isRasterised() {
+        StringBuilder data = new StringBuilder();
+        // 250 characters plus escapes and the code set prefix is over 255 bytes
+        for (int i = 0; i < 125; i++) data.append("{x");
+        assertNull(EscPosSymbols.nativeCode128Data(data.toString()));
+
+        byte[] symbol = EscPosSymbols.code128(data.toString(), 1, 10, false, NATIVE);
+        // GS v 0, not GS k
+        assertArrayEquals(bytes(0x1D, 0x76, 0x30, 0x00), java.util.Arrays.copyOf(symbol, 4));
+
+        StringBuilder fits = new StringBuilder();
+        for (int i = 0; i < 253; i++) fits.append('x');
+        assertEquals(255, EscPosSymbols.nativeCode128Data(fits.toString()).length);
+    }
+
+    @Test
+    public void code128_rejectsCharactersOutsideAscii() {
+        for (PrinterProfile profile : new PrinterProfile[] { NATIVE, RASTER }) {
+            try {
+                EscPosSymbols.code128("D\u00f6ner", 2, 50, true, profile);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertEquals("Unsupported Code 128 character: 0xf6", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void nativeQr_isGsParenK() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(bytes(0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x43, 0x06));   // module size 6
+        expected.write(bytes(0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x45, 0x31));   // level M
+        expected.write(bytes(0x1D, 0x28, 0x6B, 0x06, 0x00, 0x31, 0x50, 0x30));   // store 3 bytes
+        expected.write("abc".getBytes("US-ASCII"));
+        expected.write(bytes(0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x51, 0x30));   // print
+        assertArrayEquals(expected.toByteArray(), EscPosSymbols.qrCode("abc", 6, QrCode.ECC_MEDIUM, NATIVE));
+    }
+
+    @Test
+    public void rasterQr_isScaledWithAQuietZone() {
+        byte[] symbol = EscPosSymbols.qrCode("abc", 4, QrCode.ECC_MEDIUM, RASTER);
+        // Version 1: (21 + 2 * 4) modules of 4 dots = 116 dots, 15 bytes wide
+        assertArrayEquals(bytes(0x1D, 0x76, 0x30, 0x00, 15, 0, 116, 0), java.util.Arrays.copyOf(symbol, 8));
+        assertEquals(8 + 15 * 116, symbol.length);
+    }
+
+    @Test
+    public void rasterQr_shrinksToFitThePaper() {
+        PrinterProfile narrow = new PrinterProfile(false, false, 100, PrinterProfile.RasterEncoding.PLAIN);
+        byte[] symbol = EscPosSymbols.qrCode("abc", 8, QrCode.ECC_MEDIUM, narrow);
+        // 29 modules: 3 dots each is 87, 4 would be over 100
+        assertArrayEquals(bytes(0x1D, 0x76, 0x30, 0x00, 11, 0, 87, 0), java.util.Arrays.copyOf(symbol, 8));
+    }
+}
@@ -0,0 +1,78 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GlyphAtlasTest {
+
+    // Each glyph is one byte wide per digit value plus one, filled with the character code
+    private static final GlyphAtlas.Source FAKE = (c, height) -> {
+        int widthBytes = Character.isDigit(c) ? c - '0' + 1 : 1;
+        MonoImage glyph = new MonoImage(widthBytes, height);
+        java.util.Arrays.fill(glyph.data, (byte) c);
+        return glyph;
+    };
+
+    private static GlyphAtlas atlas() {
+        return new GlyphAtlas(FAKE, new int[] { 16, 8 }, "0123#");
+    }
+
+    @Test
+    public void compose_copiesGlyphRowsSideBySide() {
+        MonoImage line = atlas().compose("#12", 16, 64, EscPosEncoder.ALIGN_LEFT);
+        assertEquals(8, line.widthBytes);
+        assertEquals(16, line.height);
+        for (int y = 0; y < line.height; y++) {
+            int row = y * line.widthBytes;
+            assertEquals('#', line.data[row]);
+            assertEquals('1', line.data[row + 1]);
+            assertEquals('1', line.data[row + 2]);
+            assertEquals('2', line.data[row + 3]);
+            assertEquals('2', line.data[row + 4]);
+            assertEquals('2', line.data[row + 5]);
+            assertEquals(0, line.data[row + 6]);
+            assertEquals(0, line.data[row + 7]);
+        }
+    }
+
+    @Test
+    public void compose_placesTextByAlignment() {
+        GlyphAtlas atlas = atlas();
+        MonoImage centred = atlas.compose("00", 16, 64, EscPosEncoder.ALIGN_CENTER);
+        assertEquals(0, centred.data[2]);
+        assertEquals('0', centred.data[3]);
+        assertEquals('0', centred.data[4]);
+        assertEquals(0, centred.data[5]);
+
+        MonoImage right = atlas.compose("00", 16, 64, EscPosEncoder.ALIGN_RIGHT);
+        assertEquals(0, right.data[5]);
+        assertEquals('0', right.data[6]);
+        assertEquals('0', right.data[7]);
+    }
+
+    @Test
+    public void compose_picksTheTallestHeightThatFits() {
+        GlyphAtlas atlas = atlas();
+        assertEquals(16, atlas.compose("1", 100, 64, 0).height);
+        assertEquals(8, atlas.compose("1", 12, 64, 0).height);
+        // Below the smallest height it still prints at the smallest
+        assertEquals(8, atlas.compose("1", 4, 64, 0).height);
+    }
+
+    @Test
+    public void unknownCharactersAndOverlongText_areLeftToThePrinterFont() {
+        GlyphAtlas atlas = atlas();
+        assertFalse(atlas.covers("#12A"));
+        assertTrue(atlas.covers("#3210"));
+        assertNull(atlas.compose("12A", 16, 64, 0));
+        // Four 4-byte glyphs need 16 bytes, the line has 8
+        assertNull(atlas.compose("3333", 16, 64, 0));
+    }
+
+    @Test
+    public void memory_isTheGlyphBytes() {
+        // Glyphs are 1+2+3+4+1 = 11 bytes wide, at 16 and 8 rows
+        assertEquals(11 * 16 + 11 * 8, atlas().memoryBytes());
+    }
+}
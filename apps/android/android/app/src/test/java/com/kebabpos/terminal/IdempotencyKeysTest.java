@@ -0,0 +1,97 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IdempotencyKeysTest {
+
+    private final List<String> outcomes = new ArrayList<>();
+    private final IdempotencyKeys.Waiter waiter = error -> outcomes.add(error == null ? "sent" : error);
+
+    @Test
+    public void firstSubmission_prints() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        assertTrue(keys.claim("pay-1", 0, waiter));
+        assertTrue(keys.claim("pay-2", 0, waiter));
+        assertEquals(0, keys.suppressed());
+        assertTrue(outcomes.isEmpty());
+    }
+
+    @Test
+    public void duplicateWhilePrinting_getsTheOriginalOutcome() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        keys.claim("pay-1", 0, waiter);
+
+        assertFalse(keys.claim("pay-1", 10, waiter));
+        assertFalse(keys.claim("pay-1", 20, waiter));
+        assertTrue(outcomes.isEmpty());
+
+        keys.settle("pay-1", null);
+        assertEquals(2, outcomes.size());
+        assertEquals("sent", outcomes.get(0));
+        assertEquals(2, keys.suppressed());
+    }
+
+    @Test
+    public void duplicateAfterSending_settlesStraightAway() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        keys.claim("pay-1", 0, waiter);
+        keys.settle("pay-1", null);
+
+        assertFalse(keys.claim("pay-1", 500, waiter));
+        assertEquals(1, outcomes.size());
+        assertEquals("sent", outcomes.get(0));
+    }
+
+    @Test
+    public void failure_releasesTheKey() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        keys.claim("pay-1", 0, waiter);
+        keys.claim("pay-1", 10, waiter);
+
+        keys.settle("pay-1", "out of paper");
+
+        assertEquals("out of paper", outcomes.get(0));
+        assertTrue(keys.claim("pay-1", 20, waiter));
+    }
+
+    @Test
+    public void keysExpireAfterTheWindow() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        keys.claim("pay-1", 0, waiter);
+        keys.settle("pay-1", null);
+
+        assertFalse(keys.claim("pay-1", 999, waiter));
+        assertTrue(keys.claim("pay-1", 1000, waiter));
+    }
+
+    @Test
+    public void capacityDropsOldestSentKeys_butNeverPendingOnes() {
+        IdempotencyKeys keys = new IdempotencyKeys(2, 60000);
+        keys.claim("a", 0, waiter);
+        keys.claim("b", 1, waiter);
+        keys.settle("b", null);
+        keys.claim("c", 2, waiter);
+
+        assertEquals(2, keys.size());
+        // a is still printing so it was kept, b made room
+        assertFalse(keys.claim("a", 3, waiter));
+        assertTrue(keys.claim("b", 4, waiter));
+    }
+
+    @Test
+    public void streamKeyedAtInit_claimsOnceAndBlocksItsDuplicates() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        assertTrue(keys.claimForStream("pay-1", 0));
+        // A retry while the first still prints neither streams nor queues
+        assertFalse(keys.claimForStream("pay-1", 10));
+        assertFalse(keys.claim("pay-1", 10, waiter));
+        assertTrue(outcomes.isEmpty());
+        keys.settle("pay-1", null);
+        assertEquals("sent", outcomes.get(0));
+    }
+}
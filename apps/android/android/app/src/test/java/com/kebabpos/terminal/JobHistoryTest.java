@@ -0,0 +1,75 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class JobHistoryTest {
+
+    private static JobHistory.Job escPos(String orderId, int bytes) {
+        return new JobHistory.Job(orderId, "receipt", "escpos", new byte[bytes], null);
+    }
+
+    @Test
+    public void countCap_dropsTheOldest() {
+        JobHistory history = new JobHistory(3, 1024 * 1024);
+        for (int i = 1; i <= 5; i++) history.add(escPos("A" + i, 100));
+
+        assertEquals(3, history.size());
+        assertEquals(300, history.bytes());
+        assertNull(history.find("A2", null));
+        assertEquals("A3", history.find("A3", null).orderId);
+        assertEquals("A5", history.find(null, null).orderId);
+    }
+
+    @Test
+    public void byteCap_dropsTheOldestUntilItFits() {
+        JobHistory history = new JobHistory(20, 1000);
+        history.add(escPos("A1", 300));
+        history.add(escPos("A2", 300));
+        history.add(escPos("A3", 300));
+        assertEquals(3, history.size());
+
+        // A raster-heavy job pushes out the two oldest
+        history.add(escPos("A4", 500));
+
+        assertEquals(2, history.size());
+        assertEquals(800, history.bytes());
+        assertNull(history.find("A1", null));
+        assertNull(history.find("A2", null));
+        assertEquals("A3", history.find("A3", null).orderId);
+        assertEquals("A4", history.find(null, null).orderId);
+    }
+
+    @Test
+    public void newestJob_isKeptEvenOverTheCap() {
+        JobHistory history = new JobHistory(20, 1000);
+        history.add(escPos("A1", 300));
+        history.add(escPos("A2", 1500));
+
+        assertEquals(1, history.size());
+        assertEquals(1500, history.bytes());
+        assertEquals("A2", history.find(null, null).orderId);
+    }
+
+    @Test
+    public void sunmiJobs_countAgainstTheNumberOnly() {
+        JobHistory history = new JobHistory(4, 1000);
+        history.add(escPos("A1", 900));
+        for (int i = 2; i <= 4; i++) {
+            history.add(new JobHistory.Job("A" + i, "kitchen", "sunmi", null, Collections.<PrinterCommand>emptyList()));
+        }
+        assertEquals(4, history.size());
+        assertEquals(900, history.bytes());
+
+        // Wrapping past the count cap releases the bytes of the job it drops
+        history.add(escPos("A5", 600));
+
+        assertEquals(4, history.size());
+        assertEquals(600, history.bytes());
+        assertNull(history.find("A1", null));
+        assertEquals("A2", history.find("A2", "kitchen").orderId);
+    }
+}
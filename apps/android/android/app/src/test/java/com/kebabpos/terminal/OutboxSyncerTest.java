@@ -0,0 +1,371 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the syncer against a local HTTP server standing in for the backend
+ */
+public class OutboxSyncerTest {
+
+    private HttpServer server;
+    private String url;
+    private final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> auth = Collections.synchronizedList(new ArrayList<String>());
+    private volatile int status = 201;
+    private volatile int failAfter = Integer.MAX_VALUE;
+
+    private MemoryStore store;
+    private OutboxSyncer syncer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/orders", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                keys.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+                auth.add(exchange.getRequestHeaders().getFirst("Authorization"));
+                bodies.add(read(exchange.getRequestBody()));
+                int code = keys.size() > failAfter ? 503 : status;
+                byte[] reply = "{}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(code, reply.length);
+                exchange.getResponseBody().write(reply);
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/orders";
+
+        store = new MemoryStore();
+        syncer = new OutboxSyncer(store, 3);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer test");
+        syncer.setEndpoint(url, headers);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void sync_sendsEveryDueOrderInBatches() {
+        store.insert(entries(7));
+
+        OutboxSyncer.Report report = syncer.sync(1000);
+
+        assertEquals(7, report.synced);
+        assertEquals(Arrays.asList("k0", "k1", "k2", "k3", "k4", "k5", "k6"), keys);
+        assertEquals("{\"order\":0}", bodies.get(0));
+        assertEquals("Bearer test", auth.get(0));
+        // Batches of 3: 3 + 3 + 1
+        assertEquals(3, store.transactions);
+        assertArrayEquals(new int[] { 0, 7, 0 }, store.counts());
+    }
+
+    @Test
+    public void insert_ignoresKeysAlreadyStored() {
+        assertEquals(2, store.insert(entries(2)));
+        assertEquals(1, store.insert(entries(3)));
+        syncer.sync(1000);
+        assertEquals(3, keys.size());
+    }
+
+    @Test
+    public void serverError_backsOffAndStopsTheRun() {
+        store.insert(entries(5));
+        failAfter = 2;
+
+        OutboxSyncer.Report report = syncer.sync(1000);
+
+        assertEquals(2, report.synced);
+        assertEquals(1, report.retrying);
+        assertEquals("HTTP 503", report.lastError);
+        // Nothing after the failing order was attempted
+        assertEquals(3, keys.size());
+        long next = syncer.nextRunAt();
+        assertTrue(next >= 1000 + OutboxSyncer.MIN_BACKOFF_MS / 2);
+        assertTrue(next <= 1000 + OutboxSyncer.MIN_BACKOFF_MS);
+
+        // The orders behind it wait out the pause too
+        assertEquals(0, syncer.sync(1001).synced);
+        assertEquals(3, keys.size());
+    }
+
+    @Test
+    public void resume_sendsStraightAway() {
+        store.insert(entries(2));
+        failAfter = 0;
+        syncer.sync(1000);
+        assertEquals(1, keys.size());
+
+        failAfter = Integer.MAX_VALUE;
+        syncer.resume(1001);
+        assertTrue(syncer.nextRunAt() <= 1001);
+        assertEquals(2, syncer.sync(1001).synced);
+        assertEquals(-1, syncer.nextRunAt());
+    }
+
+    @Test
+    public void retry_reusesTheIdempotencyKeyAndRecovers() {
+        store.insert(entries(3));
+        failAfter = 1;
+        syncer.sync(1000);
+
+        failAfter = Integer.MAX_VALUE;
+        OutboxSyncer.Report report = syncer.sync(1000 + OutboxSyncer.MAX_BACKOFF_MS);
+
+        assertEquals(2, report.synced);
+        assertEquals(Arrays.asList("k0", "k1", "k1", "k2"), keys);
+        assertEquals(2, store.attempts.get("k1").intValue());
+        assertArrayEquals(new int[] { 0, 3, 0 }, store.counts());
+    }
+
+    @Test
+    public void unreachableServer_isRetried() {
+        store.insert(entries(2));
+        server.stop(0);
+
+        OutboxSyncer.Report report = syncer.sync(1000);
+
+        assertEquals(0, report.synced);
+        assertEquals(1, report.retrying);
+        assertNotNull(report.lastError);
+        assertArrayEquals(new int[] { 2, 0, 0 }, store.counts());
+    }
+
+    @Test
+    public void clientError_failsTheOrderWithoutBlockingTheQueue() {
+        store.insert(entries(3));
+        status = 400;
+
+        OutboxSyncer.Report report = syncer.sync(1000);
+
+        assertEquals(3, report.failed);
+        assertEquals(0, report.retrying);
+        assertArrayEquals(new int[] { 0, 0, 3 }, store.counts());
+        assertEquals(-1, store.nextAttemptAt());
+    }
+
+    @Test
+    public void conflictAndUnprocessable_failOnlyThatOrder() {
+        store.insert(entries(2));
+        status = 409;
+        syncer.sync(1000);
+        store.insert(Collections.singletonList(new OutboxEntry("k9", null, "{}", 200, 0)));
+        status = 422;
+        syncer.sync(1000);
+        assertArrayEquals(new int[] { 0, 0, 3 }, store.counts());
+    }
+
+    @Test
+    public void expiredToken_backsOffInsteadOfFailingTheOutbox() {
+        store.insert(entries(5));
+        status = 401;
+
+        OutboxSyncer.Report report = syncer.sync(1000);
+
+        assertEquals(0, report.failed);
+        assertEquals(1, report.retrying);
+        assertEquals("HTTP 401", report.lastError);
+        // One request, then the pass stops with every order still pending
+        assertEquals(1, keys.size());
+        assertArrayEquals(new int[] { 5, 0, 0 }, store.counts());
+        assertTrue(syncer.nextRunAt() > 1000);
+
+        // A new token comes with configure, which resumes the outbox
+        status = 201;
+        syncer.resume(1001);
+        assertEquals(5, syncer.sync(1001).synced);
+    }
+
+    @Test
+    public void wrongEndpoint_isRetriedLater() {
+        store.insert(entries(2));
+        status = 404;
+        assertEquals(1, syncer.sync(1000).retrying);
+        assertArrayEquals(new int[] { 2, 0, 0 }, store.counts());
+    }
+
+    @Test
+    public void retryFailed_queuesRejectedOrdersAgain() {
+        store.insert(entries(3));
+        status = 400;
+        syncer.sync(1000);
+        assertEquals(3, store.failed(10).size());
+        assertEquals("HTTP 400", store.failed(10).get(0).lastError);
+
+        status = 201;
+        assertEquals(1, syncer.retryFailed(Collections.singletonList("k1"), 2000));
+        assertEquals(1, syncer.sync(2000).synced);
+        assertEquals(Arrays.asList("k0", "k2"), failedKeys());
+
+        assertEquals(2, syncer.retryFailed(null, 3000));
+        assertEquals(2, syncer.sync(3000).synced);
+        assertArrayEquals(new int[] { 0, 3, 0 }, store.counts());
+    }
+
+    @Test
+    public void tooManyRequests_isRetried() {
+        store.insert(entries(1));
+        status = 429;
+        assertEquals(1, syncer.sync(1000).retrying);
+        assertArrayEquals(new int[] { 1, 0, 0 }, store.counts());
+    }
+
+    @Test
+    public void backoff_growsAndIsCapped() {
+        for (int attempts = 1; attempts < 40; attempts++) {
+            long cap = Math.min(OutboxSyncer.MAX_BACKOFF_MS, OutboxSyncer.MIN_BACKOFF_MS << Math.min(attempts - 1, 16));
+            long delay = syncer.backoffMs(attempts);
+            assertTrue(delay >= cap / 2);
+            assertTrue(delay <= cap);
+        }
+    }
+
+    private static List<OutboxEntry> entries(int n) {
+        List<OutboxEntry> entries = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            entries.add(new OutboxEntry("k" + i, "order-" + i, "{\"order\":" + i + "}", 100 + i, 0));
+        }
+        return entries;
+    }
+
+    private List<String> failedKeys() {
+        List<String> failed = new ArrayList<>();
+        for (OutboxEntry entry : store.failed(10)) failed.add(entry.idempotencyKey);
+        return failed;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Same semantics as the SQLite store, kept in memory
+     */
+    private static final class MemoryStore implements OutboxStore {
+        final Map<String, OutboxEntry> entries = new LinkedHashMap<>();
+        final Map<String, Integer> states = new HashMap<>();
+        final Map<String, Integer> attempts = new HashMap<>();
+        final Map<String, Long> nextAttempt = new HashMap<>();
+        final Map<String, String> errors = new HashMap<>();
+        int transactions = 0;
+
+        @Override
+        public int insert(List<OutboxEntry> batch) {
+            int added = 0;
+            for (OutboxEntry entry : batch) {
+                if (entries.containsKey(entry.idempotencyKey)) continue;
+                entries.put(entry.idempotencyKey, entry);
+                states.put(entry.idempotencyKey, 0);
+                attempts.put(entry.idempotencyKey, 0);
+                nextAttempt.put(entry.idempotencyKey, entry.createdAt);
+                added++;
+            }
+            return added;
+        }
+
+        @Override
+        public List<OutboxEntry> due(long now, int limit) {
+            List<OutboxEntry> due = new ArrayList<>();
+            for (OutboxEntry entry : entries.values()) {
+                String key = entry.idempotencyKey;
+                if (due.size() == limit) break;
+                if (states.get(key) == 0 && nextAttempt.get(key) <= now) {
+                    due.add(new OutboxEntry(key, entry.orderRef, entry.payload, entry.createdAt, attempts.get(key)));
+                }
+            }
+            return due;
+        }
+
+        @Override
+        public void complete(List<Result> results, long now) {
+            transactions++;
+            for (Result result : results) {
+                int state = result.outcome == Result.SYNCED ? 1 : result.outcome == Result.FAILED ? 2 : 0;
+                states.put(result.idempotencyKey, state);
+                attempts.put(result.idempotencyKey, result.attempts);
+                nextAttempt.put(result.idempotencyKey, result.nextAttemptAt);
+                errors.put(result.idempotencyKey, result.error);
+            }
+        }
+
+        @Override
+        public void resetBackoff(long now) {
+            for (String key : entries.keySet()) {
+                if (states.get(key) == 0 && nextAttempt.get(key) > now) nextAttempt.put(key, now);
+            }
+        }
+
+        @Override
+        public long nextAttemptAt() {
+            long next = -1;
+            for (String key : entries.keySet()) {
+                if (states.get(key) != 0) continue;
+                long at = nextAttempt.get(key);
+                if (next < 0 || at < next) next = at;
+            }
+            return next;
+        }
+
+        @Override
+        public List<OutboxEntry> failed(int limit) {
+            List<OutboxEntry> failed = new ArrayList<>();
+            for (OutboxEntry entry : entries.values()) {
+                String key = entry.idempotencyKey;
+                if (failed.size() == limit) break;
+                if (states.get(key) == 2) {
+                    failed.add(new OutboxEntry(key, entry.orderRef, entry.payload, entry.createdAt, attempts.get(key),
+                        errors.get(key)));
+                }
+            }
+            return failed;
+        }
+
+        @Override
+        public int requeueFailed(List<String> keys, long now) {
+            int queued = 0;
+            for (String key : entries.keySet()) {
+                if (states.get(key) != 2 || (keys != null && !keys.contains(key))) continue;
+                states.put(key, 0);
+                attempts.put(key, 0);
+                nextAttempt.put(key, now);
+                queued++;
+            }
+            return queued;
+        }
+
+        @Override
+        public int[] counts() {
+            int[] counts = new int[3];
+            for (int state : states.values()) counts[state]++;
+            return counts;
+        }
+    }
+}
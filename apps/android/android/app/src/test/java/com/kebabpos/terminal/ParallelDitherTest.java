@@ -0,0 +1,76 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Parallel output must match the serial reference exactly. Speedup by
+ * thread count: ./gradlew :app:testDebugUnitTest --tests '*ParallelDitherTest' -Pbench.dither=true
+ * (-Pbench.threads=2,4,8 for given counts)
+ */
+public class ParallelDitherTest {
+
+    @Test
+    public void matchesSerialReference() {
+        Random random = new Random(42);
+        int[][] sizes = { { 576, 400 }, { 384, 700 }, { 577, 130 }, { 1000, 97 } };
+        for (int threads : new int[] { 2, 3, 4, 8 }) {
+            ParallelDither dither = new ParallelDither(threads);
+            try {
+                for (int[] size : sizes) {
+                    int[] argb = noise(random, size[0], size[1]);
+                    MonoImage expected = ImageDither.floydSteinberg(argb, size[0], size[1]);
+                    MonoImage actual = dither.floydSteinberg(argb, size[0], size[1]);
+                    assertArrayEquals(threads + " threads " + size[0] + "x" + size[1], expected.data, actual.data);
+                }
+            } finally {
+                dither.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void gradientWithTransparency_matches() {
+        int width = 576;
+        int height = 300;
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int grey = x * 255 / width;
+                int alpha = y < 50 ? 0 : 255;
+                argb[y * width + x] = alpha << 24 | grey << 16 | grey << 8 | grey;
+            }
+        }
+        ParallelDither dither = new ParallelDither(4);
+        try {
+            assertArrayEquals(ImageDither.floydSteinberg(argb, width, height).data,
+                dither.floydSteinberg(argb, width, height).data);
+        } finally {
+            dither.shutdown();
+        }
+    }
+
+    @Test
+    public void oneThreadAndSmallImages_useTheSerialPath() {
+        int[] argb = noise(new Random(1), 64, 64);
+        ParallelDither single = new ParallelDither(1);
+        assertArrayEquals(ImageDither.floydSteinberg(argb, 64, 64).data, single.floydSteinberg(argb, 64, 64).data);
+        assertEquals(1, single.threads());
+    }
+
+    @Test
+    public void benchmarkFromProperties() {
+        if (System.getProperty("bench.dither") == null) return;
+        System.out.println(DitherBenchmark.run(576, 2400, Integer.getInteger("bench.rounds", 10),
+            DitherBenchmark.threadCounts(System.getProperty("bench.threads"))));
+    }
+
+    static int[] noise(Random random, int width, int height) {
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        return argb;
+    }
+}
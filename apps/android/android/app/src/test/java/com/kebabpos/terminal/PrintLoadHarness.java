@@ -0,0 +1,570 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Headless load/soak harness for the ESC/POS print path
+ *
+ * Generates a stream of orders and prints a kitchen docket and a receipt
+ * for each through the plugin's own ESC/POS path: EscPosPrinter for the
+ * text calls (rule widths from the layout, glyph-atlas order numbers,
+ * dense layout), EscPosJobs for streaming, docket batching, idempotency
+ * keys, reprints from JobHistory and the PrintScheduler, ending in a
+ * SimulatedPrinter. printReceipt and printKitchenDocket make the calls
+ * sunmi-printer.ts makes, in the same order; change them with it.
+ * Time is simulated, so an hour of Saturday night runs in seconds on a
+ * plain JVM. Rendering is real, so heap growth and render CPU are real
+ * too.
+ *
+ * Everything runs on one thread: a job renders whole before the
+ * scheduler sends it, so a streamed job's buffers are sized to hold it.
+ *
+ * Run from a test (PrintLoadHarnessTest, -Pharness.orders=...) or
+ * directly: java ... com.kebabpos.terminal.PrintLoadHarness orders=5000 link=bluetooth
+ */
+final class PrintLoadHarness {
+
+    /**
+     * Virtual clock shared by the scheduler and the simulated printer
+     */
+    static final class SimClock implements PrintScheduler.Clock {
+        long now = 0;
+
+        @Override
+        public long nowMs() {
+            return now;
+        }
+    }
+
+    /**
+     * Settable from properties (harness.orders, harness.link, ...), see
+     * fromProperties for the names
+     */
+    static final class Config {
+        int orders = 500;
+        double ordersPerHour = 1000;
+        SimulatedPrinter.Link link = SimulatedPrinter.USB;
+        // Share of orders that get a customer-copy reprint
+        double reprintRate = 0.03;
+        // Share of orders whose receipt is sent twice under one key, as a double tap on Pay does
+        double duplicateRate = 0.02;
+        // A long report every this many orders (0 for none)
+        int reportEvery = 250;
+        boolean dense = false;
+        // Rush mode, and its window and batch size
+        boolean batching = false;
+        int batchWindowMs = 4000;
+        int batchMaxOrders = 4;
+        long seed = 42;
+
+        static Config fromProperties(String prefix, java.util.Properties props) {
+            Config config = new Config();
+            String value;
+            if ((value = props.getProperty(prefix + "orders")) != null) config.orders = Integer.parseInt(value);
+            if ((value = props.getProperty(prefix + "rate")) != null) config.ordersPerHour = Double.parseDouble(value);
+            if ((value = props.getProperty(prefix + "link")) != null) {
+                config.link = "bluetooth".equals(value) ? SimulatedPrinter.BLUETOOTH : SimulatedPrinter.USB;
+            }
+            if ((value = props.getProperty(prefix + "drops")) != null) {
+                config.link = config.link.withDrops(Double.parseDouble(value));
+            }
+            if ((value = props.getProperty(prefix + "reprintRate")) != null) {
+                config.reprintRate = Double.parseDouble(value);
+            }
+            if ((value = props.getProperty(prefix + "duplicateRate")) != null) {
+                config.duplicateRate = Double.parseDouble(value);
+            }
+            if ((value = props.getProperty(prefix + "reportEvery")) != null) {
+                config.reportEvery = Integer.parseInt(value);
+            }
+            if ((value = props.getProperty(prefix + "dense")) != null) config.dense = Boolean.parseBoolean(value);
+            if ((value = props.getProperty(prefix + "batching")) != null) {
+                config.batching = Boolean.parseBoolean(value);
+            }
+            if ((value = props.getProperty(prefix + "batchWindowMs")) != null) {
+                config.batchWindowMs = Integer.parseInt(value);
+            }
+            if ((value = props.getProperty(prefix + "batchMaxOrders")) != null) {
+                config.batchMaxOrders = Integer.parseInt(value);
+            }
+            if ((value = props.getProperty(prefix + "seed")) != null) config.seed = Long.parseLong(value);
+            return config;
+        }
+    }
+
+    static final class Report {
+        int orders;
+        int jobs;
+        int failures;
+        int drops;
+        // Receipts sent again under their key, and how many of those were suppressed
+        int doubleTaps;
+        int duplicates;
+        long simulatedMs;
+        long bytesSent;
+        final long[][] latencies = new long[PrintScheduler.JobClass.values().length][];
+        final int[] latencyCounts = new int[PrintScheduler.JobClass.values().length];
+        long renderNanos;
+        long heapBaselineBytes;
+        long heapEndBytes;
+        long wallMs;
+        PrintScheduler scheduler;
+        RenderPipeline.Stats streams;
+
+        double jobsPerHour() {
+            return simulatedMs == 0 ? 0 : jobs * 3600000.0 / simulatedMs;
+        }
+
+        long latencyPercentileMs(PrintScheduler.JobClass jobClass, int percentile) {
+            int n = latencyCounts[jobClass.ordinal()];
+            if (n == 0) return 0;
+            long[] sorted = Arrays.copyOf(latencies[jobClass.ordinal()], n);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, index))];
+        }
+
+        long heapGrowthBytes() {
+            return heapEndBytes - heapBaselineBytes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.ROOT, "orders=%d jobs=%d failures=%d drops=%d duplicates=%d/%d%n",
+                orders, jobs, failures, drops, duplicates, doubleTaps));
+            out.append(String.format(Locale.ROOT, "simulated=%.1fmin throughput=%.0f jobs/h sent=%dKB streamed=%d%n",
+                simulatedMs / 60000.0, jobsPerHour(), bytesSent / 1024, streams.streams));
+            for (PrintScheduler.JobClass jobClass : PrintScheduler.JobClass.values()) {
+                if (latencyCounts[jobClass.ordinal()] == 0) continue;
+                out.append(String.format(Locale.ROOT, "  %-8s n=%-5d latency p50=%dms p99=%dms  queue wait p95=%dms%n",
+                    jobClass.name().toLowerCase(Locale.ROOT), latencyCounts[jobClass.ordinal()],
+                    latencyPercentileMs(jobClass, 50), latencyPercentileMs(jobClass, 99),
+                    scheduler.stats(jobClass).percentileMs(95)));
+            }
+            out.append(String.format(Locale.ROOT, "render=%.0fus/job heap growth=%dKB wall=%dms",
+                jobs == 0 ? 0.0 : renderNanos / 1000.0 / jobs, heapGrowthBytes() / 1024, wallMs));
+            return out.toString();
+        }
+    }
+
+    /**
+     * The fields of PrintOrderData the layouts print
+     */
+    static final class Order {
+        String orderId;
+        int orderNumber;
+        String orderType;
+        String customerName;
+        final List<Item> items = new ArrayList<>();
+        double subtotal;
+        double gstAmount;
+        double total;
+        String paymentMethod = "card";
+        String idempotencyKey;
+    }
+
+    static final class Item {
+        String name;
+        int quantity;
+        double price;
+        String notes;
+        final List<String> modifiers = new ArrayList<>();
+    }
+
+    /**
+     * Digits drawn as solid blocks, as many bytes wide as the bold system
+     * font's; PaintGlyphs needs Android
+     */
+    static final GlyphAtlas.Source BLOCK_GLYPHS = (c, height) -> {
+        MonoImage glyph = new MonoImage(Math.max(1, (height * 5 / 8 + 7) / 8), height);
+        if (c == ' ') return glyph;
+        for (int y = height / 8; y < height - height / 8; y++) {
+            for (int x = 1; x < glyph.widthBytes * 8 - 2; x++) glyph.setDot(x, y);
+        }
+        return glyph;
+    };
+
+    // A whole job fits the two stream buffers, it renders before the scheduler sends any of it
+    private static final int STREAM_BUFFER_BYTES = 128 * 1024;
+    private static final String PRINTER = "simulated";
+    private static final String DATE = "18/10/2026, 07:42 pm";
+
+    private static final String[] ITEMS = {
+        "Mixed Kebab", "Lamb Kebab", "Chicken Kebab", "Falafel Wrap", "HSP Large", "HSP Small",
+        "Chips Large", "Garlic Bread", "Baklava", "Can of Coke", "Lamb Plate", "Chicken Plate"
+    };
+    private static final String[] MODIFIERS = {
+        "Garlic sauce", "Chilli sauce", "BBQ sauce", "Extra cheese", "No onion", "Add tabouli", "Extra meat"
+    };
+    private static final String[] NOTES = { "Well done", "Cut in half", "Allergy: sesame", "Sauce on side" };
+    private static final String[] ORDER_TYPES = { "dine-in", "takeaway", "delivery", "online" };
+
+    private final Config config;
+    private final SimClock clock = new SimClock();
+    private final Random random;
+    private final SimulatedPrinter printer;
+    private final PrintScheduler scheduler;
+    private final JobHistory history = new JobHistory(20, 1024 * 1024);
+    private final PrinterProfile profile = PrinterProfile.DEFAULT;
+    private final byte[] thermal = ThermalSettings.FACTORY.encode();
+    private final EscPosEncoder escPos = new EscPosEncoder();
+    private final EscPosJobs jobs;
+    private final EscPosPrinter escPosPrinter;
+    private final Report report = new Report();
+    // Batch window checks, by simulated time
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private long timerSequence = 0;
+
+    // Source images, dithered again for every receipt like printBitmap does
+    private final int[] logoPixels;
+    private final int[] qrPixels;
+    private final int qrSize;
+
+    private static final class Timer implements Comparable<Timer> {
+        final long at;
+        final long sequence;
+        final Runnable task;
+
+        Timer(long at, long sequence, Runnable task) {
+            this.at = at;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            if (at != other.at) return Long.compare(at, other.at);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    PrintLoadHarness(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        this.printer = new SimulatedPrinter(config.link, clock, config.seed + 1);
+        this.scheduler = new PrintScheduler(PrintScheduler.DEFAULT_AGING_MS, clock);
+        this.jobs = new EscPosJobs(new EscPosJobs.Host() {
+            @Override
+            public long now() {
+                return clock.now;
+            }
+
+            @Override
+            public void write(PrinterTransport target, byte[] data) throws IOException {
+                target.write(data);
+            }
+
+            @Override
+            public void onRenderThread(Runnable task) {
+                task.run();
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                timers.add(new Timer(clock.now + delayMs, timerSequence++, task));
+            }
+
+            @Override
+            public void sending(String orderId) {
+            }
+
+            @Override
+            public void streamSuspended() {
+                escPos.forgetPrinterState();
+            }
+
+            @Override
+            public byte[] jobHeader() {
+                return escPosPrinter.header(thermal);
+            }
+
+            @Override
+            public int dotsPerLine() {
+                return profile.dotsPerLine;
+            }
+        }, scheduler, new IdempotencyKeys(64, 2 * 60 * 1000), history, new PrintTrace(256, PrintTrace.LEVEL_INFO),
+            STREAM_BUFFER_BYTES);
+        this.escPosPrinter = new EscPosPrinter(escPos, jobs, data -> {
+            throw new IOException("Written outside a job");
+        }, BLOCK_GLYPHS, (level, code, a, b) -> {});
+        escPosPrinter.setProfile(profile);
+        escPosPrinter.setDense(config.dense);
+        jobs.configureBatching(config.batching, config.batchWindowMs, config.batchMaxOrders);
+
+        logoPixels = new int[384 * 96];
+        for (int y = 0; y < 96; y++) {
+            for (int x = 0; x < 384; x++) {
+                int grey = (x * 255 / 384 + y * 2) & 0xFF;
+                logoPixels[y * 384 + x] = 0xFF000000 | grey << 16 | grey << 8 | grey;
+            }
+        }
+        boolean[][] modules = QrCode.encode("https://g.page/r/kebab-review", QrCode.ECC_MEDIUM);
+        int scale = 300 / modules.length;
+        qrSize = modules.length * scale;
+        qrPixels = new int[qrSize * qrSize];
+        for (int y = 0; y < qrSize; y++) {
+            for (int x = 0; x < qrSize; x++) {
+                qrPixels[y * qrSize + x] = modules[y / scale][x / scale] ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+    }
+
+    Report run() throws IOException {
+        long wallStart = System.currentTimeMillis();
+        int expectedJobs = config.orders * 3 + (config.reportEvery > 0 ? config.orders / config.reportEvery + 1 : 0);
+        for (int i = 0; i < report.latencies.length; i++) report.latencies[i] = new long[expectedJobs];
+        report.scheduler = scheduler;
+
+        double meanGapMs = 3600000.0 / config.ordersPerHour;
+        long nextArrival = 0;
+        int submitted = 0;
+        int warmup = Math.min(50, config.orders / 5);
+
+        while (true) {
+            while (submitted < config.orders && nextArrival <= clock.now) {
+                submitOrder(submitted, nextArrival);
+                submitted++;
+                nextArrival += (long) (-Math.log(1 - random.nextDouble()) * meanGapMs);
+                if (submitted == warmup) report.heapBaselineBytes = usedHeap();
+            }
+            while (!timers.isEmpty() && timers.peek().at <= clock.now) timers.poll().task.run();
+            if (!scheduler.runNext()) {
+                long next = submitted < config.orders ? nextArrival : Long.MAX_VALUE;
+                if (!timers.isEmpty()) next = Math.min(next, timers.peek().at);
+                if (next == Long.MAX_VALUE) break;
+                clock.now = Math.max(clock.now, next);
+            }
+        }
+
+        report.orders = submitted;
+        report.simulatedMs = Math.max(clock.now, printer.printedAt());
+        report.bytesSent = printer.bytesWritten();
+        report.drops = printer.drops();
+        report.streams = jobs.streamStats();
+        report.heapEndBytes = usedHeap();
+        report.wallMs = System.currentTimeMillis() - wallStart;
+        return report;
+    }
+
+    private void submitOrder(int index, long arrival) throws IOException {
+        Order order = new Order();
+        order.orderId = "order-" + index;
+        order.orderNumber = 100 + index % 900;
+        order.orderType = ORDER_TYPES[random.nextInt(ORDER_TYPES.length)];
+        order.customerName = random.nextInt(3) == 0 ? "Sam" : "Guest";
+        order.idempotencyKey = "pay-" + index;
+        int itemCount = 1 + (int) Math.min(11, -Math.log(1 - random.nextDouble()) * 2.5);
+        for (int i = 0; i < itemCount; i++) {
+            Item item = new Item();
+            item.quantity = 1 + random.nextInt(3);
+            item.name = ITEMS[random.nextInt(ITEMS.length)];
+            item.price = 8 + random.nextInt(2000) / 100.0;
+            int modifierCount = random.nextInt(4);
+            for (int m = 0; m < modifierCount; m++) item.modifiers.add(MODIFIERS[random.nextInt(MODIFIERS.length)]);
+            item.notes = random.nextInt(5) == 0 ? NOTES[random.nextInt(NOTES.length)] : null;
+            order.items.add(item);
+            order.subtotal += item.price * item.quantity;
+        }
+        order.gstAmount = order.subtotal / 11;
+        order.total = order.subtotal;
+
+        // Jobs render when the order arrives, the scheduler's waits count from then
+        long now = clock.now;
+        clock.now = arrival;
+        long start = System.nanoTime();
+        printKitchenDocket(order, arrival);
+        printReceipt(order, arrival);
+        if (random.nextDouble() < config.duplicateRate) {
+            report.doubleTaps++;
+            printReceipt(order, arrival);
+        }
+        report.renderNanos += System.nanoTime() - start;
+
+        if (random.nextDouble() < config.reprintRate) {
+            // Like the plugin's reprint: the retained job, no new render
+            JobHistory.Job job = history.find(order.orderId, "receipt");
+            if (job != null) {
+                jobs.submit(job, PrintScheduler.JobClass.REPRINT, 0, 1, null, printer,
+                    outcome(PrintScheduler.JobClass.REPRINT, arrival));
+            }
+        }
+        if (config.reportEvery > 0 && index > 0 && index % config.reportEvery == 0) {
+            start = System.nanoTime();
+            printReport(index, arrival);
+            report.renderNanos += System.nanoTime() - start;
+        }
+        clock.now = now;
+    }
+
+    private EscPosJobs.Outcome outcome(PrintScheduler.JobClass jobClass, long arrival) {
+        return new EscPosJobs.Outcome() {
+            @Override
+            public void settled(Exception error) {
+                report.jobs++;
+                if (error != null) {
+                    report.failures++;
+                    return;
+                }
+                int slot = jobClass.ordinal();
+                report.latencies[slot][report.latencyCounts[slot]++] = printer.printedAt() - arrival;
+            }
+
+            @Override
+            public void duplicate(String error) {
+                report.duplicates++;
+            }
+        };
+    }
+
+    // sunmi-printer.ts ruleLine: a full line at normal size in the current layout
+    private String ruleLine(char c) {
+        char[] line = new char[escPosPrinter.lineColumns(EscPosEncoder.SIZE_NORMAL)];
+        Arrays.fill(line, c);
+        return new String(line) + "\n";
+    }
+
+    private static String formatCurrency(double amount) {
+        return String.format(Locale.ROOT, "$%.2f", amount);
+    }
+
+    private void printerInit(Order order, String kind, String key) throws IOException {
+        jobs.open(order.orderId, kind, 0, key, printer);
+        escPosPrinter.init(thermal);
+    }
+
+    private void cutPaper(PrintScheduler.JobClass jobClass, long arrival) throws IOException {
+        escPosPrinter.feedAndCut();
+        jobs.finish(1, null, PRINTER, outcome(jobClass, arrival));
+    }
+
+    // sunmi-printer.ts printReceipt
+    private void printReceipt(Order order, long arrival) throws IOException {
+        printerInit(order, "receipt", order.idempotencyKey);
+        String doubleRule = ruleLine('=');
+        String rule = ruleLine('-');
+
+        escPosPrinter.image(ImageDither.floydSteinberg(logoPixels, 384, 96), EscPosEncoder.ALIGN_CENTER);
+        escPosPrinter.text("\n");
+
+        escPosPrinter.text("Shop 7a/22 Mawson Pl, Mawson ACT 2607\n", 24, EscPosEncoder.ALIGN_CENTER, false);
+        escPosPrinter.text("ALTAHER LIMITED | ABN: 79 689 402 051\n", 24, EscPosEncoder.ALIGN_CENTER, false);
+        escPosPrinter.text(doubleRule, 24, EscPosEncoder.ALIGN_CENTER, false);
+        escPosPrinter.text(order.orderType.toUpperCase(Locale.ROOT) + "\n", 32, EscPosEncoder.ALIGN_CENTER, false);
+        escPosPrinter.text("#" + order.orderNumber + "\n", 48, EscPosEncoder.ALIGN_CENTER, false);
+
+        escPosPrinter.setFontSize(24);
+        escPosPrinter.setAlignment(EscPosEncoder.ALIGN_LEFT);
+        escPosPrinter.text("Date: " + DATE + "\n");
+        if (order.customerName != null && !"Guest".equals(order.customerName)) {
+            escPosPrinter.text("Customer: " + order.customerName + "\n");
+        }
+        escPosPrinter.text(rule);
+
+        int[] widths = { 28, 10 };
+        int[] aligns = { EscPosEncoder.ALIGN_LEFT, EscPosEncoder.ALIGN_RIGHT };
+        for (Item item : order.items) {
+            escPosPrinter.columns(new String[] { item.quantity + "x " + item.name,
+                formatCurrency(item.price * item.quantity) }, widths, aligns);
+            for (String modifier : item.modifiers) escPosPrinter.text("  + " + modifier + "\n");
+            if (item.notes != null) escPosPrinter.text("  Note: " + item.notes + "\n");
+        }
+
+        escPosPrinter.text(rule);
+        escPosPrinter.columns(new String[] { "Subtotal:", formatCurrency(order.subtotal) }, widths, aligns);
+        escPosPrinter.columns(new String[] { "GST:", formatCurrency(order.gstAmount) }, widths, aligns);
+        escPosPrinter.setFontSize(32);
+        escPosPrinter.columns(new String[] { "TOTAL:", formatCurrency(order.total) }, new int[] { 20, 10 }, aligns);
+        escPosPrinter.setFontSize(24);
+
+        escPosPrinter.text(rule);
+        escPosPrinter.text("Paid by: " + order.paymentMethod + "\n");
+
+        String[] footer = {
+            "\n", "Thank you for your order!\n", "See you again soon\n", "\n",
+            "If you enjoyed your meal,\n", "we'd love a review!\n", "\n"
+        };
+        for (String line : footer) escPosPrinter.text(line, 24, EscPosEncoder.ALIGN_CENTER, false);
+
+        escPosPrinter.image(ImageDither.floydSteinberg(qrPixels, qrSize, qrSize), EscPosEncoder.ALIGN_CENTER);
+
+        escPosPrinter.feed(4);
+        cutPaper(PrintScheduler.JobClass.RECEIPT, arrival);
+    }
+
+    // sunmi-printer.ts printKitchenDocket, without amendments
+    private void printKitchenDocket(Order order, long arrival) throws IOException {
+        printerInit(order, "kitchen", order.idempotencyKey + ":kitchen");
+        String doubleRule = ruleLine('=');
+
+        int numberSize = config.batching ? 48 : 64;
+        escPosPrinter.setAlignment(EscPosEncoder.ALIGN_CENTER);
+        escPosPrinter.setFontSize(numberSize);
+        if (config.batching) {
+            escPosPrinter.text("#" + order.orderNumber + " " + order.orderType.toUpperCase(Locale.ROOT) + "\n",
+                numberSize);
+        } else {
+            escPosPrinter.text("#" + order.orderNumber + "\n", numberSize);
+            escPosPrinter.setFontSize(32);
+            escPosPrinter.text(order.orderType.toUpperCase(Locale.ROOT) + "\n", 32);
+        }
+
+        escPosPrinter.setFontSize(24);
+        escPosPrinter.text(doubleRule);
+        escPosPrinter.setAlignment(EscPosEncoder.ALIGN_LEFT);
+
+        escPosPrinter.setFontSize(28);
+        for (Item item : order.items) {
+            escPosPrinter.text(item.quantity + "x " + item.name + "\n");
+            for (String modifier : item.modifiers) escPosPrinter.text("  + " + modifier + "\n");
+            if (item.notes != null) {
+                escPosPrinter.setFontSize(24);
+                escPosPrinter.text("  ** " + item.notes + " **\n");
+                escPosPrinter.setFontSize(28);
+            }
+        }
+
+        escPosPrinter.setFontSize(24);
+        escPosPrinter.text(doubleRule);
+        escPosPrinter.text("Time: " + DATE + "\n");
+
+        if (!config.batching) escPosPrinter.feed(4);
+        cutPaper(PrintScheduler.JobClass.KITCHEN, arrival);
+    }
+
+    private void printReport(int index, long arrival) throws IOException {
+        Order order = new Order();
+        order.orderId = "report-" + index;
+        printerInit(order, "report", null);
+        escPosPrinter.text("END OF DAY REPORT\n", 32, EscPosEncoder.ALIGN_CENTER, true);
+        escPosPrinter.setAlignment(EscPosEncoder.ALIGN_LEFT);
+        int[] widths = { 28, 10 };
+        int[] aligns = { EscPosEncoder.ALIGN_LEFT, EscPosEncoder.ALIGN_RIGHT };
+        for (int i = 0; i < 150; i++) {
+            escPosPrinter.columns(new String[] { ITEMS[i % ITEMS.length] + " #" + i, (index + i) + ".00" },
+                widths, aligns);
+        }
+        cutPaper(PrintScheduler.JobClass.REPORT, arrival);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws IOException {
+        java.util.Properties props = new java.util.Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) props.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        System.out.println(new PrintLoadHarness(Config.fromProperties("", props)).run());
+    }
+}
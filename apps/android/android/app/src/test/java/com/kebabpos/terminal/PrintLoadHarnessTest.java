@@ -0,0 +1,118 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Gates on the load harness. The default runs are short; a longer soak
+ * runs when harness properties are passed, e.g.
+ * ./gradlew :app:testDebugUnitTest --tests '*PrintLoadHarnessTest' -Pharness.orders=5000 -Pharness.link=bluetooth
+ */
+public class PrintLoadHarnessTest {
+
+    @Test
+    public void rushOverUsb_keepsKitchenLatencyFlat() throws Exception {
+        PrintLoadHarness.Config config = new PrintLoadHarness.Config();
+        config.orders = 300;
+        config.ordersPerHour = 1000;
+        PrintLoadHarness.Report report = new PrintLoadHarness(config).run();
+        System.out.println(report);
+
+        assertEquals(0, report.failures);
+        assertEquals(report.jobs, sum(report.latencyCounts));
+        // Jobs begun with the printer idle went out as they rendered
+        assertTrue(report.streams.streams > 0);
+        assertEquals(report.doubleTaps, report.duplicates);
+        // A docket should never wait behind more than the job already printing
+        assertTrue(report.toString(), report.latencyPercentileMs(PrintScheduler.JobClass.KITCHEN, 99) < 20000);
+        assertTrue(report.toString(), report.heapGrowthBytes() < 8 * 1024 * 1024);
+    }
+
+    @Test
+    public void bluetoothWithDrops_countsEveryJob() throws Exception {
+        PrintLoadHarness.Config config = new PrintLoadHarness.Config();
+        config.orders = 200;
+        config.link = SimulatedPrinter.BLUETOOTH.withDrops(20);
+        PrintLoadHarness.Report report = new PrintLoadHarness(config).run();
+        System.out.println(report);
+
+        assertTrue(report.drops > 0);
+        assertTrue(report.failures >= report.drops);
+        assertEquals(report.jobs, report.failures + sum(report.latencyCounts));
+    }
+
+    @Test
+    public void batchedDenseRush_printsEveryDocketOnce() throws Exception {
+        PrintLoadHarness.Config config = new PrintLoadHarness.Config();
+        config.orders = 200;
+        config.ordersPerHour = 2000;
+        config.batching = true;
+        config.dense = true;
+        config.duplicateRate = 0.1;
+        PrintLoadHarness.Report report = new PrintLoadHarness(config).run();
+        System.out.println(report);
+
+        assertEquals(0, report.failures);
+        assertEquals(config.orders, report.latencyCounts[PrintScheduler.JobClass.KITCHEN.ordinal()]);
+        assertEquals(config.orders, report.latencyCounts[PrintScheduler.JobClass.RECEIPT.ordinal()]);
+        assertTrue(report.doubleTaps > 0);
+        assertEquals(report.doubleTaps, report.duplicates);
+    }
+
+    @Test
+    public void configFromProperties_readsEveryField() {
+        java.util.Properties props = new java.util.Properties();
+        props.setProperty("harness.orders", "7");
+        props.setProperty("harness.rate", "120");
+        props.setProperty("harness.link", "bluetooth");
+        props.setProperty("harness.drops", "3");
+        props.setProperty("harness.reprintRate", "0.5");
+        props.setProperty("harness.duplicateRate", "0.25");
+        props.setProperty("harness.reportEvery", "0");
+        props.setProperty("harness.dense", "true");
+        props.setProperty("harness.batching", "true");
+        props.setProperty("harness.batchWindowMs", "1500");
+        props.setProperty("harness.batchMaxOrders", "6");
+        props.setProperty("harness.seed", "9");
+        PrintLoadHarness.Config config = PrintLoadHarness.Config.fromProperties("harness.", props);
+
+        assertEquals(7, config.orders);
+        assertEquals(120, config.ordersPerHour, 0);
+        assertEquals("bluetooth", config.link.name);
+        assertEquals(3, config.link.dropsPerHour, 0);
+        assertEquals(0.5, config.reprintRate, 0);
+        assertEquals(0.25, config.duplicateRate, 0);
+        assertEquals(0, config.reportEvery);
+        assertTrue(config.dense);
+        assertTrue(config.batching);
+        assertEquals(1500, config.batchWindowMs);
+        assertEquals(6, config.batchMaxOrders);
+        assertEquals(9, config.seed);
+    }
+
+    @Test
+    public void simulatedPrinter_chargesPaperForLinesAndRasterRows() {
+        EscPosEncoder enc = new EscPosEncoder();
+        enc.text("a\nb\n");
+        enc.raw(EscPosRaster.encode(new MonoImage(2, 10)));
+        enc.feed(3);
+
+        int total = sum(SimulatedPrinter.paperDots(enc.drain()));
+        assertEquals(2 * 30 + 10 + 3 * 30, total);
+    }
+
+    @Test
+    public void soakFromProperties() throws Exception {
+        if (System.getProperty("harness.orders") == null) return;
+        PrintLoadHarness.Report report =
+            new PrintLoadHarness(PrintLoadHarness.Config.fromProperties("harness.", System.getProperties())).run();
+        System.out.println(report);
+    }
+
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int v : values) total += v;
+        return total;
+    }
+}
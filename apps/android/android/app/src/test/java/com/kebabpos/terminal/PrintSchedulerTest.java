@@ -0,0 +1,141 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordering, aging and wait metrics of the print scheduler, driven by a
+ * fake clock on the test thread.
+ */
+public class PrintSchedulerTest {
+
+    private static final long AGING_MS = 1000;
+
+    private long now = 0;
+    private final List<String> printed = new ArrayList<>();
+    private final PrintScheduler scheduler = new PrintScheduler(AGING_MS, () -> now);
+
+    private void submit(PrintScheduler.JobClass jobClass, String name) {
+        submit(jobClass, 0, name);
+    }
+
+    private void submit(PrintScheduler.JobClass jobClass, long deadlineMs, String name) {
+        scheduler.submit(jobClass, deadlineMs, () -> printed.add(name), null);
+    }
+
+    private void runAll() {
+        while (scheduler.runNext()) {
+            now += 10;
+        }
+    }
+
+    @Test
+    public void kitchenJumpsAheadOfQueuedReceiptsAndReports() {
+        submit(PrintScheduler.JobClass.REPORT, "report");
+        submit(PrintScheduler.JobClass.RECEIPT, "receipt");
+        submit(PrintScheduler.JobClass.REPRINT, "reprint");
+        now += 50;
+        submit(PrintScheduler.JobClass.KITCHEN, "kitchen");
+
+        runAll();
+        assertEquals("[kitchen, receipt, report, reprint]", printed.toString());
+    }
+
+    @Test
+    public void sameClass_isFirstInFirstOut() {
+        submit(PrintScheduler.JobClass.KITCHEN, "k1");
+        submit(PrintScheduler.JobClass.KITCHEN, "k2");
+        submit(PrintScheduler.JobClass.KITCHEN, "k3");
+
+        runAll();
+        assertEquals("[k1, k2, k3]", printed.toString());
+    }
+
+    @Test
+    public void longWaitingReport_isNotStarvedByKitchenStream() {
+        submit(PrintScheduler.JobClass.REPORT, "report");
+        // A new docket arrives every 100ms, each taking the printer 100ms
+        for (int i = 0; i < 40; i++) {
+            submit(PrintScheduler.JobClass.KITCHEN, "k" + i);
+            now += 100;
+            scheduler.runNext();
+        }
+        runAll();
+
+        int reportAt = printed.indexOf("report");
+        assertTrue("report printed at " + reportAt, reportAt > 0 && reportAt <= 2 * AGING_MS / 100 + 1);
+    }
+
+    @Test
+    public void deadline_pullsJobForward() {
+        submit(PrintScheduler.JobClass.KITCHEN, "kitchen");
+        now += 100;
+        // Due to start by 150, which beats a docket arriving at 200
+        submit(PrintScheduler.JobClass.RECEIPT, 50, "urgent receipt");
+        now += 100;
+        submit(PrintScheduler.JobClass.KITCHEN, "later kitchen");
+
+        runAll();
+        assertEquals("[kitchen, urgent receipt, later kitchen]", printed.toString());
+    }
+
+    @Test
+    public void waitTimes_recordedPerClass() {
+        submit(PrintScheduler.JobClass.RECEIPT, "r1");
+        submit(PrintScheduler.JobClass.KITCHEN, "k1");
+        now += 200;
+
+        runAll();
+        PrintScheduler.WaitStats kitchen = scheduler.stats(PrintScheduler.JobClass.KITCHEN);
+        PrintScheduler.WaitStats receipt = scheduler.stats(PrintScheduler.JobClass.RECEIPT);
+        assertEquals(1, kitchen.count());
+        assertEquals(200, kitchen.maxMs());
+        assertEquals(210, receipt.percentileMs(50));
+        assertEquals(0, scheduler.queued(PrintScheduler.JobClass.RECEIPT));
+    }
+
+    @Test
+    public void failedJob_reportsErrorAndQueueContinues() {
+        List<Exception> errors = new ArrayList<>();
+        scheduler.submit(PrintScheduler.JobClass.KITCHEN, 0, () -> {
+            throw new java.io.IOException("Broken pipe");
+        }, errors::add);
+        submit(PrintScheduler.JobClass.KITCHEN, "next");
+
+        runAll();
+        assertEquals("Broken pipe", errors.get(0).getMessage());
+        assertEquals("[next]", printed.toString());
+    }
+
+    @Test
+    public void worker_runsJobsAndUnblocksWaiters() throws Exception {
+        PrintScheduler threaded = new PrintScheduler(AGING_MS);
+        threaded.start();
+        try {
+            List<String> out = new ArrayList<>();
+            threaded.submitAndWait(PrintScheduler.JobClass.CONTROL, () -> out.add("drawer"));
+            assertEquals("[drawer]", out.toString());
+        } finally {
+            threaded.stop();
+        }
+    }
+
+    @Test
+    public void waitingAhead_isControlOrAFasterTier() {
+        assertFalse(scheduler.hasWaitingAhead(PrintScheduler.JobClass.RECEIPT));
+        submit(PrintScheduler.JobClass.RECEIPT, "receipt");
+        submit(PrintScheduler.JobClass.REPORT, "report");
+        assertFalse(scheduler.hasWaitingAhead(PrintScheduler.JobClass.RECEIPT));
+
+        submit(PrintScheduler.JobClass.KITCHEN, "kitchen");
+        assertTrue(scheduler.hasWaitingAhead(PrintScheduler.JobClass.RECEIPT));
+        assertFalse(scheduler.hasWaitingAhead(PrintScheduler.JobClass.KITCHEN));
+
+        submit(PrintScheduler.JobClass.CONTROL, "drawer");
+        assertTrue(scheduler.hasWaitingAhead(PrintScheduler.JobClass.KITCHEN));
+    }
+}
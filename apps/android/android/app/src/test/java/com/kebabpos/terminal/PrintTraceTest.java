@@ -0,0 +1,83 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests for the ring-buffer trace recorder.
+ */
+public class PrintTraceTest {
+
+    @Test
+    public void eventsAboveLevel_areNotRecorded() {
+        PrintTrace trace = new PrintTrace(16, PrintTrace.LEVEL_INFO);
+        trace.record(PrintTrace.LEVEL_DEBUG, PrintTrace.TRANSPORT_WRITE, "A1", 512, 80);
+        trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_BEGIN, "A1", 0, 0);
+
+        List<PrintTrace.Event> events = trace.dump(null, 10);
+        assertEquals(1, events.size());
+        assertEquals("JOB_BEGIN", events.get(0).code);
+
+        trace.setLevel(PrintTrace.LEVEL_OFF);
+        trace.record(PrintTrace.LEVEL_ERROR, PrintTrace.JOB_FAILED, "A1", 1, 0);
+        assertEquals(1, trace.dump(null, 10).size());
+    }
+
+    @Test
+    public void ringKeepsNewestEvents_oldestFirst() {
+        PrintTrace trace = new PrintTrace(4, PrintTrace.LEVEL_DEBUG);
+        for (int i = 0; i < 10; i++) {
+            trace.record(PrintTrace.LEVEL_DEBUG, PrintTrace.TEXT, null, i, 24);
+        }
+
+        List<PrintTrace.Event> events = trace.dump(null, 100);
+        assertEquals(4, events.size());
+        assertEquals("TEXT", events.get(0).code);
+        assertEquals(24, events.get(0).b);
+        assertEquals(6, events.get(0).a);
+        assertEquals(9, events.get(3).a);
+        assertEquals(2, trace.dump(null, 2).size());
+        assertEquals(8, trace.dump(null, 2).get(0).a);
+    }
+
+    @Test
+    public void dumpFiltersByOrder() {
+        PrintTrace trace = new PrintTrace(16, PrintTrace.LEVEL_DEBUG);
+        trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_BEGIN, "A1", 0, 0);
+        trace.record(PrintTrace.LEVEL_INFO, PrintTrace.JOB_BEGIN, "B2", 0, 0);
+        trace.record(PrintTrace.LEVEL_DEBUG, PrintTrace.TRANSPORT_WRITE, "A1", 2048, 150);
+        trace.record(PrintTrace.LEVEL_ERROR, PrintTrace.JOB_FAILED, "A1", 2, 0);
+
+        List<PrintTrace.Event> events = trace.dump("A1", 10);
+        assertEquals(3, events.size());
+        assertEquals("TRANSPORT_WRITE", events.get(1).code);
+        assertEquals(2048, events.get(1).a);
+        assertEquals("JOB_FAILED", events.get(2).code);
+        assertTrue(events.get(0).timeMs <= events.get(2).timeMs);
+    }
+
+    @Test
+    public void everyCodeDumpsUnderItsName() {
+        int[] codes = {
+            PrintTrace.JOB_BEGIN, PrintTrace.JOB_QUEUED, PrintTrace.JOB_SENT, PrintTrace.JOB_FAILED,
+            PrintTrace.TRANSPORT_WRITE, PrintTrace.TEXT, PrintTrace.BITMAP, PrintTrace.RASTER_BAND,
+            PrintTrace.SDK_METHOD, PrintTrace.STYLE_UNAVAILABLE, PrintTrace.STYLE_FALLBACK, PrintTrace.ERROR,
+            PrintTrace.JOB_DUPLICATE, PrintTrace.JOB_BATCHED, PrintTrace.JOB_PRINTED, PrintTrace.JOB_SUSPENDED,
+            PrintTrace.GLYPH_ATLAS
+        };
+        String[] names = {
+            "JOB_BEGIN", "JOB_QUEUED", "JOB_SENT", "JOB_FAILED", "TRANSPORT_WRITE", "TEXT", "BITMAP",
+            "RASTER_BAND", "SDK_METHOD", "STYLE_UNAVAILABLE", "STYLE_FALLBACK", "ERROR", "JOB_DUPLICATE",
+            "JOB_BATCHED", "JOB_PRINTED", "JOB_SUSPENDED", "GLYPH_ATLAS"
+        };
+        PrintTrace trace = new PrintTrace(32, PrintTrace.LEVEL_DEBUG);
+        for (int code : codes) trace.record(PrintTrace.LEVEL_DEBUG, code, null, 0, 0);
+
+        List<PrintTrace.Event> events = trace.dump(null, 32);
+        assertEquals(names.length, events.size());
+        for (int i = 0; i < names.length; i++) assertEquals(names[i], events.get(i).code);
+    }
+}
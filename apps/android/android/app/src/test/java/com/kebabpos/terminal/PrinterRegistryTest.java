@@ -0,0 +1,100 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the discovery registry: change events and TTL expiry.
+ */
+public class PrinterRegistryTest {
+
+    private final List<String> events = new ArrayList<>();
+    private PrinterRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new PrinterRegistry(new PrinterRegistry.Listener() {
+            @Override
+            public void printerAdded(PrinterRegistry.Printer printer) {
+                events.add("+" + printer.address);
+            }
+
+            @Override
+            public void printerRemoved(PrinterRegistry.Printer printer) {
+                events.add("-" + printer.address);
+            }
+        });
+    }
+
+    @Test
+    public void seeingPrinterAgain_onlyNotifiesOnce() {
+        registry.put("AA", "Printer", "bluetooth", 100);
+        registry.put("AA", "Printer", "bluetooth", 200);
+
+        assertEquals(1, registry.size());
+        assertEquals("[+AA]", events.toString());
+        assertEquals(200, registry.list().get(0).expiresAt);
+    }
+
+    @Test
+    public void renamedPrinter_isAnnouncedAgain() {
+        registry.put("AA", "Unknown", "bluetooth", 100);
+        registry.put("AA", "RPP02N", "bluetooth", 100);
+
+        assertEquals("[+AA, +AA]", events.toString());
+        assertEquals("RPP02N", registry.list().get(0).name);
+    }
+
+    @Test
+    public void expire_dropsOnlyStaleEntries() {
+        registry.put("AA", "Scanned", "bluetooth", 100);
+        registry.put("BB", "Paired", "bluetooth", PrinterRegistry.NO_EXPIRY);
+        registry.put("/dev/bus/usb/001/002", "USB", "usb", PrinterRegistry.NO_EXPIRY);
+
+        registry.expire(99);
+        assertEquals(3, registry.size());
+        registry.expire(100);
+
+        assertEquals(2, registry.size());
+        assertEquals("-AA", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void pairedPrinter_keepsNoExpiryWhenScannedAgain() {
+        registry.put("BB", "Paired", "bluetooth", PrinterRegistry.NO_EXPIRY);
+        registry.put("BB", "Paired", "bluetooth", 100);
+
+        registry.expire(1000);
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void removeType_leavesOtherTypes() {
+        registry.put("AA", "BT", "bluetooth", PrinterRegistry.NO_EXPIRY);
+        registry.put("/dev/bus/usb/001/002", "USB", "usb", PrinterRegistry.NO_EXPIRY);
+
+        registry.removeType("bluetooth");
+        registry.remove("missing");
+
+        assertEquals(1, registry.size());
+        assertEquals("usb", registry.list().get(0).type);
+        assertEquals("[+AA, +/dev/bus/usb/001/002, -AA]", events.toString());
+    }
+
+    @Test
+    public void hasPaired_ignoresScanResultsAndUsb() {
+        registry.put("/dev/bus/usb/001/002", "USB Printer", "usb", PrinterRegistry.NO_EXPIRY);
+        registry.put("AA", "Scanned", "bluetooth", 100);
+        assertFalse(registry.hasPaired());
+
+        registry.put("BB", "Paired", "ble", PrinterRegistry.NO_EXPIRY);
+        assertTrue(registry.hasPaired());
+        registry.remove("BB");
+        assertFalse(registry.hasPaired());
+    }
+}
@@ -0,0 +1,133 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Checks symbols against the fixed parts of the QR standard: sizes per
+ * version, finder and timing patterns, and the BCH-coded format and
+ * version information from its tables.
+ */
+public class QrCodeTest {
+
+    // Format information per level for masks 0-7, most significant bit first
+    private static final String[] FORMAT_L = {
+        "111011111000100", "111001011110011", "111110110101010", "111100010011101",
+        "110011000101111", "110001100011000", "110110001000001", "110100101110110",
+    };
+    private static final String[] FORMAT_M = {
+        "101010000010010", "101000100100101", "101111001111100", "101101101001011",
+        "100010111111001", "100000011001110", "100111110010111", "100101010100000",
+    };
+    private static final String[] FORMAT_H = {
+        "001011010001001", "001001110111110", "001110011100111", "001100111010000",
+        "000011101100010", "000001001010101", "000110100001100", "000100000111011",
+    };
+    private static final String VERSION_7 = "000111110010010100";
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) sb.append(c);
+        return sb.toString();
+    }
+
+    // Copy next to the top-left finder, bit 14 first
+    private static String formatBits(boolean[][] m) {
+        StringBuilder bits = new StringBuilder();
+        for (int x = 0; x <= 5; x++) bits.append(m[8][x] ? '1' : '0');
+        bits.append(m[8][7] ? '1' : '0').append(m[8][8] ? '1' : '0').append(m[7][8] ? '1' : '0');
+        for (int y = 5; y >= 0; y--) bits.append(m[y][8] ? '1' : '0');
+        return bits.toString();
+    }
+
+    // Copy split between the other two finders, bit 14 first
+    private static String secondFormatBits(boolean[][] m) {
+        int size = m.length;
+        StringBuilder bits = new StringBuilder();
+        for (int i = 14; i >= 8; i--) bits.append(m[size - 15 + i][8] ? '1' : '0');
+        for (int i = 7; i >= 0; i--) bits.append(m[8][size - 1 - i] ? '1' : '0');
+        return bits.toString();
+    }
+
+    private static void assertFormat(String[] expected, boolean[][] m) {
+        String bits = formatBits(m);
+        assertEquals(bits, secondFormatBits(m));
+        assertTrue("not a format word for this level: " + bits, java.util.Arrays.asList(expected).contains(bits));
+    }
+
+    private static void assertFinder(boolean[][] m, int left, int top) {
+        for (int dy = 0; dy < 7; dy++) {
+            for (int dx = 0; dx < 7; dx++) {
+                int ring = Math.max(Math.abs(dx - 3), Math.abs(dy - 3));
+                assertEquals("finder at " + left + "," + top, ring != 2, m[top + dy][left + dx]);
+            }
+        }
+    }
+
+    @Test
+    public void shortText_isVersion1WithStandardFunctionPatterns() {
+        boolean[][] m = QrCode.encode("HELLO", QrCode.ECC_MEDIUM);
+        assertEquals(21, m.length);
+        assertEquals(21, m[0].length);
+
+        assertFinder(m, 0, 0);
+        assertFinder(m, 14, 0);
+        assertFinder(m, 0, 14);
+        for (int i = 8; i < 13; i++) {
+            assertEquals(i % 2 == 0, m[6][i]);
+            assertEquals(i % 2 == 0, m[i][6]);
+        }
+        // The module that is always dark
+        assertTrue(m[13][8]);
+        assertFormat(FORMAT_M, m);
+    }
+
+    @Test
+    public void formatBits_followTheLevel() {
+        assertFormat(FORMAT_L, QrCode.encode("https://example.com/review", QrCode.ECC_LOW));
+        assertFormat(FORMAT_H, QrCode.encode("https://example.com/review", QrCode.ECC_HIGH));
+    }
+
+    @Test
+    public void version_growsWithTheData() {
+        // Byte mode holds 17 bytes in version 1-L, 32 in 2-L, 134 in 6-L
+        assertEquals(21, QrCode.encode(repeat('a', 17), QrCode.ECC_LOW).length);
+        assertEquals(25, QrCode.encode(repeat('a', 18), QrCode.ECC_LOW).length);
+        assertEquals(25, QrCode.encode(repeat('a', 32), QrCode.ECC_LOW).length);
+        assertEquals(41, QrCode.encode(repeat('a', 134), QrCode.ECC_LOW).length);
+        // Higher levels leave less room: 14 bytes in 1-M
+        assertEquals(25, QrCode.encode(repeat('a', 17), QrCode.ECC_MEDIUM).length);
+    }
+
+    @Test
+    public void version7_carriesVersionInformation() {
+        boolean[][] m = QrCode.encode(repeat('a', 135), QrCode.ECC_LOW);
+        int size = m.length;
+        assertEquals(45, size);
+        // Bit i sits at column size - 11 + i % 3 of row i / 3, and mirrored
+        for (int i = 0; i < 18; i++) {
+            boolean bit = VERSION_7.charAt(17 - i) == '1';
+            assertEquals("bit " + i, bit, m[i / 3][size - 11 + i % 3]);
+            assertEquals("bit " + i, bit, m[size - 11 + i % 3][i / 3]);
+        }
+        assertFormat(FORMAT_L, m);
+    }
+
+    @Test
+    public void sameInput_givesTheSameSymbol() {
+        boolean[][] a = QrCode.encode("ORDER-1042", QrCode.ECC_QUARTILE);
+        boolean[][] b = QrCode.encode("ORDER-1042", QrCode.ECC_QUARTILE);
+        assertTrue(java.util.Arrays.deepEquals(a, b));
+    }
+
+    @Test
+    public void dataOverVersion40_isRejected() {
+        try {
+            QrCode.encode(repeat('a', 2954), QrCode.ECC_LOW);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Data too long for QR code: 2954 bytes", e.getMessage());
+        }
+    }
+}
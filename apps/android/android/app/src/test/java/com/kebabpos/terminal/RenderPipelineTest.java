@@ -0,0 +1,179 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RenderPipelineTest {
+
+    @Test
+    public void bytesArriveInOrder() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(64);
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        pipeline.open();
+        Thread transmit = drainInBackground(pipeline, printed::write, new AtomicReference<Exception>());
+
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            byte[] chunk = new byte[1 + random.nextInt(150)];
+            random.nextBytes(chunk);
+            rendered.write(chunk);
+            pipeline.write(chunk, 0, chunk.length);
+        }
+        pipeline.close();
+        transmit.join(5000);
+
+        assertArrayEquals(rendered.toByteArray(), printed.toByteArray());
+        assertEquals(rendered.size(), pipeline.stats().bytes);
+    }
+
+    @Test
+    public void renderAndTransmitOverlap() throws Exception {
+        int buffers = 8;
+        long stepMs = 30;
+        RenderPipeline pipeline = new RenderPipeline(1024);
+        pipeline.open();
+        long start = System.nanoTime();
+        Thread transmit = drainInBackground(pipeline, data -> sleep(stepMs), new AtomicReference<Exception>());
+
+        byte[] band = new byte[1024];
+        for (int i = 0; i < buffers; i++) {
+            sleep(stepMs); // rendering a band
+            pipeline.write(band, 0, band.length);
+        }
+        pipeline.close();
+        transmit.join(5000);
+        long elapsedMs = (System.nanoTime() - start) / 1000000L;
+
+        // One stage after the other would take 16 steps, overlapped about 9
+        assertTrue("took " + elapsedMs + "ms", elapsedMs < buffers * stepMs * 2 - 3 * stepMs);
+        assertEquals(buffers, pipeline.stats().buffers);
+    }
+
+    @Test
+    public void backlog_keepsTheTransmitterBusy() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(1024);
+        pipeline.open();
+        Thread transmit = drainInBackground(pipeline, data -> sleep(10), new AtomicReference<Exception>());
+
+        byte[] band = new byte[1024];
+        for (int i = 0; i < 20; i++) pipeline.write(band, 0, band.length);
+        pipeline.close();
+        transmit.join(5000);
+
+        RenderPipeline.Stats stats = pipeline.stats();
+        assertTrue("saturation " + stats.saturation(), stats.saturation() > 0.8);
+        assertTrue(stats.renderStallNs > 0);
+    }
+
+    @Test
+    public void transportFailure_releasesTheRenderer() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(16);
+        pipeline.open();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread transmit = drainInBackground(pipeline, data -> {
+            throw new IOException("paper out");
+        }, error);
+
+        byte[] data = new byte[16];
+        for (int i = 0; i < 10; i++) pipeline.write(data, 0, data.length);
+        pipeline.close();
+        transmit.join(5000);
+
+        assertEquals("paper out", error.get().getMessage());
+    }
+
+    @Test
+    public void stalledRenderer_timesOut() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(16);
+        pipeline.open();
+        try {
+            pipeline.drain(data -> {}, 50);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Job stopped rendering", e.getMessage());
+        }
+    }
+
+    @Test
+    public void abort_failsTheTransmitter() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(16);
+        pipeline.open();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread transmit = drainInBackground(pipeline, data -> {}, error);
+
+        pipeline.abort("Job abandoned");
+        transmit.join(5000);
+
+        assertEquals("Job abandoned", error.get().getMessage());
+    }
+
+    private static Thread drainInBackground(RenderPipeline pipeline, PrinterTransport target,
+                                            AtomicReference<Exception> error) {
+        Thread thread = new Thread(() -> {
+            try {
+                pipeline.drain(target, 5000);
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void suspend_releasesTheTransmitterAndALaterDrainSendsTheRest() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(64);
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        pipeline.open();
+        pipeline.write("head ".getBytes("US-ASCII"), 0, 5);
+
+        // The renderer stalls; on the first idle check it suspends the stream
+        assertFalse(pipeline.drain(printed::write, 5000, 20, () -> assertTrue(pipeline.suspend())));
+        assertEquals("head ", printed.toString("US-ASCII"));
+
+        // Written while nobody drains, still in order once a drain resumes
+        pipeline.write("tail".getBytes("US-ASCII"), 0, 4);
+        pipeline.close();
+        assertTrue(pipeline.drain(printed::write, 5000, 20, () -> fail("no idle check needed")));
+        assertEquals("head tail", printed.toString("US-ASCII"));
+    }
+
+    @Test
+    public void suspend_isRefusedWhileRenderedBytesAreUnsent() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(64);
+        pipeline.open();
+        pipeline.write(new byte[8], 0, 8);
+        assertFalse(pipeline.suspend());
+        pipeline.close();
+        assertFalse(pipeline.suspend());
+    }
+
+    @Test
+    public void idleChecks_stopAtTheIdleTimeout() throws Exception {
+        RenderPipeline pipeline = new RenderPipeline(16);
+        pipeline.open();
+        int[] checks = { 0 };
+        try {
+            pipeline.drain(data -> {}, 100, 20, () -> checks[0]++);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Job stopped rendering", e.getMessage());
+        }
+        assertTrue("checks " + checks[0], checks[0] >= 2);
+    }
+}
@@ -0,0 +1,195 @@
+package com.kebabpos.terminal;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Printer transport that runs on a virtual clock
+ *
+ * Models the link (bytes per second), the printer's receive buffer and
+ * the print mechanism (paper speed in dots per second, worked out from
+ * the line feeds and raster rows in the data). A write returns when the
+ * last byte is in the printer's buffer, like a real blocking stream, and
+ * printedAt() says when the paper will actually have come out.
+ * Link drops happen at a given rate and take the link down for a while,
+ * failing any write in flight or attempted before it comes back.
+ */
+final class SimulatedPrinter implements PrinterTransport {
+
+    static final class Link {
+        final String name;
+        final int bytesPerSecond;
+        final int bufferBytes;
+        final int dotsPerSecond;
+        final double dropsPerHour;
+        final long reconnectMs;
+
+        Link(String name, int bytesPerSecond, int bufferBytes, int dotsPerSecond, double dropsPerHour, long reconnectMs) {
+            this.name = name;
+            this.bytesPerSecond = bytesPerSecond;
+            this.bufferBytes = bufferBytes;
+            this.dotsPerSecond = dotsPerSecond;
+            this.dropsPerHour = dropsPerHour;
+            this.reconnectMs = reconnectMs;
+        }
+
+        Link withDrops(double dropsPerHour) {
+            return new Link(name, bytesPerSecond, bufferBytes, dotsPerSecond, dropsPerHour, reconnectMs);
+        }
+    }
+
+    // Classic SPP to a budget 80mm printer: ~20KB/s effective, 4KB buffer, 80mm/s
+    static final Link BLUETOOTH = new Link("bluetooth", 20 * 1024, 4 * 1024, 640, 0, 8000);
+    // USB printer class at 150mm/s: the link is never the bottleneck
+    static final Link USB = new Link("usb", 512 * 1024, 16 * 1024, 1200, 0, 2000);
+
+    // Dots of paper per text line at the default spacing (ESC 2)
+    private static final int LINE_DOTS = 30;
+    private static final int FONT_A_HEIGHT = 24;
+    private static final int FONT_B_HEIGHT = 17;
+    private static final int CHUNK = 256;
+
+    private final Link link;
+    private final PrintLoadHarness.SimClock clock;
+    private final Random random;
+
+    // Chunks sitting in the printer buffer: {bytes, time printed}
+    private final ArrayDeque<long[]> buffered = new ArrayDeque<>();
+    private long bufferedBytes = 0;
+    private long mechanismFreeAt = 0;
+    private long linkUpAt = 0;
+    private long nextDropAt;
+
+    private long bytesWritten = 0;
+    private int drops = 0;
+
+    SimulatedPrinter(Link link, PrintLoadHarness.SimClock clock, long seed) {
+        this.link = link;
+        this.clock = clock;
+        this.random = new Random(seed);
+        nextDropAt = nextDrop(0);
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        // Drops while idle still take the link down
+        while (nextDropAt <= clock.now) drop(nextDropAt);
+        if (clock.now < linkUpAt) throw new IOException("Printer not connected");
+
+        int[] dots = paperDots(data);
+        for (int offset = 0; offset < data.length; offset += CHUNK) {
+            int length = Math.min(CHUNK, data.length - offset);
+            int chunkDots = 0;
+            for (int i = offset; i < offset + length; i++) chunkDots += dots[i];
+
+            // Wait for the printer to make room
+            releasePrinted(clock.now);
+            while (bufferedBytes + length > link.bufferBytes && !buffered.isEmpty()) {
+                clock.now = Math.max(clock.now, buffered.peekFirst()[1]);
+                releasePrinted(clock.now);
+            }
+
+            long transferMs = Math.max(1, length * 1000L / link.bytesPerSecond);
+            if (clock.now + transferMs > nextDropAt) {
+                clock.now = Math.max(clock.now, nextDropAt);
+                drop(nextDropAt);
+                throw new IOException("Simulated link drop");
+            }
+            clock.now += transferMs;
+            bytesWritten += length;
+
+            long printed = Math.max(clock.now, mechanismFreeAt) + chunkDots * 1000L / link.dotsPerSecond;
+            mechanismFreeAt = printed;
+            buffered.addLast(new long[] { length, printed });
+            bufferedBytes += length;
+        }
+    }
+
+    /**
+     * When everything written so far will have been printed
+     */
+    long printedAt() {
+        return Math.max(clock.now, mechanismFreeAt);
+    }
+
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    int drops() {
+        return drops;
+    }
+
+    private void releasePrinted(long now) {
+        while (!buffered.isEmpty() && buffered.peekFirst()[1] <= now) {
+            bufferedBytes -= buffered.pollFirst()[0];
+        }
+    }
+
+    private void drop(long at) {
+        linkUpAt = Math.max(linkUpAt, at + link.reconnectMs);
+        drops++;
+        nextDropAt = nextDrop(at);
+    }
+
+    // Drops arrive as a Poisson process in simulated time
+    private long nextDrop(long after) {
+        if (link.dropsPerHour <= 0) return Long.MAX_VALUE;
+        return after + 1 + (long) (-Math.log(1 - random.nextDouble()) * 3600000.0 / link.dropsPerHour);
+    }
+
+    /**
+     * Paper each byte causes to be fed, charged to the byte that ends a
+     * text line or raster row. A text line feeds the line spacing, or the
+     * character height if that is taller.
+     */
+    static int[] paperDots(byte[] data) {
+        int[] dots = new int[data.length];
+        int spacing = LINE_DOTS;
+        int mode = 0;
+        int font = 0;
+        int i = 0;
+        while (i < data.length) {
+            int b = data[i] & 0xFF;
+            int next = i + 1 < data.length ? data[i + 1] & 0xFF : -1;
+            if (b == 0x1D && i + 7 < data.length && next == 0x76 && data[i + 2] == 0x30) {
+                // GS v 0 m xL xH yL yH, then x * y bytes
+                int widthBytes = (data[i + 4] & 0xFF) | (data[i + 5] & 0xFF) << 8;
+                int rows = (data[i + 6] & 0xFF) | (data[i + 7] & 0xFF) << 8;
+                i += 8;
+                for (int row = 0; row < rows && i < data.length; row++) {
+                    i = Math.min(data.length, i + widthBytes);
+                    dots[i - 1] += 1;
+                }
+            } else if (b == 0x1B && next == 0x40) {
+                // ESC @
+                spacing = LINE_DOTS;
+                mode = 0;
+                font = 0;
+                i += 2;
+            } else if (b == 0x1B && next == 0x32) {
+                // ESC 2
+                spacing = LINE_DOTS;
+                i += 2;
+            } else if (b == 0x1B && i + 2 < data.length && (next == 0x33 || next == 0x21 || next == 0x4D || next == 0x64)) {
+                int n = data[i + 2] & 0xFF;
+                if (next == 0x33) spacing = n;                   // ESC 3 n
+                else if (next == 0x21) { mode = n; font = n & 1; } // ESC ! n
+                else if (next == 0x4D) font = n & 1;             // ESC M n
+                else dots[i + 2] += n * spacing;                 // ESC d n
+                i += 3;
+            } else if (b == 0x1B && i + 2 < data.length) {
+                // Other ESC x n commands (alignment, code page)
+                i += 3;
+            } else {
+                if (b == '\n') {
+                    int height = (font == 1 ? FONT_B_HEIGHT : FONT_A_HEIGHT) * ((mode & 0x10) != 0 ? 2 : 1);
+                    dots[i] += Math.max(spacing, height);
+                }
+                i++;
+            }
+        }
+        return dots;
+    }
+}
@@ -0,0 +1,103 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamedJobTest {
+
+    private final List<String> outcomes = new ArrayList<>();
+    private final IdempotencyKeys.Waiter waiter = error -> outcomes.add(error == null ? "sent" : error);
+    private final List<String> finished = new ArrayList<>();
+    private final StreamedJob.Finish finish = error -> finished.add(error == null ? "sent" : error.getMessage());
+
+    private static JobHistory.Job job(byte[] bytes) {
+        return new JobHistory.Job("A12", "receipt", "escpos", bytes, null);
+    }
+
+    @Test
+    public void unkeyedJob_streamsAndClaimsTheKeyGivenAtTheCut() throws Exception {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        StreamedJob stream = StreamedJob.open(keys, null, 0);
+        assertNotNull(stream);
+
+        // Lines go out while the job is still being rendered
+        RenderPipeline pipeline = new RenderPipeline(64);
+        pipeline.open();
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        Thread transmit = new Thread(() -> {
+            Exception error = null;
+            try {
+                pipeline.drain(printed::write, 5000);
+            } catch (Exception e) {
+                error = e;
+            }
+            stream.transmitted(error);
+        });
+        transmit.start();
+        byte[] body = "ORDER A12\n1 x Doner\n".getBytes("US-ASCII");
+        pipeline.write(body, 0, body.length);
+
+        assertTrue(stream.close(job(body), 1, "pay-1", 10, waiter, finish));
+        pipeline.close();
+        transmit.join(5000);
+
+        assertArrayEquals(body, printed.toByteArray());
+        assertEquals("sent", finished.get(0));
+        // The retry of the same payment doesn't print again
+        assertFalse(keys.claim("pay-1", 20, waiter));
+        assertEquals("sent", outcomes.get(0));
+    }
+
+    @Test
+    public void cutKeyOfAnEarlierJob_isCaughtAndNeverFinishes() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        keys.claim("pay-1", 0, waiter);
+        keys.settle("pay-1", null);
+
+        StreamedJob stream = StreamedJob.open(keys, null, 10);
+        assertNotNull(stream);
+        assertFalse(stream.close(job(new byte[0]), 1, "pay-1", 20, waiter, finish));
+        assertEquals("sent", outcomes.get(0));
+
+        // The caller aborts the rest of the stream
+        stream.transmitted(new Exception("Duplicate of an earlier job"));
+        assertTrue(finished.isEmpty());
+    }
+
+    @Test
+    public void sentBeforeTheCut_settlesTheLateKeyOnClose() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        StreamedJob stream = StreamedJob.open(keys, null, 0);
+        stream.transmitted(null);
+
+        assertTrue(stream.close(job(new byte[0]), 1, "pay-1", 10, waiter, finish));
+        assertEquals("sent", finished.get(0));
+        // Already settled, so a duplicate hears straight away
+        assertFalse(keys.claim("pay-1", 20, waiter));
+        assertEquals("sent", outcomes.get(0));
+    }
+
+    @Test
+    public void failedStream_releasesTheKeySoARetryPrints() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        StreamedJob stream = StreamedJob.open(keys, "pay-1", 0);
+        assertTrue(stream.close(job(new byte[0]), 2, "pay-1", 10, waiter, finish));
+        assertEquals(2, stream.copies());
+        stream.transmitted(new Exception("Paper out"));
+
+        assertEquals("Paper out", finished.get(0));
+        assertNotNull(StreamedJob.open(keys, "pay-1", 20));
+    }
+
+    @Test
+    public void keyedDuplicate_isNotStreamed() {
+        IdempotencyKeys keys = new IdempotencyKeys(8, 1000);
+        assertNotNull(StreamedJob.open(keys, "pay-1", 0));
+        assertNull(StreamedJob.open(keys, "pay-1", 10));
+    }
+}
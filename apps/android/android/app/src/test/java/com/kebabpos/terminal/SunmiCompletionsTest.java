@@ -0,0 +1,156 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SunmiCompletionsTest {
+
+    private final List<String> outcomes = new ArrayList<>();
+
+    private SunmiCompletions.Listener listener(String orderId) {
+        return (error, printMs, confirmed) -> outcomes.add(orderId + ":" + (error == null ? "printed" : error) + ":"
+            + printMs + (confirmed ? "" : ":unconfirmed"));
+    }
+
+    @Test
+    public void results_settleJobsInTheOrderTheyWereSent() {
+        SunmiCompletions completions = new SunmiCompletions();
+        SunmiCompletions.Pending a = completions.expect("A", 0, listener("A"));
+        completions.sent(a, 10);
+        SunmiCompletions.Pending b = completions.expect("B", 20, listener("B"));
+        completions.sent(b, 30);
+        assertTrue(outcomes.isEmpty());
+
+        completions.result(a, true, null, 900);
+        completions.result(b, false, "Out of paper", 1500);
+
+        assertEquals(2, outcomes.size());
+        assertEquals("A:printed:900", outcomes.get(0));
+        assertEquals("B:Out of paper:1480", outcomes.get(1));
+        SunmiCompletions.Stats stats = completions.stats();
+        assertEquals(1, stats.confirmed);
+        assertEquals(1, stats.failed);
+        assertEquals(0, stats.pending);
+        assertEquals(1480, stats.maxPrintMs);
+        assertEquals(1190, stats.averagePrintMs());
+    }
+
+    @Test
+    public void raisedError_failsTheJobBeingPrinted() {
+        SunmiCompletions completions = new SunmiCompletions();
+        SunmiCompletions.Pending a = completions.expect("A", 0, listener("A"));
+        completions.sent(a, 0);
+        completions.raised(a, "Printer overheated (-2)");
+        completions.result(a, true, null, 100);
+
+        assertEquals("A:Printer overheated (-2):100", outcomes.get(0));
+    }
+
+    @Test
+    public void rejectedCommandOfTheNextJob_failsThatJobNotTheOnePrinting() {
+        SunmiCompletions completions = new SunmiCompletions();
+        SunmiCompletions.Pending a = completions.expect("A", 0, listener("A"));
+        completions.sent(a, 10);
+        // B is sent while A is still waiting for its print result
+        SunmiCompletions.Pending b = completions.expect("B", 20, listener("B"));
+        completions.raised(b, "Printer rejected a command");
+        completions.sent(b, 30);
+
+        completions.result(a, true, null, 900);
+        completions.result(b, true, null, 1500);
+
+        assertEquals("A:printed:900", outcomes.get(0));
+        assertEquals("B:Printer rejected a command:1480", outcomes.get(1));
+    }
+
+    @Test
+    public void cancelledJob_isNotWaitedOn() {
+        SunmiCompletions completions = new SunmiCompletions();
+        SunmiCompletions.Pending a = completions.expect("A", 0, listener("A"));
+        SunmiCompletions.Pending b = completions.expect("B", 0, listener("B"));
+        completions.sent(b, 0);
+        completions.cancel(a);
+
+        completions.result(a, true, null, 40);
+        completions.result(b, true, null, 50);
+        assertEquals(1, outcomes.size());
+        assertTrue(outcomes.get(0).startsWith("B:printed"));
+    }
+
+    @Test
+    public void unconfirmedJob_expiresAndLaterResultsStayLinedUp() {
+        SunmiCompletions completions = new SunmiCompletions();
+        SunmiCompletions.Pending a = completions.expect("A", 0, listener("A"));
+        completions.sent(a, 0);
+        SunmiCompletions.Pending b = completions.expect("B", 100, listener("B"));
+        completions.sent(b, 200);
+        assertEquals(30000, completions.nextExpiry(30000));
+
+        completions.expire(29999, 30000);
+        assertTrue(outcomes.isEmpty());
+        completions.expire(30000, 30000);
+        assertEquals(1, outcomes.size());
+        assertEquals("A:Printer did not confirm the job:30000:unconfirmed", outcomes.get(0));
+        assertEquals(30200, completions.nextExpiry(30000));
+
+        completions.result(b, true, null, 30100);
+        assertTrue(outcomes.get(1).startsWith("B:printed"));
+        assertEquals(1, completions.stats().dropped);
+        assertEquals(-1, completions.nextExpiry(30000));
+    }
+
+    @Test
+    public void lateResultOfAnExpiredJob_doesNotSettleTheNextOne() {
+        SunmiCompletions completions = new SunmiCompletions();
+        SunmiCompletions.Pending a = completions.expect("A", 0, listener("A"));
+        completions.sent(a, 0);
+        SunmiCompletions.Pending b = completions.expect("B", 100, listener("B"));
+        completions.sent(b, 200);
+        completions.expire(30000, 30000);
+
+        // A's result turns up after all, failed; B is still printing
+        completions.raised(a, "Out of paper");
+        completions.result(a, false, "Out of paper", 30050);
+        assertEquals(1, outcomes.size());
+        assertEquals(1, completions.stats().pending);
+
+        completions.result(b, true, null, 30100);
+        assertEquals("B:printed:30000", outcomes.get(1));
+    }
+
+    @Test
+    public void jobStillBeingSent_doesNotExpire() {
+        SunmiCompletions completions = new SunmiCompletions();
+        completions.expect("A", 0, listener("A"));
+        completions.expire(60000, 30000);
+        assertTrue(outcomes.isEmpty());
+        assertEquals(-1, completions.nextExpiry(30000));
+    }
+
+    @Test
+    public void resultForAJobNotWaiting_isIgnored() {
+        SunmiCompletions completions = new SunmiCompletions();
+        completions.result(new SunmiCompletions.Pending("A", 0, listener("A")), true, null, 10);
+        assertTrue(outcomes.isEmpty());
+        assertEquals(0, completions.stats().confirmed);
+    }
+
+    @Test
+    public void failAll_failsEveryWaitingJob() {
+        SunmiCompletions completions = new SunmiCompletions();
+        completions.sent(completions.expect("A", 0, listener("A")), 0);
+        completions.expect("B", 0, listener("B"));
+        completions.failAll("Service disconnected", 40);
+
+        assertEquals(2, outcomes.size());
+        // A was sent and may have printed, B never reached the service
+        assertEquals("A:Service disconnected:40:unconfirmed", outcomes.get(0));
+        assertEquals("B:Service disconnected:40", outcomes.get(1));
+        assertEquals(2, completions.stats().dropped);
+        assertEquals(0, completions.stats().pending);
+    }
+}
@@ -0,0 +1,79 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SunmiRawTransportTest {
+
+    public static class FakeCommandApi {
+        final List<byte[]> sent = new ArrayList<>();
+
+        public void sendEscCommand(byte[] data) {
+            sent.add(data);
+        }
+    }
+
+    public static class FakePrinter {
+        final FakeCommandApi commandApi = new FakeCommandApi();
+
+        public FakeCommandApi commandApi() {
+            return commandApi;
+        }
+    }
+
+    public static class FakeAidlService {
+        final List<byte[]> sent = new ArrayList<>();
+
+        public void sendRAWData(byte[] data, Object callback) {
+            if (data.length == 0) throw new IllegalStateException("printer busy");
+            sent.add(data);
+        }
+    }
+
+    @Test
+    public void printerX_receiptIsOneCommand() throws IOException {
+        FakePrinter printer = new FakePrinter();
+        SunmiRawTransport transport = SunmiRawTransport.forPrinterX(printer);
+
+        byte[] receipt = new byte[4000];
+        transport.write(receipt);
+
+        assertEquals(1, printer.commandApi.sent.size());
+        assertSame(receipt, printer.commandApi.sent.get(0));
+    }
+
+    @Test
+    public void aidl_largeBuffersAreSplit() throws IOException {
+        FakeAidlService service = new FakeAidlService();
+        SunmiRawTransport transport = SunmiRawTransport.forAidl(service);
+
+        transport.write(new byte[SunmiRawTransport.MAX_CALL_BYTES * 2 + 10]);
+
+        assertEquals(3, service.sent.size());
+        assertEquals(SunmiRawTransport.MAX_CALL_BYTES, service.sent.get(0).length);
+        assertEquals(10, service.sent.get(2).length);
+    }
+
+    @Test
+    public void serviceErrors_becomeIOExceptions() {
+        SunmiRawTransport transport = SunmiRawTransport.forAidl(new FakeAidlService());
+        try {
+            transport.write(new byte[0]);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("printer busy"));
+        }
+    }
+
+    @Test
+    public void missingRawApi_isNull() {
+        assertNull(SunmiRawTransport.forPrinterX(new Object()));
+        assertNull(SunmiRawTransport.forAidl(new Object()));
+        assertNull(SunmiRawTransport.forAidl(null));
+    }
+}
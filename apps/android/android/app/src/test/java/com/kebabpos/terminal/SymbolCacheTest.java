@@ -0,0 +1,74 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SymbolCacheTest {
+
+    @Test
+    public void leastRecentlyUsed_isEvictedFirst() {
+        SymbolCache cache = new SymbolCache(2, 1024);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[10]);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void byteLimit_evictsUntilTheNewEntryFits() {
+        SymbolCache cache = new SymbolCache(10, 100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.put("c", new byte[40]);
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void oversizedSymbol_isNotCached() {
+        SymbolCache cache = new SymbolCache(10, 100);
+        cache.put("a", new byte[40]);
+        cache.put("big", new byte[101]);
+
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void replacingAnEntry_countsOnlyTheNewBytes() {
+        SymbolCache cache = new SymbolCache(10, 100);
+        cache.put("a", new byte[60]);
+        cache.put("a", new byte[60]);
+        cache.put("b", new byte[40]);
+
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+    }
+
+    @Test
+    public void hitsAndMisses_areCounted() {
+        SymbolCache cache = new SymbolCache(10, 100);
+        cache.get("a");
+        cache.put("a", new byte[1]);
+        cache.get("a");
+        cache.get("a");
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void key_separatesPrinterCapabilities() {
+        PrinterProfile nativeQr = new PrinterProfile(true, true, 384, PrinterProfile.RasterEncoding.PLAIN);
+        PrinterProfile raster = new PrinterProfile(false, true, 384, PrinterProfile.RasterEncoding.PLAIN);
+        assertFalse(SymbolCache.key("qr", "x", 6, 1, nativeQr).equals(SymbolCache.key("qr", "x", 6, 1, raster)));
+        assertEquals(SymbolCache.key("qr", "x", 6, 1, nativeQr), SymbolCache.key("qr", "x", 6, 1, nativeQr));
+    }
+}
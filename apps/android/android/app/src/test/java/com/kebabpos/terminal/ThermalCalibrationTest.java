@@ -0,0 +1,90 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class ThermalCalibrationTest {
+
+    private static final int UNSET = ThermalSettings.UNSET;
+
+    /**
+     * Takes the first bufferBytes at once, after that each write costs
+     * its bytes at the current setting's speed
+     */
+    private static final class FakePrinter implements ThermalCalibration.Writer {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final int bufferBytes;
+        long nsPerByte = 1000;
+        long buffered = 0;
+
+        FakePrinter(int bufferBytes) {
+            this.bufferBytes = bufferBytes;
+        }
+
+        @Override
+        public long write(byte[] data) {
+            received.write(data, 0, data.length);
+            // ESC 7 n1: more dots at once prints faster
+            if (data.length >= 5 && data[0] == 0x1B && data[1] == 0x40 && data[2] == 0x1B && data[3] == 0x37) {
+                nsPerByte = 8000 / data[4];
+            } else if (data.length >= 2 && data[0] == 0x1B && data[1] == 0x40) {
+                nsPerByte = 1000;
+            }
+            long free = Math.max(0, bufferBytes - buffered);
+            buffered += data.length;
+            return Math.max(0, data.length - free) * nsPerByte;
+        }
+    }
+
+    @Test
+    public void eachSample_isTimedOnceTheBufferIsFull() throws Exception {
+        FakePrinter printer = new FakePrinter(2048);
+        List<ThermalSettings> candidates = Arrays.asList(
+            ThermalSettings.FACTORY,
+            new ThermalSettings(8, UNSET, UNSET, UNSET, UNSET),
+            new ThermalSettings(16, UNSET, UNSET, UNSET, UNSET));
+        List<ThermalCalibration.Sample> samples = new ThermalCalibration(384, 480)
+            .run(candidates, ThermalSettings.FACTORY, printer);
+
+        assertEquals(3, samples.size());
+        for (ThermalCalibration.Sample sample : samples) {
+            assertEquals(240, sample.rows);
+            assertTrue(sample.nanos > 0);
+        }
+        // 16 rows of 48 bytes plus an 8 byte header per slice
+        double factoryRows = 1e9 / 1000 / (16 * 48 + 8) * 16;
+        assertEquals(factoryRows, samples.get(0).dotRowsPerSecond(), 1);
+        assertEquals(factoryRows, samples.get(1).dotRowsPerSecond(), 1);
+        assertEquals(factoryRows * 2, samples.get(2).dotRowsPerSecond(), 2);
+        assertEquals(factoryRows / 8, samples.get(0).mmPerSecond(), 1);
+        assertSame(samples.get(2), ThermalCalibration.fastest(samples));
+    }
+
+    @Test
+    public void samples_areLabelledAndThePrinterIsRestoredAndCut() throws Exception {
+        FakePrinter printer = new FakePrinter(1 << 20);
+        ThermalSettings restore = new ThermalSettings(UNSET, UNSET, UNSET, 3, UNSET);
+        new ThermalCalibration(384, 64).run(ThermalCalibration.defaultCandidates(), restore, printer);
+
+        byte[] out = printer.received.toByteArray();
+        String text = new String(out, "ISO-8859-1");
+        assertTrue(text.contains("Sample 1: factory\n"));
+        assertTrue(text.contains("Sample 5: dots=20,time=50,interval=2,density=4\n"));
+        byte[] tail = Arrays.copyOfRange(out, out.length - 3, out.length);
+        assertArrayEquals(new byte[] { 0x1D, 0x56, 0x00 }, tail);
+        String restored = new String(restore.encode(), "ISO-8859-1");
+        assertTrue(text.lastIndexOf("\u001B@" + restored) > text.lastIndexOf("Sample 5"));
+    }
+
+    @Test
+    public void untimedRun_hasNoFastest() {
+        ThermalCalibration.Sample sample = new ThermalCalibration.Sample(1, ThermalSettings.FACTORY);
+        assertNull(ThermalCalibration.fastest(Arrays.asList(sample)));
+        assertEquals(0, sample.mmPerSecond(), 0);
+    }
+}
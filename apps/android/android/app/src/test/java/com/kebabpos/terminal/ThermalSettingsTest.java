@@ -0,0 +1,57 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ThermalSettingsTest {
+
+    private static final int UNSET = ThermalSettings.UNSET;
+
+    @Test
+    public void factory_sendsNothing() {
+        assertEquals(0, ThermalSettings.FACTORY.encode().length);
+        assertTrue(ThermalSettings.FACTORY.isFactory());
+        assertEquals("factory", ThermalSettings.FACTORY.toString());
+    }
+
+    @Test
+    public void heating_isOneEsc7WithDefaultsForTheRest() {
+        byte[] bytes = new ThermalSettings(15, UNSET, UNSET, UNSET, UNSET).encode();
+        assertArrayEquals(new byte[] { 0x1B, 0x37, 15, 80, 2 }, bytes);
+    }
+
+    @Test
+    public void densityAndSpeed_areGsKFunctions() {
+        byte[] bytes = new ThermalSettings(UNSET, UNSET, UNSET, -2, 3).encode();
+        assertArrayEquals(new byte[] {
+            0x1D, 0x28, 0x4B, 0x02, 0x00, 0x31, (byte) 0xFE,
+            0x1D, 0x28, 0x4B, 0x02, 0x00, 0x32, 0x03,
+        }, bytes);
+    }
+
+    @Test
+    public void values_areClampedToWhatThePrinterTakes() {
+        ThermalSettings settings = new ThermalSettings(400, 1, -5, 9, 20);
+        assertEquals(255, settings.heatingDots);
+        assertEquals(3, settings.heatingTime);
+        assertEquals(0, settings.heatingInterval);
+        assertEquals(6, settings.density);
+        assertEquals(9, settings.speed);
+    }
+
+    @Test
+    public void storedForm_roundTrips() {
+        ThermalSettings settings = new ThermalSettings(15, 60, 2, 2, UNSET);
+        assertEquals("dots=15,time=60,interval=2,density=2", settings.toString());
+        assertEquals(settings, ThermalSettings.parse(settings.toString()));
+        assertEquals(ThermalSettings.FACTORY, ThermalSettings.parse("factory"));
+        assertEquals(ThermalSettings.FACTORY, ThermalSettings.parse(null));
+    }
+
+    @Test
+    public void storedForm_skipsWhatItDoesNotKnow() {
+        ThermalSettings settings = ThermalSettings.parse("dots=11,colour=red,time=x,speed=4");
+        assertEquals(new ThermalSettings(11, UNSET, UNSET, UNSET, 4), settings);
+    }
+}
@@ -0,0 +1,133 @@
+package com.kebabpos.terminal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class UsbInterfaceSelectorTest {
+
+    private static final int CLASS_HID = 3;
+    private static final int CLASS_CDC = 2;
+    private static final int CLASS_MASS_STORAGE = 8;
+    private static final int XFER_INTERRUPT = 3;
+
+    @Test
+    public void printerInterfaceAfterHid_isChosen() {
+        List<UsbInterfaceSelector.Interface> device = Arrays.asList(
+            iface(0, CLASS_HID, 0, 0, interruptIn(0x81), interruptOut(0x01)),
+            iface(1, UsbInterfaceSelector.CLASS_PRINTER, 1, 2, bulkIn(0x82), bulkOut(0x02)));
+
+        UsbInterfaceSelector.Selection selection = UsbInterfaceSelector.select(device);
+
+        assertEquals(1, selection.interfaceIndex);
+        assertEquals(1, selection.outEndpoint);
+        assertEquals(0, selection.inEndpoint);
+        assertTrue(selection.printerClass);
+    }
+
+    @Test
+    public void interruptOutEndpoint_isNotUsed() {
+        List<UsbInterfaceSelector.Interface> device = Arrays.asList(
+            iface(0, UsbInterfaceSelector.CLASS_PRINTER, 1, 1, interruptOut(0x01), bulkOut(0x02)));
+
+        UsbInterfaceSelector.Selection selection = UsbInterfaceSelector.select(device);
+
+        assertEquals(1, selection.outEndpoint);
+        assertEquals(-1, selection.inEndpoint);
+    }
+
+    @Test
+    public void cdcSerialPrinter_usesTheDataInterface() {
+        List<UsbInterfaceSelector.Interface> device = Arrays.asList(
+            iface(0, CLASS_CDC, 2, 1, interruptIn(0x83)),
+            iface(1, UsbInterfaceSelector.CLASS_CDC_DATA, 0, 0, bulkIn(0x81), bulkOut(0x01)));
+
+        assertEquals(1, UsbInterfaceSelector.select(device).interfaceIndex);
+    }
+
+    @Test
+    public void printerClass_beatsVendorSpecific() {
+        List<UsbInterfaceSelector.Interface> device = Arrays.asList(
+            iface(0, UsbInterfaceSelector.CLASS_VENDOR_SPECIFIC, 0, 0, bulkIn(0x81), bulkOut(0x01)),
+            iface(1, UsbInterfaceSelector.CLASS_PRINTER, 1, 1, bulkOut(0x02)));
+
+        assertEquals(1, UsbInterfaceSelector.select(device).interfaceIndex);
+    }
+
+    @Test
+    public void bidirectionalAlternateSetting_isPreferred() {
+        List<UsbInterfaceSelector.Interface> device = Arrays.asList(
+            altIface(0, 0, UsbInterfaceSelector.CLASS_PRINTER, 1, 1, bulkOut(0x01)),
+            altIface(0, 1, UsbInterfaceSelector.CLASS_PRINTER, 1, 2, bulkOut(0x01), bulkIn(0x82)));
+
+        UsbInterfaceSelector.Selection selection = UsbInterfaceSelector.select(device);
+
+        assertEquals(1, selection.interfaceIndex);
+        assertEquals(0, selection.outEndpoint);
+        assertEquals(1, selection.inEndpoint);
+    }
+
+    @Test
+    public void adbAndStorage_areNeverChosen() {
+        List<UsbInterfaceSelector.Interface> device = Arrays.asList(
+            iface(0, CLASS_MASS_STORAGE, 6, 0x50, bulkIn(0x81), bulkOut(0x01)),
+            iface(1, UsbInterfaceSelector.CLASS_VENDOR_SPECIFIC, 0x42, 1, bulkIn(0x82), bulkOut(0x02)));
+
+        assertNull(UsbInterfaceSelector.select(device));
+        assertFalse(UsbInterfaceSelector.looksLikePrinter(0, device));
+    }
+
+    @Test
+    public void printerWithoutBulkOut_isNotUsable() {
+        List<UsbInterfaceSelector.Interface> device = Arrays.asList(
+            iface(0, UsbInterfaceSelector.CLASS_PRINTER, 1, 1, bulkIn(0x81)));
+
+        assertNull(UsbInterfaceSelector.select(device));
+    }
+
+    @Test
+    public void looksLikePrinter_acceptsVendorDevicesOnlyWhole() {
+        List<UsbInterfaceSelector.Interface> escPos = Arrays.asList(
+            iface(0, UsbInterfaceSelector.CLASS_VENDOR_SPECIFIC, 0, 0, bulkIn(0x81), bulkOut(0x01)));
+        assertTrue(UsbInterfaceSelector.looksLikePrinter(UsbInterfaceSelector.CLASS_VENDOR_SPECIFIC, escPos));
+        // Same interface inside a composite device (a modem, say) isn't enough
+        assertFalse(UsbInterfaceSelector.looksLikePrinter(0, escPos));
+
+        List<UsbInterfaceSelector.Interface> composite = Arrays.asList(
+            iface(0, CLASS_HID, 0, 0, interruptIn(0x81)),
+            iface(1, UsbInterfaceSelector.CLASS_PRINTER, 1, 2, bulkOut(0x02)));
+        assertTrue(UsbInterfaceSelector.looksLikePrinter(0, composite));
+        assertTrue(UsbInterfaceSelector.looksLikePrinter(UsbInterfaceSelector.CLASS_PRINTER,
+            new ArrayList<UsbInterfaceSelector.Interface>()));
+    }
+
+    private static UsbInterfaceSelector.Interface iface(int id, int cls, int subclass, int protocol,
+                                                        UsbInterfaceSelector.Endpoint... endpoints) {
+        return altIface(id, 0, cls, subclass, protocol, endpoints);
+    }
+
+    private static UsbInterfaceSelector.Interface altIface(int id, int alt, int cls, int subclass, int protocol,
+                                                           UsbInterfaceSelector.Endpoint... endpoints) {
+        return new UsbInterfaceSelector.Interface(id, alt, cls, subclass, protocol, Arrays.asList(endpoints));
+    }
+
+    private static UsbInterfaceSelector.Endpoint bulkOut(int address) {
+        return new UsbInterfaceSelector.Endpoint(address, UsbInterfaceSelector.DIR_OUT, UsbInterfaceSelector.XFER_BULK, 64);
+    }
+
+    private static UsbInterfaceSelector.Endpoint bulkIn(int address) {
+        return new UsbInterfaceSelector.Endpoint(address, UsbInterfaceSelector.DIR_IN, UsbInterfaceSelector.XFER_BULK, 64);
+    }
+
+    private static UsbInterfaceSelector.Endpoint interruptOut(int address) {
+        return new UsbInterfaceSelector.Endpoint(address, UsbInterfaceSelector.DIR_OUT, XFER_INTERRUPT, 8);
+    }
+
+    private static UsbInterfaceSelector.Endpoint interruptIn(int address) {
+        return new UsbInterfaceSelector.Endpoint(address, UsbInterfaceSelector.DIR_IN, XFER_INTERRUPT, 8);
+    }
+}
@@ -1,5 +1,6 @@
 import { useState } from 'react';
 import { CartItem } from '../hooks/useCart';
+import { newIdempotencyKey } from '../lib/platform';
 
 interface CheckoutScreenProps {
   items: CartItem[];
@@ -12,7 +13,8 @@ interface CheckoutScreenProps {
     orderType: 'dine-in' | 'takeaway',
     payments: Array<{ method: 'cash' | 'card'; amount: number }>,
     customerInfo?: { name?: string; phone?: string },
-    printReceipt?: boolean
+    printReceipt?: boolean,
+    paymentKey?: string
   ) => Promise<{ success: boolean; orderNumber?: number; error?: string }>;
   onCancel: () => void;
 }
@@ -37,6 +39,8 @@ export function CheckoutScreen({
   const [cardAmount, setCardAmount] = useState('');
   
   const [isProcessing, setIsProcessing] = useState(false);
+  // One per payment attempt, so a double tap on Pay can't print the receipt twice
+  const [paymentKey] = useState(newIdempotencyKey);
   const [error, setError] = useState('');
   const [orderComplete, setOrderComplete] = useState<{ orderNumber: number; change: number } | null>(null);
 
@@ -133,7 +137,8 @@ export function CheckoutScreen({
         name: customerName || undefined,
         phone: customerPhone || undefined,
       },
-      true // Always print receipt
+      true, // Always print receipt
+      paymentKey
     );
 
     if (result.success) {
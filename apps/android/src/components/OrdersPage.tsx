@@ -1,6 +1,6 @@
-import { useState, useEffect, useCallback } from 'react';
+import { useState, useEffect, useCallback, useRef } from 'react';
 import { useApi } from '../context/ApiContext';
-import { printer } from '../lib/platform';
+import { printer, newIdempotencyKey } from '../lib/platform';
 import { Cake } from 'lucide-react';
 
 interface OrderItem {
@@ -238,14 +238,40 @@ export function OrdersPage({ currencySymbol }: OrdersPageProps) {
         if (selectedOrder?.id === orderId) {
           setSelectedOrder(prev => prev ? { ...prev, status: newStatus } : null);
         }
+        if (newStatus === 'completed' || newStatus === 'cancelled') {
+          await printer.forgetOrder(orderId);
+        }
       }
     } catch (err: any) {
       setError(err.message);
     }
   };
 
+  // Prints in flight per order, so a second tap while one prints reuses its key and is dropped natively
+  const printKeys = useRef(new Map<string, string>());
+  const printKeyFor = (orderId: string) => {
+    let key = printKeys.current.get(orderId);
+    if (!key) {
+      key = newIdempotencyKey();
+      printKeys.current.set(orderId, key);
+    }
+    return key;
+  };
+
   const reprintReceipt = async (orderId: string) => {
+    const idempotencyKey = printKeyFor(orderId);
     try {
+      // The receipt kept from when it printed; rendered again from the order only when there is none
+      const copy = await printer.reprint(orderId, 'receipt', idempotencyKey);
+      if (copy.success) {
+        console.log('Receipt reprinted successfully');
+        return;
+      }
+      if (copy.retained !== false) {
+        setError(copy.error || 'Print failed');
+        return;
+      }
+
       // Find the order in our local state
       const order = orders.find(o => o.id === orderId);
       if (!order) {
@@ -281,6 +307,7 @@ export function OrdersPage({ currencySymbol }: OrdersPageProps) {
         total: orderWithItems.total,
         paymentMethod: 'card', // Default for reprints
         createdAt: orderWithItems.createdAt,
+        idempotencyKey,
       });
       
       if (result.success) {
@@ -290,10 +317,14 @@ export function OrdersPage({ currencySymbol }: OrdersPageProps) {
       }
     } catch (err: any) {
       setError(err.message);
+    } finally {
+      // The next tap is a deliberate reprint
+      printKeys.current.delete(orderId);
     }
   };
 
   const printKitchenDocket = async (orderId: string) => {
+    const idempotencyKey = printKeyFor(orderId);
     try {
       // Find the order in our local state
       const order = orders.find(o => o.id === orderId);
@@ -330,6 +361,7 @@ export function OrdersPage({ currencySymbol }: OrdersPageProps) {
         total: orderWithItems.total,
         paymentMethod: 'kitchen', // Mark as kitchen docket
         createdAt: orderWithItems.createdAt,
+        idempotencyKey,
       });
       
       if (result.success) {
@@ -339,6 +371,8 @@ export function OrdersPage({ currencySymbol }: OrdersPageProps) {
       }
     } catch (err: any) {
       setError(err.message);
+    } finally {
+      printKeys.current.delete(orderId);
     }
   };
 
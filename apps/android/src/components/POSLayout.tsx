@@ -132,7 +132,8 @@ export function POSLayout() {
     orderType: 'dine-in' | 'takeaway',
     payments: Array<{ method: 'cash' | 'card'; amount: number }>,
     customerInfo?: { name?: string; phone?: string },
-    printReceipt?: boolean
+    printReceipt?: boolean,
+    paymentKey?: string
   ) => {
     try {
       const response = await cart.submitOrder(orderType, customerInfo);
@@ -187,6 +188,8 @@ export function POSLayout() {
             total: response.data.total,
             paymentMethod: primaryPayment.method,
             createdAt: response.data.createdAt || new Date().toISOString(),
+            // Kitchen dockets for this payment derive their key from it
+            idempotencyKey: paymentKey,
           });
           console.log('Customer receipt print result:', printResult);
         } else {
@@ -0,0 +1,57 @@
+/**
+ * Offline order outbox for Android
+ *
+ * Orders are stored on the device first and sent to the backend in the
+ * background, retrying with backoff until they are accepted. Each order
+ * keeps the same Idempotency-Key across retries.
+ */
+
+import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
+
+export interface OutboxOrder {
+  orderId?: string;
+  // Generated on the device when not given
+  idempotencyKey?: string;
+  payload: unknown;
+}
+
+export interface OutboxStatus {
+  pending: number;
+  synced: number;
+  failed: number;
+  // Epoch ms of the next send attempt, -1 if nothing is pending
+  nextAttemptAt: number;
+}
+
+export interface OutboxSyncResult {
+  synced: number;
+  failed: number;
+  retrying: number;
+  lastError?: string;
+}
+
+export interface FailedOrder {
+  idempotencyKey: string;
+  orderId?: string;
+  createdAt: number;
+  attempts: number;
+  lastError?: string;
+}
+
+export interface OrderOutboxPlugin {
+  configure(options: { url: string; headers?: Record<string, string> }): Promise<void>;
+  enqueue(options: { orders: OutboxOrder[] }): Promise<{ added: number; idempotencyKeys: string[] }>;
+  sync(): Promise<OutboxSyncResult>;
+  getStatus(): Promise<OutboxStatus>;
+  // Orders the backend rejected (HTTP 400, 409 or 422), oldest first
+  getFailed(options?: { limit?: number }): Promise<{ orders: FailedOrder[] }>;
+  // Queue rejected orders again, those given or all of them
+  retryFailed(options?: { idempotencyKeys?: string[] }): Promise<{ queued: number }>;
+  addListener(
+    eventName: 'outboxSynced',
+    listener: (event: OutboxSyncResult & Pick<OutboxStatus, 'pending' | 'nextAttemptAt'>) => void,
+  ): Promise<PluginListenerHandle>;
+}
+
+export const OrderOutbox = registerPlugin<OrderOutboxPlugin>('OrderOutbox');
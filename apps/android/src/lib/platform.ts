@@ -7,8 +7,14 @@
 
 import { Capacitor } from '@capacitor/core';
 import { Preferences } from '@capacitor/preferences';
-import { printReceipt as sunmiPrint, printKitchenDocket as sunmiKitchenPrint, getPrinterStatus } from './sunmi-printer';
-import type { PrintOrderData } from './sunmi-printer';
+import {
+  printReceipt as sunmiPrint,
+  printKitchenDocket as sunmiKitchenPrint,
+  forgetOrderDockets,
+  reprintOrder,
+  getPrinterStatus,
+} from './sunmi-printer';
+import type { PrintOrderData, PrintJobKind } from './sunmi-printer';
 
 // Detect platform
 export const platform = {
@@ -43,14 +49,39 @@ export const settings = {
   },
 };
 
+// One key per print attempt: the native printer drops a second job with the same key (a double tap, a retry)
+export function newIdempotencyKey(): string {
+  if (typeof crypto !== 'undefined' && typeof crypto.randomUUID === 'function') {
+    return crypto.randomUUID();
+  }
+  return `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}`;
+}
+
 // Printer abstraction
 export const printer = {
   async printReceipt(orderData: PrintOrderData): Promise<{ success: boolean; error?: string }> {
     return sunmiPrint(orderData);
   },
 
-  async printKitchenDocket(orderData: PrintOrderData): Promise<{ success: boolean; error?: string }> {
-    return sunmiKitchenPrint(orderData);
+  async printKitchenDocket(
+    orderData: PrintOrderData,
+    options?: { delta?: boolean; printer?: string }
+  ): Promise<{ success: boolean; error?: string; skipped?: boolean }> {
+    return sunmiKitchenPrint(orderData, options);
+  },
+
+  // The job exactly as it printed, without rendering it again
+  async reprint(
+    orderId: string,
+    kind: PrintJobKind,
+    idempotencyKey?: string
+  ): Promise<{ success: boolean; retained?: boolean; error?: string }> {
+    return reprintOrder(orderId, kind, 1, idempotencyKey);
+  },
+
+  // The order is done with, later dockets for it won't be amendments
+  async forgetOrder(orderId: string): Promise<{ success: boolean; error?: string }> {
+    return forgetOrderDockets(orderId);
   },
 
   async getStatus(): Promise<{ connected: boolean; error?: string }> {
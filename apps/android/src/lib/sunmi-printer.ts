@@ -8,6 +8,7 @@
  */
 
 import { Capacitor, registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
 import { Preferences } from '@capacitor/preferences';
 import receiptLogoUrl from '../assets/receipt_logo.png';
 import reviewQrCodeUrl from '../assets/review_qrcode.png';
@@ -65,10 +66,75 @@ async function getReviewQrCodeBase64(): Promise<string | null> {
   return reviewQrCodeBase64Cache;
 }
 
+export type PrintJobKind = 'receipt' | 'kitchen' | 'report';
+
+// Thermal head settings: ESC 7 heating (dots n1, time and interval in 10us), GS ( K density -6..6 and speed 1..9
+export interface ThermalSettings {
+  heatingDots?: number;
+  heatingTime?: number;
+  heatingInterval?: number;
+  density?: number;
+  speed?: number;
+}
+
+// One line of a streamed job: styled text, or a paper feed
+export type StreamLine =
+  | { text: string; fontSize?: number; alignment?: number; bold?: boolean }
+  | { feed: number };
+
+export interface QueueClassStats {
+  queued: number;
+  completed: number;
+  avgWaitMs: number;
+  p50WaitMs: number;
+  p95WaitMs: number;
+  maxWaitMs: number;
+}
+
+export interface PrintTraceEvent {
+  t: number;
+  level: number;
+  code: string;
+  orderId?: string;
+  a: number;
+  b: number;
+}
+
+export interface DiscoveredPrinter {
+  name: string;
+  address: string;
+  // ble: Bluetooth Low Energy only printers, connected over GATT
+  type: 'sunmi' | 'bluetooth' | 'ble' | 'usb';
+  connected: boolean;
+}
+
 // Register the Sunmi Printer plugin
 export interface SunmiPrinterPlugin {
-  printerInit(): Promise<void>;
-  getPrinterStatus(): Promise<{ status: number; message: string }>;
+  discoverPrinters(options?: { scan?: boolean }): Promise<{ printers: DiscoveredPrinter[]; scanning: boolean }>;
+  addListener(eventName: 'printerAdded', listener: (printer: DiscoveredPrinter) => void): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: 'printerRemoved',
+    listener: (printer: { address: string; type: DiscoveredPrinter['type'] }) => void,
+  ): Promise<PluginListenerHandle>;
+  // A repeated idempotencyKey within two minutes doesn't print again, it settles with the first job's outcome.
+  // Only a job keyed here can start printing before cutPaper; one keyed at cutPaper is sent whole.
+  printerInit(options?: { orderId?: string; kind?: PrintJobKind; deadlineMs?: number; idempotencyKey?: string }): Promise<void>;
+  connect(options: { address: string; type: DiscoveredPrinter['type'] }): Promise<{
+    connected: boolean;
+    type: string;
+    name?: string;
+    address?: string;
+    bidirectional?: boolean;
+    // BLE: bytes per packet after MTU negotiation
+    packetSize?: number;
+  }>;
+  // With an address, closes just that printer (USB, Bluetooth or BLE); rejects if none is connected there
+  disconnect(options?: { address?: string }): Promise<void>;
+  getPrinterStatus(): Promise<{
+    status: number;
+    message: string;
+    usbPrinters?: Array<{ address: string; name: string; active: boolean }>;
+  }>;
   setAlignment(options: { alignment: number }): Promise<void>;
   setFontSize(options: { size: number }): Promise<void>;
   printText(options: { text: string }): Promise<void>;
@@ -76,14 +142,92 @@ export interface SunmiPrinterPlugin {
   printTextStyled(options: { text: string; fontSize?: number; alignment?: number; bold?: boolean }): Promise<void>;
   printColumnsText(options: { texts: string[]; widths: number[]; aligns: number[] }): Promise<void>;
   printQRCode(options: { data: string; moduleSize?: number; errorLevel?: number; alignment?: number }): Promise<void>;
+  printBarcode(options: { data: string; height?: number; width?: number; alignment?: number; showText?: boolean }): Promise<void>;
+  setPrinterProfile(options: {
+    nativeQr?: boolean;
+    nativeBarcode?: boolean;
+    dotsPerLine?: number;
+    rasterEncoding?: 'plain' | 'trimmed';
+  }): Promise<void>;
+  // Head settings per printer (connected one unless address), sent on connect and with each job; none = factory
+  setThermalProfile(options: ThermalSettings & { address?: string }): Promise<ThermalSettings & { address: string }>;
+  getThermalProfile(options?: { address?: string }): Promise<ThermalSettings & { address: string }>;
+  // Prints a numbered sample per setting; pick the fastest legible one and store it with setThermalProfile
+  calibratePrinter(options?: { candidates?: ThermalSettings[]; rows?: number }): Promise<{
+    samples: (ThermalSettings & { sample: number; mmPerSecond: number; dotRowsPerSecond: number })[];
+    fastest?: number;
+  }>;
+  setGraphicsMode(options: { enabled: boolean; bandHeight?: number }): Promise<void>;
+  // Dense: small font and tight line spacing (ESC/POS printers), from the next printerInit
+  setLayout(options: { dense: boolean }): Promise<PrintLayout>;
+  getLayout(): Promise<PrintLayout>;
+  // Raw: Sunmi built-in printer takes ESC/POS bytes like the other printers; raw is false if unsupported
+  setRawMode(options: { enabled: boolean }): Promise<{ raw: boolean }>;
+  // Rush mode: kitchen dockets per printer share one cut, flushed at maxOrders or after windowMs
+  setDocketBatching(options: { enabled: boolean; windowMs?: number; maxOrders?: number }): Promise<DocketBatching>;
   printBitmap(options: { bitmap: string; width?: number; alignment?: number }): Promise<void>;
   lineWrap(options: { lines: number }): Promise<void>;
-  cutPaper(): Promise<void>;
+  // copies: 1 to 10, anything else rejects (also for printReceipt and reprint)
+  cutPaper(options?: { copies?: number; idempotencyKey?: string }): Promise<{ duplicate?: boolean } | void>;
   openDrawer(): Promise<void>;
+  // Jobs streamed while they rendered are only kept up to 256 KB (long graphics receipts are not): print those again.
+  // Rejects with code NOT_RETAINED when no job is kept for the order on the connected printer.
+  reprint(options: {
+    orderId?: string;
+    kind?: PrintJobKind;
+    copies?: number;
+    idempotencyKey?: string;
+  }): Promise<{ duplicate?: boolean } | void>;
+  // Streamed jobs (ESC/POS): appendJob resolves once its lines are on their way, await it to keep pace
+  beginJob(options?: { orderId?: string; kind?: PrintJobKind; deadlineMs?: number }): Promise<{ jobId: number }>;
+  appendJob(options: { jobId: number; lines: StreamLine[] }): Promise<void>;
+  commitJob(options: { jobId: number }): Promise<void>;
+  abortJob(options: { jobId: number }): Promise<void>;
+  getQueueStats(): Promise<{
+    classes: Record<'control' | 'kitchen' | 'receipt' | 'reprint' | 'report', QueueClassStats>;
+    duplicatesSuppressed: number;
+    // Jobs sent while they rendered; saturation near 1 means the printer link never waited on rendering
+    pipeline: {
+      jobs: number;
+      buffers: number;
+      bytes: number;
+      transmitMs: number;
+      transmitIdleMs: number;
+      renderStallMs: number;
+      saturation: number;
+    };
+    // Sunmi jobs by printer-reported outcome; dropped never got a result (timed out or service lost)
+    sunmi: {
+      confirmed: number;
+      failed: number;
+      dropped: number;
+      waiting: number;
+      lastPrintMs: number;
+      avgPrintMs: number;
+      maxPrintMs: number;
+    };
+  }>;
+  dumpTrace(options?: { orderId?: string; limit?: number }): Promise<{ level: number; events: PrintTraceEvent[] }>;
+  setTraceLevel(options: { level: 'off' | 'error' | 'info' | 'debug' }): Promise<void>;
+  diffDocket(options: { orderId: string; printer?: string; items: DocketItem[] }): Promise<{
+    first: boolean;
+    changes: DocketChange[];
+  }>;
+  commitDocket(options: { orderId: string; printer?: string; items: DocketItem[] }): Promise<void>;
+  forgetDocket(options: { orderId: string }): Promise<void>;
+}
+
+export interface DocketBatching {
+  enabled: boolean;
+  windowMs: number;
+  maxOrders: number;
 }
 
 const SunmiPrinter = registerPlugin<SunmiPrinterPlugin>('SunmiPrinter');
 
+// Batched dockets print back to back, so each gets a smaller header
+let docketBatchingEnabled = false;
+
 // Types for print data
 export interface PrintOrderData {
   orderId: string;
@@ -102,6 +246,31 @@ export interface PrintOrderData {
   total: number;
   paymentMethod: string;
   createdAt: string;
+  // Same key for every attempt at the same print (e.g. one per Pay action), so retries can't print twice
+  idempotencyKey?: string;
+}
+
+// Characters per line at normal size in the current layout
+export interface PrintLayout {
+  dense: boolean;
+  columns: number;
+}
+
+// Kitchen docket lines as recorded natively for amendment dockets
+export interface DocketItem {
+  name: string;
+  quantity: number;
+  modifiers?: Array<{ name: string }>;
+  notes?: string;
+}
+
+export interface DocketChange {
+  change: 'added' | 'removed' | 'changed';
+  name: string;
+  quantity: number;
+  modifiers: string[];
+  notes?: string;
+  previous?: { name: string; quantity: number; modifiers: string[]; notes?: string };
 }
 
 export interface PrinterStatus {
@@ -137,6 +306,17 @@ function formatDate(dateString: string): string {
   });
 }
 
+// Full-width rule for the active font; older native builds have no getLayout
+async function ruleLine(char: string): Promise<string> {
+  let columns = 32;
+  try {
+    columns = (await SunmiPrinter.getLayout()).columns;
+  } catch {
+    // keep the 58mm default
+  }
+  return char.repeat(columns) + '\n';
+}
+
 /**
  * Print a customer receipt
  */
@@ -147,8 +327,14 @@ export async function printReceipt(orderData: PrintOrderData): Promise<{ success
   }
 
   try {
-    // Initialize printer
-    await SunmiPrinter.printerInit();
+    // Initialize printer (starts a job retained for reprints)
+    await SunmiPrinter.printerInit({
+      orderId: orderData.orderId,
+      kind: 'receipt',
+      idempotencyKey: orderData.idempotencyKey,
+    });
+    const doubleRule = await ruleLine('=');
+    const rule = await ruleLine('-');
 
     // Print logo (centered)
     try {
@@ -164,7 +350,7 @@ export async function printReceipt(orderData: PrintOrderData): Promise<{ success
     // Business header (centered using printTextStyled)
     await SunmiPrinter.printTextStyled({ text: 'Shop 7a/22 Mawson Pl, Mawson ACT 2607\n', fontSize: 24, alignment: 1 });
     await SunmiPrinter.printTextStyled({ text: 'ALTAHER LIMITED | ABN: 79 689 402 051\n', fontSize: 24, alignment: 1 });
-    await SunmiPrinter.printTextStyled({ text: '================================\n', fontSize: 24, alignment: 1 });
+    await SunmiPrinter.printTextStyled({ text: doubleRule, fontSize: 24, alignment: 1 });
 
     // Order type (centered)
     await SunmiPrinter.printTextStyled({ text: orderData.orderType.toUpperCase() + '\n', fontSize: 32, alignment: 1 });
@@ -183,7 +369,7 @@ export async function printReceipt(orderData: PrintOrderData): Promise<{ success
       await SunmiPrinter.printText({ text: `Customer: ${orderData.customerName}\n` });
     }
     
-    await SunmiPrinter.printText({ text: '--------------------------------\n' });
+    await SunmiPrinter.printText({ text: rule });
 
     // Items
     for (const item of orderData.items) {
@@ -208,7 +394,7 @@ export async function printReceipt(orderData: PrintOrderData): Promise<{ success
       }
     }
 
-    await SunmiPrinter.printText({ text: '--------------------------------\n' });
+    await SunmiPrinter.printText({ text: rule });
 
     // Totals
     await SunmiPrinter.printColumnsText({ texts: ['Subtotal:', formatCurrency(orderData.subtotal)], widths: [28, 10], aligns: [0, 2] });
@@ -218,7 +404,7 @@ export async function printReceipt(orderData: PrintOrderData): Promise<{ success
     await SunmiPrinter.printColumnsText({ texts: ['TOTAL:', formatCurrency(orderData.total)], widths: [20, 10], aligns: [0, 2] });
     await SunmiPrinter.setFontSize({ size: 24 });
 
-    await SunmiPrinter.printText({ text: '--------------------------------\n' });
+    await SunmiPrinter.printText({ text: rule });
     await SunmiPrinter.printText({ text: `Paid by: ${orderData.paymentMethod}\n` });
 
     // Footer (centered)
@@ -252,56 +438,93 @@ export async function printReceipt(orderData: PrintOrderData): Promise<{ success
 }
 
 /**
- * Print a kitchen docket
+ * Print a kitchen docket.
+ *
+ * With delta, an order that already has a docket on this printer only
+ * prints the lines that were added, removed or changed since then.
+ * Nothing is printed when nothing changed.
  */
-export async function printKitchenDocket(orderData: PrintOrderData): Promise<{ success: boolean; error?: string }> {
+export async function printKitchenDocket(
+  orderData: PrintOrderData,
+  options: { delta?: boolean; printer?: string } = {}
+): Promise<{ success: boolean; error?: string; skipped?: boolean }> {
   if (!Capacitor.isNativePlatform()) {
     console.log('Kitchen docket simulated (web mode):', orderData);
     return { success: true };
   }
 
+  const docket = { orderId: orderData.orderId, printer: options.printer, items: orderData.items };
+
   try {
-    await SunmiPrinter.printerInit();
+    let changes: DocketChange[] | null = null;
+    if (options.delta) {
+      const diff = await SunmiPrinter.diffDocket(docket);
+      if (!diff.first) {
+        if (diff.changes.length === 0) return { success: true, skipped: true };
+        changes = diff.changes;
+      }
+    }
+
+    await SunmiPrinter.printerInit({
+      orderId: orderData.orderId,
+      kind: 'kitchen',
+      idempotencyKey: orderData.idempotencyKey && `${orderData.idempotencyKey}:kitchen`,
+    });
+    const doubleRule = await ruleLine('=');
 
-    // Order number (very large)
+    // Order number (very large, smaller when dockets are batched)
+    const numberSize = docketBatchingEnabled ? 48 : 64;
     await SunmiPrinter.setAlignment({ alignment: 1 });
-    await SunmiPrinter.setFontSize({ size: 64 });
-    await SunmiPrinter.printTextWithFont({ text: `#${orderData.orderNumber}\n`, typeface: '', fontSize: 64 });
-    
-    // Order type
-    await SunmiPrinter.setFontSize({ size: 32 });
-    await SunmiPrinter.printTextWithFont({ text: orderData.orderType.toUpperCase() + '\n', typeface: '', fontSize: 32 });
+    await SunmiPrinter.setFontSize({ size: numberSize });
+    if (docketBatchingEnabled) {
+      // Number and type on one line
+      await SunmiPrinter.printTextWithFont({
+        text: `#${orderData.orderNumber} ${orderData.orderType.toUpperCase()}\n`,
+        typeface: '',
+        fontSize: numberSize,
+      });
+    } else {
+      await SunmiPrinter.printTextWithFont({ text: `#${orderData.orderNumber}\n`, typeface: '', fontSize: numberSize });
+
+      // Order type
+      await SunmiPrinter.setFontSize({ size: 32 });
+      await SunmiPrinter.printTextWithFont({ text: orderData.orderType.toUpperCase() + '\n', typeface: '', fontSize: 32 });
+    }
+    if (changes) {
+      await SunmiPrinter.printTextStyled({ text: '*** AMENDED ***\n', fontSize: 32, alignment: 1, bold: true });
+    }
     
     await SunmiPrinter.setFontSize({ size: 24 });
-    await SunmiPrinter.printText({ text: '================================\n' });
+    await SunmiPrinter.printText({ text: doubleRule });
     await SunmiPrinter.setAlignment({ alignment: 0 });
 
     // Items (large for kitchen visibility)
     await SunmiPrinter.setFontSize({ size: 28 });
-    for (const item of orderData.items) {
-      await SunmiPrinter.printText({ text: `${item.quantity}x ${item.name}\n` });
-      
-      if (item.modifiers && item.modifiers.length > 0) {
-        for (const mod of item.modifiers) {
-          await SunmiPrinter.printText({ text: `  + ${mod.name}\n` });
-        }
+    if (changes) {
+      for (const change of changes) {
+        await printDocketChange(change);
       }
-      
-      if (item.notes) {
-        await SunmiPrinter.setFontSize({ size: 24 });
-        await SunmiPrinter.printText({ text: `  ** ${item.notes} **\n` });
-        await SunmiPrinter.setFontSize({ size: 28 });
+    } else {
+      for (const item of orderData.items) {
+        await printDocketLine(
+          `${item.quantity}x ${item.name}`,
+          (item.modifiers ?? []).map((mod) => mod.name),
+          item.notes
+        );
       }
     }
 
     await SunmiPrinter.setFontSize({ size: 24 });
-    await SunmiPrinter.printText({ text: '================================\n' });
+    await SunmiPrinter.printText({ text: doubleRule });
     await SunmiPrinter.printText({ text: `Time: ${formatDate(orderData.createdAt)}\n` });
 
-    // Feed and cut
-    await SunmiPrinter.lineWrap({ lines: 4 });
+    // Feed and cut; a batch keeps only the last docket's feed, so skip the extra lines
+    if (!docketBatchingEnabled) await SunmiPrinter.lineWrap({ lines: 4 });
     await SunmiPrinter.cutPaper();
 
+    // Later amendments are diffed against what the kitchen now has
+    await SunmiPrinter.commitDocket(docket);
+
     return { success: true };
   } catch (error) {
     console.error('Kitchen docket print error:', error);
@@ -309,6 +532,203 @@ export async function printKitchenDocket(orderData: PrintOrderData): Promise<{ s
   }
 }
 
+async function printDocketLine(text: string, modifiers: string[], notes?: string, bold = false): Promise<void> {
+  if (bold) {
+    await SunmiPrinter.printTextStyled({ text: `${text}\n`, fontSize: 28, bold: true });
+  } else {
+    await SunmiPrinter.printText({ text: `${text}\n` });
+  }
+  for (const mod of modifiers) {
+    await SunmiPrinter.printText({ text: `  + ${mod}\n` });
+  }
+  if (notes) {
+    await SunmiPrinter.setFontSize({ size: 24 });
+    await SunmiPrinter.printText({ text: `  ** ${notes} **\n` });
+    await SunmiPrinter.setFontSize({ size: 28 });
+  }
+}
+
+// ADD / VOID / CHANGE markers so the grill can tell amendments apart at a glance
+async function printDocketChange(change: DocketChange): Promise<void> {
+  if (change.change === 'added') {
+    await printDocketLine(`ADD ${change.quantity}x ${change.name}`, change.modifiers, change.notes);
+  } else if (change.change === 'removed') {
+    // With its modifiers and notes, so the grill knows which of two alike lines to pull
+    await printDocketLine(`VOID ${change.quantity}x ${change.name}`, change.modifiers, change.notes, true);
+  } else {
+    const was = change.previous;
+    await printDocketLine(`CHANGE ${change.quantity}x ${change.name}`, change.modifiers, change.notes);
+    if (was) {
+      await SunmiPrinter.setFontSize({ size: 24 });
+      const previous = [`${was.quantity}x`, ...was.modifiers.map((mod) => `+ ${mod}`)];
+      if (was.notes) previous.push(`** ${was.notes} **`);
+      await SunmiPrinter.printText({ text: `  (was ${previous.join(' ')})\n` });
+      await SunmiPrinter.setFontSize({ size: 28 });
+    }
+  }
+}
+
+/**
+ * Drop the dockets recorded for an order once it is completed or
+ * cancelled, so the ledger only holds orders the kitchen still has.
+ */
+export async function forgetOrderDockets(orderId: string): Promise<{ success: boolean; error?: string }> {
+  if (!Capacitor.isNativePlatform()) return { success: true };
+
+  try {
+    await SunmiPrinter.forgetDocket({ orderId });
+    return { success: true };
+  } catch (error) {
+    return { success: false, error: String(error) };
+  }
+}
+
+/**
+ * Reprint a previously printed receipt or docket from the retained job.
+ * Without an orderId, the last printed job is reprinted. retained is
+ * false when no job was kept, the caller then prints it again.
+ */
+export async function reprintOrder(
+  orderId?: string,
+  kind?: PrintJobKind,
+  copies = 1,
+  idempotencyKey?: string
+): Promise<{ success: boolean; retained?: boolean; error?: string }> {
+  if (!Capacitor.isNativePlatform()) {
+    console.log('Reprint simulated (web mode):', orderId);
+    return { success: true };
+  }
+
+  try {
+    await SunmiPrinter.reprint({ orderId, kind, copies, idempotencyKey });
+    return { success: true };
+  } catch (error) {
+    const retained = (error as { code?: string }).code !== 'NOT_RETAINED';
+    return { success: false, retained, error: String(error) };
+  }
+}
+
+/**
+ * Switch ESC/POS printers to the dense layout (small font, tight line
+ * spacing) for shorter receipts. Takes effect from the next print.
+ */
+export async function setDenseLayout(dense: boolean): Promise<{ success: boolean; columns?: number; error?: string }> {
+  if (!Capacitor.isNativePlatform()) return { success: true };
+
+  try {
+    const layout = await SunmiPrinter.setLayout({ dense });
+    return { success: true, columns: layout.columns };
+  } catch (error) {
+    return { success: false, error: String(error) };
+  }
+}
+
+/**
+ * Send the Sunmi built-in printer pre-encoded ESC/POS instead of one SDK
+ * call per line. Set dotsPerLine in the printer profile to match the head
+ * (576 on 80mm units). Falls back to SDK calls where there is no raw API.
+ */
+export async function setSunmiRawMode(enabled: boolean): Promise<{ success: boolean; raw?: boolean; error?: string }> {
+  if (!Capacitor.isNativePlatform()) return { success: true };
+
+  try {
+    const { raw } = await SunmiPrinter.setRawMode({ enabled });
+    return { success: true, raw };
+  } catch (error) {
+    return { success: false, error: String(error) };
+  }
+}
+
+/**
+ * Print a test sample at each head setting and measure its speed. Staff
+ * pick the fastest sample that is still crisp, then save it with
+ * saveThermalProfile; it is applied whenever that printer connects.
+ */
+export async function calibratePrinter(
+  candidates?: ThermalSettings[]
+): Promise<{
+  success: boolean;
+  samples?: (ThermalSettings & { sample: number; mmPerSecond: number })[];
+  fastest?: number;
+  error?: string;
+}> {
+  if (!Capacitor.isNativePlatform()) return { success: true, samples: [] };
+
+  try {
+    const { samples, fastest } = await SunmiPrinter.calibratePrinter({ candidates });
+    return { success: true, samples, fastest };
+  } catch (error) {
+    return { success: false, error: String(error) };
+  }
+}
+
+export async function saveThermalProfile(
+  settings: ThermalSettings,
+  address?: string
+): Promise<{ success: boolean; error?: string }> {
+  if (!Capacitor.isNativePlatform()) return { success: true };
+
+  try {
+    await SunmiPrinter.setThermalProfile({ ...settings, address });
+    return { success: true };
+  } catch (error) {
+    return { success: false, error: String(error) };
+  }
+}
+
+/**
+ * Print a long document (end-of-day report, large catering order) as it
+ * is produced. Each chunk is sent while the next is built, so the first
+ * lines print straight away and neither side holds the whole document.
+ * Needs an ESC/POS printer or Sunmi raw mode.
+ */
+export async function printStreamed(
+  chunks: AsyncIterable<StreamLine[]> | Iterable<StreamLine[]>,
+  options: { orderId?: string; kind?: PrintJobKind } = {}
+): Promise<{ success: boolean; error?: string }> {
+  if (!Capacitor.isNativePlatform()) {
+    console.log('Streamed job simulated (web mode):', options);
+    return { success: true };
+  }
+
+  let jobId: number | null = null;
+  try {
+    ({ jobId } = await SunmiPrinter.beginJob({ kind: 'report', ...options }));
+    for await (const lines of chunks) {
+      await SunmiPrinter.appendJob({ jobId, lines });
+    }
+    await SunmiPrinter.commitJob({ jobId });
+    return { success: true };
+  } catch (error) {
+    console.error('Streamed print error:', error);
+    if (jobId !== null) await SunmiPrinter.abortJob({ jobId }).catch(() => undefined);
+    return { success: false, error: String(error) };
+  }
+}
+
+/**
+ * Rush mode: hold kitchen dockets for up to windowMs (default 4000) and
+ * print up to maxOrders (default 4) under one cut with separators between
+ * them. Off by default; switching it off prints anything still held.
+ */
+export async function setDocketBatching(
+  enabled: boolean,
+  options: { windowMs?: number; maxOrders?: number } = {}
+): Promise<{ success: boolean; batching?: DocketBatching; error?: string }> {
+  if (!Capacitor.isNativePlatform()) {
+    docketBatchingEnabled = enabled;
+    return { success: true };
+  }
+
+  try {
+    const batching = await SunmiPrinter.setDocketBatching({ enabled, ...options });
+    docketBatchingEnabled = batching.enabled;
+    return { success: true, batching };
+  } catch (error) {
+    return { success: false, error: String(error) };
+  }
+}
+
 /**
  * Get printer status
  */